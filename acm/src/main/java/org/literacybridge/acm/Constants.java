@@ -27,6 +27,8 @@ public class Constants {
   public final static File   USER_HOME_DIR = new File(System.getProperty("user.home", "."));
   public final static File   JAVA_TMP_DIR = new File(System.getProperty("java.io.tmpdir"));
   public final static long   DEFAULT_CACHE_SIZE_IN_BYTES = 2L * 1024L * 1024L * 1024L; // 2GB
+  public final static long   DEFAULT_INDEX_REFRESH_LATENCY_MS = 250;
+  public final static int    DEFAULT_AUDIO_ITEM_CACHE_SIZE = 20000;
 
   public final static String USER_NAME = "USER_NAME";
   public final static String USER_CONTACT_INFO = "USER_CONTACT_INFO";
@@ -37,12 +39,15 @@ public class Constants {
   public final static String AUDIO_LANGUAGES = "AUDIO_LANGUAGES";
   public final static String PRE_CACHE_WAV = "PRE_CACHE_WAV";
   public final static String CACHE_SIZE_PROP_NAME = "CACHE_SIZE_IN_BYTES";
+  public final static String INDEX_REFRESH_LATENCY_PROP_NAME = "INDEX_REFRESH_LATENCY_MS";
+  public final static String AUDIO_ITEM_CACHE_SIZE_PROP_NAME = "AUDIO_ITEM_CACHE_SIZE";
   public final static String DESCRIPTION_PROP_NAME = "DESCRIPTION";
   public final static String FRIENDLY_NAME_PROP_NAME = "NAME";
   public final static String STRICT_DEPLOYMENT_NAMING = "STRICT_DEPLOYMENT_NAMING";
     public final static String USER_FEEDBACK_HIDDEN = "USER_FEEDBACK_HIDDEN";
     public final static String USER_FEEDBACK_PUBLIC = "USER_FEEDBACK_PUBLIC";
   public final static String DE_DUPLICATE_AUDIO = "DE_DUPLICATE_AUDIO";
+  public final static String SEGMENTED_DB_SNAPSHOTS = "SEGMENTED_DB_SNAPSHOTS";
   public final static String CONFIGURATION_DIALOG = "CONFIGURATION_DIALOG";
   public final static String NATIVE_AUDIO_FORMATS = "NATIVE_AUDIO_FORMATS";
   public final static String ALLOW_PACKAGE_CHOICE = "PACKAGE_CHOICE";
@@ -2,12 +2,19 @@ package org.literacybridge.acm.audioconverter.converters;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
+import org.apache.commons.io.FileUtils;
 import org.literacybridge.acm.config.ACMConfiguration;
 import org.literacybridge.acm.utils.IOUtils;
 
@@ -106,6 +113,103 @@ public abstract class A18BaseConverter extends BaseAudioConverter {
         }
     }
 
+    /**
+     * Converts several files with a single run of the converter, which accepts any number of input
+     * files. For small files, like prompts, starting the converter costs more than the conversion.
+     * <p>
+     * Any file that the batch run fails to produce is converted again on its own, so the outcome
+     * for each file is the same as calling convertFile() for it.
+     *
+     * @param sourceFiles The files to be converted.
+     * @param targetDir The directory to receive the converted files, named like the sources.
+     * @param overwrite If false, files that already exist in the targetDir are left alone.
+     * @param parameters Conversion parameters.
+     * @return The source files that could not be converted.
+     */
+    public Set<File> convertFiles(List<File> sourceFiles, File targetDir, boolean overwrite,
+        Map<String, String> parameters) {
+        Set<File> failed = new LinkedHashSet<>();
+        // The converter names its output after its input, so names must be unique within a batch.
+        Map<String, File> batch = new LinkedHashMap<>();
+        List<File> singles = new ArrayList<>();
+        for (File sourceFile : sourceFiles) {
+            File targetFile = targetFile(sourceFile, targetDir);
+            if (targetFile.exists() && !overwrite) continue;
+            if (batch.putIfAbsent(sourceFile.getName(), sourceFile) != null) {
+                singles.add(sourceFile);
+            }
+        }
+
+        if (batch.size() > 1) {
+            singles.addAll(runBatch(batch, targetDir, parameters));
+        } else {
+            singles.addAll(batch.values());
+        }
+
+        for (File sourceFile : singles) {
+            try {
+                convertFile(sourceFile, targetFile(sourceFile, targetDir), true, parameters);
+            } catch (ConversionException e) {
+                failed.add(sourceFile);
+            }
+        }
+        return failed;
+    }
+
+    /**
+     * Runs the converter once for all of the files in the batch.
+     * @return the source files for which no output was produced.
+     */
+    private List<File> runBatch(Map<String, File> batch, File targetDir, Map<String, String> parameters) {
+        List<File> missing = new ArrayList<>();
+        File batchDir = null;
+        try {
+            // Copy the sources to a private directory; the converter leaves intermediate files beside them.
+            batchDir = Files.createTempDirectory(JAVA_TMP_DIR.toPath(), "a18batch").toFile();
+            File inputDir = new File(batchDir, "in");
+            File outputDir = new File(batchDir, "out");
+            if (!inputDir.mkdirs() || !outputDir.mkdirs()) {
+                return new ArrayList<>(batch.values());
+            }
+            List<File> inputs = new ArrayList<>();
+            for (File sourceFile : batch.values()) {
+                File input = new File(inputDir, sourceFile.getName());
+                IOUtils.copy(sourceFile, input);
+                inputs.add(input);
+            }
+
+            StringBuilder cmd = new StringBuilder(getCommand(inputs.get(0), outputDir, parameters));
+            for (File input : inputs.subList(1, inputs.size())) {
+                cmd.append(" \"").append(input.getAbsolutePath()).append("\"");
+            }
+            System.out.printf("Convert %d files to '%s' with command:%n%s%n", inputs.size(), targetFormatExtension, cmd);
+            try {
+                BaseAudioConverter.executeConversionCommand(cmd.toString(), false, inputs.size() + " files");
+            } catch (ConversionException e) {
+                // Whatever was produced is still good; the rest are retried singly.
+            }
+
+            for (File sourceFile : batch.values()) {
+                File output = new File(outputDir, sourceFile.getName() + targetFormatExtension);
+                File targetFile = targetFile(sourceFile, targetDir);
+                if (output.exists()) {
+                    postConversion(output, parameters);
+                    // May be on another volume, so move rather than rename.
+                    Files.move(output.toPath(), targetFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                } else {
+                    missing.add(sourceFile);
+                }
+            }
+        } catch (IOException e) {
+            return new ArrayList<>(batch.values());
+        } finally {
+            if (batchDir != null) {
+                FileUtils.deleteQuietly(batchDir);
+            }
+        }
+        return missing;
+    }
+
     @Override
     public String getShortDescription() {
         return "Convert *.a18 to WAV audio files";
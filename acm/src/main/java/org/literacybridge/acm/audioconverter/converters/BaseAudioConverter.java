@@ -80,6 +80,11 @@ public abstract class BaseAudioConverter {
     throws AudioConverterInitializationException;
 
     static String executeConversionCommand(String cmd, boolean listenToStdErr, String inputFileName) throws ConversionException {
+        return ConverterProcessService.getInstance().invoke(ConverterProcessService.toolName(cmd),
+            () -> runConversionCommand(cmd, listenToStdErr, inputFileName));
+    }
+
+    private static String runConversionCommand(String cmd, boolean listenToStdErr, String inputFileName) throws ConversionException {
         StringBuilder responseBuilder = new StringBuilder();
         boolean success = false;
         try {
@@ -116,7 +121,17 @@ public abstract class BaseAudioConverter {
         return responseBuilder.toString();
     }
 
+    /**
+     * Checks that a converter executable exists and runs. The result is remembered, so the
+     * executable is only run once, not before every conversion.
+     */
     static void validateConverterExecutable(String exePath, boolean listenToStdErr, String outputPrefix)
+    throws AudioConverterInitializationException {
+        ConverterProcessService.getInstance().validate(exePath,
+            () -> probeConverterExecutable(exePath, listenToStdErr, outputPrefix));
+    }
+
+    private static void probeConverterExecutable(String exePath, boolean listenToStdErr, String outputPrefix)
     throws AudioConverterInitializationException {
         File exeFile = new File(exePath);
         if (!exeFile.exists()) {
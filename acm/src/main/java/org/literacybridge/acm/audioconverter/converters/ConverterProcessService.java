@@ -0,0 +1,154 @@
+package org.literacybridge.acm.audioconverter.converters;
+
+import org.literacybridge.acm.audioconverter.converters.BaseAudioConverter.AudioConverterInitializationException;
+import org.literacybridge.acm.audioconverter.converters.BaseAudioConverter.ConversionException;
+
+import java.io.File;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Runs the external converter tools (ffmpeg, lame, the A18 batch converter).
+ * <p>
+ * Every converter process goes through here, so that:
+ * <ul>
+ *     <li>each executable is probed only once, rather than before every conversion,</li>
+ *     <li>no more processes run at once than there are cores, however many threads are converting,
+ *     and</li>
+ *     <li>the time taken by each invocation is recorded, by tool, for tuning.</li>
+ * </ul>
+ */
+public class ConverterProcessService {
+    private static final int MAX_PROCESSES = Math.max(1, Runtime.getRuntime().availableProcessors());
+
+    private static final ConverterProcessService instance = new ConverterProcessService(MAX_PROCESSES);
+
+    public static ConverterProcessService getInstance() {
+        return instance;
+    }
+
+    /**
+     * Something that runs an external process.
+     */
+    interface Invocation<T> {
+        T run() throws ConversionException;
+    }
+
+    private final Semaphore processPermits;
+    // exe path -> the exe's size and modification time when it was validated.
+    private final Map<String, String> validated = new ConcurrentHashMap<>();
+    private final Map<String, LatencyStats> latencies = new ConcurrentHashMap<>();
+
+    ConverterProcessService(int maxProcesses) {
+        this.processPermits = new Semaphore(maxProcesses, true);
+    }
+
+    /**
+     * Validates an executable, unless it has already been validated, and has not changed since.
+     * @param exePath The executable.
+     * @param validator Probes the executable; throws if it doesn't work.
+     * @throws AudioConverterInitializationException if the executable doesn't work.
+     */
+    void validate(String exePath, ExecutableValidator validator) throws AudioConverterInitializationException {
+        File exeFile = new File(exePath);
+        String signature = exeFile.length() + "/" + exeFile.lastModified();
+        if (signature.equals(validated.get(exePath))) {
+            return;
+        }
+        validator.validate();
+        validated.put(exePath, signature);
+    }
+
+    interface ExecutableValidator {
+        void validate() throws AudioConverterInitializationException;
+    }
+
+    /**
+     * Runs an invocation of an external tool once a process slot is free, and records how long it
+     * took.
+     * @param tool Name under which to record the latency, like "ffmpeg".
+     * @param invocation The work.
+     * @return whatever the invocation returns.
+     * @throws ConversionException if the invocation fails, or the thread is interrupted while
+     * waiting for a slot.
+     */
+    <T> T invoke(String tool, Invocation<T> invocation) throws ConversionException {
+        try {
+            processPermits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ConversionException("Interrupted while waiting to run " + tool, e);
+        }
+        long startTime = System.nanoTime();
+        try {
+            return invocation.run();
+        } finally {
+            processPermits.release();
+            latencies.computeIfAbsent(tool, k -> new LatencyStats())
+                .record((System.nanoTime() - startTime) / 1_000_000);
+        }
+    }
+
+    /**
+     * Gets the name of a tool from its executable path, or a command line starting with the path,
+     * like "ffmpeg" from ".../ffmpeg/ffmpeg.exe -i ...".
+     */
+    static String toolName(String command) {
+        // The executable path may contain spaces, so look for the .exe rather than splitting.
+        String exe = command.trim().replace("\"", "");
+        int exeEnd = exe.toLowerCase().indexOf(".exe");
+        exe = exeEnd > 0 ? exe.substring(0, exeEnd) : exe.split("\\s+")[0];
+        // Either separator, so that the name doesn't depend on where the command line was made.
+        String name = exe.substring(Math.max(exe.lastIndexOf('/'), exe.lastIndexOf('\\')) + 1);
+        int dot = name.lastIndexOf('.');
+        return dot > 0 ? name.substring(0, dot) : name;
+    }
+
+    /**
+     * @return latency statistics, by tool name.
+     */
+    public Map<String, LatencyStats> getLatencies() {
+        return new TreeMap<>(latencies);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder result = new StringBuilder();
+        getLatencies().forEach((tool, stats) -> {
+            if (result.length() > 0) result.append(", ");
+            result.append(tool).append(": ").append(stats);
+        });
+        return result.toString();
+    }
+
+    /**
+     * Count, total, and extremes of the time taken by a tool's invocations.
+     */
+    public static final class LatencyStats {
+        private long count;
+        private long totalMillis;
+        private long minMillis = Long.MAX_VALUE;
+        private long maxMillis;
+
+        synchronized void record(long millis) {
+            count++;
+            totalMillis += millis;
+            minMillis = Math.min(minMillis, millis);
+            maxMillis = Math.max(maxMillis, millis);
+        }
+
+        public synchronized long getCount() { return count; }
+        public synchronized long getTotalMillis() { return totalMillis; }
+        public synchronized long getMinMillis() { return count == 0 ? 0 : minMillis; }
+        public synchronized long getMaxMillis() { return maxMillis; }
+        public synchronized long getMeanMillis() { return count == 0 ? 0 : totalMillis / count; }
+
+        @Override
+        public synchronized String toString() {
+            return String.format("%d runs, mean %d ms, min %d ms, max %d ms",
+                count, getMeanMillis(), getMinMillis(), maxMillis);
+        }
+    }
+}
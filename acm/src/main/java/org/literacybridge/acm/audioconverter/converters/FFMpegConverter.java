@@ -12,14 +12,16 @@ import java.io.*;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.StringTokenizer;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
-public class FFMpegConverter extends BaseAudioConverter {
+public class FFMpegConverter extends BaseAudioConverter implements StreamingStage {
     final static String TARGET_EXTENSION = ".wav";
 
     public FFMpegConverter() {
@@ -138,6 +140,17 @@ public class FFMpegConverter extends BaseAudioConverter {
         return result;
     }
 
+    @Override
+    public List<String> getStreamingCommand(File inputFile, File outputFile, Map<String, String> parameters) {
+        return Arrays.asList(getConverterEXEPath(),
+            "-i", inputFile == null ? "pipe:0" : inputFile.getAbsolutePath(),
+            "-ab", "16k", "-ar", "16000", "-ac", "1",
+            // There's no file name from which to infer the format when writing to a pipe.
+            "-f", "wav",
+            "-y",
+            outputFile == null ? "pipe:1" : outputFile.getAbsolutePath());
+    }
+
     @Override
     public void validateConverter() throws AudioConverterInitializationException {
         // Already succeeded?
@@ -1,15 +1,23 @@
 package org.literacybridge.acm.audioconverter.converters;
 
+import java.io.BufferedReader;
 import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.stream.Collectors;
 
 import static org.literacybridge.acm.Constants.JAVA_TMP_DIR;
 
 public class PipelineConverter extends BaseAudioConverter {
+    private static final int PIPE_BUFFER_SIZE = 65536;
+
     private final List<BaseAudioConverter> pipeline;
 
     public PipelineConverter(BaseAudioConverter... pipeline) {
@@ -24,6 +32,139 @@ public class PipelineConverter extends BaseAudioConverter {
     @Override
     public ConversionResult doConvertFile(File audioFile, File targetDir, File targetFile, Map<String, String> parameters)
         throws ConversionException {
+        if (isStreamable()) {
+            try {
+                return streamConvertFile(audioFile, targetFile, parameters);
+            } catch (ConversionException e) {
+                // Some builds of the tools don't handle pipes; the staged conversion still works.
+                System.out.printf("Streaming conversion of %s failed (%s); converting in stages.%n",
+                    audioFile.getName(), e.getMessage());
+                //noinspection ResultOfMethodCallIgnored
+                targetFile.delete();
+            }
+        }
+        return stagedConvertFile(audioFile, targetDir, targetFile, parameters);
+    }
+
+    /**
+     * @return true if every stage of the pipeline can read stdin and write stdout.
+     */
+    private boolean isStreamable() {
+        return pipeline.size() > 1 && pipeline.stream().allMatch(c -> c instanceof StreamingStage);
+    }
+
+    /**
+     * Runs all of the stages at once, each one's stdout feeding the next one's stdin. Nothing is
+     * written to disk but the final output.
+     */
+    private ConversionResult streamConvertFile(File audioFile, File targetFile, Map<String, String> parameters)
+        throws ConversionException {
+        // The whole pipeline counts as one process slot; its stages mostly wait on one another.
+        String tools = pipeline.stream()
+            .map(c -> ConverterProcessService.toolName(((StreamingStage) c).getStreamingCommand(null, null, parameters).get(0)))
+            .collect(Collectors.joining("|"));
+        return ConverterProcessService.getInstance().invoke(tools,
+            () -> runStreamingPipeline(audioFile, targetFile, parameters));
+    }
+
+    private ConversionResult runStreamingPipeline(File audioFile, File targetFile, Map<String, String> parameters)
+        throws ConversionException {
+        List<Process> processes = new ArrayList<>();
+        List<Thread> threads = new ArrayList<>();
+        List<StringBuilder> responses = new ArrayList<>();
+        try {
+            for (int i = 0; i < pipeline.size(); i++) {
+                File input = (i == 0) ? audioFile : null;
+                File output = (i == pipeline.size() - 1) ? targetFile : null;
+                List<String> command = ((StreamingStage) pipeline.get(i)).getStreamingCommand(input, output, parameters);
+                System.out.printf("Convert (streaming stage %d) from file:\n%s\n with command:\n%s%n",
+                    i + 1, audioFile, String.join(" ", command));
+                Process process = new ProcessBuilder(command).start();
+                processes.add(process);
+
+                // Collect each stage's diagnostics, so that a chatty tool can't block on stderr.
+                StringBuilder response = new StringBuilder();
+                responses.add(response);
+                threads.add(startThread("pipeline-stderr", () -> collect(process.getErrorStream(), response)));
+
+                if (i > 0) {
+                    Process upstream = processes.get(i - 1);
+                    threads.add(startThread("pipeline-pipe",
+                        () -> pump(upstream.getInputStream(), process.getOutputStream())));
+                } else {
+                    process.getOutputStream().close();
+                }
+                if (output != null) {
+                    threads.add(startThread("pipeline-stdout", () -> collect(process.getInputStream(), response)));
+                }
+            }
+
+            boolean success = true;
+            for (Process process : processes) {
+                success &= (process.waitFor() == 0);
+            }
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            if (!success || !targetFile.exists() || targetFile.length() == 0) {
+                throw new ConversionException("Converter: could not convert " + audioFile.getName());
+            }
+
+            ConversionResult result = new ConversionResult();
+            result.outputFile = targetFile;
+            result.response = responses.stream().map(StringBuilder::toString).collect(Collectors.joining("\n"));
+            return result;
+        } catch (IOException e) {
+            throw new ConversionException("Converter: could not convert " + audioFile.getName(), e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ConversionException("Converter: interrupted converting " + audioFile.getName(), e);
+        } finally {
+            processes.forEach(Process::destroy);
+        }
+    }
+
+    private static Thread startThread(String name, Runnable runnable) {
+        Thread thread = new Thread(runnable, name);
+        thread.setDaemon(true);
+        thread.start();
+        return thread;
+    }
+
+    /**
+     * Copies one stage's stdout to the next stage's stdin, then closes the stdin so the next stage
+     * sees the end of its input.
+     */
+    private static void pump(InputStream from, OutputStream to) {
+        byte[] buffer = new byte[PIPE_BUFFER_SIZE];
+        try (InputStream in = from; OutputStream out = to) {
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                out.write(buffer, 0, n);
+            }
+        } catch (IOException e) {
+            // One end went away; the exit codes will tell whether that's a failure.
+        }
+    }
+
+    private static void collect(InputStream from, StringBuilder response) {
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(from))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                synchronized (response) {
+                    response.append(line).append('\n');
+                }
+            }
+        } catch (IOException e) {
+            // Nothing more to collect.
+        }
+    }
+
+    /**
+     * Runs each stage to completion, passing the result to the next stage in a temporary file.
+     */
+    private ConversionResult stagedConvertFile(File audioFile, File targetDir, File targetFile, Map<String, String> parameters)
+        throws ConversionException {
 
         List<File> tempFiles = new ArrayList<>();
         File input = audioFile;
@@ -0,0 +1,21 @@
+package org.literacybridge.acm.audioconverter.converters;
+
+import java.io.File;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A converter whose external tool can read its input from stdin and write its output to stdout.
+ * A PipelineConverter made entirely of StreamingStages runs all of its stages at once, connected
+ * by pipes, rather than one after another through temporary files.
+ */
+interface StreamingStage {
+    /**
+     * Gets the command to run this stage.
+     * @param inputFile The file to read, or null to read from stdin.
+     * @param outputFile The file to write, or null to write to stdout.
+     * @param parameters Conversion parameters.
+     * @return the command and its arguments.
+     */
+    List<String> getStreamingCommand(File inputFile, File outputFile, Map<String, String> parameters);
+}
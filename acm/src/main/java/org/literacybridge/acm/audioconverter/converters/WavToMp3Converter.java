@@ -10,7 +10,7 @@ import java.util.regex.Pattern;
 
 import static org.literacybridge.acm.utils.ExternalCommandRunner.LineProcessorResult.HANDLED;
 
-public class WavToMp3Converter extends BaseAudioConverter {
+public class WavToMp3Converter extends BaseAudioConverter implements StreamingStage {
     public WavToMp3Converter() {
         super(".mp3");
 
@@ -21,11 +21,12 @@ public class WavToMp3Converter extends BaseAudioConverter {
     }
 
     @Override
-    public ConversionResult doConvertFile(File sourceFile, File targetDir, File targetFile, Map<String, String> parameters) {
+    public ConversionResult doConvertFile(File sourceFile, File targetDir, File targetFile, Map<String, String> parameters)
+        throws ConversionException {
         boolean OK = false;
         try {
             LameWrapper lw = new LameWrapper(sourceFile, targetFile);
-            lw.go();
+            ConverterProcessService.getInstance().invoke("lame", lw::go);
             ConversionResult result = new ConversionResult();
             if (lw.didEncode() && targetFile.exists()) {
                 result.outputFile = targetFile;
@@ -38,6 +39,20 @@ public class WavToMp3Converter extends BaseAudioConverter {
         }
     }
 
+    @Override
+    public List<String> getStreamingCommand(File inputFile, File outputFile, Map<String, String> parameters) {
+        // lame uses "-" for stdin and stdout.
+        return Arrays.asList(lameCommand(inputFile == null ? "-" : inputFile.getAbsolutePath(),
+            outputFile == null ? "-" : outputFile.getAbsolutePath()));
+    }
+
+    private static String[] lameCommand(String source, String target) {
+        return new String[] {
+            // -m m: Force mono, -S: quiet output, -b 16: 16000 BPS, -q 0: best encoding
+            getConverterEXEPath(), "-m", "m", "-S", "-b", "16", "-q", "0", source, target
+        };
+    }
+
     @Override
     public void validateConverter() throws AudioConverterInitializationException {
         BaseAudioConverter.validateConverterExecutable(getConverterEXEPath(), false, "LAME");
@@ -74,10 +89,7 @@ public class WavToMp3Converter extends BaseAudioConverter {
         }
 
         protected String[] getCommand() {
-            return new String[] {
-                    // -m m: Force mono, -S: quiet output, -b 16: 16000 BPS, -q 0: best encoding
-                    getConverterEXEPath(), "-m", "m", "-S", "-b", "16", "-q", "0", sourceFile.getAbsolutePath(), targetFile.getAbsolutePath()
-            };
+            return lameCommand(sourceFile.getAbsolutePath(), targetFile.getAbsolutePath());
         }
 
         @Override
@@ -21,6 +21,7 @@ import java.util.ArrayList;
 import java.util.Enumeration;
 import java.util.List;
 import java.util.Properties;
+import java.util.Set;
 
 import javax.swing.BorderFactory;
 import javax.swing.JButton;
@@ -45,6 +46,7 @@ import javax.swing.border.TitledBorder;
 import javax.swing.event.DocumentEvent;
 import javax.swing.event.DocumentListener;
 
+import org.literacybridge.acm.audioconverter.converters.A18BaseConverter;
 import org.literacybridge.acm.audioconverter.converters.A18ToMp3Converter;
 import org.literacybridge.acm.audioconverter.converters.A18ToWavConverter;
 import org.literacybridge.acm.audioconverter.converters.AnyToA18Converter;
@@ -112,6 +114,9 @@ public class AudioConverter extends JFrame
 
   static final String SettingsFile = "AudioConverter.props";
 
+  // files per run of the a18 converter
+  private static final int CONVERSION_BATCH_SIZE = 16;
+
   // converters
   private final List<BaseAudioConverter> converters = new ArrayList<BaseAudioConverter>();
 
@@ -600,10 +605,15 @@ public class AudioConverter extends JFrame
         Runnable runnable = new Runnable() {
           @Override
           public void run() {
-            Enumeration fileEnumeration = fileModel.getFileInfoList()
+            if (currentConverter instanceof A18BaseConverter) {
+              convertInBatches((A18BaseConverter) currentConverter, targetDirPath);
+              updateFileTable();
+              return;
+            }
+            Enumeration<FileInfo> fileEnumeration = fileModel.getFileInfoList()
                 .elements();
             for (int i = 0; fileEnumeration.hasMoreElements(); ++i) {
-              FileInfo fileInfo = (FileInfo) fileEnumeration.nextElement();
+              FileInfo fileInfo = fileEnumeration.nextElement();
               if (!fileInfo.doConvert())
                 continue;
 
@@ -647,6 +657,40 @@ public class AudioConverter extends JFrame
     }
   }
 
+  /**
+   * The a18 converter accepts many files per run, and starting it takes longer than converting a
+   * short file, so convert the files a batch at a time.
+   */
+  private void convertInBatches(A18BaseConverter converter, File targetDirPath) {
+    List<File> files = new ArrayList<File>();
+    Enumeration<FileInfo> fileEnumeration = fileModel.getFileInfoList().elements();
+    while (fileEnumeration.hasMoreElements()) {
+      FileInfo fileInfo = fileEnumeration.nextElement();
+      if (fileInfo.doConvert()) {
+        files.add(fileInfo.getFileRef());
+      }
+    }
+    for (int start = 0; start < files.size(); start += CONVERSION_BATCH_SIZE) {
+      List<File> batch = files.subList(start, Math.min(files.size(), start + CONVERSION_BATCH_SIZE));
+      Set<File> failed = converter.convertFiles(batch, targetDirPath,
+          overwriteCheckBox.isSelected(), getOptionsDialog().getParameterList());
+      for (File file : batch) {
+        if (failed.contains(file)) {
+          if (detailsVisible) {
+            badFilesTF.append(file.getName() + "\n");
+          }
+          badFilesBuffer.append(file.getName() + "\n");
+        } else {
+          if (detailsVisible) {
+            okFilesTF.append(file.getName() + "\n");
+          }
+          okFilesBuffer.append(file.getName() + "\n");
+        }
+      }
+      progressBar.setValue(start + batch.size());
+    }
+  }
+
   private void updateFileTable() {
     int curSel = convertCB.getSelectedIndex();
 
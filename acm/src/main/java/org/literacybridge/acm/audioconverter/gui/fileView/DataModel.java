@@ -60,7 +60,7 @@ public class DataModel {
     }
 
     @Override
-    public Object clone() throws CloneNotSupportedException {
+    public FileInfo clone() throws CloneNotSupportedException {
       FileInfo clone = new FileInfo(fileName, fileExtension, fileSize, fileRef,
           false);
       clone.setValid(false);
@@ -69,10 +69,10 @@ public class DataModel {
   }
 
   // stores the original file list
-  private Vector orgFileInfoList = new Vector();
+  private Vector<FileInfo> orgFileInfoList = new Vector<FileInfo>();
 
   // stores filtered list
-  private Vector fileInfoList = new Vector();
+  private Vector<FileInfo> fileInfoList = new Vector<FileInfo>();
 
   private File directory;
 
@@ -86,7 +86,7 @@ public class DataModel {
     getFileData(directory);
   }
 
-  public Vector getFileInfoList() {
+  public Vector<FileInfo> getFileInfoList() {
     return fileInfoList;
   }
 
@@ -111,13 +111,13 @@ public class DataModel {
         }
       }
       // clone file list to save original files
-      orgFileInfoList = (Vector) fileInfoList.clone();
+      orgFileInfoList = new Vector<FileInfo>(fileInfoList);
     }
   }
 
   public void checkAll(boolean check) {
     for (int i = 0; i < fileInfoList.size(); ++i) {
-      ((FileInfo) fileInfoList.get(i)).setConvert(check);
+      fileInfoList.get(i).setConvert(check);
     }
   }
 
@@ -125,7 +125,7 @@ public class DataModel {
     // only files with the passed extension shall be shown
     fileInfoList.clear();
     for (int i = 0; i < orgFileInfoList.size(); ++i) {
-      FileInfo info = (FileInfo) orgFileInfoList.get(i);
+      FileInfo info = orgFileInfoList.get(i);
       if (fileExtensions == null // show all
           || fileExtensions.contains(info.fileExtension)) {
         try {
@@ -140,7 +140,7 @@ public class DataModel {
   public int getNumFilesToConvert() {
     int num = 0;
     for (int i = 0; i < fileInfoList.size(); ++i) {
-      FileInfo info = (FileInfo) fileInfoList.get(i);
+      FileInfo info = fileInfoList.get(i);
       if (info.doConvert()) {
         num++;
       }
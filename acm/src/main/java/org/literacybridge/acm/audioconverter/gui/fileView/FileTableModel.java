@@ -60,7 +60,7 @@ public class FileTableModel extends AbstractTableModel {
     if (model == null)
       return null;
 
-    FileInfo fi = (FileInfo) model.getFileInfoList().get(rowIndex);
+    FileInfo fi = model.getFileInfoList().get(rowIndex);
     switch (columnIndex) {
     case COL_CONVERT:
       return new Boolean(fi.doConvert());
@@ -98,7 +98,7 @@ public class FileTableModel extends AbstractTableModel {
   public void setValueAt(Object value, int row, int col) {
     if (model != null) {
       if (col == COL_CONVERT) {
-        FileInfo fi = (FileInfo) model.getFileInfoList().get(row);
+        FileInfo fi = model.getFileInfoList().get(row);
         boolean booleanValue = ((Boolean) value).booleanValue();
         fi.setConvert(booleanValue);
       }
@@ -1,5 +1,6 @@
 package org.literacybridge.acm.cloud;
 
+import com.amazonaws.AmazonClientException;
 import com.amazonaws.auth.AWSStaticCredentialsProvider;
 import com.amazonaws.auth.BasicSessionCredentials;
 import com.amazonaws.regions.Regions;
@@ -42,6 +43,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.function.BiConsumer;
+import java.util.function.Consumer;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
 
@@ -526,13 +528,18 @@ public class Authenticator {
      */
     public class AwsInterface {
         private AmazonS3 s3Client = null;
+        // Set by tests, to use a local S3 stand-in instead of AWS.
+        private AmazonS3 s3ClientOverride = null;
 
         /**
          * Gets an S3 client object, through which we can upload or download files to S3.
          *
          * @return the S3 client object.
          */
-        AmazonS3 getS3Client() {
+        synchronized AmazonS3 getS3Client() {
+            if (s3ClientOverride != null) {
+                return s3ClientOverride;
+            }
             checkSession();
             if (s3Client == null) {
                 Regions region = cognitoHelper.getRegion();
@@ -547,8 +554,27 @@ public class Authenticator {
             return s3Client;
         }
 
-        void refreshSession() {
-            if (authenticationResult.isSuccess()) {
+        /**
+         * For tests. Uses the given client, with its own endpoint and credentials, for all S3
+         * calls, whether or not a user is signed in. Pass null to go back to the signed-in
+         * user's client.
+         *
+         * @param s3Client to be used, or null.
+         */
+        public synchronized void setS3Client(AmazonS3 s3Client) {
+            this.s3ClientOverride = s3Client;
+        }
+
+        /**
+         * @return true if S3 calls can be made, either as the signed-in user, or through a
+         * client set by a test.
+         */
+        private synchronized boolean canUseS3() {
+            return s3ClientOverride != null || isAuthenticated();
+        }
+
+        synchronized void refreshSession() {
+            if (authenticationResult != null && authenticationResult.isSuccess()) {
                 String refreshToken = authenticationResult.getRefreshToken();
                 AuthenticationHelper.AuthenticationResult refreshResult =
                     cognitoHelper.RefreshSession(refreshToken);
@@ -586,7 +612,7 @@ public class Authenticator {
         }
 
         public boolean downloadS3Object(GetObjectRequest request, File of, BiConsumer<Long, Long> progressHandler) {
-            if (!isAuthenticated()) return false;
+            if (!canUseS3()) return false;
             AmazonS3 s3Client = getS3Client();
             long bytesExpected, bytesDownloaded = 0;
 
@@ -613,9 +639,32 @@ public class Authenticator {
             return true;
         }
 
+        /**
+         * Opens an object in S3 for reading, using the credentials of the current signed-in user.
+         *
+         * @param request for the object, with any range or constraints.
+         * @return the content of the object; the caller must close it.
+         * @throws IOException if the object can't be opened, or the request's constraints aren't met.
+         */
+        public InputStream openS3Object(GetObjectRequest request) throws IOException {
+            if (!canUseS3()) {
+                throw new IOException("Not signed in.");
+            }
+            try {
+                S3Object s3Object = getS3Client().getObject(request);
+                if (s3Object == null) {
+                    // The SDK's way of saying that a constraint, like the eTag, wasn't met.
+                    throw new IOException(String.format("S3 object %s has changed.", request.getKey()));
+                }
+                return s3Object.getObjectContent();
+            } catch (AmazonClientException e) {
+                throw new IOException(String.format("Unable to open S3 object %s.", request.getKey()), e);
+            }
+        }
+
         public boolean uploadS3Object(String bucket, String key, File inputFile) {
             boolean result = false;
-            if (!isAuthenticated()) return false;
+            if (!canUseS3()) return false;
             try {
                 PutObjectRequest request = new PutObjectRequest(bucket, key, inputFile);
                 @SuppressWarnings("unused")
@@ -630,6 +679,58 @@ public class Authenticator {
             return result;
         }
 
+        /**
+         * Uploads a file to S3 in parts, resuming an earlier, interrupted upload of the same file
+         * if one is given. Parts already in S3 are not sent again.
+         *
+         * @param bucket     to receive the object
+         * @param key        of the object
+         * @param inputFile  to be uploaded
+         * @param partSize   size of each part; at least 5MB
+         * @param uploadId   of an earlier, interrupted upload, or null to start a new one
+         * @param checkpoint called with the upload id when a new upload is started, so that it
+         *                   can be saved and the upload resumed later
+         * @return true if the upload completed
+         */
+        public boolean uploadS3ObjectMultipart(String bucket,
+            String key,
+            File inputFile,
+            long partSize,
+            String uploadId,
+            Consumer<String> checkpoint)
+        {
+            if (!canUseS3()) return false;
+            try {
+                new S3MultipartUpload(getS3Client(), bucket, key).upload(inputFile, partSize, uploadId, checkpoint);
+                return true;
+            } catch (Exception ex) {
+                System.out.println("Refreshing session after exception.");
+                refreshSession();
+                // Ignore and return false; the upload can be resumed from the saved upload id.
+            }
+            return false;
+        }
+
+        /**
+         * Aborts a multipart upload that will not be resumed, so that S3 discards its parts.
+         *
+         * @param bucket   of the object
+         * @param key      of the object
+         * @param uploadId of the abandoned upload
+         * @return true if the upload was aborted, or was already gone
+         */
+        public boolean abortS3MultipartUpload(String bucket, String key, String uploadId) {
+            if (!canUseS3()) return false;
+            try {
+                new S3MultipartUpload(getS3Client(), bucket, key).abort(uploadId);
+                return true;
+            } catch (Exception ex) {
+                System.out.println("Refreshing session after exception.");
+                refreshSession();
+            }
+            return false;
+        }
+
         private JSONObject authenticatedRestCall(String verb, String requestURL, JSONObject body, Map<String, String> headers) {
             if (!isAuthenticated()) return null;
             checkSession();
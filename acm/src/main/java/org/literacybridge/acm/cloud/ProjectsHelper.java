@@ -7,6 +7,8 @@ import com.amazonaws.services.s3.model.ListObjectsV2Result;
 import com.amazonaws.services.s3.model.S3ObjectSummary;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Date;
@@ -16,7 +18,6 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeMap;
-import java.util.function.BiConsumer;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
@@ -27,6 +28,8 @@ public class ProjectsHelper {
     static final String CONTENT_BUCKET_NAME = "amplio-program-content";
     static final String PROGSPEC_BUCKET_NAME = "amplio-progspecs";
     public static final String PROGSPEC_ETAGS_FILE_NAME = "etags.properties";
+    // The parsed program spec, saved alongside the files, keyed by their etags.
+    public static final String PROGSPEC_SNAPSHOT_FILE_NAME = "progspec.snapshot";
 
     /**
      * The files that make up past and present program specs, as a list-of-lists.
@@ -337,15 +340,28 @@ public class ProjectsHelper {
         return false;
     }
 
-    public boolean downloadDeployment(DeploymentInfo deploymentInfo,
-            File outputFile,
-            BiConsumer<Long, Long> progressHandler) {
+    /**
+     * Opens a deployment for reading as it downloads, rather than downloading it to a file.
+     *
+     * @param deploymentInfo of the deployment
+     * @param offset         at which to start, to resume an earlier download; 0 for the whole
+     *                       deployment
+     * @return the .zip of the deployment, as a stream, or null if not signed in and online.
+     * @throws IOException if the deployment can't be opened, or has changed since deploymentInfo
+     *                     was read.
+     */
+    public InputStream openDeployment(DeploymentInfo deploymentInfo, long offset) throws IOException {
         if (authInstance.isAuthenticated() && authInstance.isOnline()) {
-            return authInstance.getAwsInterface().downloadS3Object(deploymentInfo.getBucket(),
-                    deploymentInfo.getKey(),
-                    outputFile,
-                    progressHandler);
+            GetObjectRequest request = new GetObjectRequest(deploymentInfo.getBucket(), deploymentInfo.getKey());
+            // Be sure that a resumed download continues the same object.
+            if (deploymentInfo.geteTag() != null) {
+                request.withMatchingETagConstraint(deploymentInfo.geteTag());
+            }
+            if (offset > 0) {
+                request.setRange(offset);
+            }
+            return authInstance.getAwsInterface().openS3Object(request);
         }
-        return false;
+        return null;
     }
 }
@@ -0,0 +1,111 @@
+package org.literacybridge.acm.cloud;
+
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.AbortMultipartUploadRequest;
+import com.amazonaws.services.s3.model.AmazonS3Exception;
+import com.amazonaws.services.s3.model.CompleteMultipartUploadRequest;
+import com.amazonaws.services.s3.model.InitiateMultipartUploadRequest;
+import com.amazonaws.services.s3.model.ListPartsRequest;
+import com.amazonaws.services.s3.model.PartETag;
+import com.amazonaws.services.s3.model.PartListing;
+import com.amazonaws.services.s3.model.PartSummary;
+import com.amazonaws.services.s3.model.UploadPartRequest;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+
+/**
+ * Uploads a file to S3 in parts, resuming an earlier, interrupted upload of the same file if
+ * its upload id is given.
+ * <p>
+ * An upload that is interrupted and never resumed leaves its parts in S3, where they are kept
+ * (and billed) until the upload is aborted. Callers abort uploads they know to be abandoned; for
+ * the ones they can't know about (the resume state was lost), the bucket should also have a
+ * lifecycle rule with an AbortIncompleteMultipartUpload action, for example after 7 days.
+ */
+class S3MultipartUpload {
+    private final AmazonS3 s3Client;
+    private final String bucket;
+    private final String key;
+
+    S3MultipartUpload(AmazonS3 s3Client, String bucket, String key) {
+        this.s3Client = s3Client;
+        this.bucket = bucket;
+        this.key = key;
+    }
+
+    /**
+     * Uploads the file. Parts already uploaded under uploadId, with the expected size, are not
+     * sent again. If uploadId is no longer known to S3 (expired or aborted), a new upload is
+     * started.
+     *
+     * @param inputFile  to be uploaded
+     * @param partSize   size of each part; S3 requires at least 5MB, except for the last part
+     * @param uploadId   of an earlier, interrupted upload, or null to start a new one
+     * @param checkpoint called with the upload id when a new upload is started, so that it can
+     *                   be saved and the upload resumed later
+     */
+    void upload(File inputFile, long partSize, String uploadId, Consumer<String> checkpoint) {
+        long length = inputFile.length();
+        Map<Integer, PartETag> partsDone = new TreeMap<>();
+        if (uploadId != null) {
+            try {
+                ListPartsRequest listRequest = new ListPartsRequest(bucket, key, uploadId);
+                PartListing listing;
+                do {
+                    listing = s3Client.listParts(listRequest);
+                    for (PartSummary part : listing.getParts()) {
+                        long partOffset = (part.getPartNumber() - 1) * partSize;
+                        if (part.getSize() == Math.min(partSize, length - partOffset)) {
+                            partsDone.put(part.getPartNumber(), new PartETag(part.getPartNumber(), part.getETag()));
+                        }
+                    }
+                    listRequest.setPartNumberMarker(listing.getNextPartNumberMarker());
+                } while (listing.isTruncated());
+            } catch (AmazonS3Exception ex) {
+                // The earlier upload has expired or been aborted; start over.
+                if (ex.getStatusCode() != 404) throw ex;
+                uploadId = null;
+                partsDone.clear();
+            }
+        }
+        if (uploadId == null) {
+            uploadId = s3Client.initiateMultipartUpload(new InitiateMultipartUploadRequest(bucket, key))
+                .getUploadId();
+            checkpoint.accept(uploadId);
+        }
+        int nParts = (int) ((length + partSize - 1) / partSize);
+        for (int partNumber = 1; partNumber <= nParts; partNumber++) {
+            if (partsDone.containsKey(partNumber)) continue;
+            long offset = (partNumber - 1) * partSize;
+            UploadPartRequest partRequest = new UploadPartRequest()
+                .withBucketName(bucket)
+                .withKey(key)
+                .withUploadId(uploadId)
+                .withPartNumber(partNumber)
+                .withFile(inputFile)
+                .withFileOffset(offset)
+                .withPartSize(Math.min(partSize, length - offset));
+            partsDone.put(partNumber, s3Client.uploadPart(partRequest).getPartETag());
+        }
+        s3Client.completeMultipartUpload(new CompleteMultipartUploadRequest(bucket, key, uploadId,
+            new ArrayList<>(partsDone.values())));
+    }
+
+    /**
+     * Aborts an upload that will not be resumed, so that S3 discards its parts. An upload that
+     * S3 no longer knows about is already gone, and is not an error.
+     *
+     * @param uploadId of the upload.
+     */
+    void abort(String uploadId) {
+        try {
+            s3Client.abortMultipartUpload(new AbortMultipartUploadRequest(bucket, key, uploadId));
+        } catch (AmazonS3Exception ex) {
+            if (ex.getStatusCode() != 404) throw ex;
+        }
+    }
+}
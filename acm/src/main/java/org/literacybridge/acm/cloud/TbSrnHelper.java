@@ -21,6 +21,11 @@ import java.util.regex.Pattern;
 
 import static org.literacybridge.core.tbloader.TbSrnAllocationInfo.*;
 
+/**
+ * Allocates Talking Book serial numbers. Several Talking Books may be updated at once, so the
+ * methods that read or change the allocation are synchronized; an SRN is persisted before it is
+ * handed out, and is never handed out twice.
+ */
 public class TbSrnHelper {
     private static final String TBL_INFO_NAME = "tbsrnstore.info";
     private static final File tblInfoFile = new File(ACMConfiguration.getInstance()
@@ -140,7 +145,7 @@ public class TbSrnHelper {
      * Tells when the srns are from some other email address.
      * @return true if being used by a different email address.
      */
-    public boolean isBorrowedId() {
+    public synchronized boolean isBorrowedId() {
         return !usersEmail.equals(currentEmail);
     }
 
@@ -156,7 +161,7 @@ public class TbSrnHelper {
      * @return the number of available tb srns.
      */
     @SuppressWarnings("UnusedReturnValue")
-    public int prepareForAllocation() {
+    public synchronized int prepareForAllocation() {
         if (tbSrnAllocationInfo == null || tbSrnAllocationInfo.getPrimaryBegin() == 0 || tbSrnAllocationInfo.getBackupBegin() == 0) {
             int nBlocks = (tbSrnAllocationInfo ==null || (
                 tbSrnAllocationInfo.getPrimaryBegin() ==0 && tbSrnAllocationInfo.getBackupBegin() ==0)) ? 2 : 1;
@@ -199,7 +204,7 @@ public class TbSrnHelper {
      * @return true if there is any available SRN.
      */
     @SuppressWarnings("unused")
-    public boolean hasAvailableSrn() {
+    public synchronized boolean hasAvailableSrn() {
         return tbSrnAllocationInfo != null && tbSrnAllocationInfo.hasNext();
     }
 
@@ -208,7 +213,7 @@ public class TbSrnHelper {
      * to disk first.
      * @return the next SRN, or 0 if none is available.
      */
-    public int allocateNextSrn() {
+    public synchronized int allocateNextSrn() {
         int allocated = 0;
         if (tbSrnAllocationInfo != null && tbSrnAllocationInfo.hasNext()) {
             TbSrnAllocationInfo newTbSrnAllocationInfo = new TbSrnAllocationInfo(tbSrnAllocationInfo);
@@ -235,7 +240,7 @@ public class TbSrnHelper {
         return allocated;
     }
 
-    public TbSrnAllocationInfo getTbSrnAllocationInfo() {
+    public synchronized TbSrnAllocationInfo getTbSrnAllocationInfo() {
         return new TbSrnAllocationInfo(this.tbSrnAllocationInfo);
     }
 
@@ -353,7 +353,12 @@ public class ACMConfiguration {
         return Authenticator.getInstance().getUserContact();
     }
 
-    public String getNewAudioItemUID() {
+    /**
+     * Allocates a new, unique, audio item id. Synchronized, because bulk imports create audio
+     * items from several threads at once.
+     * @return the id.
+     */
+    public synchronized String getNewAudioItemUID() {
         String value = UsersConfigurationProperties.getProperty(Constants.RECORDING_COUNTER_PROP);
         int counter = (value == null) ? 0 : Integer.parseInt(value, Character.MAX_RADIX);
         counter++;
@@ -385,6 +390,16 @@ public class ACMConfiguration {
         return Boolean.parseBoolean(UsersConfigurationProperties.getProperty("SUPPRESS_STATISTICS_UPLOAD", "FALSE"));
     }
 
+    /**
+     * Only intended for software testing, to "upload" statistics to a local directory, as a
+     * stand-in for S3.
+     * @return the directory, or null to upload to S3.
+     */
+    public File getStatisticsUploadDirectory() {
+        String value = UsersConfigurationProperties.getProperty("STATISTICS_UPLOAD_DIRECTORY");
+        return isEmpty(value) ? null : new File(value.trim());
+    }
+
     public long getLatestUpdateSetupPromptDate() {
         String value = getUserConfigurationItem(Constants.LATEST_UPDATE_SETUP_WARNING, null);
         try {
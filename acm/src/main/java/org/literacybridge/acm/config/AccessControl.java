@@ -37,9 +37,10 @@ public class AccessControl {
     private static final int NUM_ZIP_FILES_TO_KEEP = 4;
     // First db zip name is "db1.zip"
     private final static String DB_ZIP_FILENAME_PREFIX = Constants.DBHomeDir;
-    private final static String DB_ZIP_FILENAME_INITIAL = DB_ZIP_FILENAME_PREFIX + "1.zip";
     private final static String DB_ZIP_FILENAME_FORMAT = DB_ZIP_FILENAME_PREFIX + "%d.zip";
-    final static Pattern DB_ZIP_MATCHER = Pattern.compile("(?i)^db([0-9]+)\\.zip$");
+    private final static String DB_MANIFEST_FILENAME_FORMAT = DB_ZIP_FILENAME_PREFIX + "%d" + DbSnapshots.MANIFEST_EXTENSION;
+    // A version of the database: dbNN.zip, or, for segmented snapshots, dbNN.manifest.
+    final static Pattern DB_ZIP_MATCHER = Pattern.compile("(?i)^db([0-9]+)\\.(zip|manifest)$");
     // The php checkout app returns the string "NULL" if no checkin file was found
     private final static String DB_DOES_NOT_EXIST = "NULL";
     private final static String DB_KEY_OVERRIDE = "force";
@@ -52,16 +53,32 @@ public class AccessControl {
 
     private Map<String,String> possessor;
     private DBInfo dbInfo;
+    private DbSnapshots dbSnapshots;
 
     AccessControl(DBConfiguration dbConfiguration) {
-        this.dbConfiguration = dbConfiguration;
-        this.resolver = AccessControlResolver.getDefault();
+        this(dbConfiguration, AccessControlResolver.getDefault());
     }
     AccessControl(DBConfiguration dbConfiguration, AccessControlResolver resolver) {
         this.dbConfiguration = dbConfiguration;
         this.resolver = resolver;
     }
 
+    private DbSnapshots getDbSnapshots() {
+        if (dbSnapshots == null) {
+            dbSnapshots = new DbSnapshots(dbConfiguration.getSandbox(), dbConfiguration.getProgramHomeDir());
+        }
+        return dbSnapshots;
+    }
+
+    /**
+     * The name for version NN of the database: dbNN.manifest if the program saves segmented
+     * snapshots, otherwise dbNN.zip.
+     */
+    private String dbFilename(int version) {
+        String format = dbConfiguration.isSegmentedDbSnapshots() ? DB_MANIFEST_FILENAME_FORMAT : DB_ZIP_FILENAME_FORMAT;
+        return String.format(format, version);
+    }
+
     private void setPossessor(Map<String,String>  name) {
         possessor = name;
     }
@@ -78,7 +95,7 @@ public class AccessControl {
     }
 
     /**
-     * Given a dbNN.zip file name (from s3), determine the NN+1 filename, and store both
+     * Given a dbNN.zip (or dbNN.manifest) file name (from s3), determine the NN+1 filename, and store both
      * for later use. If the NN can't be parsed, or there is no filename (ie, null), then
      * store (null,null) for the file names.
      * Due to a quirk of the php checkout processor, if there is no known .zip file name, as with
@@ -97,14 +114,14 @@ public class AccessControl {
             if (currentFilename.equalsIgnoreCase(DB_DOES_NOT_EXIST)) {
                 // ACM does not yet exist, so create name for newly created zip to use on
                 // updateDB()
-                nextFilename = DB_ZIP_FILENAME_INITIAL;
+                nextFilename = dbFilename(1);
             } else {
                 // Extract NN from dbNN.zip
                 String currentFileNumber = currentFilename.substring(
                         DB_ZIP_FILENAME_PREFIX.length(), currentFilename.lastIndexOf('.'));
                 try {
                     int nextFileNumber = Integer.parseInt(currentFileNumber) + 1;
-                    nextFilename = String.format(DB_ZIP_FILENAME_FORMAT, nextFileNumber);
+                    nextFilename = dbFilename(nextFileNumber);
                 } catch (NumberFormatException e) {
                     // there's some strange .zip -- probably a "(conflicted copy)" or
                     // something else weird -- don't use it!
@@ -681,7 +698,8 @@ public class AccessControl {
     }
 
     /**
-     * Expand the latest .zip file into the temporary database directory.
+     * Expand the latest .zip file, or check out the latest snapshot, into the temporary
+     * database directory.
      */
     private void createDBMirror() {
         String zipFileName = getCurrentZipFilename();
@@ -698,7 +716,11 @@ public class AccessControl {
                     cal.get(Calendar.MINUTE),
                     cal.get(Calendar.SECOND),
                     cal.get(Calendar.MILLISECOND)));
-            ZipUnzip.unzip(inSbFile, outDirectory);
+            if (DbSnapshots.isManifest(zipFileName)) {
+                getDbSnapshots().checkOut(zipFileName, outDirectory);
+            } else {
+                ZipUnzip.unzip(inSbFile, outDirectory);
+            }
             cal = Calendar.getInstance();
             LOG.info(String.format("Completed DB Mirror: %2d:%02d.%03d\n",
                 cal.get(Calendar.MINUTE),
@@ -713,19 +735,24 @@ public class AccessControl {
 
     /**
      * Zip the current contents of the temporary database directory into the
-     * previously determined "next" zip file name.
+     * previously determined "next" zip file name. If that is a dbNN.manifest, save
+     * a segmented snapshot instead, writing only the segments that are new.
      *
-     * @return The name of the new .zip file, if it was created OK, null if any error.
+     * @return The name of the new .zip or .manifest file, if it was created OK, null if any error.
      */
     private String saveDbFromMirror() {
         String filename;
         try {
             // The name previously decided for the next zip file name.
             filename = getNextZipFilename();
-            Path outZipPath = new File(dbConfiguration.getProgramHomeDir(), filename).toPath();
-            File outSbFile = dbConfiguration.getSandbox().outputFile(outZipPath);
             File inDirectory = dbConfiguration.getLocalTempDbDir();
-            ZipUnzip.zip(inDirectory, outSbFile);
+            if (DbSnapshots.isManifest(filename)) {
+                getDbSnapshots().checkIn(filename, inDirectory);
+            } else {
+                Path outZipPath = new File(dbConfiguration.getProgramHomeDir(), filename).toPath();
+                File outSbFile = dbConfiguration.getSandbox().outputFile(outZipPath);
+                ZipUnzip.zip(inDirectory, outSbFile);
+            }
         } catch (IOException ex) {
             return null;
         }
@@ -754,7 +781,8 @@ public class AccessControl {
     }
 
     /**
-     * Helper to delete old .zip files from the ACM- directory.
+     * Helper to delete old .zip and .manifest files from the ACM- directory, and then
+     * any segments no longer needed by the remaining manifests.
      *
      */
     private void deleteOldZipFiles() {
@@ -775,6 +803,13 @@ public class AccessControl {
         for (int i = 0; i < numToDelete; i++) {
             dbConfiguration.getSandbox().delete(zipFiles.get(i));
         }
+        List<String> manifestsKept = zipFiles.subList(Math.max(0, numToDelete), zipFiles.size()).stream()
+            .map(File::getName)
+            .filter(DbSnapshots::isManifest)
+            .collect(Collectors.toList());
+        if (!manifestsKept.isEmpty()) {
+            getDbSnapshots().deleteUnreferencedSegments(manifestsKept);
+        }
     }
 
     /**
@@ -819,7 +854,11 @@ public class AccessControl {
             return true; // if the ACM is new, you have the latest there is (nothing)
 
         File fileShouldHave = new File(dbConfiguration.getProgramHomeDir(), filenameShouldHave);
-        return dbConfiguration.getSandbox().exists(fileShouldHave.toPath());
+        if (!dbConfiguration.getSandbox().exists(fileShouldHave.toPath())) {
+            return false;
+        }
+        // The manifest may have arrived before all of its segments.
+        return !DbSnapshots.isManifest(filenameShouldHave) || getDbSnapshots().isComplete(filenameShouldHave);
     }
 
     /**
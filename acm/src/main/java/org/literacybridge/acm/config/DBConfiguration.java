@@ -5,6 +5,7 @@ import org.amplio.CloudSync;
 import org.apache.commons.lang3.StringUtils;
 import org.literacybridge.acm.Constants;
 import org.literacybridge.acm.cloud.Authenticator;
+import org.literacybridge.acm.cloud.ProjectsHelper;
 import org.literacybridge.acm.config.AccessControlResolver.AccessStatus;
 import org.literacybridge.acm.repository.AudioItemRepository;
 import org.literacybridge.acm.repository.AudioItemRepositoryImpl;
@@ -13,6 +14,7 @@ import org.literacybridge.acm.store.*;
 import org.literacybridge.core.spec.Language;
 import org.literacybridge.core.spec.LanguageLabelProvider;
 import org.literacybridge.core.spec.ProgramSpec;
+import org.literacybridge.core.spec.ProgramSpecSnapshot;
 
 import javax.swing.JOptionPane;
 import java.awt.GraphicsEnvironment;
@@ -22,11 +24,19 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Predicate;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -34,12 +44,13 @@ import java.util.stream.Collectors;
 
 import static org.literacybridge.acm.Constants.ALLOW_PACKAGE_CHOICE;
 import static org.literacybridge.acm.cloud.ProjectsHelper.PROGSPEC_ETAGS_FILE_NAME;
-import static org.literacybridge.acm.store.MetadataSpecification.DC_IDENTIFIER;
-import static org.literacybridge.acm.store.MetadataSpecification.DC_LANGUAGE;
+import static org.literacybridge.acm.cloud.ProjectsHelper.PROGSPEC_SNAPSHOT_FILE_NAME;
 
 @SuppressWarnings("IOStreamConstructor")
 public class DBConfiguration {
     private static final Logger LOG = Logger.getLogger(DBConfiguration.class.getName());
+    private static final int STARTUP_THREADS = 4;
+    private static final int PROGSPEC_DOWNLOAD_THREADS = 4;
 
     private Properties dbProperties;
     private final PathsProvider pathsProvider;
@@ -197,39 +208,114 @@ public class DBConfiguration {
         return pathsProvider.getProgramTbLoadersDir();
     }
 
-    public Sandbox getSandbox() {
+    public synchronized Sandbox getSandbox() {
         if (sandbox == null) {
             this.sandbox = new Sandbox(pathsProvider.getProgramHomeDir(), pathsProvider.getSandboxDir());
         }
         return sandbox;
     }
 
+    /**
+     * Opens the program database.
+     * <p>
+     * After the database is checked out, the taxonomy, the audio repository, the language labels,
+     * and the program specification are loaded concurrently, and the index is opened as soon as
+     * the taxonomy is ready. The program specification is not waited for. The integrity checks
+     * are run here only without a UI; the ACM runs them in the background, after its main window
+     * is shown. The time taken by each phase is logged.
+     */
     boolean init(AccessControlResolver accessControlResolver) throws Exception {
         if (!initialized) {
+            long startupTime = -System.currentTimeMillis();
             InitializeAcmConfiguration();
             if (accessControlResolver == null)
                 accessControlResolver = AccessControlResolver.getDefault();
             accessControl = new AccessControl(this, accessControlResolver);
-            accessControl.initDb();
+            timed("check out database", () -> {
+                accessControl.initDb();
+                return null;
+            });
 
             if (accessControl.openStatus.isOpen()) {
                 findChangeMarkerFile();
-                initializeRepositories();
-                final Taxonomy taxonomy = Taxonomy.createTaxonomy(loadCategoryFilter(), getProgramHomeDir());
-                this.store = new LuceneMetadataStore(taxonomy, getLocalLuceneIndexDir());
-                this.store.addDataChangeListener(metadataChangeListener);
-
-                getLanguageLabelProvider();
+                AtomicInteger threadNumber = new AtomicInteger();
+                ExecutorService startupExecutor = Executors.newFixedThreadPool(STARTUP_THREADS, r -> {
+                    Thread thread = new Thread(r, "acm-startup-" + threadNumber.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+                try {
+                    Future<Taxonomy> taxonomy = startupExecutor.submit(() -> timed("load taxonomy",
+                        () -> Taxonomy.createTaxonomy(loadCategoryFilter(), getProgramHomeDir())));
+                    Future<?> repositories = startupExecutor.submit(() -> timed("open repository", () -> {
+                        initializeRepositories();
+                        return null;
+                    }));
+                    Future<?> languageLabels = startupExecutor.submit(() -> timed("load language labels",
+                        this::getLanguageLabelProvider));
+                    // Not needed to open the database; synced now so that it is ready when it is needed.
+                    startupExecutor.submit(() -> timed("sync program spec", this::getProgramSpec));
+
+                    // The store logs opening the index and filling its caches separately.
+                    this.store = timed("open metadata store", () -> new LuceneMetadataStore(getStartupResult(taxonomy),
+                        getLocalLuceneIndexDir(), getIndexRefreshLatencyMillis(), getAudioItemCacheSize()));
+                    this.store.addDataChangeListener(metadataChangeListener);
+                    getStartupResult(repositories);
+                    getStartupResult(languageLabels);
+                } finally {
+                    // Lets the program spec sync finish in the background.
+                    startupExecutor.shutdown();
+                }
 
-                fixupLanguageCodes();
-                checkMessageIdMismatch();
+                if (ACMConfiguration.getInstance().isDisableUI()) {
+                    timed("integrity checks", () -> {
+                        newIntegrityChecks().run();
+                        return null;
+                    });
+                }
 
                 initialized = true;
             }
+            startupTime += System.currentTimeMillis();
+            LOG.info(String.format("Opened %s in %d ms", getProgramHomeDirName(), startupTime));
         }
         return initialized;
     }
 
+    /**
+     * Creates the integrity checks for the open database, with a snapshot of its audio items.
+     * Call on the thread that owns the metadata store.
+     *
+     * @return the checks, ready to run.
+     */
+    public IntegrityChecks newIntegrityChecks() {
+        return new IntegrityChecks(store);
+    }
+
+    private static <T> T timed(String phase, Callable<T> work) throws Exception {
+        long timer = -System.currentTimeMillis();
+        try {
+            return work.call();
+        } finally {
+            timer += System.currentTimeMillis();
+            LOG.info(String.format("Startup phase '%s' took %d ms", phase, timer));
+        }
+    }
+
+    /**
+     * Waits for a startup task, and rethrows any exception that it threw.
+     */
+    private static <T> T getStartupResult(Future<T> future) throws Exception {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception) throw (Exception) cause;
+            if (cause instanceof Error) throw (Error) cause;
+            throw e;
+        }
+    }
+
     // Tracking whether there are changes to the metadata, ie, changes to be checked
     // in.
     private boolean hasMetadataChange = false;
@@ -286,6 +372,7 @@ public class DBConfiguration {
     }
 
     public void commitDbChanges() {
+        closeStore();
         AccessControlResolver.UpdateDbStatus closeResult;
         if (hasMetadataChange || store.hasChanges()) {
             closeResult = accessControl.commitDbChanges();
@@ -310,6 +397,7 @@ public class DBConfiguration {
     }
 
     public void discardDbChanges() {
+        closeStore();
         accessControl.discardDbChanges();
         getSandbox().discard();
         deleteChangeMarkerFile();
@@ -319,11 +407,26 @@ public class DBConfiguration {
         if (!initialized) {
             throw new IllegalStateException("Can't close an un-opened database");
         }
+        closeStore();
         if (accessControl.getAccessStatus() != AccessStatus.none) {
             accessControl.discardDbChanges();
         }
     }
 
+    /**
+     * Writes any deferred index commits, and closes the index writer, so that the index files are
+     * complete before they are checked in or discarded.
+     */
+    private void closeStore() {
+        if (store != null) {
+            try {
+                store.close();
+            } catch (IOException e) {
+                LOG.log(Level.SEVERE, "Unable to close the metadata store.", e);
+            }
+        }
+    }
+
     public int getCurrentDbVersion() {
         return accessControl.getCurrentDbVersion();
     }
@@ -390,6 +493,38 @@ public class DBConfiguration {
         return size;
     }
 
+    /**
+     * @return how many of the most recently used audio items to hold in memory.
+     */
+    public int getAudioItemCacheSize() {
+        int size = Constants.DEFAULT_AUDIO_ITEM_CACHE_SIZE;
+        String value = getDbProperties().getProperty(Constants.AUDIO_ITEM_CACHE_SIZE_PROP_NAME);
+        if (value != null) {
+            try {
+                size = Integer.parseInt(value);
+            } catch (NumberFormatException e) {
+                // ignore and use default value
+            }
+        }
+        return size;
+    }
+
+    /**
+     * @return how long, after a change is committed, before searches must reflect it.
+     */
+    public long getIndexRefreshLatencyMillis() {
+        long latency = Constants.DEFAULT_INDEX_REFRESH_LATENCY_MS;
+        String value = getDbProperties().getProperty(Constants.INDEX_REFRESH_LATENCY_PROP_NAME);
+        if (value != null) {
+            try {
+                latency = Long.parseLong(value);
+            } catch (NumberFormatException e) {
+                // ignore and use default value
+            }
+        }
+        return latency;
+    }
+
     public String getFriendlyName() {
         String description = getProjectName();
         String value = getDbProperties().getProperty(Constants.FRIENDLY_NAME_PROP_NAME);
@@ -488,6 +623,20 @@ public class DBConfiguration {
         return deDuplicateAudio != null && deDuplicateAudio.equalsIgnoreCase("true");
     }
 
+    /**
+     * Switch to save the database as segmented snapshots (dbNN.manifest, with the Lucene
+     * segments in db-segments/) rather than as a dbNN.zip of the whole database. Both are
+     * always read; turn this on once every ACM using the program can read snapshots.
+     *
+     * Default to false.
+     *
+     * @return true if the database should be saved as segmented snapshots.
+     */
+    boolean isSegmentedDbSnapshots() {
+        String segmented = getDbProperties().getProperty(Constants.SEGMENTED_DB_SNAPSHOTS);
+        return segmented != null && segmented.equalsIgnoreCase("true");
+    }
+
     /**
      * If true, add a toolbar button for configuration. Default is false; override
      * in properties.config.
@@ -753,117 +902,12 @@ public class DBConfiguration {
     // }
     // }
 
-    private void checkMessageIdMismatch() {
-        Collection<AudioItem> items = this.store.getAudioItems();
-        int nErrors = 0;
-        int nFixed = 0;
-        int nFailed = 0;
-        for (AudioItem item : items) {
-            Metadata metadata = item.getMetadata();
-            String dc_identifier = "??";
-            if (metadata.containsField(MetadataSpecification.DC_IDENTIFIER)) {
-                dc_identifier = metadata.getMetadataValue(MetadataSpecification.DC_IDENTIFIER).toString();
-            }
-            if (!dc_identifier.equalsIgnoreCase(item.getId())) {
-                String title = item.getTitle();
-                String languageCode = item.getLanguageCode();
-                // Is there an item under the id that this item thinks it has?
-                boolean otherExists = this.store.getAudioItem(dc_identifier) != null;
-                System.out.printf("# %2d mismatch, audioItem: %s, metadata: %s (%s), (%s, %s)\n",
-                        ++nErrors, item.getId(), dc_identifier, otherExists ? "!" : "x", languageCode, title);
-                if (!otherExists && ACMConfiguration.getInstance().isAutoFix()) {
-                    // Be completely sure that the DC_IDENTIFIER == the AudioItem.id
-                    metadata.put(DC_IDENTIFIER, item.getId());
-                    try {
-                        getMetadataStore().commit(item);
-                        nFixed++;
-                    } catch (IOException e) {
-                        e.printStackTrace();
-                        nFailed++;
-                    }
-                }
-            }
-        }
-        if (nErrors == 0) {
-            System.out.println("No audioItem id mismatches.");
-        } else if (nFixed > 0 || nFailed > 0) {
-            System.out.printf("%d audioItem id mismatches fixed; %d failed to fix.\n", nFixed, nFailed);
-        }
-    }
-
-    /**
-     * A number of years ago (I write this on 2018-05-10), we needed a new language,
-     * Tumu Sisaala.
-     * The person implementing the language did not know the ISO 639-3 code, nor did
-     * he know that
-     * he should strictly restrict the codes to that well-known list. He just made
-     * up "ssl1", as
-     * a modification of Lambussie Sisaala, "ssl". But the correct code should have
-     * been "sil".
-     * <p>
-     * We've lived with this, as I say, for years. But today the pain of keeping the
-     * non-standard
-     * language code exceeds the cost of fixing it, and so, here we are. This code
-     * translates
-     * "ssl1" => "sil". It's only needed once per ACM, after which it adds perhaps
-     * 1ms to start
-     * up time.
-     */
-    private void fixupLanguageCodes() {
-        long timer = -System.currentTimeMillis();
-
-        // Hack to fix ssl1->sil. If we ever have more, abstract this a bit more.
-        String from = "ssl1";
-        String to = "sil";
-        RFC3066LanguageCode abstractLanguageCode = new RFC3066LanguageCode(to);
-        MetadataValue<RFC3066LanguageCode> abstractMetadataLanguageCode = new MetadataValue<>(
-                abstractLanguageCode);
-
-        Transaction transaction = this.store.newTransaction();
-        Collection<AudioItem> items = this.store.getAudioItems();
-        int itemsFixed = 0;
-
-        boolean success = false;
-        try {
-            for (AudioItem audioItem : items) {
-                if (audioItem.getLanguageCode().equalsIgnoreCase(from)) {
-                    audioItem.getMetadata().putMetadataField(DC_LANGUAGE, abstractMetadataLanguageCode);
-                    transaction.add(audioItem);
-                    itemsFixed++;
-                }
-            }
-            if (transaction.size() > 0) {
-                transaction.commit();
-            } else {
-                transaction.rollback();
-            }
-            success = true;
-        } catch (IOException e1) {
-            e1.printStackTrace();
-        } finally {
-            if (!success) {
-                try {
-                    transaction.rollback();
-                } catch (IOException e) {
-                    LOG.log(Level.SEVERE, "Unable to rollback transaction.", e);
-                }
-            }
-        }
-
-        timer += System.currentTimeMillis();
-        // If we did anything, or if the delay was perceptable (1/10th second), show the
-        // time.
-        if (itemsFixed > 0 || timer > 100) {
-            System.out.printf("Took %d ms to fix %d language codes%n", timer, itemsFixed);
-        }
-    }
-
     /**
      * Reads the config.properties file for the program. Caches for next time.
      *
      * @return the Properties object from the config.properties file.
      */
-    private Properties getDbProperties() {
+    private synchronized Properties getDbProperties() {
         if (dbProperties == null) {
             // like ~/Amplio/acm-dbs/DEMO/config.properties
             File propertiesFile = getSandbox().inputFile(pathsProvider.getProgramConfigFile().toPath());
@@ -884,13 +928,18 @@ public class DBConfiguration {
     }
 
     private ProgramSpec programSpec;
+    // The program spec is synced in the background as the database opens; a caller that needs it
+    // sooner waits for that sync, rather than starting another.
+    private final Object programSpecLock = new Object();
 
     /**
      * Discards the cached progspec. The next read of the progspec will refresh from
      * S3 if necessary (and we're online).
      */
     public void clearProgramSpecCache() {
-        programSpec = null;
+        synchronized (programSpecLock) {
+            programSpec = null;
+        }
     }
 
     /**
@@ -901,6 +950,12 @@ public class DBConfiguration {
      * @return the ProgramSpec.
      */
     public ProgramSpec getProgramSpec() {
+        synchronized (programSpecLock) {
+            return getProgramSpecLocked();
+        }
+    }
+
+    private ProgramSpec getProgramSpecLocked() {
         if (programSpec == null) {
             File programSpecDir = pathsProvider.getProgramSpecDir();
             if (Authenticator.getInstance().isAuthenticated()) {
@@ -910,7 +965,7 @@ public class DBConfiguration {
                 }
             }
 
-            programSpec = new ProgramSpec(filenames -> {
+            ProgramSpec.StreamProvider streamProvider = filenames -> {
                 for (String filename : filenames) {
                     File csvFile = new File(programSpecDir, filename);
                     if (sandbox.exists(csvFile)) {
@@ -922,11 +977,53 @@ public class DBConfiguration {
                     }
                 }
                 return null;
-            });
+            };
+            programSpec = new ProgramSpec(streamProvider, getProgramSpecSnapshot(streamProvider));
         }
         return programSpec;
     }
 
+    /**
+     * Gets the parsed program spec, so that the .csv files needn't be parsed every time the
+     * program is opened. The snapshot is saved with the program spec, keyed by the etags of the
+     * files; if any file has been downloaded since, the files are parsed, and a new snapshot saved.
+     *
+     * @param streamProvider of the program spec files.
+     * @return the snapshot, or null if the files can't be identified by etags, or can't be read.
+     */
+    private ProgramSpecSnapshot getProgramSpecSnapshot(ProgramSpec.StreamProvider streamProvider) {
+        Properties localProgspec = getProgSpecETags();
+        if (localProgspec.isEmpty()) {
+            // Not from S3, so nothing to tell us when the files change.
+            return null;
+        }
+        String key = new TreeMap<>(localProgspec).toString();
+        File snapshotFile = new File(pathsProvider.getProgramSpecDir(), PROGSPEC_SNAPSHOT_FILE_NAME);
+        if (getSandbox().exists(snapshotFile)) {
+            try (InputStream is = getSandbox().fileInputStream(snapshotFile)) {
+                ProgramSpecSnapshot snapshot = ProgramSpecSnapshot.read(is, key);
+                if (snapshot != null) {
+                    return snapshot;
+                }
+            } catch (IOException e) {
+                LOG.log(Level.WARNING, "Unable to read program spec snapshot; re-parsing", e);
+            }
+        }
+        try {
+            ProgramSpecSnapshot snapshot = ProgramSpecSnapshot.build(streamProvider, key);
+            try (OutputStream os = getSandbox().fileOutputStream(snapshotFile.toPath())) {
+                snapshot.write(os);
+            } catch (IOException e) {
+                // Still good for this session.
+                LOG.log(Level.WARNING, "Unable to save program spec snapshot", e);
+            }
+            return snapshot;
+        } catch (IOException e) {
+            LOG.log(Level.WARNING, "Unable to parse program spec", e);
+            return null;
+        }
+    }
+
     /**
      * Downloads the out-of-date progspec files parts, as determined by
      * findObsoleteProgspecFiles()
@@ -938,15 +1035,42 @@ public class DBConfiguration {
         boolean anyDownloaded = false;
         int prefixLen = getProgramId().length() + 1; // Program id + trailing "/"
         Properties localProgspec = getProgSpecETags();
-        for (S3ObjectSummary os : toDownload) {
-            File progSpecFile = new File(pathsProvider.getProgramSpecDir(), os.getKey().substring(prefixLen));
-            boolean downloaded = Authenticator.getInstance()
-                    .getProjectsHelper()
-                    .downloadProgSpecFile(os.getKey(), os.getETag(), getSandbox().outputFile(progSpecFile.toPath()));
-            if (downloaded) {
-                localProgspec.setProperty(os.getKey().substring(prefixLen), os.getETag());
-                anyDownloaded = true;
+        ProjectsHelper projectsHelper = Authenticator.getInstance().getProjectsHelper();
+        AtomicInteger threadNumber = new AtomicInteger();
+        ExecutorService downloadExecutor = Executors.newFixedThreadPool(
+            Math.min(toDownload.size(), PROGSPEC_DOWNLOAD_THREADS), r -> {
+                Thread thread = new Thread(r, "progspec-download-" + threadNumber.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        try {
+            // The files are small; the time is in the round trips, so fetch them all at once.
+            Map<S3ObjectSummary, Future<Boolean>> downloads = new LinkedHashMap<>();
+            for (S3ObjectSummary os : toDownload) {
+                File progSpecFile = new File(pathsProvider.getProgramSpecDir(), os.getKey().substring(prefixLen));
+                File outputFile = getSandbox().outputFile(progSpecFile.toPath());
+                downloads.put(os, downloadExecutor.submit(() ->
+                    projectsHelper.downloadProgSpecFile(os.getKey(), os.getETag(), outputFile)));
             }
+            for (Map.Entry<S3ObjectSummary, Future<Boolean>> download : downloads.entrySet()) {
+                S3ObjectSummary os = download.getKey();
+                boolean downloaded;
+                try {
+                    downloaded = download.getValue().get();
+                } catch (ExecutionException e) {
+                    LOG.log(Level.WARNING, "Unable to download " + os.getKey(), e.getCause());
+                    downloaded = false;
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+                if (downloaded) {
+                    localProgspec.setProperty(os.getKey().substring(prefixLen), os.getETag());
+                    anyDownloaded = true;
+                }
+            }
+        } finally {
+            downloadExecutor.shutdownNow();
         }
         if (anyDownloaded) {
             Path eTagsPath = new File(pathsProvider.getProgramSpecDir(), PROGSPEC_ETAGS_FILE_NAME).toPath();
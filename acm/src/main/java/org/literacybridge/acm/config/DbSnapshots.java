@@ -0,0 +1,240 @@
+package org.literacybridge.acm.config;
+
+import org.literacybridge.acm.sandbox.Sandbox;
+import org.literacybridge.core.fs.ContentHash;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Content-addressed snapshots of the ACM database, as an alternative to a dbNN.zip of the
+ * whole database for every version.
+ * <p>
+ * Lucene never changes a file once it has been written, so successive versions of the database
+ * share most of their files. In the program home directory, each distinct file is kept once,
+ * named by the hash of its contents, in db-segments/. Each version is a small manifest,
+ * dbNN.manifest, listing the files of the database and the hash of each.
+ * <p>
+ * Checking in copies only the files not already in db-segments; checking out links (or, where
+ * links aren't supported, copies) the files into the local database directory. As the program
+ * directory is synchronized file by file, only new segments are uploaded or downloaded.
+ */
+class DbSnapshots {
+    private static final Logger LOG = Logger.getLogger(DbSnapshots.class.getName());
+
+    static final String MANIFEST_EXTENSION = ".manifest";
+    static final String SEGMENTS_DIR = "db-segments";
+    private static final String MANIFEST_HEADER = "# ACM database snapshot v1";
+
+    /**
+     * One file of a snapshot.
+     */
+    private static class Entry {
+        final String path;
+        final long size;
+        final String hash;
+
+        Entry(String path, long size, String hash) {
+            this.path = path;
+            this.size = size;
+            this.hash = hash;
+        }
+    }
+
+    private final Sandbox sandbox;
+    private final Path programHomePath;
+    private final Path segmentsPath;
+
+    // The files as checked out, path -> {entry, lastModified}, so that the files not changed
+    // since can be checked in again without reading them.
+    private final Map<String, Entry> checkedOutEntries = new HashMap<>();
+    private final Map<String, Long> checkedOutTimes = new HashMap<>();
+
+    DbSnapshots(Sandbox sandbox, File programHomeDir) {
+        this.sandbox = sandbox;
+        this.programHomePath = programHomeDir.toPath();
+        this.segmentsPath = programHomePath.resolve(SEGMENTS_DIR);
+    }
+
+    static boolean isManifest(String filename) {
+        return filename != null && filename.toLowerCase().endsWith(MANIFEST_EXTENSION);
+    }
+
+    /**
+     * Is the given version, and every segment it needs, present? The manifest may be synchronized
+     * to this computer before all of its segments.
+     * @param manifestName The version, like "db42.manifest".
+     * @return true if the version can be checked out.
+     */
+    boolean isComplete(String manifestName) {
+        try {
+            for (Entry entry : readManifest(manifestName)) {
+                if (!sandbox.exists(segmentPath(entry.hash))) {
+                    return false;
+                }
+            }
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Re-creates a version of the database in the given (empty) directory.
+     * @param manifestName The version, like "db42.manifest".
+     * @param outDir The local database directory.
+     * @throws IOException if the manifest or any segment can't be read, or a file can't be created.
+     */
+    void checkOut(String manifestName, File outDir) throws IOException {
+        checkedOutEntries.clear();
+        checkedOutTimes.clear();
+        for (Entry entry : readManifest(manifestName)) {
+            File segment = sandbox.inputFile(segmentPath(entry.hash));
+            if (!segment.exists()) {
+                throw new FileNotFoundException("Missing database segment " + entry.hash + " for " + entry.path);
+            }
+            File target = new File(outDir, entry.path);
+            Files.createDirectories(target.getParentFile().toPath());
+            try {
+                // Segments are never changed in place, by us or by Lucene, so a link is as good as a copy.
+                Files.createLink(target.toPath(), segment.toPath());
+            } catch (IOException | UnsupportedOperationException e) {
+                Files.copy(segment.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.COPY_ATTRIBUTES);
+            }
+            checkedOutEntries.put(entry.path, entry);
+            checkedOutTimes.put(entry.path, target.lastModified());
+        }
+    }
+
+    /**
+     * Saves the contents of the local database directory as a new version. Files that are
+     * unchanged since check-out are not read; only files not already present as segments are
+     * copied. Everything is written through the sandbox.
+     * @param manifestName The new version, like "db43.manifest".
+     * @param inDir The local database directory.
+     * @return the number of new segments written.
+     * @throws IOException if a file can't be read or written.
+     */
+    int checkIn(String manifestName, File inDir) throws IOException {
+        List<Entry> entries = new ArrayList<>();
+        Set<String> written = new HashSet<>();
+        Path inPath = inDir.toPath();
+        List<Path> files;
+        try (Stream<Path> walk = Files.walk(inPath)) {
+            files = walk.filter(Files::isRegularFile).sorted().collect(Collectors.toList());
+        }
+        for (Path file : files) {
+            String relative = inPath.relativize(file).toString().replace('\\', '/');
+            long size = Files.size(file);
+            Entry previous = checkedOutEntries.get(relative);
+            String hash;
+            if (previous != null && previous.size == size
+                    && checkedOutTimes.get(relative) == file.toFile().lastModified()) {
+                hash = previous.hash;
+            } else {
+                hash = ContentHash.of(file.toFile());
+            }
+            Path segmentPath = segmentPath(hash);
+            if (!written.contains(hash) && !sandbox.exists(segmentPath)) {
+                Files.copy(file, sandbox.outputFile(segmentPath).toPath(), StandardCopyOption.REPLACE_EXISTING);
+                written.add(hash);
+            }
+            entries.add(new Entry(relative, size, hash));
+        }
+        writeManifest(manifestName, entries);
+        LOG.info(String.format("Checked in %s: %d files, %d new segment(s)", manifestName, entries.size(), written.size()));
+        return written.size();
+    }
+
+    /**
+     * Deletes the segments that are not part of any of the given versions.
+     * @param manifestNames The versions being kept, like "db42.manifest".
+     */
+    void deleteUnreferencedSegments(Collection<String> manifestNames) {
+        Set<String> referenced = new HashSet<>();
+        for (String manifestName : manifestNames) {
+            try {
+                for (Entry entry : readManifest(manifestName)) {
+                    referenced.add(entry.hash);
+                }
+            } catch (IOException e) {
+                // Without knowing what this version needs, don't delete anything.
+                LOG.log(Level.WARNING, "Can't read " + manifestName + "; not cleaning up segments", e);
+                return;
+            }
+        }
+        for (Path path : sandbox.listPaths(segmentsPath)) {
+            if (!referenced.contains(path.getFileName().toString())) {
+                sandbox.delete(path);
+            }
+        }
+    }
+
+    private Path segmentPath(String hash) {
+        return segmentsPath.resolve(hash);
+    }
+
+    private List<Entry> readManifest(String manifestName) throws IOException {
+        List<Entry> entries = new ArrayList<>();
+        File manifestFile = sandbox.inputFile(programHomePath.resolve(manifestName));
+        try (InputStream is = new FileInputStream(manifestFile);
+             BufferedReader reader = new BufferedReader(new InputStreamReader(is, StandardCharsets.UTF_8))) {
+            String line = reader.readLine();
+            if (!MANIFEST_HEADER.equals(line)) {
+                throw new IOException("Not a database manifest: " + manifestName);
+            }
+            while ((line = reader.readLine()) != null) {
+                if (line.isEmpty()) continue;
+                // hash size path; the path is last, as it may contain spaces.
+                String[] parts = line.split(" ", 3);
+                if (parts.length != 3) {
+                    throw new IOException("Malformed database manifest: " + manifestName);
+                }
+                try {
+                    entries.add(new Entry(parts[2], Long.parseLong(parts[1]), parts[0]));
+                } catch (NumberFormatException e) {
+                    throw new IOException("Malformed database manifest: " + manifestName, e);
+                }
+            }
+        }
+        return entries;
+    }
+
+    private void writeManifest(String manifestName, List<Entry> entries) throws IOException {
+        File manifestFile = sandbox.outputFile(programHomePath.resolve(manifestName));
+        try (PrintWriter writer = new PrintWriter(new OutputStreamWriter(
+                new FileOutputStream(manifestFile), StandardCharsets.UTF_8))) {
+            writer.println(MANIFEST_HEADER);
+            for (Entry entry : entries) {
+                writer.printf("%s %d %s%n", entry.hash, entry.size, entry.path);
+            }
+            if (writer.checkError()) {
+                throw new IOException("Error writing " + manifestName);
+            }
+        }
+    }
+}
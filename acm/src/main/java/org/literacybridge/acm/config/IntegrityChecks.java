@@ -0,0 +1,229 @@
+package org.literacybridge.acm.config;
+
+import org.literacybridge.acm.store.AudioItem;
+import org.literacybridge.acm.store.Metadata;
+import org.literacybridge.acm.store.MetadataSpecification;
+import org.literacybridge.acm.store.MetadataStore;
+import org.literacybridge.acm.store.MetadataValue;
+import org.literacybridge.acm.store.RFC3066LanguageCode;
+import org.literacybridge.acm.store.Transaction;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.IntConsumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static org.literacybridge.acm.store.MetadataSpecification.DC_IDENTIFIER;
+import static org.literacybridge.acm.store.MetadataSpecification.DC_LANGUAGE;
+
+/**
+ * Consistency checks, and repairs, of the audio items in a program database. These used to run
+ * as the database was opened; they are not needed to show the items, so the ACM runs them in
+ * the background once the main window is up.
+ * <p>
+ * The checks are in two parts. scan() examines a snapshot of the items, taken when the checks are
+ * created, and may run on any thread. applyFixes() commits any repairs, and must run on the
+ * thread that owns the metadata store (in the ACM, the event dispatch thread).
+ * <p>
+ * AudioItems and their Metadata are not thread-safe, so the snapshot is a copy of the values that
+ * the checks need, read on the owning thread. scan() reads only the copies. applyFixes() gets
+ * the items again by id, and re-checks each one, as it may have been edited, or deleted, since
+ * the snapshot.
+ */
+public class IntegrityChecks {
+    private static final Logger LOG = Logger.getLogger(IntegrityChecks.class.getName());
+
+    // Hack to fix ssl1->sil. If we ever have more, abstract this a bit more.
+    private static final String FROM_LANGUAGE = "ssl1";
+    private static final String TO_LANGUAGE = "sil";
+
+    /**
+     * The values of an item that the checks need, copied when the checks are created.
+     */
+    private static class ItemValues {
+        final String id;
+        final String languageCode;
+        final String title;
+        final String dcIdentifier;
+
+        ItemValues(AudioItem item) {
+            this.id = item.getId();
+            this.languageCode = item.getLanguageCode();
+            this.title = item.getMetadata().containsField(MetadataSpecification.DC_TITLE) ? item.getTitle() : null;
+            this.dcIdentifier = dcIdentifier(item);
+        }
+    }
+
+    private final MetadataStore store;
+    private final boolean autoFix;
+    private final List<ItemValues> items = new ArrayList<>();
+    private final Set<String> ids = new HashSet<>();
+
+    // Ids of the items to be fixed.
+    private final List<String> languageCodesToFix = new ArrayList<>();
+    private final List<String> messageIdsToFix = new ArrayList<>();
+    private int nMismatches = 0;
+
+    /**
+     * Takes a snapshot of the items to be checked. Call on the thread that owns the store.
+     * @param store The metadata store of the program database.
+     */
+    IntegrityChecks(MetadataStore store) {
+        this(store, ACMConfiguration.getInstance().isAutoFix());
+    }
+
+    /**
+     * @param store The metadata store of the program database.
+     * @param autoFix Whether to fix items whose metadata has the wrong message id.
+     */
+    IntegrityChecks(MetadataStore store, boolean autoFix) {
+        this.store = store;
+        this.autoFix = autoFix;
+        for (AudioItem item : store.getAudioItems()) {
+            ItemValues values = new ItemValues(item);
+            items.add(values);
+            ids.add(values.id);
+        }
+    }
+
+    /**
+     * Runs the checks, and applies any fixes, on this thread.
+     */
+    public void run() {
+        scan(null);
+        applyFixes();
+    }
+
+    /**
+     * Examines the items, and remembers those needing repair.
+     * @param progress If not null, called with the percentage of the items examined so far.
+     */
+    public void scan(IntConsumer progress) {
+        long timer = -System.currentTimeMillis();
+        int lastPercent = -1;
+        for (int i = 0; i < items.size(); i++) {
+            ItemValues item = items.get(i);
+            checkLanguageCode(item);
+            checkMessageId(item);
+            int percent = (i + 1) * 100 / items.size();
+            if (progress != null && percent != lastPercent) {
+                progress.accept(percent);
+                lastPercent = percent;
+            }
+        }
+        timer += System.currentTimeMillis();
+        LOG.info(String.format("Integrity scan of %d items took %d ms", items.size(), timer));
+        if (nMismatches == 0) {
+            System.out.println("No audioItem id mismatches.");
+        }
+    }
+
+    /**
+     * A number of years ago (I write this on 2018-05-10), we needed a new language,
+     * Tumu Sisaala. The person implementing the language did not know the ISO 639-3 code, nor
+     * did he know that he should strictly restrict the codes to that well-known list. He just
+     * made up "ssl1", as a modification of Lambussie Sisaala, "ssl". But the correct code should
+     * have been "sil".
+     * <p>
+     * This code translates "ssl1" => "sil". It's only needed once per ACM.
+     */
+    private void checkLanguageCode(ItemValues item) {
+        if (isFromLanguage(item.languageCode)) {
+            languageCodesToFix.add(item.id);
+        }
+    }
+
+    private static boolean isFromLanguage(String languageCode) {
+        return FROM_LANGUAGE.equalsIgnoreCase(languageCode);
+    }
+
+    private void checkMessageId(ItemValues item) {
+        if (!item.dcIdentifier.equalsIgnoreCase(item.id)) {
+            // Is there an item under the id that this item thinks it has?
+            boolean otherExists = ids.contains(item.dcIdentifier);
+            System.out.printf("# %2d mismatch, audioItem: %s, metadata: %s (%s), (%s, %s)\n",
+                    ++nMismatches, item.id, item.dcIdentifier, otherExists ? "!" : "x",
+                    item.languageCode, item.title);
+            if (!otherExists && autoFix) {
+                messageIdsToFix.add(item.id);
+            }
+        }
+    }
+
+    private static String dcIdentifier(AudioItem item) {
+        Metadata metadata = item.getMetadata();
+        if (metadata.containsField(MetadataSpecification.DC_IDENTIFIER)) {
+            return metadata.getMetadataValue(MetadataSpecification.DC_IDENTIFIER).toString();
+        }
+        return "??";
+    }
+
+    /**
+     * Commits the repairs found by scan(). Call on the thread that owns the store.
+     */
+    public void applyFixes() {
+        if (!languageCodesToFix.isEmpty()) {
+            fixLanguageCodes();
+        }
+        if (!messageIdsToFix.isEmpty()) {
+            fixMessageIds();
+        }
+    }
+
+    private void fixLanguageCodes() {
+        long timer = -System.currentTimeMillis();
+        MetadataValue<RFC3066LanguageCode> abstractMetadataLanguageCode = new MetadataValue<>(
+                new RFC3066LanguageCode(TO_LANGUAGE));
+
+        Transaction transaction = store.newTransaction();
+        boolean success = false;
+        try {
+            for (String id : languageCodesToFix) {
+                AudioItem audioItem = store.getAudioItem(id);
+                // Unless it has been changed, or deleted, since the scan.
+                if (audioItem == null || !isFromLanguage(audioItem.getLanguageCode())) continue;
+                audioItem.getMetadata().putMetadataField(DC_LANGUAGE, abstractMetadataLanguageCode);
+                transaction.add(audioItem);
+            }
+            transaction.commit();
+            success = true;
+        } catch (IOException e1) {
+            e1.printStackTrace();
+        } finally {
+            if (!success) {
+                try {
+                    transaction.rollback();
+                } catch (IOException e) {
+                    LOG.log(Level.SEVERE, "Unable to rollback transaction.", e);
+                }
+            }
+        }
+
+        timer += System.currentTimeMillis();
+        System.out.printf("Took %d ms to fix %d language codes%n", timer, languageCodesToFix.size());
+    }
+
+    private void fixMessageIds() {
+        int nFixed = 0;
+        int nFailed = 0;
+        for (String id : messageIdsToFix) {
+            AudioItem item = store.getAudioItem(id);
+            // Unless it has been changed, or deleted, since the scan.
+            if (item == null || dcIdentifier(item).equalsIgnoreCase(id)) continue;
+            // Be completely sure that the DC_IDENTIFIER == the AudioItem.id
+            item.getMetadata().put(DC_IDENTIFIER, item.getId());
+            try {
+                store.commit(item);
+                nFixed++;
+            } catch (IOException e) {
+                e.printStackTrace();
+                nFailed++;
+            }
+        }
+        System.out.printf("%d audioItem id mismatches fixed; %d failed to fix.\n", nFixed, nFailed);
+    }
+}
@@ -10,6 +10,7 @@ import org.literacybridge.acm.config.ACMConfiguration;
 import org.literacybridge.acm.config.AccessControlResolver;
 import org.literacybridge.acm.config.AmplioHome;
 import org.literacybridge.acm.config.GuiAccessControlResolver;
+import org.literacybridge.acm.config.IntegrityChecks;
 import org.literacybridge.acm.config.PathsProvider;
 import org.literacybridge.acm.device.FileSystemMonitor;
 import org.literacybridge.acm.device.LiteracyBridgeTalkingBookRecognizer;
@@ -353,6 +354,36 @@ public class Application extends JXFrame {
             return (answer == JOptionPane.YES_OPTION);
         });
         application.mainView.audioItemView.requestFocusInWindow();
+
+        // The integrity checks aren't needed to show the items; run them now that the window is up.
+        SwingUtilities.invokeLater(() -> application.taskManager.execute(new IntegrityCheckTask()));
+    }
+
+    /**
+     * Runs the database integrity checks in the background, showing progress in the status bar.
+     * Any fixes are committed on the event dispatch thread, as are all other changes to the store.
+     */
+    private static class IntegrityCheckTask extends BackgroundTaskManager.ExtendedSwingWorker<Void, Void> {
+        // Created on the event dispatch thread, which copies the values of the items to be checked.
+        private final IntegrityChecks checks = ACMConfiguration.getInstance().getCurrentDB().newIntegrityChecks();
+
+        @Override
+        protected Void doInBackground() {
+            checks.scan(this::setProgress);
+            return null;
+        }
+
+        @Override
+        protected void onDone() {
+            if (!isCancelled()) {
+                checks.applyFixes();
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "Checking database...";
+        }
     }
 
   /**
@@ -1,17 +1,12 @@
 package org.literacybridge.acm.importexport;
 
 import org.literacybridge.acm.config.ACMConfiguration;
+import org.literacybridge.acm.repository.A18FileReader;
 import org.literacybridge.acm.store.Category;
-import org.literacybridge.acm.store.LBMetadataSerializer;
 import org.literacybridge.acm.store.Metadata;
 import org.literacybridge.acm.store.MetadataStore;
-import org.literacybridge.acm.utils.IOUtils;
 
-import java.io.BufferedInputStream;
-import java.io.DataInputStream;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.IOException;
 import java.util.HashSet;
 import java.util.Set;
 
@@ -26,31 +21,15 @@ class A18MdImporter extends BaseMetadataImporter {
     @Override
     protected Metadata getMetadata() {
         if (metadata == null) {
-            try (FileInputStream fis = new FileInputStream(audioFile);
-                BufferedInputStream bis = new BufferedInputStream(fis);
-                DataInputStream in = new DataInputStream(bis)) {
-                int bytesToSkip = IOUtils.readLittleEndian32(in);
-
+            try (A18FileReader reader = new A18FileReader(audioFile)) {
                 MetadataStore store = ACMConfiguration.getInstance().getCurrentDB().getMetadataStore();
                 Metadata loadedMetadata = new Metadata();
                 Set<Category> loadedCategories = new HashSet<>();
 
-                if (bytesToSkip + 4 < audioFile.length()) {
-                    try {
-                        in.skipBytes(bytesToSkip);
-                        LBMetadataSerializer serializer = new LBMetadataSerializer();
-                        serializer.deserialize(loadedMetadata,
-                            store.getTaxonomy(),
-                            loadedCategories,
-                            in);
-
-                        categories = loadedCategories;
-                        metadata = loadedMetadata;
-                    } catch (IOException e) {
-                        // do nothing; loadedMetadata is probably still empty. Or maybe not.
-                    }
+                if (reader.readMetadata(loadedMetadata, store.getTaxonomy(), loadedCategories)) {
+                    categories = loadedCategories;
+                    metadata = loadedMetadata;
                 }
-
             } catch (Exception e) {
                 // Ignore, return empty Metadata
             }
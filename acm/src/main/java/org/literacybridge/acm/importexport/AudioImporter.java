@@ -92,6 +92,31 @@ public class AudioImporter {
      */
     private AudioItem importFileWithOptions(File file, AudioItemProcessor processor, AudioItem existingItem, Option... optionsArg)
             throws IOException, AudioItemRepository.UnsupportedFormatException, BaseAudioConverter.ConversionException, AudioItemRepository.DuplicateItemException
+    {
+        MetadataStore store = ACMConfiguration.getInstance().getCurrentDB().getMetadataStore();
+        AudioItem audioItem = importAudio(file, existingItem, optionsArg);
+
+        // let caller tweak audio item
+        if (processor != null) {
+            processor.process(audioItem);
+        }
+
+        store.commit(audioItem);
+
+        return audioItem;
+    }
+
+    /**
+     * Converts and stores the audio of a file in the repository, and creates or updates the
+     * AudioItem, but does not commit the AudioItem to the metadata store.
+     * @param file The file to be imported.
+     * @param existingItem The item to be updated, with Option.updateOnly.
+     * @param optionsArg Optional list of Option.
+     * @return the AudioItem.
+     * @throws IOException If the file can not be read or imported.
+     */
+    private AudioItem importAudio(File file, AudioItem existingItem, Option... optionsArg)
+            throws IOException, AudioItemRepository.UnsupportedFormatException, BaseAudioConverter.ConversionException, AudioItemRepository.DuplicateItemException
     {
         Set<Option> options = new HashSet<>(Arrays.asList(optionsArg));
         MetadataStore store = ACMConfiguration.getInstance().getCurrentDB().getMetadataStore();
@@ -141,13 +166,6 @@ public class AudioImporter {
         //
         ////////////////////////////////////////////////////////////////////////////////////////////
 
-        // let caller tweak audio item
-        if (processor != null) {
-            processor.process(audioItem);
-        }
-
-        store.commit(audioItem);
-
         return audioItem;
     }
 
@@ -168,6 +186,19 @@ public class AudioImporter {
         return importFileWithOptions(file, processor, null, Option.addNewOnly);
     }
 
+    /**
+     * Imports an audio file into the repository as a new audio item, but does not commit the item
+     * to the metadata store. For bulk imports, which convert many files concurrently, and then
+     * commit the items together, in one transaction. May be called from any thread.
+     * @param file The file to be imported.
+     * @return the new, uncommitted, AudioItem.
+     * @throws IOException If the file can't be converted or imported.
+     */
+    public AudioItem importAudioItemFromFileWithoutCommit(File file)
+            throws IOException, AudioItemRepository.UnsupportedFormatException, BaseAudioConverter.ConversionException, AudioItemRepository.DuplicateItemException {
+        return importAudio(file, null, Option.addNewOnly);
+    }
+
     /**
      * Imports an audio file into the repository. If the name of the file is like "${title}___${id}",
      * then this is updating an existing item, which must exist in this repository.
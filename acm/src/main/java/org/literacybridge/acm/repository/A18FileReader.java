@@ -0,0 +1,218 @@
+package org.literacybridge.acm.repository;
+
+import org.literacybridge.acm.store.Category;
+import org.literacybridge.acm.store.LBMetadataSerializer;
+import org.literacybridge.acm.store.Metadata;
+import org.literacybridge.acm.store.Taxonomy;
+
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+
+/**
+ * Reads the parts of an .a18 file that the ACM cares about, without reading the audio itself.
+ * <p>
+ * An .a18 file is laid out as:
+ * <pre>
+ *     4 bytes   little-endian count of the audio bytes that follow
+ *     2 bytes   little-endian bit rate (the first field of the audio data)
+ *     ...       the rest of the audio data
+ *     ...       optional metadata, appended by LBMetadataSerializer
+ * </pre>
+ * The header and the metadata block, if any, are each read with positional reads, so neither the
+ * audio payload nor a stream over it is ever created. The audio can be
+ * copied without its metadata with {@link #transferAudioTo(File)}, which lets the OS move the
+ * bytes directly between files.
+ * <p>
+ * Usage:
+ * <pre>
+ *     try (A18FileReader reader = new A18FileReader(file)) {
+ *         int bps = reader.getBitRate();
+ *         ...
+ *     }
+ * </pre>
+ */
+public class A18FileReader implements Closeable {
+    private static final int HEADER_SIZE = 6;
+    private static final int LENGTH_FIELD_SIZE = 4;
+
+    private final File file;
+    private final FileChannel channel;
+    private final long fileSize;
+    private final long audioByteCount;
+    private final int bitRate;
+
+    public A18FileReader(File file) throws IOException {
+        this.file = file;
+        this.channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        try {
+            this.fileSize = channel.size();
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            while (header.hasRemaining()) {
+                if (channel.read(header, header.position()) < 0) {
+                    throw new IOException(String.format("%s is too short to be an a18 file.", file.getName()));
+                }
+            }
+            header.flip();
+            this.audioByteCount = header.getInt() & 0xffffffffL;
+            this.bitRate = header.getShort() & 0xffff;
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @return the number of bytes of audio data, not counting the length field.
+     */
+    public long getAudioByteCount() {
+        return audioByteCount;
+    }
+
+    /**
+     * @return the size of the audio portion of the file, including the length field; that is, the
+     * size of the file without any metadata.
+     */
+    public long getAudioFileSize() {
+        return Math.min(fileSize, audioByteCount + LENGTH_FIELD_SIZE);
+    }
+
+    /**
+     * @return bits per second, 16000 for "low" quality, otherwise "high" quality.
+     */
+    public int getBitRate() {
+        return bitRate;
+    }
+
+    /**
+     * @return the playing time of the audio, in seconds, rounded.
+     */
+    public long getDurationSeconds() {
+        if (bitRate == 0) {
+            return 0;
+        }
+        return (getAudioFileSize() * 8 + bitRate / 2) / bitRate;
+    }
+
+    /**
+     * @return true if there is metadata after the audio data.
+     */
+    public boolean hasMetadata() {
+        return audioByteCount + LENGTH_FIELD_SIZE < fileSize;
+    }
+
+    /**
+     * Reads the metadata block, if there is one. The block is small, so it is read into memory
+     * rather than mapped; a mapping would keep the file locked on Windows until it is collected.
+     * @return a buffer holding the metadata, or null if there is none.
+     * @throws IOException if the file can't be read.
+     */
+    public ByteBuffer getMetadataBuffer() throws IOException {
+        if (!hasMetadata()) {
+            return null;
+        }
+        long offset = audioByteCount + LENGTH_FIELD_SIZE;
+        long size = fileSize - offset;
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException(String.format("%s has an invalid metadata block.", file.getName()));
+        }
+        ByteBuffer buffer = ByteBuffer.allocate((int) size);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, offset + buffer.position()) < 0) {
+                throw new IOException(String.format("%s is shorter than expected.", file.getName()));
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * Deserializes the metadata block, if any.
+     * @param metadata receives the metadata fields.
+     * @param taxonomy with which to resolve category ids.
+     * @param categories receives the categories.
+     * @return true if there was metadata to read.
+     * @throws IOException if the metadata can't be read.
+     */
+    public boolean readMetadata(Metadata metadata, Taxonomy taxonomy, Collection<Category> categories)
+        throws IOException
+    {
+        ByteBuffer buffer = getMetadataBuffer();
+        if (buffer == null) {
+            return false;
+        }
+        DataInputStream in = new DataInputStream(new ByteBufferInputStream(buffer));
+        new LBMetadataSerializer().deserialize(metadata, taxonomy, categories, in);
+        return true;
+    }
+
+    /**
+     * Copies the audio portion of the file, without any metadata, to another file.
+     * @param toFile to receive the audio.
+     * @throws IOException if the copy fails.
+     */
+    public void transferAudioTo(File toFile) throws IOException {
+        long size = getAudioFileSize();
+        try (FileChannel out = FileChannel.open(toFile.toPath(),
+            StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            long position = 0;
+            while (position < size) {
+                long transferred = channel.transferTo(position, size - position, out);
+                if (transferred <= 0) {
+                    throw new IOException(String.format("Unable to copy audio from %s.", file.getName()));
+                }
+                position += transferred;
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Lets a DataInput read from a buffer.
+     */
+    private static class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) {
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            length = Math.min(length, buffer.remaining());
+            buffer.get(bytes, offset, length);
+            return length;
+        }
+
+        @Override
+        public long skip(long n) {
+            int skipped = (int) Math.max(0, Math.min(n, buffer.remaining()));
+            buffer.position(buffer.position() + skipped);
+            return skipped;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+}
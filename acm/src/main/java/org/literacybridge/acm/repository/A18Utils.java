@@ -6,7 +6,6 @@ import java.util.Collection;
 import org.literacybridge.acm.config.ACMConfiguration;
 import org.literacybridge.acm.repository.AudioItemRepository.AudioFormat;
 import org.literacybridge.acm.store.*;
-import org.literacybridge.acm.utils.IOUtils;
 
 public class A18Utils {
   public static void updateDuration(AudioItem audioItem) throws IOException {
@@ -14,22 +13,7 @@ public class A18Utils {
       File f = repository.findAudioFileWithFormat(audioItem, AudioFormat.A18);
 
     if (f != null) {
-      DataInputStream in = new DataInputStream(
-          new BufferedInputStream(new FileInputStream(f)));
-      in.skipBytes(4);
-      int bps = IOUtils.readLittleEndian16(in);
-      in.close();
-      long sec = (f.length() * 8 + bps / 2) / bps;
-      int min = (int) (sec / 60L);
-      sec -= min * 60L;
-      String sMin = String.valueOf(min);
-      String sSec = String.valueOf(sec);
-      if (sMin.length() == 1)
-        sMin = "0" + sMin;
-      if (sSec.length() == 1)
-        sSec = "0" + sSec;
-      String duration = sMin + ":" + sSec + ((bps == 16000) ? "  l" : "  h");
-      // duration += test;
+      String duration = getDuration(f);
       audioItem.getMetadata().putMetadataField(
           MetadataSpecification.LB_DURATION,
           new MetadataValue<>(duration));
@@ -38,6 +22,23 @@ public class A18Utils {
     }
   }
 
+    /**
+     * Gets the duration of an a18 file, from its header, formatted as the LB_DURATION metadata
+     * value, like "02:15  h". Only the header is read, so this is cheap enough to run over every
+     * file in a repository.
+     * @param a18File The file.
+     * @return the formatted duration.
+     * @throws IOException if the header can't be read.
+     */
+  public static String getDuration(File a18File) throws IOException {
+      try (A18FileReader reader = new A18FileReader(a18File)) {
+          long sec = reader.getDurationSeconds();
+          int min = (int) (sec / 60L);
+          sec -= min * 60L;
+          return String.format("%02d:%02d", min, sec) + ((reader.getBitRate() == 16000) ? "  l" : "  h");
+      }
+  }
+
     /**
      * The a18 file has a 4-byte, little-endian size field, followed by size bytes of data.
      *
@@ -66,9 +67,8 @@ public class A18Utils {
   }
 
     public static void copyA18WithoutMetadata(File fromFile, File toFile) throws IOException {
-        DataInputStream in = new DataInputStream(new FileInputStream(fromFile));
-        int numBytes = IOUtils.readLittleEndian32(in);
-        in.close();
-        IOUtils.copy(fromFile, toFile, numBytes + 4);
+        try (A18FileReader reader = new A18FileReader(fromFile)) {
+            reader.transferAudioTo(toFile);
+        }
     }
 }
@@ -10,6 +10,7 @@ import org.literacybridge.acm.store.AudioItem;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.concurrent.Future;
 
 public interface AudioItemRepository {
     void addNewAudioItemFromFile(AudioItem audioItem, File externalFile)
@@ -33,6 +34,15 @@ public interface AudioItemRepository {
                                                                BaseAudioConverter.ConversionException,
                                                                UnsupportedFormatException;
 
+    /**
+     * Gets the audio file with the given format, converting it on a background worker if necessary.
+     * Concurrent requests for the same item and format share one conversion.
+     * @param audioItem for which the file is desired.
+     * @param format audio format for which the file is desired.
+     * @return a Future for the File.
+     */
+    Future<File> getAudioFileAsync(AudioItem audioItem, AudioFormat format);
+
     File getUncachedAudioFile(AudioItem audioItem, AudioFormat format) throws
             BaseAudioConverter.ConversionException,
             UnsupportedFormatException;
@@ -54,6 +64,15 @@ public interface AudioItemRepository {
                                                                                                    BaseAudioConverter.ConversionException,
                                                                                                    UnsupportedFormatException;
 
+    /**
+     * Exports the audio item in the given format, on a background worker. See exportAudioFileWithFormat.
+     * @param audioItem The audio item to be exported.
+     * @param targetFile The file to which to export.
+     * @param targetFormat The format in which to export.
+     * @return a Future for the actual file exported.
+     */
+    Future<File> exportAudioFileWithFormatAsync(AudioItem audioItem, File targetFile, AudioFormat targetFormat);
+
     void exportFileWithFormat(File sourceFile, File targetFile, AudioFormat targetFormat) throws
                                                                                                  BaseAudioConverter.ConversionException,
                                                                                                  IOException;
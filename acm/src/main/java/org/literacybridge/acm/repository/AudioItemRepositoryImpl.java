@@ -11,6 +11,7 @@ import org.literacybridge.acm.audioconverter.converters.BaseAudioConverter.Conve
 import org.literacybridge.acm.audioconverter.converters.BaseAudioConverter.ConversionSourceMissingException;
 import org.literacybridge.acm.audioconverter.converters.FFMpegConverter;
 import org.literacybridge.acm.config.ACMConfiguration;
+import org.literacybridge.acm.config.AmplioHome;
 import org.literacybridge.acm.config.DBConfiguration;
 import org.literacybridge.acm.importexport.AudioExporter;
 import org.literacybridge.acm.store.AudioItem;
@@ -22,6 +23,8 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
 import java.util.function.BiFunction;
 import java.util.function.Predicate;
 import java.util.regex.Matcher;
@@ -40,13 +43,26 @@ public class AudioItemRepositoryImpl implements AudioItemRepository {
 
     public static AudioItemRepositoryImpl buildAudioItemRepository(DBConfiguration dbConfiguration) throws IOException {
         CachingRepository cachingRepository = new CachingRepository(dbConfiguration);
-        return new AudioItemRepositoryImpl(cachingRepository);
+        // The conversion cache is shared by all programs.
+        ConversionCache conversionCache = new ConversionCache(
+            new File(AmplioHome.getCachesDir(), ConversionCache.CONVERSION_CACHE_DIR_NAME),
+            dbConfiguration.getCacheSizeInBytes());
+        return new AudioItemRepositoryImpl(cachingRepository, conversionCache);
     }
 
     private final CachingRepository audioFileRepository;
+    private final ConversionCache conversionCache;
+    // Per-item locks, and a worker pool for conversions. Replaces synchronizing on the repository.
+    private final ConversionScheduler scheduler = new ConversionScheduler();
 
-    private AudioItemRepositoryImpl(CachingRepository audioFileRepository) {
+    private AudioItemRepositoryImpl(CachingRepository audioFileRepository, ConversionCache conversionCache) {
         this.audioFileRepository = audioFileRepository;
+        this.conversionCache = conversionCache;
+        // Trim the conversion cache in the background, rather than delay opening the program.
+        scheduler.execute(() -> {
+            conversionCache.gc();
+            return null;
+        });
     }
 
     private static final Map<String, AudioFormat> EXTENSION_TO_FORMAT = Maps.newHashMap();
@@ -60,7 +76,7 @@ public class AudioItemRepositoryImpl implements AudioItemRepository {
      * Returns true, if this audio item is stored in any supported format in this
      * repository.
      */
-    private synchronized boolean hasAudioItem(AudioItem audioItem) {
+    private boolean hasAudioItem(AudioItem audioItem) {
         for (AudioFormat format : AudioFormat.values()) {
             if (findAudioFileWithFormat(audioItem, format) != null) {
                 return true;
@@ -78,12 +94,18 @@ public class AudioItemRepositoryImpl implements AudioItemRepository {
      * times.
      */
     @Override
-    public synchronized void addNewAudioItemFromFile(AudioItem audioItem, File externalFile)
+    public void addNewAudioItemFromFile(AudioItem audioItem, File externalFile)
             throws UnsupportedFormatException, IOException, DuplicateItemException, ConversionException {
-        if (hasAudioItem(audioItem)) {
-            throw new DuplicateItemException(String.format("Audio item %s already exists for language %s", audioItem.getTitle(), audioItem.getLanguageCode()));
+        ConversionScheduler.LockHandle lock = scheduler.lockFor(audioItem.getId());
+        lock.lock();
+        try {
+            if (hasAudioItem(audioItem)) {
+                throw new DuplicateItemException(String.format("Audio item %s already exists for language %s", audioItem.getTitle(), audioItem.getLanguageCode()));
+            }
+            storeAudioFile(audioItem, externalFile);
+        } finally {
+            lock.unlock();
         }
-        storeAudioFile(audioItem, externalFile);
     }
 
     /**
@@ -94,28 +116,34 @@ public class AudioItemRepositoryImpl implements AudioItemRepository {
      * into all formats that were previously stored for that audio item.
      */
     @Override
-    public synchronized void updateExistingAudioItemFromFile(AudioItem audioItem, File externalFile)
+    public void updateExistingAudioItemFromFile(AudioItem audioItem, File externalFile)
             throws ConversionException, IOException, UnsupportedFormatException
     {
         ensureKnownFormat(externalFile);
 
-        // Determine in which formats the item is currently stored
-        Set<AudioFormat> existingFormats = Sets.newHashSet();
-        for (AudioFormat format : AudioFormat.values()) {
-            if (findAudioFileWithFormat(audioItem, format) != null) {
-                existingFormats.add(format);
+        ConversionScheduler.LockHandle lock = scheduler.lockFor(audioItem.getId());
+        lock.lock();
+        try {
+            // Determine in which formats the item is currently stored
+            Set<AudioFormat> existingFormats = Sets.newHashSet();
+            for (AudioFormat format : AudioFormat.values()) {
+                if (findAudioFileWithFormat(audioItem, format) != null) {
+                    existingFormats.add(format);
+                }
             }
-        }
 
-        // now delete the old files
-        deleteAudioItem(audioItem);
+            // now delete the old files
+            deleteAudioItem(audioItem);
 
-        // store the new sourceFile
-        storeAudioFile(audioItem, externalFile);
+            // store the new sourceFile
+            storeAudioFile(audioItem, externalFile);
 
-        // Restore to all previously stored formats
-        for (AudioFormat format : existingFormats) {
-            convertAudioItem(audioItem, format);
+            // Restore to all previously stored formats
+            for (AudioFormat format : existingFormats) {
+                convertAudioItem(audioItem, format);
+            }
+        } finally {
+            lock.unlock();
         }
     }
 
@@ -138,9 +166,9 @@ public class AudioItemRepositoryImpl implements AudioItemRepository {
 
     /**
      * Store a new File as an audioItem in the repository. The AudioItem may or may
-     * not already exist.
+     * not already exist. The caller must hold the item's lock.
      */
-    private synchronized void storeAudioFile(AudioItem audioItem, File externalFile)
+    private void storeAudioFile(AudioItem audioItem, File externalFile)
             throws UnsupportedFormatException, IOException, ConversionException {
         AudioFormat format = ensureKnownFormat(externalFile);
 
@@ -182,7 +210,7 @@ public class AudioItemRepositoryImpl implements AudioItemRepository {
      * repository;
      */
     @Override
-    public synchronized File findAudioFileWithFormat(AudioItem audioItem, AudioFormat format) {
+    public File findAudioFileWithFormat(AudioItem audioItem, AudioFormat format) {
         File file = resolveFile(audioItem, format, false);
         return file.exists() ? file : null;
     }
@@ -196,39 +224,83 @@ public class AudioItemRepositoryImpl implements AudioItemRepository {
      * @throws ConversionException If an error occurs while converting.
      */
     @Override
-    public synchronized File getAudioFile(AudioItem audioItem, AudioFormat format) throws
-                                                                                   ConversionException,
-                                                                                   UnsupportedFormatException {
+    public File getAudioFile(AudioItem audioItem, AudioFormat format) throws
+                                                                      IOException,
+                                                                      ConversionException,
+                                                                      UnsupportedFormatException {
         File file = resolveFile(audioItem, format, false);
         System.out.println(file.getAbsolutePath());
 
         if (file == null || !file.exists() || forceConversion(file, format)) {
-            file = convertAudioItem(audioItem, format);
+            // Convert on this thread, or join an identical conversion that is already running.
+            file = scheduler.run(conversionKey(audioItem, format), () -> convertAudioItem(audioItem, format));
+        } else {
+            audioFileRepository.recordRead(file);
         }
         return file;
     }
 
-    public synchronized File getUncachedAudioFile(AudioItem audioItem, AudioFormat format) throws
+    /**
+     * Returns a Future for the audio file for the specified audio item. If the item does not exist in
+     * the requested format, it is converted into that format on the conversion worker pool; concurrent
+     * requests for the same item and format share a single conversion.
+     * @param audioItem The desired audio item.
+     * @param format The desired audio format.
+     * @return A Future for the File containing the audio.
+     */
+    @Override
+    public Future<File> getAudioFileAsync(AudioItem audioItem, AudioFormat format) {
+        File file = resolveFile(audioItem, format, false);
+        if (file.exists() && !forceConversion(file, format)) {
+            audioFileRepository.recordRead(file);
+            return CompletableFuture.completedFuture(file);
+        }
+        return scheduler.submit(conversionKey(audioItem, format), () -> convertAudioItem(audioItem, format));
+    }
+
+    public File getUncachedAudioFile(AudioItem audioItem, AudioFormat format) throws
             ConversionException,
             UnsupportedFormatException {
         File file = audioFileRepository.resolveUncachedFile(audioItem, format);
         System.out.println(file.getAbsolutePath());
 
         if (file == null || !file.exists() || forceConversion(file, format)) {
-            file = convertAudioItem(audioItem, format);
+            try {
+                file = scheduler.run(conversionKey(audioItem, format), () -> convertAudioItem(audioItem, format));
+            } catch (IOException e) {
+                throw new ConversionException("Could not convert " + audioItem.getId(), e);
+            }
         }
         return file;
     }
 
+    /**
+     * The key under which an in-flight conversion of an item to a format is tracked.
+     */
+    private static String conversionKey(AudioItem audioItem, AudioFormat format) {
+        return audioItem.getId() + '.' + format.getFileExtension();
+    }
+
     /**
      * Converts the audio item into the specified targetFormat and returns a
      * handle to the newly created file. The new file will be within the repository.
      * @return the converted file.
      */
-    private synchronized File convertAudioItem(AudioItem audioItem, AudioFormat targetFormat)
+    private File convertAudioItem(AudioItem audioItem, AudioFormat targetFormat)
             throws ConversionException, UnsupportedFormatException {
+        // Conversions of an item share the item's directory, and temporary files named for the item.
+        ConversionScheduler.LockHandle lock = scheduler.lockFor(audioItem.getId());
+        lock.lock();
+        try {
+            return convertAudioItemLocked(audioItem, targetFormat);
+        } finally {
+            lock.unlock();
+        }
+    }
 
-        // See if there is already a readable version of the file.
+    private File convertAudioItemLocked(AudioItem audioItem, AudioFormat targetFormat)
+            throws ConversionException, UnsupportedFormatException {
+        // See if there is already a readable version of the file. Another thread may have just made it.
         File targetFile = resolveFile(audioItem, targetFormat, false);
         if (targetFile.exists() && !forceConversion(targetFile, targetFormat)) {
             return targetFile;
@@ -249,6 +321,7 @@ public class AudioItemRepositoryImpl implements AudioItemRepository {
             throw new ConversionSourceMissingException(String.format("Can't find file for: %s in language %s",
                     audioItem.toString(), audioItem.getLanguageCode()));
         }
+        audioFileRepository.recordRead(sourceFile);
         // Get a file appropriate to write to.
         targetFile = resolveFile(audioItem, targetFormat, true);
         convertFile(sourceFile, targetFile);
@@ -261,7 +334,7 @@ public class AudioItemRepositoryImpl implements AudioItemRepository {
      * @param sourceFile to be converted.
      * @param targetFile to be converted to.
      */
-    private synchronized void convertFile(File sourceFile, File targetFile) throws
+    private void convertFile(File sourceFile, File targetFile) throws
                                                                             ConversionException,
                                                                             UnsupportedFormatException {
         if (audioFileRepository.isSandboxedFile(targetFile)) {
@@ -274,13 +347,44 @@ public class AudioItemRepositoryImpl implements AudioItemRepository {
         }
         AudioFormat targetFormat = ensureKnownFormat(targetFile);
         boolean overWrite = targetFile.exists() && forceConversion(targetFile, targetFormat);
-        new ExternalConverter(sourceFile, targetFormat.getAudioConversionFormat())
+        convertOrFetch(sourceFile, targetFile, targetFormat, overWrite);
+    }
+
+    /**
+     * Converts the source file to the target file, unless the conversion cache already has the result
+     * of an identical conversion, in which case that result is copied to the target file instead.
+     * @param sourceFile to be converted.
+     * @param targetFile to be converted to.
+     * @param targetFormat the format of the target file.
+     * @param overWrite if true, an existing target file is replaced.
+     */
+    private void convertOrFetch(File sourceFile, File targetFile, AudioFormat targetFormat, boolean overWrite)
+        throws ConversionException
+    {
+        if (targetFile.exists() && !overWrite) {
+            return;
+        }
+        AudioConversionFormat conversionFormat = targetFormat.getAudioConversionFormat();
+        String extension = conversionFormat.getFileExtension();
+        String key = null;
+        try {
+            key = conversionCache.keyFor(sourceFile, conversionFormat);
+            if (conversionCache.fetch(key, extension, targetFile)) {
+                return;
+            }
+        } catch (IOException e) {
+            // Couldn't read the source to hash it; let the converter report any real problem.
+        }
+        new ExternalConverter(sourceFile, conversionFormat)
             .toFile(targetFile)
             .overwritingExisting(overWrite)
             .go();
+        if (key != null && targetFile.isFile()) {
+            conversionCache.store(key, extension, targetFile);
+        }
     }
 
-    private synchronized File convertFile(Object source, BiFunction<Object, AudioFormat, File> sourceFileFinder, AudioFormat targetFormat, File targetDirectory) throws ConversionException {
+    private File convertFile(Object source, BiFunction<Object, AudioFormat, File> sourceFileFinder, AudioFormat targetFormat, File targetDirectory) throws ConversionException {
         File sourceFile = sourceFileFinder.apply(source, AudioFormat.WAV);
         if (sourceFile == null) {
             // no WAV, try any other format
@@ -300,12 +404,16 @@ public class AudioItemRepositoryImpl implements AudioItemRepository {
         if (audioFileRepository.isSandboxedFile(targetFile)) {
             throw new ConversionException("Target file should have been sandboxed.");
         }
-        boolean overWrite = targetFile.exists() && forceConversion(targetFile, targetFormat);
-        IOUtils.ensureDirectoryExists(targetFile);
-        new ExternalConverter(sourceFile, targetFormat.getAudioConversionFormat())
-            .toFile(targetFile)
-            .overwritingExisting(overWrite)
-            .go();
+        // Prompts and greetings aren't audio items, so lock on the file being produced.
+        ConversionScheduler.LockHandle lock = scheduler.lockFor(targetFile.getAbsolutePath());
+        lock.lock();
+        try {
+            boolean overWrite = targetFile.exists() && forceConversion(targetFile, targetFormat);
+            IOUtils.ensureDirectoryExists(targetFile);
+            convertOrFetch(sourceFile, targetFile, targetFormat, overWrite);
+        } finally {
+            lock.unlock();
+        }
 
         return targetFile;
     }
@@ -314,8 +422,14 @@ public class AudioItemRepositoryImpl implements AudioItemRepository {
      * Deletes all files associated with an audioitem from the repository.
      */
     @Override
-    public synchronized void deleteAudioItem(AudioItem audioItem) {
-          audioFileRepository.delete(audioItem.getId());
+    public void deleteAudioItem(AudioItem audioItem) {
+        ConversionScheduler.LockHandle lock = scheduler.lockFor(audioItem.getId());
+        lock.lock();
+        try {
+            audioFileRepository.delete(audioItem.getId());
+        } finally {
+            lock.unlock();
+        }
     }
 
     @Override
@@ -338,7 +452,7 @@ public class AudioItemRepositoryImpl implements AudioItemRepository {
      * @throws BaseAudioConverter.ConversionException If an existing file can't be converted to the desired format.
      */
     @Override
-    public synchronized File exportAudioFileWithFormat(AudioItem audioItem, File targetFile, AudioFormat targetFormat) throws
+    public File exportAudioFileWithFormat(AudioItem audioItem, File targetFile, AudioFormat targetFormat) throws
                                                                                                                        IOException,
                                                                                                                        ConversionException,
                                                                                                                        UnsupportedFormatException {
@@ -349,11 +463,31 @@ public class AudioItemRepositoryImpl implements AudioItemRepository {
 //            targetFile = new File(targetFile.getParentFile(),
 //                                  FilenameUtils.removeExtension(targetFile.getName()) + '.' + defaultExtension);
         }
-        AudioExporter exporter = AudioExporter.getInstance();
-        exporter.export(audioItem, targetFile, targetFormat);
+        // Conversion is locked by item; the export itself is locked by the file being written.
+        ConversionScheduler.LockHandle lock = scheduler.lockFor(targetFile.getAbsolutePath());
+        lock.lock();
+        try {
+            AudioExporter exporter = AudioExporter.getInstance();
+            exporter.export(audioItem, targetFile, targetFormat);
+        } finally {
+            lock.unlock();
+        }
         return targetFile;
     }
 
+    /**
+     * Exports the audio item in the given format, on the conversion worker pool. Many exports may
+     * proceed at once, up to the number of workers.
+     * @param audioItem The audio item to be exported.
+     * @param targetFile The file to which to export.
+     * @param targetFormat The format in which to export.
+     * @return A Future for the actual file exported. Any failure is reported when the Future is read.
+     */
+    @Override
+    public Future<File> exportAudioFileWithFormatAsync(AudioItem audioItem, File targetFile, AudioFormat targetFormat) {
+        return scheduler.execute(() -> exportAudioFileWithFormat(audioItem, targetFile, targetFormat));
+    }
+
     /**
      *
      * @param promptId The system prompt file name, like "0" or "21".
@@ -549,7 +683,7 @@ public class AudioItemRepositoryImpl implements AudioItemRepository {
         return audioFileRepository.resolveFile(audioItem, format, writeAccess);
     }
 
-    public synchronized void setupWavCaching(Predicate<Long> gcQuery) throws IOException {
+    public void setupWavCaching(Predicate<Long> gcQuery) throws IOException {
         audioFileRepository.setupWavCaching(gcQuery);
     }
 
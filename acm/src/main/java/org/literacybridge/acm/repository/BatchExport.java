@@ -0,0 +1,237 @@
+package org.literacybridge.acm.repository;
+
+import org.literacybridge.acm.audioconverter.converters.BaseAudioConverter.ConversionException;
+import org.literacybridge.acm.repository.AudioItemRepository.AudioFormat;
+import org.literacybridge.acm.repository.AudioItemRepository.UnsupportedFormatException;
+import org.literacybridge.acm.store.AudioItem;
+import org.literacybridge.acm.utils.IOUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Future;
+
+/**
+ * Collects a set of (audio item, target file, format) exports, and performs them together.
+ * <p>
+ * The exports are started concurrently on the repository's conversion workers, so that a large
+ * deployment keeps every core busy instead of waiting on one external converter at a time. When the
+ * same audio item is exported in the same format to several files (the same message in several
+ * packages), it is exported once, and the result is copied to the other files.
+ * <p>
+ * Usage:
+ * <pre>
+ *     BatchExport batch = new BatchExport(repository);
+ *     batch.add(audioItem, targetFile, format);
+ *     ...
+ *     BatchExport.Results results = batch.run(listener);
+ * </pre>
+ */
+public class BatchExport {
+    /**
+     * Notified as each export completes. Called on the thread that runs the batch.
+     */
+    public interface ProgressListener {
+        void onProgress(Entry entry, int completed, int total);
+    }
+
+    /**
+     * One requested export, and, after the batch has run, its outcome.
+     */
+    public static final class Entry {
+        private final AudioItem audioItem;
+        private final File targetFile;
+        private final AudioFormat format;
+        private final boolean required;
+        private Entry sharedFrom;
+        private long elapsedMillis;
+        private Exception failure;
+
+        private Entry(AudioItem audioItem, File targetFile, AudioFormat format, boolean required) {
+            this.audioItem = audioItem;
+            this.targetFile = targetFile;
+            this.format = format;
+            this.required = required;
+        }
+
+        public AudioItem getAudioItem() { return audioItem; }
+        public File getTargetFile() { return targetFile; }
+        public AudioFormat getFormat() { return format; }
+        public boolean isRequired() { return required; }
+        /** Time to export (or copy) this entry, in milliseconds. */
+        public long getElapsedMillis() { return elapsedMillis; }
+        /** True if this file was copied from an identical export, rather than exported itself. */
+        public boolean isShared() { return sharedFrom != null; }
+        public Exception getFailure() { return failure; }
+        public boolean isFailed() { return failure != null; }
+    }
+
+    /**
+     * The outcome of running a batch.
+     */
+    public static final class Results {
+        private final List<Entry> entries;
+        private final int exported;
+        private final long elapsedMillis;
+
+        private Results(List<Entry> entries, int exported, long elapsedMillis) {
+            this.entries = entries;
+            this.exported = exported;
+            this.elapsedMillis = elapsedMillis;
+        }
+
+        public List<Entry> getEntries() { return entries; }
+        /** Number of distinct exports performed; the remaining entries were copies. */
+        public int getExportedCount() { return exported; }
+        public long getElapsedMillis() { return elapsedMillis; }
+
+        public List<Entry> getFailures() {
+            List<Entry> failures = new ArrayList<>();
+            for (Entry entry : entries) {
+                if (entry.isFailed()) failures.add(entry);
+            }
+            return failures;
+        }
+
+        /**
+         * Re-throws the failure of the first required entry, if any required entry failed.
+         */
+        public void throwIfRequiredFailed() throws IOException, ConversionException, UnsupportedFormatException {
+            for (Entry entry : entries) {
+                if (entry.isRequired() && entry.isFailed()) {
+                    Exception failure = entry.getFailure();
+                    if (failure instanceof IOException) throw (IOException) failure;
+                    if (failure instanceof ConversionException) throw (ConversionException) failure;
+                    if (failure instanceof UnsupportedFormatException) throw (UnsupportedFormatException) failure;
+                    throw new IOException(failure);
+                }
+            }
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d files, %d exported, %d shared, %d failed, in %d ms",
+                entries.size(), exported, entries.size() - exported, getFailures().size(), elapsedMillis);
+        }
+    }
+
+    private final AudioItemRepository repository;
+    // Keyed by target file, so that the same file is never requested twice.
+    private final Map<File, Entry> entries = new LinkedHashMap<>();
+
+    public BatchExport(AudioItemRepository repository) {
+        this.repository = repository;
+    }
+
+    /**
+     * Adds an export to the batch. Failure is reported in the results, but does not prevent other exports.
+     * @param audioItem The audio item to be exported.
+     * @param targetFile The file to which to export.
+     * @param format The format in which to export.
+     */
+    public void add(AudioItem audioItem, File targetFile, AudioFormat format) {
+        add(audioItem, targetFile, format, false);
+    }
+
+    /**
+     * Adds an export to the batch. Failure of a required export can be re-thrown with
+     * {@link Results#throwIfRequiredFailed()}.
+     * @param audioItem The audio item to be exported.
+     * @param targetFile The file to which to export.
+     * @param format The format in which to export.
+     */
+    public void addRequired(AudioItem audioItem, File targetFile, AudioFormat format) {
+        add(audioItem, targetFile, format, true);
+    }
+
+    private void add(AudioItem audioItem, File targetFile, AudioFormat format, boolean required) {
+        File key = targetFile.getAbsoluteFile();
+        Entry existing = entries.get(key);
+        if (existing == null) {
+            entries.put(key, new Entry(audioItem, targetFile, format, required));
+        } else if (required && !existing.required) {
+            entries.put(key, new Entry(existing.audioItem, existing.targetFile, existing.format, true));
+        }
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Runs all of the exports in the batch, and waits for them to complete.
+     * @param listener Optional listener for progress.
+     * @return the results of the batch.
+     */
+    public Results run(ProgressListener listener) {
+        long startTime = System.currentTimeMillis();
+        List<Entry> allEntries = new ArrayList<>(entries.values());
+        int total = allEntries.size();
+        int completed = 0;
+
+        // One export per (item, format); all other entries for the same item and format share it.
+        Map<String, Entry> primaries = new LinkedHashMap<>();
+        Map<Entry, List<Entry>> sharers = new LinkedHashMap<>();
+        for (Entry entry : allEntries) {
+            String key = entry.audioItem.getId() + '.' + entry.format.getFileExtension();
+            Entry primary = primaries.get(key);
+            if (primary == null) {
+                primaries.put(key, entry);
+                sharers.put(entry, new ArrayList<>());
+            } else {
+                entry.sharedFrom = primary;
+                sharers.get(primary).add(entry);
+            }
+        }
+
+        // Start all of the exports. The repository bounds how many actually run at once.
+        Map<Entry, Future<File>> futures = new LinkedHashMap<>();
+        Map<Entry, Long> startTimes = new LinkedHashMap<>();
+        for (Entry primary : primaries.values()) {
+            startTimes.put(primary, System.currentTimeMillis());
+            futures.put(primary, repository.exportAudioFileWithFormatAsync(primary.audioItem, primary.targetFile, primary.format));
+        }
+
+        // Collect them in submission order, copying each to its sharers as it becomes available.
+        for (Map.Entry<Entry, Future<File>> e : futures.entrySet()) {
+            Entry primary = e.getKey();
+            try {
+                ConversionScheduler.await(e.getValue());
+            } catch (Exception ex) {
+                primary.failure = ex;
+            }
+            // Includes time queued behind other exports; with the workers busy, that is the real cost.
+            primary.elapsedMillis = System.currentTimeMillis() - startTimes.get(primary);
+            notify(listener, primary, ++completed, total);
+
+            for (Entry sharer : sharers.get(primary)) {
+                long copyStart = System.currentTimeMillis();
+                if (primary.isFailed()) {
+                    sharer.failure = primary.failure;
+                } else {
+                    try {
+                        IOUtils.ensureDirectoryExists(sharer.targetFile);
+                        IOUtils.copy(primary.targetFile, sharer.targetFile);
+                    } catch (IOException ex) {
+                        sharer.failure = ex;
+                    }
+                }
+                sharer.elapsedMillis = System.currentTimeMillis() - copyStart;
+                notify(listener, sharer, ++completed, total);
+            }
+        }
+
+        return new Results(Collections.unmodifiableList(allEntries), primaries.size(),
+            System.currentTimeMillis() - startTime);
+    }
+
+    private static void notify(ProgressListener listener, Entry entry, int completed, int total) {
+        if (listener != null) {
+            listener.onProgress(entry, completed, total);
+        }
+    }
+}
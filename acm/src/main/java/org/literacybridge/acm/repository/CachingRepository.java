@@ -69,6 +69,12 @@ class CachingRepository implements FileRepositoryInterface {
         }
     }
 
+    @Override
+    public void recordRead(File file) {
+        // Only the local cache cares; it ignores files that aren't its own.
+        localCacheRepository.recordRead(file);
+    }
+
     /**
      * TODO: add javadoc
      *
@@ -0,0 +1,146 @@
+package org.literacybridge.acm.repository;
+
+import org.literacybridge.acm.audioconverter.api.AudioConversionFormat;
+import org.literacybridge.acm.utils.IOUtils;
+import org.literacybridge.core.fs.ContentHash;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A persistent, content-addressed cache of audio conversion results.
+ * <p>
+ * Entries are keyed by a hash of the source audio, plus the source and target formats and the
+ * converter's parameters (sample rate, A18 algorithm, A18 header). Because the key depends only on
+ * the content, a re-imported item, a prompt shared by several programs, or a repeated deployment
+ * build finds an earlier conversion even though the file lives elsewhere. The cache is shared by
+ * all programs, and lives in ~/Amplio/cache/conversions.
+ * <p>
+ * Entries are stored as conversions/{2 hex digits}/{key}.{ext}. The oldest entries are removed by
+ * a FileSystemGarbageCollector, least recently used first, when the cache exceeds its size.
+ */
+class ConversionCache {
+    static final String CONVERSION_CACHE_DIR_NAME = "conversions";
+    // Bump if the converters change in a way that produces different output.
+    private static final String CACHE_VERSION = "1";
+
+    private final File cacheDir;
+    private final GarbageCollectedFileSystemRepository.FileSystemGarbageCollector garbageCollector;
+
+    // Hashing a source file is cheap compared with converting it, but not free. Remember the hash
+    // of each file, for as long as its size and modification time are unchanged.
+    private final Map<String, SourceHash> sourceHashes = new ConcurrentHashMap<>();
+
+    private static class SourceHash {
+        final long length;
+        final long lastModified;
+        final String hash;
+
+        SourceHash(long length, long lastModified, String hash) {
+            this.length = length;
+            this.lastModified = lastModified;
+            this.hash = hash;
+        }
+    }
+
+    ConversionCache(File cacheDir, long maxSizeInBytes) {
+        this.cacheDir = cacheDir;
+        this.garbageCollector = new GarbageCollectedFileSystemRepository.FileSystemGarbageCollector(cacheDir,
+            maxSizeInBytes, (dir, name) -> !name.startsWith("."));
+    }
+
+    /**
+     * Computes the cache key for converting the given file to the given format.
+     * @param sourceFile The file to be converted.
+     * @param targetFormat The format to which it will be converted.
+     * @return the key.
+     * @throws IOException if the source file can't be read.
+     */
+    String keyFor(File sourceFile, AudioConversionFormat targetFormat) throws IOException {
+        StringBuilder key = new StringBuilder(CACHE_VERSION)
+            .append('|').append(sourceHash(sourceFile))
+            .append('|').append(IOUtils.getFileExtension(sourceFile).toLowerCase())
+            .append('|').append(targetFormat.getFileExtension().toLowerCase());
+        // Sorted, so that the key doesn't depend on the order in which parameters were added.
+        for (Map.Entry<String, String> parameter : new TreeMap<>(targetFormat.getParameters()).entrySet()) {
+            key.append('|').append(parameter.getKey()).append('=').append(parameter.getValue());
+        }
+        return ContentHash.ofString(key.toString());
+    }
+
+    /**
+     * If there is a cached conversion for the key, copy it to the target file.
+     * @param key from keyFor().
+     * @param targetFile to receive the cached conversion.
+     * @return true if the target file was filled from the cache.
+     */
+    boolean fetch(String key, String extension, File targetFile) {
+        File cached = entryFile(key, extension);
+        if (!cached.isFile()) {
+            return false;
+        }
+        try {
+            IOUtils.ensureDirectoryExists(targetFile);
+            IOUtils.copy(cached, targetFile);
+            // Mark the entry as recently used, so that it is collected last.
+            garbageCollector.recordAccessed(cached);
+            return true;
+        } catch (IOException e) {
+            // The entry may have been collected while being copied. Just convert it again.
+            //noinspection ResultOfMethodCallIgnored
+            targetFile.delete();
+            return false;
+        }
+    }
+
+    /**
+     * Adds a converted file to the cache. Failures are ignored; the cache is only an optimization.
+     * @param key from keyFor().
+     * @param convertedFile the result of the conversion.
+     */
+    void store(String key, String extension, File convertedFile) {
+        File cached = entryFile(key, extension);
+        File temp = new File(cached.getParentFile(), "." + cached.getName() + "." + Thread.currentThread().getId());
+        try {
+            IOUtils.ensureDirectoryExists(cached);
+            IOUtils.copy(convertedFile, temp);
+            // Move into place atomically, so that a concurrent fetch never sees a partial file.
+            Files.move(temp.toPath(), cached.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            garbageCollector.recordWritten(cached);
+        } catch (IOException e) {
+            System.out.printf("Unable to cache conversion of %s: %s%n", convertedFile.getName(), e.getMessage());
+            //noinspection ResultOfMethodCallIgnored
+            temp.delete();
+        }
+    }
+
+    /**
+     * Removes the least recently used entries, if the cache has grown too large.
+     */
+    void gc() throws IOException {
+        if (cacheDir.isDirectory()) {
+            garbageCollector.gc();
+        }
+    }
+
+    private File entryFile(String key, String extension) {
+        return new File(new File(cacheDir, key.substring(0, 2)), key + '.' + extension);
+    }
+
+    private String sourceHash(File sourceFile) throws IOException {
+        String path = sourceFile.getAbsolutePath();
+        long length = sourceFile.length();
+        long lastModified = sourceFile.lastModified();
+        SourceHash known = sourceHashes.get(path);
+        if (known == null || known.length != length || known.lastModified != lastModified) {
+            known = new SourceHash(length, lastModified, ContentHash.of(sourceFile));
+            sourceHashes.put(path, known);
+        }
+        return known.hash;
+    }
+}
@@ -0,0 +1,244 @@
+package org.literacybridge.acm.repository;
+
+import org.literacybridge.acm.audioconverter.converters.BaseAudioConverter.ConversionException;
+import org.literacybridge.acm.repository.AudioItemRepository.UnsupportedFormatException;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Schedules audio conversions for the AudioItemRepositoryImpl.
+ * <p>
+ * Replaces the single repository-wide monitor with:
+ * <ul>
+ *     <li>a lock per audio item (or per target file, for files outside the repository), so that
+ *     conversions of different items never block one another,</li>
+ *     <li>a bounded pool of worker threads, sized to the number of cores, for asynchronous
+ *     conversions and exports, and</li>
+ *     <li>de-duplication of in-flight requests, so that two callers asking for the same item in
+ *     the same format share one conversion.</li>
+ * </ul>
+ * A synchronous caller that finds its request already queued, but not yet started, runs it on its
+ * own thread rather than waiting for a worker. That keeps a synchronous request made from within a
+ * worker (an export that needs a conversion) from starving the pool.
+ */
+class ConversionScheduler {
+    private static final int NUM_WORKERS = Math.max(1, Runtime.getRuntime().availableProcessors());
+
+    // The locks currently held, or waited for, by key. An entry is removed when its last user
+    // unlocks it, so the map holds only the keys in use. Guarded by itself.
+    private final Map<String, KeyLock> locks = new HashMap<>();
+    private final ConcurrentHashMap<String, Conversion> inFlight = new ConcurrentHashMap<>();
+    private final ExecutorService workers;
+
+    ConversionScheduler() {
+        this(NUM_WORKERS);
+    }
+
+    ConversionScheduler(int numWorkers) {
+        AtomicInteger threadNumber = new AtomicInteger();
+        ThreadFactory threadFactory = r -> {
+            Thread thread = new Thread(r, "audio-conversion-" + threadNumber.incrementAndGet());
+            // Never keep the application alive just for a pending conversion.
+            thread.setDaemon(true);
+            return thread;
+        };
+        workers = Executors.newFixedThreadPool(numWorkers, threadFactory);
+    }
+
+    /**
+     * Gets the lock for the given key. The locks are re-entrant, so work done under a lock may call
+     * other work for the same key.
+     * @param key An audio item id, or the absolute path of a file.
+     * @return the lock.
+     */
+    LockHandle lockFor(String key) {
+        return new LockHandle(key);
+    }
+
+    /**
+     * @return the number of keys with a lock currently held or waited for.
+     */
+    int lockCount() {
+        synchronized (locks) {
+            return locks.size();
+        }
+    }
+
+    /**
+     * Registers a user of the lock for a key, creating the lock if there are no other users.
+     */
+    private ReentrantLock acquireKeyLock(String key) {
+        synchronized (locks) {
+            KeyLock keyLock = locks.computeIfAbsent(key, k -> new KeyLock());
+            keyLock.users++;
+            return keyLock.lock;
+        }
+    }
+
+    /**
+     * Un-registers a user of the lock for a key, forgetting the lock if that was the last user.
+     */
+    private void releaseKeyLock(String key) {
+        synchronized (locks) {
+            KeyLock keyLock = locks.get(key);
+            if (--keyLock.users == 0) {
+                locks.remove(key);
+            }
+        }
+    }
+
+    private static final class KeyLock {
+        private final ReentrantLock lock = new ReentrantLock();
+        // Holds, and waits for holds, of the lock; a re-entrant hold counts again.
+        private int users = 0;
+    }
+
+    /**
+     * The lock for a key, as given to callers. Each lock() registers a user of the key's lock, and
+     * each unlock(), or close(), un-registers one.
+     */
+    final class LockHandle implements AutoCloseable {
+        private final String key;
+
+        private LockHandle(String key) {
+            this.key = key;
+        }
+
+        void lock() {
+            acquireKeyLock(key).lock();
+        }
+
+        void unlock() {
+            ReentrantLock lock;
+            synchronized (locks) {
+                KeyLock keyLock = locks.get(key);
+                if (keyLock == null) {
+                    throw new IllegalMonitorStateException("Lock for " + key + " is not held.");
+                }
+                lock = keyLock.lock;
+            }
+            lock.unlock();
+            releaseKeyLock(key);
+        }
+
+        @Override
+        public void close() {
+            unlock();
+        }
+    }
+
+    /**
+     * Submits a conversion to the worker pool. If the same conversion is already pending or running,
+     * the existing Future is returned instead.
+     * @param key Identifies the conversion, like "{item id}.{extension}".
+     * @param work Produces the converted file.
+     * @return a Future for the converted file.
+     */
+    Future<File> submit(String key, Callable<File> work) {
+        Conversion conversion = new Conversion(key, work);
+        Conversion existing = register(conversion);
+        if (existing != null) {
+            return existing;
+        }
+        workers.execute(conversion);
+        return conversion;
+    }
+
+    /**
+     * Performs a conversion on the calling thread, unless the same conversion is already running, in
+     * which case waits for that conversion to finish.
+     * @param key Identifies the conversion, like "{item id}.{extension}".
+     * @param work Produces the converted file.
+     * @return the converted file.
+     */
+    File run(String key, Callable<File> work)
+        throws ConversionException, UnsupportedFormatException, IOException
+    {
+        Conversion conversion = new Conversion(key, work);
+        Conversion existing = register(conversion);
+        if (existing != null) {
+            conversion = existing;
+        }
+        // If the conversion is still waiting for a worker, this runs it now. If it is already
+        // running, or has completed, this does nothing.
+        conversion.run();
+        return await(conversion);
+    }
+
+    /**
+     * Submits arbitrary work to the worker pool, without any de-duplication.
+     * @param work to be performed.
+     * @return a Future for the result.
+     */
+    <T> Future<T> execute(Callable<T> work) {
+        return workers.submit(work);
+    }
+
+    /**
+     * Waits for a conversion to complete, and unwraps any failure into the exceptions that the
+     * synchronous repository methods have always thrown.
+     * @param future of the conversion.
+     * @return the converted file.
+     */
+    static <T> T await(Future<T> future)
+        throws ConversionException, UnsupportedFormatException, IOException
+    {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ConversionException("Interrupted while waiting for conversion.", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof ConversionException) {
+                throw (ConversionException) cause;
+            } else if (cause instanceof UnsupportedFormatException) {
+                throw (UnsupportedFormatException) cause;
+            } else if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new ConversionException("Conversion failed.", cause);
+        }
+    }
+
+    /**
+     * Registers a conversion as the in-flight conversion for its key.
+     * @return the already in-flight conversion, if there is one, otherwise null.
+     */
+    private Conversion register(Conversion conversion) {
+        return inFlight.putIfAbsent(conversion.key, conversion);
+    }
+
+    /**
+     * A conversion that forgets itself, once complete, so that a later request will look at the
+     * file system afresh.
+     */
+    private final class Conversion extends FutureTask<File> {
+        private final String key;
+
+        Conversion(String key, Callable<File> work) {
+            super(work);
+            this.key = key;
+        }
+
+        @Override
+        protected void done() {
+            inFlight.remove(key, this);
+        }
+    }
+}
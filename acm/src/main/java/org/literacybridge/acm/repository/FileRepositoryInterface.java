@@ -18,6 +18,12 @@ interface FileRepositoryInterface {
      */
     File resolveFile(AudioItem audioItem, AudioItemRepository.AudioFormat format, boolean writeAccess);
 
+    /**
+     * Notes that a file from resolveFile() is actually being read, not just checked for existence.
+     * @param file The file being read.
+     */
+    default void recordRead(File file) { }
+
     /**
      * Gets a list of all the audio item files in the repository.
      * @return List of IDs.
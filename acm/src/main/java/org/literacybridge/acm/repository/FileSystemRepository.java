@@ -45,7 +45,7 @@ class FileSystemRepository implements FileRepositoryInterface {
      * @param id The id of the audio item for which to construct the path to the containing directory.
      * @return A File representing the containing directory.
      */
-    private File resolveDirectory(String id) {
+    File resolveDirectory(String id) {
         // TODO: For now we just use the unique ID of the audio item; in the future,
         // we might want to use
         // a different way to construct the path
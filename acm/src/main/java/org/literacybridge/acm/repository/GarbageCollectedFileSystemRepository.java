@@ -1,19 +1,29 @@
 package org.literacybridge.acm.repository;
 
-import com.google.common.collect.Lists;
-import org.apache.commons.lang3.mutable.MutableLong;
 import org.literacybridge.acm.config.ACMConfiguration;
 import org.literacybridge.acm.gui.Application;
 import org.literacybridge.acm.gui.BackgroundTaskManager;
 import org.literacybridge.acm.store.AudioItem;
 import org.literacybridge.acm.utils.IOUtils;
 
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
 import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
 import java.io.FilenameFilter;
 import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.function.Predicate;
 
@@ -26,10 +36,39 @@ public class GarbageCollectedFileSystemRepository extends FileSystemRepository {
         String wavExt = "." + AudioItemRepository.AudioFormat.WAV.getFileExtension();
 
         this.garbageCollector = new FileSystemGarbageCollector(
+            baseDir,
             cacheSizeInBytes,
             (file, name) -> name.toLowerCase().endsWith(wavExt));
     }
 
+    /**
+     * Resolves the file as FileSystemRepository does, and tells the garbage collector if the file
+     * may be about to be written. Resolving a file only to see if it exists is not a use of it;
+     * see recordRead().
+     */
+    @Override
+    public File resolveFile(AudioItem audioItem, AudioItemRepository.AudioFormat format, boolean writeAccess) {
+        File file = super.resolveFile(audioItem, format, writeAccess);
+        if (writeAccess) {
+            garbageCollector.recordWriting(file);
+        }
+        return file;
+    }
+
+    /**
+     * Tells the garbage collector that the file is being used, making it the last to be collected.
+     */
+    @Override
+    public void recordRead(File file) {
+        garbageCollector.recordAccessed(file);
+    }
+
+    @Override
+    public void delete(String id) {
+        super.delete(id);
+        garbageCollector.recordDeleted(resolveDirectory(id));
+    }
+
     public synchronized void setupWavCaching(Predicate<Long> gcQuery) throws IOException {
         if (caching == null) {
             caching = new WavFilePreCaching();
@@ -56,12 +95,12 @@ public class GarbageCollectedFileSystemRepository extends FileSystemRepository {
             return new FileSystemGarbageCollector.GCInfo(false, 0, 0);
         }
 
-        return garbageCollector.getGcInfo(baseDir);
+        return garbageCollector.getGcInfo();
     }
 
     public void gc() throws IOException {
         if (garbageCollector != null) {
-            garbageCollector.gc(baseDir);
+            garbageCollector.gc();
         }
     }
 
@@ -147,61 +186,279 @@ public class GarbageCollectedFileSystemRepository extends FileSystemRepository {
 
     /**
      * A helper to remove old .wav files to free up disk space.
+     * <p>
+     * Keeps a persistent index of the collectable files in the repository, with each file's size and
+     * the time it was last used. The index is updated as files are written, used, and deleted, so
+     * the size of the repository is known without walking it, and the least recently used files can
+     * be removed first. The repository is only walked if there is no index yet.
      */
     static class FileSystemGarbageCollector {
+        static final String INDEX_FILE_NAME = ".gc-index";
+        private static final String INDEX_HEADER = "# gc-index v1";
+        // Persist the index after this many changes, even without a gc.
+        private static final int CHANGES_PER_FLUSH = 100;
+
+        // The collector for each repository, flushed by a single shutdown hook. A newer collector
+        // for the same repository replaces the older one. Guarded by itself.
+        private static final Map<File, FileSystemGarbageCollector> collectors = new LinkedHashMap<>();
+        private static Thread shutdownHook = null;
+
+        private final File repositoryRoot;
         private final long maxSizeInBytes;
         private final FilenameFilter filesToDelete;
+        private final File indexFile;
+
+        // Relative path -> entry. Null until first needed.
+        private Map<String, IndexEntry> index = null;
+        // Files handed out for writing, which may or may not exist yet.
+        private final Set<File> pendingWrites = new HashSet<>();
+        private long currentSizeInBytes = 0;
+        private int unflushedChanges = 0;
+
+        private static final class IndexEntry {
+            long sizeInBytes;
+            long lastAccess;
+
+            IndexEntry(long sizeInBytes, long lastAccess) {
+                this.sizeInBytes = sizeInBytes;
+                this.lastAccess = lastAccess;
+            }
+        }
 
-        FileSystemGarbageCollector(long maxSizeInBytes, FilenameFilter filesToDelete) {
+        FileSystemGarbageCollector(File repositoryRoot, long maxSizeInBytes, FilenameFilter filesToDelete) {
+            this.repositoryRoot = repositoryRoot.getAbsoluteFile();
             this.maxSizeInBytes = maxSizeInBytes;
             this.filesToDelete = filesToDelete;
+            this.indexFile = new File(this.repositoryRoot, INDEX_FILE_NAME);
+            register(this);
         }
 
-        private long calculateCurrentSizeInBytes(File repositoryRoot) throws IOException
-        {
-            final MutableLong sizeInBytes = new MutableLong();
-            IOUtils.visitFiles(repositoryRoot, filesToDelete, file -> {
-                sizeInBytes.add(file.length());
-                return true;
-            });
-            return sizeInBytes.longValue();
+        /**
+         * Remembers the collector, to flush its index at shutdown, so that recent usage isn't lost
+         * just because no gc happened in this session.
+         */
+        private static void register(FileSystemGarbageCollector collector) {
+            FileSystemGarbageCollector previous;
+            synchronized (collectors) {
+                if (shutdownHook == null) {
+                    shutdownHook = new Thread(FileSystemGarbageCollector::flushAll, "gc-index-flush");
+                    Runtime.getRuntime().addShutdownHook(shutdownHook);
+                }
+                previous = collectors.put(collector.repositoryRoot, collector);
+            }
+            if (previous != null) {
+                // Save what it knows before the new collector reads the index.
+                previous.flushQuietly();
+            }
         }
 
-        GCInfo getGcInfo(File repositoryRoot) throws IOException {
-            long currentSize = calculateCurrentSizeInBytes(repositoryRoot);
-            return new GCInfo(currentSize > maxSizeInBytes,
-                currentSize,
-                maxSizeInBytes);
+        private static void flushAll() {
+            List<FileSystemGarbageCollector> toFlush;
+            synchronized (collectors) {
+                toFlush = new ArrayList<>(collectors.values());
+            }
+            toFlush.forEach(FileSystemGarbageCollector::flushQuietly);
+        }
+
+        private boolean isCollectable(File file) {
+            return file.getAbsoluteFile().toPath().startsWith(repositoryRoot.toPath())
+                && filesToDelete.accept(file.getParentFile(), file.getName());
+        }
+
+        private String relativePath(File file) {
+            return repositoryRoot.toPath().relativize(file.getAbsoluteFile().toPath()).toString();
         }
 
-        void gc(File repositoryRoot) throws IOException {
-            GCInfo gcInfo = getGcInfo(repositoryRoot);
-            long sizeInBytes = gcInfo.getCurrentSizeInBytes();
+        /**
+         * Notes that a file may be about to be written. Its size is recorded at the next gc, or
+         * when it is next used.
+         * @param file that may be written.
+         */
+        synchronized void recordWriting(File file) {
+            if (isCollectable(file)) {
+                pendingWrites.add(file.getAbsoluteFile());
+            }
+        }
 
-            if (gcInfo.isGcRecommended()) {
-                // Get a filtered list of files in the repository subject to collection.
-                final List<File> allFiles = Lists.newArrayList();
-                IOUtils.visitFiles(repositoryRoot, filesToDelete, file -> {
-                    allFiles.add(file);
-                    return true;
-                });
-                // Sort by oldest to newest.
-                allFiles.sort((f1, f2) -> Long.compare(f1.lastModified(), f2.lastModified()));
+        /**
+         * Notes that a file has been written or replaced.
+         * @param file that was written.
+         */
+        synchronized void recordWritten(File file) {
+            if (isCollectable(file)) {
+                pendingWrites.remove(file.getAbsoluteFile());
+                update(file);
+            }
+        }
+
+        /**
+         * Notes that a file was used, making it the most recently used file.
+         * @param file that was used.
+         */
+        synchronized void recordAccessed(File file) {
+            if (isCollectable(file) && file.exists()) {
+                update(file);
+            }
+        }
+
+        /**
+         * Notes that a file, or a directory and everything in it, was deleted.
+         * @param file or directory that was deleted.
+         */
+        synchronized void recordDeleted(File file) {
+            Map<String, IndexEntry> index = getIndex();
+            File deleted = file.getAbsoluteFile();
+            String path = relativePath(deleted);
+            String prefix = path + File.separator;
+            Iterator<Map.Entry<String, IndexEntry>> it = index.entrySet().iterator();
+            while (it.hasNext()) {
+                Map.Entry<String, IndexEntry> entry = it.next();
+                if (entry.getKey().equals(path) || entry.getKey().startsWith(prefix)) {
+                    currentSizeInBytes -= entry.getValue().sizeInBytes;
+                    it.remove();
+                    unflushedChanges++;
+                }
+            }
+            pendingWrites.removeIf(f -> f.toPath().startsWith(deleted.toPath()));
+        }
+
+        synchronized GCInfo getGcInfo() {
+            // The size is only known once the index is loaded.
+            getIndex();
+            reconcilePendingWrites();
+            flushQuietly();
+            return new GCInfo(currentSizeInBytes > maxSizeInBytes,
+                currentSizeInBytes,
+                maxSizeInBytes);
+        }
+
+        synchronized void gc() throws IOException {
+            getIndex();
+            reconcilePendingWrites();
+            if (currentSizeInBytes > maxSizeInBytes) {
+                // Least recently used first.
+                List<Map.Entry<String, IndexEntry>> entries = new ArrayList<>(getIndex().entrySet());
+                entries.sort(Comparator.comparingLong(e -> e.getValue().lastAccess));
 
                 // Delete the oldest files until we've freed enough. Do not delete the most recent
                 // file (though the next-most-recent may be from the same operation at the same time?)
-                for (int i = 0; i < allFiles.size() - 1; i++) {
-                    File file = allFiles.get(i);
-                    long size = file.length();
-                    if (file.delete()) {
-                        sizeInBytes -= size;
-                        if (sizeInBytes <= maxSizeInBytes) {
-                            break;
-                        }
+                for (int i = 0; i < entries.size() - 1 && currentSizeInBytes > maxSizeInBytes; i++) {
+                    Map.Entry<String, IndexEntry> entry = entries.get(i);
+                    File file = new File(repositoryRoot, entry.getKey());
+                    // A file that is already gone only needs to be removed from the index.
+                    if (file.delete() || !file.exists()) {
+                        currentSizeInBytes -= entry.getValue().sizeInBytes;
+                        index.remove(entry.getKey());
+                        unflushedChanges++;
                     }
+                }
+            }
+            flush();
+        }
 
+        private void update(File file) {
+            Map<String, IndexEntry> index = getIndex();
+            String path = relativePath(file);
+            IndexEntry entry = index.get(path);
+            long size = file.length();
+            if (entry == null) {
+                index.put(path, new IndexEntry(size, System.currentTimeMillis()));
+            } else {
+                currentSizeInBytes -= entry.sizeInBytes;
+                entry.sizeInBytes = size;
+                entry.lastAccess = System.currentTimeMillis();
+            }
+            currentSizeInBytes += size;
+            if (++unflushedChanges >= CHANGES_PER_FLUSH) {
+                flushQuietly();
+            }
+        }
+
+        private void reconcilePendingWrites() {
+            for (File file : pendingWrites) {
+                if (file.exists()) {
+                    update(file);
+                }
+            }
+            pendingWrites.clear();
+        }
+
+        /**
+         * Gets the index, loading it from disk, or building it by walking the repository if
+         * there is no saved index.
+         */
+        private Map<String, IndexEntry> getIndex() {
+            if (index == null) {
+                index = new HashMap<>();
+                currentSizeInBytes = 0;
+                if (!loadIndex()) {
+                    index.clear();
+                    currentSizeInBytes = 0;
+                    buildIndex();
                 }
             }
+            return index;
+        }
+
+        private boolean loadIndex() {
+            if (!indexFile.isFile()) {
+                return false;
+            }
+            try (BufferedReader reader = new BufferedReader(new FileReader(indexFile))) {
+                if (!INDEX_HEADER.equals(reader.readLine())) {
+                    return false;
+                }
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    // lastAccess \t size \t relative path
+                    String[] parts = line.split("\t", 3);
+                    if (parts.length != 3) {
+                        return false;
+                    }
+                    long size = Long.parseLong(parts[1]);
+                    index.put(parts[2], new IndexEntry(size, Long.parseLong(parts[0])));
+                    currentSizeInBytes += size;
+                }
+                return true;
+            } catch (IOException | NumberFormatException e) {
+                return false;
+            }
+        }
+
+        private void buildIndex() {
+            if (!repositoryRoot.isDirectory()) {
+                return;
+            }
+            // Without any better information, the modification time is the last use.
+            IOUtils.visitFiles(repositoryRoot, filesToDelete, file -> {
+                index.put(relativePath(file), new IndexEntry(file.length(), file.lastModified()));
+                currentSizeInBytes += file.length();
+                return true;
+            });
+            unflushedChanges++;
+        }
+
+        private void flush() throws IOException {
+            if (index == null || unflushedChanges == 0 || !repositoryRoot.isDirectory()) {
+                return;
+            }
+            File tempFile = new File(repositoryRoot, INDEX_FILE_NAME + ".tmp");
+            try (PrintWriter writer = new PrintWriter(new BufferedWriter(new FileWriter(tempFile)))) {
+                writer.println(INDEX_HEADER);
+                for (Map.Entry<String, IndexEntry> entry : index.entrySet()) {
+                    writer.printf("%d\t%d\t%s%n", entry.getValue().lastAccess, entry.getValue().sizeInBytes, entry.getKey());
+                }
+            }
+            Files.move(tempFile.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            unflushedChanges = 0;
+        }
+
+        private synchronized void flushQuietly() {
+            try {
+                flush();
+            } catch (IOException e) {
+                // The index will be rebuilt if it is lost; nothing else to do.
+            }
         }
 
         public static final class GCInfo {
@@ -102,11 +102,11 @@ public class Sandbox {
      *
      * @return true if there are changes to be applied, false otherwise.
      */
-    public boolean hasChanges() {
+    public synchronized boolean hasChanges() {
         return workQueue.size() > 0;
     }
 
-    public void discard() {
+    public synchronized void discard() {
         workQueue.clear();
         FileUtils.deleteQuietly(this.shadowDir);
     }
@@ -121,7 +121,7 @@ public class Sandbox {
      * @param writtenFileHandler callback for each file added or updated.
      * @param removedFileHandler callback for each file removed.
      */
-    public void commit(Consumer<File> writtenFileHandler, Consumer<File> removedFileHandler) {
+    public synchronized void commit(Consumer<File> writtenFileHandler, Consumer<File> removedFileHandler) {
         System.out.printf("\nCommitting %d items:\n", workQueue.size());
         for (Map.Entry<Path, FileOp> e : workQueue.entrySet()) {
             if (e.getValue() instanceof DeleteOp) {
@@ -183,7 +183,7 @@ public class Sandbox {
         return exists(file.toPath());
     }
 
-    public boolean exists(Path path) {
+    public synchronized boolean exists(Path path) {
         ensureValidPath(path);
         Path relativePath = path.isAbsolute() ? baseDir.toPath().relativize(path) : path;
         // If there is a shadow file, the file will continue to exist.
@@ -219,7 +219,7 @@ public class Sandbox {
      *
      * @param path Path, relative to persistantDir, to be deleted.
      */
-    public void delete(Path path, Options... options) {
+    public synchronized void delete(Path path, Options... options) {
         ensureValidPath(path);
         Set<Options> opts = new HashSet<>(Arrays.asList(options));
         Path relativePath = path.isAbsolute() ? baseDir.toPath().relativize(path) : path;
@@ -240,7 +240,7 @@ public class Sandbox {
      * @return a collection of the paths of the files in the directory, relative to
      * the sandbox.
      */
-    public Collection<Path> listPaths(Path path) {
+    public synchronized Collection<Path> listPaths(Path path) {
         Set<Path> result = new HashSet<>();
         ensureValidPath(path);
         // The path for which caller wants the children, relative to the base path being sandboxed.
@@ -304,7 +304,7 @@ public class Sandbox {
      * @param path for which an input file is desired.
      * @return the file
      */
-    public File inputFile(Path path) {
+    public synchronized File inputFile(Path path) {
         ensureValidPath(path);
         Path relativePath = path.isAbsolute() ? baseDir.toPath().relativize(path) : path;
         // If there's a shadow file, return it.
@@ -336,7 +336,7 @@ public class Sandbox {
     public FileInputStream fileInputStream(File file) throws
                                                       FileNotFoundException { return fileInputStream(file.toPath()); }
 
-    public FileInputStream fileInputStream(Path path) throws FileNotFoundException {
+    public synchronized FileInputStream fileInputStream(Path path) throws FileNotFoundException {
         ensureValidPath(path);
         Path relativePath = path.isAbsolute() ? baseDir.toPath().relativize(path) : path;
         // If there's a shadow file, return it.
@@ -374,7 +374,7 @@ public class Sandbox {
         return outputFile(path, false);
     }
 
-    public File outputFile(Path path, boolean noTrack) {
+    public synchronized File outputFile(Path path, boolean noTrack) {
         ensureValidPath(path);
         Path relativePath = path.isAbsolute() ? baseDir.toPath().relativize(path) : path;
         Path shadowedPath = shadowData.toPath().resolve(relativePath);
@@ -418,7 +418,7 @@ public class Sandbox {
             false);
     }
 
-    public FileOutputStream fileOutputStream(Path path, boolean append) throws FileNotFoundException {
+    public synchronized FileOutputStream fileOutputStream(Path path, boolean append) throws FileNotFoundException {
         ensureValidPath(path);
         Path relativePath = path.isAbsolute() ? baseDir.toPath().relativize(path) : path;
 
@@ -445,7 +445,7 @@ public class Sandbox {
         return moveFile(from.toPath(), to.toPath());
     }
 
-    public boolean moveFile(Path from, Path to) {
+    public synchronized boolean moveFile(Path from, Path to) {
         boolean result = false;
         ensureValidPath(to);
         Path relativeToPath = to.isAbsolute() ? baseDir.toPath().relativize(to) : to;
@@ -511,7 +511,7 @@ public class Sandbox {
     public boolean moveDirectory(File from, File to) throws FileNotFoundException {
         return moveDirectory(from.toPath(), to.toPath());
     }
-    public boolean moveDirectory(Path from, Path to) throws FileNotFoundException {
+    public synchronized boolean moveDirectory(Path from, Path to) throws FileNotFoundException {
         if (!isDirectory(from)) {
             throw new NotASandboxedDirectory(from);
         }
@@ -12,14 +12,31 @@ import com.google.common.collect.Sets;
 /**
  * An AudioItem is a unique audio entity, identified by its audioItemID. It is
  * optionally associated with one or more categories and one ore more playlist.
+ *
+ * An AudioItem loaded from the index may be "lazy": it knows its id, categories, title, language
+ * and duration, but its full metadata is only read from the index the first time it is needed.
  */
 public class AudioItem extends Committable {
+  /**
+   * Reads an audio item's full metadata from the index.
+   */
+  interface MetadataLoader {
+    void load(String id, Metadata metadata) throws IOException;
+  }
+
   private final String id;
   private final Metadata metadata;
 
   private final Map<String, Category> categories;
   private final Map<String, Playlist> playlists;
 
+  // Non-null until the full metadata has been loaded.
+  private MetadataLoader metadataLoader;
+  // Hot fields of a lazy item, available without loading the metadata.
+  private String title;
+  private String languageCode;
+  private String duration;
+
   AudioItem(String id) {
     this.id = id;
     this.metadata = new Metadata();
@@ -27,14 +44,52 @@ public class AudioItem extends Committable {
     this.playlists = Maps.newHashMap();
   }
 
+  /**
+   * Creates a lazy audio item.
+   */
+  AudioItem(String id, MetadataLoader metadataLoader, String title, String languageCode, String duration) {
+    this(id);
+    this.metadataLoader = metadataLoader;
+    this.title = title;
+    this.languageCode = languageCode;
+    this.duration = duration;
+  }
+
   public final String getId() {
     return id;
   }
 
   public final Metadata getMetadata() {
+    ensureMetadataLoaded();
     return this.metadata;
   }
 
+  private synchronized void ensureMetadataLoaded() {
+    if (metadataLoader != null) {
+      try {
+        metadataLoader.load(id, metadata);
+      } catch (IOException e) {
+        throw new RuntimeException("Unable to load metadata for audio item " + id, e);
+      }
+      metadataLoaded();
+    }
+  }
+
+  /**
+   * Called when the full metadata has been loaded (or re-loaded), after which the hot fields are
+   * no longer used.
+   */
+  final synchronized void metadataLoaded() {
+    metadataLoader = null;
+    title = null;
+    languageCode = null;
+    duration = null;
+  }
+
+  private synchronized boolean isLazy() {
+    return metadataLoader != null;
+  }
+
   public final void addCategory(Category category) {
     if (hasCategory(category)) {
       return;
@@ -139,7 +194,7 @@ public class AudioItem extends Committable {
       t.getIndex().deleteAudioItem(id, t);
       return false;
     } else {
-      return t.getIndex().updateAudioItem(this, t.getWriter());
+      return t.getIndex().updateAudioItem(this, t);
     }
   }
 
@@ -147,22 +202,28 @@ public class AudioItem extends Committable {
   public void doRollback(Transaction t) throws IOException {
     categories.clear();
     playlists.clear();
+    metadataLoaded();
     metadata.clear();
-    t.getIndex().refresh(this);
+    t.getIndex().revert(this);
   }
 
   // Convenience functions. Rational getters for the ridiculously over-engineered metadata values.
+  // A lazy item answers these from its hot fields.
   public String getLanguageCode() {
+      if (isLazy() && languageCode != null) return languageCode;
+      Metadata metadata = getMetadata();
       if (!metadata.containsField(MetadataSpecification.DC_LANGUAGE)) return null;
       return metadata.getMetadataValue(MetadataSpecification.DC_LANGUAGE).toString();
   }
 
   public String getTitle() {
-      return metadata.getMetadataValue(MetadataSpecification.DC_TITLE).getValue();
+      if (isLazy() && title != null) return title;
+      return getMetadata().getMetadataValue(MetadataSpecification.DC_TITLE).getValue();
   }
 
   public String getDuration() {
-	    return metadata.getMetadataValue(MetadataSpecification.LB_DURATION).getValue().trim();
+      if (isLazy() && duration != null) return duration.trim();
+	    return getMetadata().getMetadataValue(MetadataSpecification.LB_DURATION).getValue().trim();
 	}
 
   /**
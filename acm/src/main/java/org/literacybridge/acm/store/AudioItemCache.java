@@ -0,0 +1,256 @@
+package org.literacybridge.acm.store;
+
+import java.io.IOException;
+import java.lang.ref.SoftReference;
+import java.util.AbstractCollection;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The AudioItems of a LuceneMetadataStore, safe to use from any thread.
+ * <p>
+ * The most recently used items, up to a configurable number, are held strongly. Items beyond
+ * that are held only by soft references, so the garbage collector may reclaim the cold ones when
+ * memory is short. An item that has been reclaimed is loaded again from the index when next
+ * asked for. As an item in use by anything else is still strongly reachable, it is never
+ * reclaimed, so callers always see the same instance of an item.
+ * <p>
+ * The ids of all of the items are always known, so getAudioItems() lists every item, whether or
+ * not it is currently cached.
+ */
+class AudioItemCache {
+    /**
+     * Loads an item that is not in the cache.
+     */
+    interface Loader {
+        AudioItem load(String uid) throws IOException;
+    }
+
+    /**
+     * A snapshot of the cache counters.
+     */
+    static class Stats {
+        final long hits;
+        final long misses;
+        final long evictions;
+        final int size;
+        final int hotSize;
+
+        Stats(long hits, long misses, long evictions, int size, int hotSize) {
+            this.hits = hits;
+            this.misses = misses;
+            this.evictions = evictions;
+            this.size = size;
+            this.hotSize = hotSize;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d items, %d held, %d hits, %d misses, %d evictions",
+                size, hotSize, hits, misses, evictions);
+        }
+    }
+
+    private final int maxHotItems;
+    private final Loader loader;
+
+    // Every known item, by id. Cold items may have been reclaimed, leaving a cleared reference.
+    private final Map<String, SoftReference<AudioItem>> items = new ConcurrentHashMap<>();
+    // The most recently used items, held strongly. Guarded by itself.
+    private final LinkedHashMap<String, AudioItem> hotItems;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * @param maxHotItems The most items to hold strongly.
+     * @param loader Loads items not in the cache.
+     */
+    AudioItemCache(int maxHotItems, Loader loader) {
+        this.maxHotItems = Math.max(1, maxHotItems);
+        this.loader = loader;
+        this.hotItems = new LinkedHashMap<String, AudioItem>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, AudioItem> eldest) {
+                if (size() > AudioItemCache.this.maxHotItems) {
+                    evictions.incrementAndGet();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Adds or replaces an item.
+     */
+    void put(AudioItem audioItem) {
+        items.put(audioItem.getId(), newReference(audioItem));
+        touch(audioItem);
+    }
+
+    /**
+     * Creates the reference by which a cold item is held. Tests may override this, to clear
+     * references as the garbage collector would.
+     */
+    SoftReference<AudioItem> newReference(AudioItem audioItem) {
+        return new SoftReference<>(audioItem);
+    }
+
+    /**
+     * Removes an item, as when it has been deleted.
+     */
+    void remove(String uid) {
+        items.remove(uid);
+        synchronized (hotItems) {
+            hotItems.remove(uid);
+        }
+    }
+
+    /**
+     * Gets an item, loading it from the index if it has been evicted.
+     * @param uid The id of the item.
+     * @return the item, or null if there is no such item.
+     */
+    AudioItem get(String uid) {
+        return get(uid, true);
+    }
+
+    /**
+     * Gets an item, loading it from the index if it has been evicted.
+     * @param uid The id of the item.
+     * @param use If true, the item is being used, and becomes the most recently used item.
+     * @return the item, or null if there is no such item.
+     */
+    private AudioItem get(String uid, boolean use) {
+        SoftReference<AudioItem> ref = items.get(uid);
+        if (ref == null) {
+            return null;
+        }
+        AudioItem audioItem = ref.get();
+        if (audioItem != null) {
+            if (use) {
+                hits.incrementAndGet();
+                touch(audioItem);
+            }
+            return audioItem;
+        }
+        misses.incrementAndGet();
+        AudioItem loaded;
+        try {
+            loaded = loader.load(uid);
+        } catch (IOException e) {
+            throw new RuntimeException("Unable to load audio item " + uid, e);
+        }
+        if (loaded == null) {
+            items.remove(uid, ref);
+            return null;
+        }
+        // If another thread loaded it meanwhile, use that instance, so there is only ever one.
+        SoftReference<AudioItem> loadedRef = newReference(loaded);
+        while (true) {
+            SoftReference<AudioItem> current = items.get(uid);
+            if (current == null) {
+                // Removed while loading.
+                return null;
+            }
+            audioItem = current.get();
+            if (audioItem != null) {
+                break;
+            }
+            if (items.replace(uid, current, loadedRef)) {
+                audioItem = loaded;
+                break;
+            }
+        }
+        if (use) {
+            touch(audioItem);
+        }
+        return audioItem;
+    }
+
+    boolean contains(String uid) {
+        return items.containsKey(uid);
+    }
+
+    int size() {
+        return items.size();
+    }
+
+    private void touch(AudioItem audioItem) {
+        synchronized (hotItems) {
+            // Unless it has been removed, or replaced, meanwhile. remove() takes this lock after
+            // removing the item, so it can't be re-added here once removed.
+            SoftReference<AudioItem> ref = items.get(audioItem.getId());
+            if (ref != null && ref.get() == audioItem) {
+                hotItems.put(audioItem.getId(), audioItem);
+            }
+        }
+    }
+
+    /**
+     * @return a live view of all of the items. Iterating it loads any evicted items, and does not
+     * fail if items are added or removed meanwhile. Iterating doesn't count as using the items, so
+     * it doesn't displace the most recently used items.
+     */
+    Collection<AudioItem> values() {
+        return new AbstractCollection<AudioItem>() {
+            @Override
+            public Iterator<AudioItem> iterator() {
+                Iterator<String> ids = items.keySet().iterator();
+                return new Iterator<AudioItem>() {
+                    AudioItem next = advance();
+
+                    private AudioItem advance() {
+                        while (ids.hasNext()) {
+                            AudioItem audioItem = get(ids.next(), false);
+                            if (audioItem != null) {
+                                return audioItem;
+                            }
+                        }
+                        return null;
+                    }
+
+                    @Override
+                    public boolean hasNext() {
+                        return next != null;
+                    }
+
+                    @Override
+                    public AudioItem next() {
+                        if (next == null) {
+                            throw new NoSuchElementException();
+                        }
+                        AudioItem result = next;
+                        next = advance();
+                        return result;
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return items.size();
+            }
+        };
+    }
+
+    Set<String> ids() {
+        return items.keySet();
+    }
+
+    Stats getStats() {
+        int hotSize;
+        synchronized (hotItems) {
+            hotSize = hotItems.size();
+        }
+        return new Stats(hits.get(), misses.get(), evictions.get(), items.size(), hotSize);
+    }
+}
@@ -5,6 +5,8 @@ import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.StringReader;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Set;
 
 import org.apache.lucene.analysis.Analyzer;
@@ -16,9 +18,12 @@ import org.apache.lucene.analysis.payloads.PayloadHelper;
 import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
 import org.apache.lucene.analysis.tokenattributes.PayloadAttribute;
 import org.apache.lucene.analysis.tokenattributes.PositionIncrementAttribute;
+import org.apache.lucene.document.BinaryDocValuesField;
 import org.apache.lucene.document.Document;
 import org.apache.lucene.document.Field;
 import org.apache.lucene.document.Field.Store;
+import org.apache.lucene.document.SortedDocValuesField;
+import org.apache.lucene.document.SortedSetDocValuesField;
 import org.apache.lucene.document.StoredField;
 import org.apache.lucene.document.StringField;
 import org.apache.lucene.document.TextField;
@@ -42,6 +47,20 @@ public class AudioItemDocumentFactory {
       .add(MetadataSpecification.LB_BENEFICIARY).build();
 
   public Document createLuceneDocument(AudioItem audioItem) throws IOException {
+    Map<String, Integer> playlistPositions = new LinkedHashMap<>();
+    for (Playlist playlist : audioItem.getPlaylists()) {
+      playlistPositions.put(playlist.getId(), playlist.getAudioItemPosition(audioItem.getId()));
+    }
+    return createLuceneDocument(audioItem, playlistPositions);
+  }
+
+  /**
+   * Creates the document for an audio item, with the given playlist memberships.
+   * @param audioItem The item, whose own playlists are ignored.
+   * @param playlistPositions playlist id -> position of the item in the playlist.
+   */
+  Document createLuceneDocument(AudioItem audioItem, Map<String, Integer> playlistPositions)
+      throws IOException {
     Document doc = new Document();
     Metadata metadata = audioItem.getMetadata();
     for (MetadataField<String> field : PREFIX_SEARCH_COLUMNS) {
@@ -54,18 +73,27 @@ public class AudioItemDocumentFactory {
 
     doc.add(new StringField(AudioItemIndex.UID_FIELD, audioItem.getId(),
         Store.YES));
+    doc.add(new SortedDocValuesField(AudioItemIndex.UID_FIELD, new BytesRef(audioItem.getId())));
     for (Category category : audioItem.getCategoryList()) {
       doc.add(new StringField(AudioItemIndex.CATEGORIES_FIELD,
           category.getId(), Store.YES));
+      doc.add(new SortedSetDocValuesField(AudioItemIndex.CATEGORIES_FIELD,
+          new BytesRef(category.getId())));
       doc.add(new SortedSetDocValuesFacetField(
           AudioItemIndex.CATEGORIES_FACET_FIELD, category.getId()));
     }
 
+    // Hot fields, so that an AudioItem can be loaded without deserializing the raw metadata. They
+    // are binary DocValues, which, unlike sorted ones, have no 32766 byte limit on a value.
+    addDocValue(doc, AudioItemIndex.TITLE_FIELD, metadata, MetadataSpecification.DC_TITLE);
+    addDocValue(doc, AudioItemIndex.LANGUAGE_FIELD, metadata, MetadataSpecification.DC_LANGUAGE);
+    addDocValue(doc, AudioItemIndex.DURATION_FIELD, metadata, MetadataSpecification.LB_DURATION);
+
     doc.add(new Field(AudioItemIndex.PLAYLISTS_FIELD,
-        new PlaylistTokenStream(audioItem), TextField.TYPE_NOT_STORED));
-    for (Playlist playlist : audioItem.getPlaylists()) {
+        new PlaylistTokenStream(playlistPositions), TextField.TYPE_NOT_STORED));
+    for (String playlistId : playlistPositions.keySet()) {
       doc.add(new SortedSetDocValuesFacetField(
-          AudioItemIndex.PLAYLISTS_FACET_FIELD, playlist.getId()));
+          AudioItemIndex.PLAYLISTS_FACET_FIELD, playlistId));
     }
 
     if (metadata.containsField(MetadataSpecification.DC_LANGUAGE)) {
@@ -97,6 +125,15 @@ public class AudioItemDocumentFactory {
     return doc;
   }
 
+  private static void addDocValue(Document doc, String name, Metadata metadata, MetadataField<?> field) {
+    if (metadata.containsField(field)) {
+      MetadataValue<?> value = metadata.getMetadataValue(field);
+      if (value != null && value.getValue() != null) {
+        doc.add(new BinaryDocValuesField(name, new BytesRef(value.getValue().toString())));
+      }
+    }
+  }
+
   public static class PrefixAnalyzer extends Analyzer {
     @Override
     protected TokenStreamComponents createComponents(String field) {
@@ -159,12 +196,10 @@ public class AudioItemDocumentFactory {
     private final PayloadAttribute payloadAtt = addAttribute(
         PayloadAttribute.class);
 
-    private final AudioItem audioItem;
-    private final Iterator<Playlist> playlistIterator;
+    private final Iterator<Map.Entry<String, Integer>> playlistIterator;
 
-    private PlaylistTokenStream(AudioItem audioItem) {
-      this.audioItem = audioItem;
-      this.playlistIterator = audioItem.getPlaylists().iterator();
+    private PlaylistTokenStream(Map<String, Integer> playlistPositions) {
+      this.playlistIterator = playlistPositions.entrySet().iterator();
     }
 
     @Override
@@ -173,10 +208,10 @@ public class AudioItemDocumentFactory {
         return false;
       }
 
-      Playlist playlist = playlistIterator.next();
+      Map.Entry<String, Integer> playlist = playlistIterator.next();
       termAtt.setEmpty();
-      termAtt.append(playlist.getId());
-      int value = playlist.getAudioItemPosition(audioItem.getId());
+      termAtt.append(playlist.getKey());
+      int value = playlist.getValue();
       BytesRef payload = new BytesRef(PayloadHelper.encodeInt(value));
       payloadAtt.setPayload(payload);
       return true;
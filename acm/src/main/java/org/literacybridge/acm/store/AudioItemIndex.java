@@ -19,7 +19,10 @@ import org.apache.lucene.facet.FacetsConfig;
 import org.apache.lucene.facet.LabelAndValue;
 import org.apache.lucene.facet.sortedset.DefaultSortedSetDocValuesReaderState;
 import org.apache.lucene.facet.sortedset.SortedSetDocValuesFacetCounts;
+import org.apache.lucene.facet.sortedset.SortedSetDocValuesReaderState;
+import org.apache.lucene.index.BinaryDocValues;
 import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.DocValues;
 import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.IndexWriter;
 import org.apache.lucene.index.IndexWriterConfig;
@@ -28,12 +31,16 @@ import org.apache.lucene.index.LeafReader;
 import org.apache.lucene.index.LeafReaderContext;
 import org.apache.lucene.index.PostingsEnum;
 import org.apache.lucene.index.SegmentInfos;
+import org.apache.lucene.index.SortedDocValues;
+import org.apache.lucene.index.SortedSetDocValues;
 import org.apache.lucene.index.Term;
 import org.apache.lucene.index.Terms;
 import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.index.TrackingIndexWriter;
 import org.apache.lucene.search.BooleanClause.Occur;
 import org.apache.lucene.search.BooleanQuery;
 import org.apache.lucene.search.Collector;
+import org.apache.lucene.search.ControlledRealTimeReopenThread;
 import org.apache.lucene.search.DocIdSetIterator;
 import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.search.LeafCollector;
@@ -44,8 +51,10 @@ import org.apache.lucene.search.Scorer;
 import org.apache.lucene.search.SearcherFactory;
 import org.apache.lucene.search.SearcherManager;
 import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.store.AlreadyClosedException;
 import org.apache.lucene.store.Directory;
 import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.util.Bits;
 import org.apache.lucene.util.BytesRef;
 import org.javatuples.Pair;
 
@@ -53,15 +62,25 @@ import java.io.ByteArrayInputStream;
 import java.io.DataInputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.Files;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
 import java.util.StringTokenizer;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.regex.Pattern;
 
@@ -79,6 +98,12 @@ public class AudioItemIndex {
   public static final String LOCALES_FACET_FIELD = "locales_facet";
   public static final String REVISION_FIELD = "rev";
   public static final String RAW_METADATA_FIELD = "raw_data";
+  // DocValues-only "hot" fields, read to build lazy AudioItems.
+  public static final String TITLE_FIELD = "title";
+  public static final String LANGUAGE_FIELD = "language";
+  public static final String DURATION_FIELD = "duration";
+
+  private static final Set<String> UID_ONLY = Collections.singleton(UID_FIELD);
 
   public static final String PLAYLIST_NAMES_COMMIT_DATA = "playlist_names";
   public static final String MAX_PLAYLIST_UID_COMMIT_DATA = "max_playlist_uuid";
@@ -88,9 +113,36 @@ public class AudioItemIndex {
   public static final Pattern NEW_PLAYLIST_RECOGNIZER = Pattern.compile(".*[\u22a1\u2299]+.*");
   public static final Pattern NEW_PLAYLIST_SEPARATOR_CHARS = Pattern.compile("[\u22a1\u2299]");
 
+  // Durably commit transactions at least this often...
+  private static final long COMMIT_INTERVAL_MS = 1000;
+  // ...or as soon as this many have accumulated.
+  private static final int MAX_PENDING_TRANSACTIONS = 64;
+
   private AudioItemDocumentFactory factory = new AudioItemDocumentFactory();
   private final Directory dir;
-  private SearcherManager searcherManager;
+  // Replaced by a near-real-time manager over the writer when the writer is opened.
+  private volatile SearcherManager searcherManager;
+
+  // How stale searches may be, after a transaction commits.
+  private final long refreshLatencyMillis;
+  // The writer shared by all transactions, opened by the first one, and kept until close().
+  private final Object writerLock = new Object();
+  private IndexWriter writer;
+  private TrackingIndexWriter trackingWriter;
+  private ControlledRealTimeReopenThread<IndexSearcher> reopenThread;
+  private ScheduledExecutorService committer;
+  // Objects from transactions that have completed, but are not yet durably committed.
+  private final List<Committable> pendingObjects = Lists.newArrayList();
+  private int pendingTransactions = 0;
+  private long firstPendingTime;
+  // Audio items written since the searcher last refreshed: uid -> (exists, writer generation).
+  private final Map<String, Pair<Boolean, Long>> unrefreshedItems = new ConcurrentHashMap<>();
+  // The writer generation of the latest change; searches wait until they can see it.
+  private volatile long lastGeneration = 0;
+
+  // Indexes with an open writer, all closed by a single shutdown hook. Guarded by itself.
+  private static final Set<AudioItemIndex> openIndexes = new LinkedHashSet<>();
+  private static Thread shutdownHook;
 
   private final FacetsConfig facetsConfig;
   private final QueryAnalyzer queryAnalyzer;
@@ -99,9 +151,10 @@ public class AudioItemIndex {
   private int currentMaxPlaylistUuid;
   private int currentMaxPromptsUuid;
 
-  private AudioItemIndex(Directory dir, Taxonomy taxonomy) throws IOException {
+  private AudioItemIndex(Directory dir, Taxonomy taxonomy, long refreshLatencyMillis) throws IOException {
     this.dir = dir;
     this.taxonomy = taxonomy;
+    this.refreshLatencyMillis = refreshLatencyMillis;
 
     facetsConfig = new FacetsConfig();
     facetsConfig.setMultiValued(AudioItemIndex.CATEGORIES_FACET_FIELD, true);
@@ -121,23 +174,379 @@ public class AudioItemIndex {
     return Integer.toString(currentMaxPlaylistUuid++);
   }
 
-  private final IndexWriter newWriter(OpenMode openMode) throws IOException {
-    IndexWriterConfig config = new IndexWriterConfig(
-        new AudioItemDocumentFactory.PrefixAnalyzer());
-    config.setOpenMode(openMode);
-    return new IndexWriter(dir, config) {
-      @Override
-      public void close() throws IOException {
-        super.close();
-        if (searcherManager != null) {
-          searcherManager.maybeRefreshBlocking();
+  /**
+   * Gets the shared writer, opening it if this is the first transaction. Opening the writer also
+   * switches searching to near-real-time readers over the writer, refreshed in the background, and
+   * starts the group committer.
+   */
+  private IndexWriter getWriter() throws IOException {
+    synchronized (writerLock) {
+      if (writer == null) {
+        IndexWriterConfig config = new IndexWriterConfig(
+            new AudioItemDocumentFactory.PrefixAnalyzer());
+        config.setOpenMode(OpenMode.APPEND);
+        writer = new IndexWriter(dir, config);
+        trackingWriter = new TrackingIndexWriter(writer);
+
+        SearcherManager nrtManager = new SearcherManager(writer, true, new SearcherFactory());
+        SearcherManager oldManager = searcherManager;
+        searcherManager = nrtManager;
+        oldManager.close();
+
+        double maxStaleSec = refreshLatencyMillis / 1000.0;
+        reopenThread = new ControlledRealTimeReopenThread<>(trackingWriter, nrtManager,
+            maxStaleSec, Math.min(maxStaleSec, 0.025));
+        reopenThread.setName("lucene-nrt-refresh");
+        reopenThread.setDaemon(true);
+        reopenThread.start();
+
+        if (committer == null) {
+          committer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "lucene-group-commit");
+            thread.setDaemon(true);
+            return thread;
+          });
+          committer.scheduleWithFixedDelay(this::commitIfDue,
+              COMMIT_INTERVAL_MS, COMMIT_INTERVAL_MS / 4, TimeUnit.MILLISECONDS);
+          registerOpenIndex(this);
         }
       }
-    };
+      return writer;
+    }
+  }
+
+  private static void registerOpenIndex(AudioItemIndex index) {
+    synchronized (openIndexes) {
+      if (shutdownHook == null) {
+        shutdownHook = new Thread(AudioItemIndex::closeOpenIndexes, "lucene-close");
+        Runtime.getRuntime().addShutdownHook(shutdownHook);
+      }
+      openIndexes.add(index);
+    }
+  }
+
+  private static void unregisterOpenIndex(AudioItemIndex index) {
+    synchronized (openIndexes) {
+      openIndexes.remove(index);
+    }
+  }
+
+  private static void closeOpenIndexes() {
+    List<AudioItemIndex> indexes;
+    synchronized (openIndexes) {
+      indexes = Lists.newArrayList(openIndexes);
+    }
+    for (AudioItemIndex index : indexes) {
+      index.closeQuietly();
+    }
   }
 
   public Transaction newTransaction(MetadataStore store) throws IOException {
-    return new Transaction(store, this, newWriter(OpenMode.APPEND));
+    return new Transaction(store, this, getWriter());
+  }
+
+  /**
+   * Called when every object in a transaction has committed, to give the transaction's changes to
+   * the shared writer. The changes become visible to searches within the refresh latency, and
+   * durable at the next group commit. If the writer fails part way through, the changes it was
+   * already given are undone, so that nothing of the failed transaction remains, and no other
+   * transaction is affected.
+   * @param t The transaction.
+   */
+  void transactionCompleted(Transaction t) throws IOException {
+    boolean commitNow;
+    synchronized (writerLock) {
+      IndexWriter writer = getWriter();
+      Map<String, Document> documents = t.getDocuments();
+      Map<String, String> previousCommitData = writer.getCommitData();
+      SearcherManager manager = searcherManager;
+      IndexSearcher before = null;
+      List<String> applied = Lists.newArrayList();
+      try {
+        if (!documents.isEmpty()) {
+          // A searcher that can see the current version of every item, to undo from.
+          for (String uuid : documents.keySet()) {
+            awaitRefresh(uuid);
+          }
+          before = manager.acquire();
+        }
+        for (Map.Entry<String, Document> change : documents.entrySet()) {
+          String uuid = change.getKey();
+          Term term = new Term(UID_FIELD, uuid);
+          applied.add(uuid);
+          long generation;
+          if (change.getValue() == null) {
+            generation = trackingWriter.deleteDocuments(term);
+          } else if (t.isNewDocument(uuid)) {
+            generation = trackingWriter.addDocument(change.getValue());
+          } else {
+            generation = trackingWriter.updateDocument(term, change.getValue());
+          }
+          written(uuid, change.getValue() != null, generation);
+        }
+        if (t.getCommitData() != null) {
+          writer.setCommitData(t.getCommitData());
+        }
+      } catch (IOException | RuntimeException e) {
+        undoChanges(t, applied, before, previousCommitData);
+        throw e;
+      } finally {
+        t.clearChanges();
+        if (before != null) {
+          manager.release(before);
+        }
+      }
+
+      if (pendingTransactions++ == 0) {
+        firstPendingTime = System.currentTimeMillis();
+      }
+      pendingObjects.addAll(t.getObjects());
+      commitNow = pendingTransactions >= MAX_PENDING_TRANSACTIONS;
+    }
+    if (commitNow) {
+      committer.execute(this::commitIfDue);
+    }
+  }
+
+  private void written(String uuid, boolean exists, long generation) {
+    unrefreshedItems.put(uuid, new Pair<>(exists, generation));
+    lastGeneration = Math.max(lastGeneration, generation);
+  }
+
+  /**
+   * Restores the given audio items to their versions in a searcher from before a failed
+   * transaction, and restores the playlist names. If even that fails, the writer is abandoned,
+   * and the objects of all transactions not yet durably committed are added to the failed
+   * transaction, to be rolled back with it.
+   */
+  private void undoChanges(Transaction t, List<String> uuids, IndexSearcher before,
+      Map<String, String> previousCommitData) {
+    try {
+      for (String uuid : uuids) {
+        Term term = new Term(UID_FIELD, uuid);
+        Document previous = getIndexedDocument(before, uuid);
+        long generation = previous == null ? trackingWriter.deleteDocuments(term)
+            : trackingWriter.updateDocument(term, previous);
+        written(uuid, previous != null, generation);
+      }
+      writer.setCommitData(previousCommitData);
+    } catch (IOException | RuntimeException e) {
+      LOG.log(Level.SEVERE, "Unable to undo a failed transaction; discarding uncommitted changes.", e);
+      t.addAll(abandonWriter());
+    }
+  }
+
+  /**
+   * Re-creates the document of an audio item, as it is in the given searcher, including its
+   * playlist memberships, which are not stored.
+   * @return the document, or null if the item is not in the searcher.
+   */
+  private Document getIndexedDocument(IndexSearcher searcher, String uuid) throws IOException {
+    if (searcher == null) {
+      return null;
+    }
+    for (LeafReaderContext leaf : searcher.getIndexReader().leaves()) {
+      LeafReader reader = leaf.reader();
+      PostingsEnum docs = reader.postings(new Term(UID_FIELD, uuid), PostingsEnum.NONE);
+      if (docs == null) {
+        continue;
+      }
+      Bits liveDocs = reader.getLiveDocs();
+      int docId;
+      while ((docId = docs.nextDoc()) != DocIdSetIterator.NO_MORE_DOCS) {
+        if (liveDocs == null || liveDocs.get(docId)) {
+          AudioItem audioItem = loadAudioItem(reader.document(docId));
+          return facetsConfig.build(
+              factory.createLuceneDocument(audioItem, getPlaylistPositions(reader, docId)));
+        }
+      }
+    }
+    return null;
+  }
+
+  private Map<String, Integer> getPlaylistPositions(LeafReader reader, int docId) throws IOException {
+    Map<String, Integer> positions = new LinkedHashMap<>();
+    Terms terms = reader.terms(PLAYLISTS_FIELD);
+    if (terms != null) {
+      TermsEnum termsEnum = terms.iterator();
+      PostingsEnum postings = null;
+      BytesRef term;
+      while ((term = termsEnum.next()) != null) {
+        postings = termsEnum.postings(postings, PostingsEnum.PAYLOADS);
+        if (postings.advance(docId) == docId) {
+          postings.nextPosition();
+          BytesRef payload = postings.getPayload();
+          positions.put(term.utf8ToString(), PayloadHelper.decodeInt(payload.bytes, payload.offset));
+        }
+      }
+    }
+    return positions;
+  }
+
+  /**
+   * Discards every change not yet durably committed, when the writer can no longer be trusted.
+   * The next transaction opens a new writer.
+   * @return the objects from transactions that were discarded.
+   */
+  private List<Committable> abandonWriter() {
+    synchronized (writerLock) {
+      List<Committable> lostObjects = Lists.newArrayList(pendingObjects);
+      pendingObjects.clear();
+      pendingTransactions = 0;
+      unrefreshedItems.clear();
+      try {
+        reopenThread.close();
+        writer.rollback();
+      } catch (IOException | RuntimeException e) {
+        LOG.log(Level.SEVERE, "Unable to roll back the index writer.", e);
+      } finally {
+        writer = null;
+        trackingWriter = null;
+        reopenThread = null;
+        try {
+          // Until the next transaction, search the last durable commit.
+          SearcherManager oldManager = searcherManager;
+          searcherManager = new SearcherManager(dir, new SearcherFactory());
+          oldManager.close();
+        } catch (IOException e) {
+          LOG.log(Level.SEVERE, "Unable to re-open the index.", e);
+        }
+      }
+      if (!lostObjects.isEmpty()) {
+        LOG.severe(String.format("Rolled back %d objects from earlier transactions.", lostObjects.size()));
+      }
+      return lostObjects;
+    }
+  }
+
+  /**
+   * Rolls back a transaction. Its changes are only given to the writer once every object has
+   * committed, and are undone if the writer fails, so rolling back just discards them; the writer,
+   * and other transactions, are unaffected.
+   * @param t The transaction.
+   * @return objects from other transactions that were also lost; empty unless the writer failed.
+   */
+  List<Committable> rollbackTransaction(Transaction t) {
+    t.clearChanges();
+    return Collections.emptyList();
+  }
+
+  private void commitIfDue() {
+    synchronized (writerLock) {
+      if (pendingTransactions == 0 || writer == null) {
+        return;
+      }
+      if (pendingTransactions < MAX_PENDING_TRANSACTIONS
+          && System.currentTimeMillis() - firstPendingTime < COMMIT_INTERVAL_MS) {
+        return;
+      }
+    }
+    try {
+      flush();
+    } catch (IOException | RuntimeException e) {
+      // Nothing more can be committed to a deleted index, or with a writer that has failed.
+      if (isDirectoryGone()) {
+        LOG.log(Level.WARNING, "Index directory is gone; no longer committing changes to it.");
+        synchronized (writerLock) {
+          stopCommitter();
+        }
+      } else if (e instanceof AlreadyClosedException) {
+        LOG.log(Level.SEVERE, "Index writer has failed; no longer committing changes.", e);
+        synchronized (writerLock) {
+          stopCommitter();
+        }
+      } else {
+        LOG.log(Level.SEVERE, "Unable to commit index changes.", e);
+      }
+    }
+  }
+
+  private boolean isDirectoryGone() {
+    return dir instanceof FSDirectory && !Files.isDirectory(((FSDirectory) dir).getDirectory());
+  }
+
+  private void stopCommitter() {
+    if (committer != null) {
+      committer.shutdown();
+      committer = null;
+      unregisterOpenIndex(this);
+    }
+  }
+
+  /**
+   * Acquires a searcher from the current manager. The manager is replaced as the writer is opened
+   * and closed, so a search that read the old one just before may find it closed; it then uses the
+   * new one.
+   */
+  private IndexSearcher acquireSearcher() throws IOException {
+    while (true) {
+      SearcherManager manager = searcherManager;
+      try {
+        return manager.acquire();
+      } catch (AlreadyClosedException e) {
+        if (manager == searcherManager) {
+          throw e;
+        }
+      }
+    }
+  }
+
+  /**
+   * Releases a searcher from acquireSearcher(), whether or not its manager has since been closed.
+   */
+  private static void releaseSearcher(IndexSearcher searcher) throws IOException {
+    searcher.getIndexReader().decRef();
+  }
+
+  /**
+   * Durably commits any completed transactions, and makes them visible to searches.
+   */
+  public void flush() throws IOException {
+    synchronized (writerLock) {
+      if (writer != null && pendingTransactions > 0) {
+        writer.commit();
+        pendingObjects.clear();
+        pendingTransactions = 0;
+      }
+    }
+    searcherManager.maybeRefreshBlocking();
+  }
+
+  /**
+   * Commits any pending changes and closes the writer. The index may still be searched.
+   */
+  public void close() throws IOException {
+    synchronized (writerLock) {
+      stopCommitter();
+      if (writer == null) {
+        return;
+      }
+      try {
+        flush();
+      } finally {
+        // Even if the last commit failed, the writer and its refresh thread are closed.
+        reopenThread.close();
+        try {
+          writer.close();
+        } finally {
+          writer = null;
+          trackingWriter = null;
+          reopenThread = null;
+          unrefreshedItems.clear();
+        }
+      }
+      SearcherManager oldManager = searcherManager;
+      searcherManager = new SearcherManager(dir, new SearcherFactory());
+      oldManager.close();
+    }
+  }
+
+  private void closeQuietly() {
+    try {
+      close();
+    } catch (Exception e) {
+      // Shutting down; nothing more can be done.
+    }
   }
 
   public static boolean indexExists(File path) throws IOException {
@@ -148,7 +557,7 @@ public class AudioItemIndex {
     return DirectoryReader.indexExists(FSDirectory.open(path.toPath()));
   }
 
-  public static AudioItemIndex newIndex(File path, Taxonomy taxonomy)
+  public static AudioItemIndex newIndex(File path, Taxonomy taxonomy, long refreshLatencyMillis)
       throws IOException {
     if (!path.exists()) {
       boolean success = path.mkdirs();
@@ -168,37 +577,70 @@ public class AudioItemIndex {
     // create empty index
     new IndexWriter(dir, config).close();
 
-    return new AudioItemIndex(dir, taxonomy);
+    return new AudioItemIndex(dir, taxonomy, refreshLatencyMillis);
   }
 
-  public static AudioItemIndex load(File path, Taxonomy taxonomy)
+  public static AudioItemIndex load(File path, Taxonomy taxonomy, long refreshLatencyMillis)
       throws IOException {
     if (!indexExists(path)) {
       throw new IOException("Index does not exist in " + path);
     }
 
-    return new AudioItemIndex(FSDirectory.open(path.toPath()), taxonomy);
+    return new AudioItemIndex(FSDirectory.open(path.toPath()), taxonomy, refreshLatencyMillis);
   }
 
-  public boolean updateAudioItem(AudioItem audioItem, IndexWriter writer)
+  public boolean updateAudioItem(AudioItem audioItem, Transaction t)
       throws IOException {
-    Document oldDoc = getDocument(audioItem.getId());
+    boolean isNew = !isIndexed(audioItem.getId());
+    Document doc = factory.createLuceneDocument(audioItem);
+    t.putDocument(audioItem.getId(), facetsConfig.build(doc), isNew);
+    return isNew;
+  }
 
-    if (oldDoc == null) {
-      addAudioItem(audioItem, writer);
-      return true;
-    } else {
-      Document doc = factory.createLuceneDocument(audioItem);
-      writer.updateDocument(new Term(UID_FIELD, audioItem.getId()),
-          facetsConfig.build(doc));
-      return false;
+  /**
+   * Whether the audio item is in the index, including changes not yet visible to searches.
+   */
+  private boolean isIndexed(String uuid) throws IOException {
+    Pair<Boolean, Long> unrefreshed = unrefreshedItems.get(uuid);
+    if (unrefreshed != null) {
+      if (reopenThread == null || reopenThread.getSearchingGen() < unrefreshed.getValue1()) {
+        return unrefreshed.getValue0();
+      }
+      unrefreshedItems.remove(uuid, unrefreshed);
     }
+    return getDocument(uuid) != null;
   }
 
-  private void addAudioItem(AudioItem audioItem, IndexWriter writer)
-      throws IOException {
-    Document doc = factory.createLuceneDocument(audioItem);
-    writer.addDocument(facetsConfig.build(doc));
+  /**
+   * Waits until every committed change is visible to searches.
+   */
+  private void awaitRefresh() throws IOException {
+    ControlledRealTimeReopenThread<IndexSearcher> thread = reopenThread;
+    long generation = lastGeneration;
+    if (thread != null && thread.getSearchingGen() < generation) {
+      try {
+        thread.waitForGeneration(generation);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException("Interrupted waiting for index refresh");
+      }
+    }
+  }
+
+  /**
+   * Waits until any change to the audio item, not yet visible to searches, is visible.
+   */
+  private void awaitRefresh(String uuid) throws IOException {
+    Pair<Boolean, Long> unrefreshed = unrefreshedItems.get(uuid);
+    ControlledRealTimeReopenThread<IndexSearcher> thread = reopenThread;
+    if (unrefreshed != null && thread != null) {
+      try {
+        thread.waitForGeneration(unrefreshed.getValue1());
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException("Interrupted waiting for index refresh of " + uuid);
+      }
+    }
   }
 
   private void addTextQuery(BooleanQuery.Builder bq, String filterString)
@@ -278,7 +720,10 @@ public class AudioItemIndex {
      */
   private Map<String, Playlist.Builder> readPlaylistNames(Transaction t) throws IOException {
       Map<String, Playlist.Builder> playlists = null;
-      Map<String,String> commitData = t.getWriter().getCommitData();
+      Map<String,String> commitData = t.getCommitData();
+      if (commitData == null) {
+          commitData = getWriter().getCommitData();
+      }
       if (commitData != null && commitData.containsKey(PLAYLIST_NAMES_COMMIT_DATA)) {
           Pair<Map<String, Playlist.Builder>, Integer> playlistNames = parsePlaylistNamesFromCommitData(commitData);
           playlists = new HashMap<>(playlistNames.getValue0());
@@ -293,10 +738,10 @@ public class AudioItemIndex {
      * This is broken in the general case. It replaces the "commitData" with a new set of data that
      * describes the playlists' names. If there were ever any other data, it would be lost.
      * @param playlists The list of playlists whose names will be stored.
-     * @param writer The writer for the current transaction.
+     * @param t The current transaction, to which the names are given.
      */
   private void storePlaylistNames(Iterable<Playlist> playlists,
-      IndexWriter writer) {
+      Transaction t) {
     StringBuilder builder = new StringBuilder();
     for (Playlist playlist : playlists) {
       builder.append(playlist.getId());
@@ -313,7 +758,7 @@ public class AudioItemIndex {
     commitData.put(PLAYLIST_NAMES_COMMIT_DATA, builder.toString());
     commitData.put(MAX_PLAYLIST_UID_COMMIT_DATA,
         Integer.toString(currentMaxPlaylistUuid));
-    writer.setCommitData(commitData);
+    t.setCommitData(commitData);
   }
 
   public void deletePlaylist(String uuid, Transaction t) throws IOException {
@@ -325,7 +770,7 @@ public class AudioItemIndex {
           public Playlist apply(Playlist.Builder builder) {
             return builder.build();
           }
-        }), t.getWriter());
+        }), t);
   }
 
   public Playlist newPlaylist(String name) {
@@ -343,7 +788,7 @@ public class AudioItemIndex {
       updatedPlaylists.add(p.build());
     }
     updatedPlaylists.add(playlist);
-    storePlaylistNames(updatedPlaylists, t.getWriter());
+    storePlaylistNames(updatedPlaylists, t);
     return removed == null;
   }
 
@@ -352,7 +797,8 @@ public class AudioItemIndex {
       // case, there can be no pending transactions, so even though readPlaylistNames() can't see into
       // pending transactions, what it returns will be complete.
     final Map<String, Playlist.Builder> playlists = readPlaylistNames();
-    final IndexSearcher searcher = searcherManager.acquire();
+    awaitRefresh();
+    final IndexSearcher searcher = acquireSearcher();
     try {
       IndexReader reader = searcher.getIndexReader();
       TermsEnum termsEnum = null;
@@ -378,7 +824,7 @@ public class AudioItemIndex {
       }
       return result;
     } finally {
-      searcherManager.release(searcher);
+      releaseSearcher(searcher);
     }
   }
 
@@ -392,7 +838,8 @@ public class AudioItemIndex {
 
   private Playlist getPlaylist(final String uuid, final Playlist playlist)
       throws IOException {
-    final IndexSearcher searcher = searcherManager.acquire();
+    awaitRefresh();
+    final IndexSearcher searcher = acquireSearcher();
     try {
       final Playlist.Builder builder = Playlist.builder();
       builder.withId(uuid);
@@ -408,7 +855,7 @@ public class AudioItemIndex {
 
       return builder.build();
     } finally {
-      searcherManager.release(searcher);
+      releaseSearcher(searcher);
     }
   }
 
@@ -420,6 +867,7 @@ public class AudioItemIndex {
     PostingsEnum postingsEnum = leafReader.postings(
         new Term(PLAYLISTS_FIELD, playlistUuid), PostingsEnum.PAYLOADS);
     if (postingsEnum != null) {
+      LeafAudioItemReader uids = new LeafAudioItemReader(leafReader);
       while (postingsEnum.nextDoc() != DocIdSetIterator.NO_MORE_DOCS) {
         // important: Lucene applies deletes of documents to posting lists
         // lazily when it
@@ -431,27 +879,32 @@ public class AudioItemIndex {
           BytesRef payload = postingsEnum.getPayload();
           int playlistPos = PayloadHelper.decodeInt(payload.bytes,
               payload.offset);
-          AudioItem audioItem = loadAudioItem(
-              leafReader.document(postingsEnum.docID()));
-          playlistBuilder.addAudioItem(audioItem.getId(), playlistPos);
+          playlistBuilder.addAudioItem(uids.getUid(postingsEnum.docID()), playlistPos);
         }
       }
     }
   }
 
+  /**
+   * Loads an audio item from the index. If the item was changed by a recent commit, waits for
+   * the change to become visible, so the item is never loaded stale.
+   */
   public AudioItem getAudioItem(final String uuid) throws IOException {
+    awaitRefresh(uuid);
     Document doc = getDocument(uuid);
     return doc != null ? loadAudioItem(doc) : null;
   }
 
   public Collection<AudioItem> getAudioItems() throws IOException {
     final List<AudioItem> results = Lists.newArrayList();
-    final IndexSearcher searcher = searcherManager.acquire();
+    awaitRefresh();
+    final IndexSearcher searcher = acquireSearcher();
     try {
       searcher.search(new MatchAllDocsQuery(), new Collector() {
         @Override
         public LeafCollector getLeafCollector(final LeafReaderContext context)
             throws IOException {
+          final LeafAudioItemReader leafReader = new LeafAudioItemReader(context.reader());
           return new LeafCollector() {
             @Override
             public void setScorer(Scorer scorer) throws IOException {
@@ -459,7 +912,7 @@ public class AudioItemIndex {
 
             @Override
             public void collect(int docId) throws IOException {
-              results.add(loadAudioItem(context.reader().document(docId)));
+              results.add(leafReader.getAudioItem(docId));
             }
           };
         }
@@ -472,19 +925,19 @@ public class AudioItemIndex {
 
       return results;
     } finally {
-      searcherManager.release(searcher);
+      releaseSearcher(searcher);
     }
   }
 
   public void deleteAudioItem(final String uuid, Transaction t)
       throws IOException {
-    t.getWriter().deleteDocuments(new Term(UID_FIELD, uuid));
+    t.deleteDocument(uuid);
   }
 
   private Document getDocument(final String uuid) throws IOException {
     final AtomicReference<Document> result = new AtomicReference<Document>();
 
-    final IndexSearcher searcher = searcherManager.acquire();
+    final IndexSearcher searcher = acquireSearcher();
     try {
       searcher.search(new TermQuery(new Term(UID_FIELD, uuid)),
           new Collector() {
@@ -510,13 +963,14 @@ public class AudioItemIndex {
             }
           });
     } finally {
-      searcherManager.release(searcher);
+      releaseSearcher(searcher);
     }
 
     return result.get();
   }
 
   public void refresh(AudioItem audioItem) throws IOException {
+    awaitRefresh(audioItem.getId());
     Document doc = getDocument(audioItem.getId());
     if (doc == null) {
       throw new IOException("AudioItem not found.");
@@ -525,6 +979,18 @@ public class AudioItemIndex {
     loadAudioItem(doc, audioItem);
   }
 
+  /**
+   * Resets an audio item to its version in the index. An item that was never committed has no
+   * version there, and is left empty.
+   */
+  void revert(AudioItem audioItem) throws IOException {
+    awaitRefresh(audioItem.getId());
+    Document doc = getDocument(audioItem.getId());
+    if (doc != null) {
+      loadAudioItem(doc, audioItem);
+    }
+  }
+
   private AudioItem loadAudioItem(Document doc) throws IOException {
     AudioItem audioItem = new AudioItem(doc.get(UID_FIELD));
     loadAudioItem(doc, audioItem);
@@ -533,12 +999,10 @@ public class AudioItemIndex {
 
   private void loadAudioItem(Document doc, AudioItem audioItem)
       throws IOException {
-    LBMetadataSerializer deserializer = new LBMetadataSerializer();
+    // Whatever the item held before, it now holds the full metadata from the document.
+    audioItem.metadataLoaded();
     Set<Category> categories = new HashSet<Category>();
-    BytesRef ref = doc.getBinaryValue(RAW_METADATA_FIELD);
-    deserializer.deserialize(audioItem.getMetadata(), taxonomy, categories,
-        new DataInputStream(
-            new ByteArrayInputStream(ref.bytes, ref.offset, ref.length)));
+    deserializeMetadata(doc, audioItem.getMetadata(), categories);
 
     for (Category category : categories) {
       // When loading categories, we only want to add the leaves, because:
@@ -554,6 +1018,92 @@ public class AudioItemIndex {
     }
   }
 
+  private void deserializeMetadata(Document doc, Metadata metadata, Set<Category> categories)
+      throws IOException {
+    LBMetadataSerializer deserializer = new LBMetadataSerializer();
+    BytesRef ref = doc.getBinaryValue(RAW_METADATA_FIELD);
+    deserializer.deserialize(metadata, taxonomy, categories,
+        new DataInputStream(
+            new ByteArrayInputStream(ref.bytes, ref.offset, ref.length)));
+  }
+
+  /**
+   * Loads the full metadata of a lazy AudioItem, when it is first needed.
+   */
+  private final AudioItem.MetadataLoader metadataLoader = (uuid, metadata) -> {
+    Document doc = getDocument(uuid);
+    if (doc == null) {
+      throw new IOException("AudioItem not found.");
+    }
+    deserializeMetadata(doc, metadata, new HashSet<Category>());
+  };
+
+  /**
+   * Reads AudioItems from one segment of the index, using the DocValues of the hot fields, so
+   * that neither the stored fields nor the raw metadata need to be read. Documents indexed before
+   * the hot fields existed have no DocValues; those are loaded from their stored fields.
+   */
+  private class LeafAudioItemReader {
+    private final LeafReader reader;
+    private final SortedDocValues uids;
+    private final BinaryDocValues titles;
+    private final BinaryDocValues languages;
+    private final BinaryDocValues durations;
+    private final Bits hasTitle;
+    private final Bits hasLanguage;
+    private final Bits hasDuration;
+    private final SortedSetDocValues categories;
+
+    LeafAudioItemReader(LeafReader reader) throws IOException {
+      this.reader = reader;
+      this.uids = reader.getSortedDocValues(UID_FIELD);
+      this.titles = DocValues.getBinary(reader, TITLE_FIELD);
+      this.languages = DocValues.getBinary(reader, LANGUAGE_FIELD);
+      this.durations = DocValues.getBinary(reader, DURATION_FIELD);
+      this.hasTitle = DocValues.getDocsWithField(reader, TITLE_FIELD);
+      this.hasLanguage = DocValues.getDocsWithField(reader, LANGUAGE_FIELD);
+      this.hasDuration = DocValues.getDocsWithField(reader, DURATION_FIELD);
+      // In a segment written before the DocValues, the categories field is indexed without them,
+      // and DocValues.getSortedSet() would reject it.
+      SortedSetDocValues categories = reader.getSortedSetDocValues(CATEGORIES_FIELD);
+      this.categories = categories != null ? categories : DocValues.emptySortedSet();
+    }
+
+    private boolean hasDocValues(int docId) {
+      return uids != null && uids.getOrd(docId) >= 0;
+    }
+
+    String getUid(int docId) throws IOException {
+      if (hasDocValues(docId)) {
+        return uids.get(docId).utf8ToString();
+      }
+      return reader.document(docId, UID_ONLY).get(UID_FIELD);
+    }
+
+    AudioItem getAudioItem(int docId) throws IOException {
+      if (!hasDocValues(docId)) {
+        return loadAudioItem(reader.document(docId));
+      }
+      AudioItem audioItem = new AudioItem(uids.get(docId).utf8ToString(), metadataLoader,
+          value(titles, hasTitle, docId), value(languages, hasLanguage, docId),
+          value(durations, hasDuration, docId));
+      categories.setDocument(docId);
+      long ord;
+      while ((ord = categories.nextOrd()) != SortedSetDocValues.NO_MORE_ORDS) {
+        Category category = taxonomy.getCategory(categories.lookupOrd(ord).utf8ToString());
+        // Only the leaves, as in loadAudioItem(Document, AudioItem).
+        if (category != null && !category.hasChildren()) {
+          audioItem.addCategory(category);
+        }
+      }
+      return audioItem;
+    }
+
+    private String value(BinaryDocValues values, Bits hasValue, int docId) {
+      return hasValue.get(docId) ? values.get(docId).utf8ToString() : null;
+    }
+  }
+
   public SearchResult search(String filterString, Playlist selectedPlaylist)
       throws IOException {
     BooleanQuery.Builder bq = new BooleanQuery.Builder();
@@ -595,16 +1145,85 @@ public class AudioItemIndex {
     return search(bq.build());
   }
 
+  /**
+   * Search state that is valid for exactly one version of the index: the facet reader state,
+   * which is expensive to build, and the results of recent queries. As soon as the searcher
+   * manager is refreshed to a new reader, the whole cache is replaced.
+   */
+  private static final class SearchCache {
+    private static final int MAX_CACHED_RESULTS = 64;
+
+    final IndexReader reader;
+    private SortedSetDocValuesReaderState facetState;
+    private boolean noFacets;
+    private final Map<Query, SearchResult> results = new LinkedHashMap<Query, SearchResult>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<Query, SearchResult> eldest) {
+        return size() > MAX_CACHED_RESULTS;
+      }
+    };
+
+    SearchCache(IndexReader reader) {
+      this.reader = reader;
+    }
+
+    /**
+     * @return the facet state of the reader, or null if the index has no facets (yet).
+     */
+    synchronized SortedSetDocValuesReaderState getFacetState() throws IOException {
+      if (facetState == null && !noFacets) {
+        try {
+          facetState = new DefaultSortedSetDocValuesReaderState(reader);
+        } catch (IllegalArgumentException e) {
+          // With empty indexes it can happen that Lucene throws an exception here
+          // due to missing facet data
+          noFacets = true;
+        }
+      }
+      return facetState;
+    }
+
+    synchronized SearchResult getResult(Query query) {
+      return results.get(query);
+    }
+
+    synchronized void putResult(Query query, SearchResult result) {
+      results.put(query, result);
+    }
+  }
+
+  private volatile SearchCache searchCache;
+
+  private SearchCache getSearchCache(IndexReader reader) {
+    SearchCache cache = searchCache;
+    if (cache == null || cache.reader != reader) {
+      cache = new SearchCache(reader);
+      searchCache = cache;
+    }
+    return cache;
+  }
+
   private SearchResult search(Query query) throws IOException {
     final FacetsCollector facetsCollector = new FacetsCollector();
     final Set<String> results = Sets.newHashSet();
-    final IndexSearcher searcher = searcherManager.acquire();
+    // Read-your-writes: a search just after a commit sees that commit.
+    awaitRefresh();
+    final IndexSearcher searcher = acquireSearcher();
     try {
+      // The filter in the sidebar repeats the same few queries, and each of them stays valid
+      // until the index changes. Queries implement equals() and hashCode() by value.
+      SearchCache cache = getSearchCache(searcher.getIndexReader());
+      SearchResult cachedResult = cache.getResult(query);
+      if (cachedResult != null) {
+        return cachedResult;
+      }
+
       Collector collector = MultiCollector.wrap(facetsCollector,
           new Collector() {
             @Override
             public LeafCollector getLeafCollector(
                 final LeafReaderContext context) throws IOException {
+              final LeafAudioItemReader leafReader = new LeafAudioItemReader(context.reader());
               return new LeafCollector() {
                 @Override
                 public void setScorer(Scorer scorer) throws IOException {
@@ -612,8 +1231,7 @@ public class AudioItemIndex {
 
                 @Override
                 public void collect(int docId) throws IOException {
-                  Document doc = context.reader().document(docId);
-                  results.add(doc.get(UID_FIELD));
+                  results.add(leafReader.getUid(docId));
                 }
               };
             }
@@ -630,42 +1248,44 @@ public class AudioItemIndex {
       Map<String, Integer> localeFacets = Maps.newHashMap();
       Map<String, Integer> playlistFacets = Maps.newHashMap();
 
-      try {
-        SortedSetDocValuesFacetCounts facetCounts = new SortedSetDocValuesFacetCounts(
-            new DefaultSortedSetDocValuesReaderState(searcher.getIndexReader()),
-            facetsCollector);
-        List<FacetResult> facetResults = facetCounts.getAllDims(1000);
-        for (FacetResult r : facetResults) {
-          if (r.dim.equals(CATEGORIES_FACET_FIELD)) {
-            for (LabelAndValue lv : r.labelValues) {
-              categoryFacets.put(lv.label, lv.value.intValue());
-            }
-          }
-          if (r.dim.equals(LOCALES_FACET_FIELD)) {
-            for (LabelAndValue lv : r.labelValues) {
-              localeFacets.put(lv.label, lv.value.intValue());
+      SortedSetDocValuesReaderState facetState = cache.getFacetState();
+      if (facetState != null) {
+        try {
+          SortedSetDocValuesFacetCounts facetCounts = new SortedSetDocValuesFacetCounts(
+              facetState, facetsCollector);
+          List<FacetResult> facetResults = facetCounts.getAllDims(1000);
+          for (FacetResult r : facetResults) {
+            if (r.dim.equals(CATEGORIES_FACET_FIELD)) {
+              for (LabelAndValue lv : r.labelValues) {
+                categoryFacets.put(lv.label, lv.value.intValue());
+              }
             }
+            if (r.dim.equals(LOCALES_FACET_FIELD)) {
+              for (LabelAndValue lv : r.labelValues) {
+                localeFacets.put(lv.label, lv.value.intValue());
+              }
 
-          }
-          if (r.dim.equals(PLAYLISTS_FACET_FIELD)) {
-            for (LabelAndValue lv : r.labelValues) {
-              playlistFacets.put(lv.label, lv.value.intValue());
             }
+            if (r.dim.equals(PLAYLISTS_FACET_FIELD)) {
+              for (LabelAndValue lv : r.labelValues) {
+                playlistFacets.put(lv.label, lv.value.intValue());
+              }
 
+            }
           }
+        } catch (IllegalArgumentException e) {
+          // A dimension may have no facet data yet.
         }
-      } catch (IllegalArgumentException e) {
-        // With empty indexes it can happen that Lucene throws an exception here
-        // due to missing facet data
       }
 
       SearchResult result = new SearchResult(
           searcher.getIndexReader().numDocs(), categoryFacets, localeFacets,
           playlistFacets, Lists.newArrayList(results));
 
+      cache.putResult(query, result);
       return result;
     } finally {
-      searcherManager.release(searcher);
+      releaseSearcher(searcher);
     }
   }
 
@@ -1,14 +1,18 @@
 package org.literacybridge.acm.store;
 
-import com.google.common.collect.Maps;
+import org.literacybridge.acm.Constants;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -19,45 +23,76 @@ public class LuceneMetadataStore extends MetadataStore {
 
   private final AudioItemIndex index;
   private final Map<String, Playlist> playlistCache;
-  private final Map<String, AudioItem> audioItemCache;
+  private final AudioItemCache audioItemCache;
 
   private AtomicReference<Transaction> activeTransaction = new AtomicReference<Transaction>();
 
   public LuceneMetadataStore(Taxonomy taxonomy, File indexDirectory)
       throws IOException {
+    this(taxonomy, indexDirectory, Constants.DEFAULT_INDEX_REFRESH_LATENCY_MS);
+  }
+
+  /**
+   * @param refreshLatencyMillis How long after a commit before searches must reflect it.
+   */
+  public LuceneMetadataStore(Taxonomy taxonomy, File indexDirectory, long refreshLatencyMillis)
+      throws IOException {
+    this(taxonomy, indexDirectory, refreshLatencyMillis, Constants.DEFAULT_AUDIO_ITEM_CACHE_SIZE);
+  }
+
+  /**
+   * @param refreshLatencyMillis How long after a commit before searches must reflect it.
+   * @param audioItemCacheSize How many of the most recently used audio items to hold in memory.
+   *                           Colder items are held only until memory is short, and are then
+   *                           re-loaded from the index as needed.
+   */
+  public LuceneMetadataStore(Taxonomy taxonomy, File indexDirectory, long refreshLatencyMillis,
+      int audioItemCacheSize) throws IOException {
     super(taxonomy);
+    long timer = -System.currentTimeMillis();
     // initialize Lucene index
     if (!AudioItemIndex.indexExists(indexDirectory)) {
-      this.index = AudioItemIndex.newIndex(indexDirectory, taxonomy);
+      this.index = AudioItemIndex.newIndex(indexDirectory, taxonomy, refreshLatencyMillis);
     } else {
-      this.index = AudioItemIndex.load(indexDirectory, taxonomy);
+      this.index = AudioItemIndex.load(indexDirectory, taxonomy, refreshLatencyMillis);
     }
 
-    this.playlistCache = Maps.newLinkedHashMap();
-    this.audioItemCache = Maps.newLinkedHashMap();
+    timer += System.currentTimeMillis();
+    LOG.info(String.format("Opened index in %d ms", timer));
+
+    this.playlistCache = new ConcurrentHashMap<>();
+    this.audioItemCache = new AudioItemCache(audioItemCacheSize, this::loadAudioItem);
 
     // fill caches
+    timer = -System.currentTimeMillis();
+    int nAudioItems = 0;
     try {
-      Iterable<AudioItem> audioItems = index.getAudioItems();
-      for (AudioItem audioItem : audioItems) {
-        audioItemCache.put(audioItem.getId(), audioItem);
-      }
-
       Iterable<Playlist> playlists = index.getPlaylists();
       for (Playlist playlist : playlists) {
         playlistCache.put(playlist.getId(), playlist);
+      }
+
+      Map<String, List<Playlist>> playlistsByItem = new HashMap<>();
+      for (Playlist playlist : playlistCache.values()) {
         for (String uid : playlist.getAudioItemList()) {
-          AudioItem audioItem = audioItemCache.get(uid);
-          if (audioItem != null) {
-            audioItem.addPlaylist(playlist);
-            audioItemCache.put(audioItem.getId(), audioItem);
-          }
+          playlistsByItem.computeIfAbsent(uid, k -> new ArrayList<>()).add(playlist);
+        }
+      }
+      Iterable<AudioItem> audioItems = index.getAudioItems();
+      for (AudioItem audioItem : audioItems) {
+        for (Playlist playlist : playlistsByItem.getOrDefault(audioItem.getId(), Collections.emptyList())) {
+          audioItem.addPlaylist(playlist);
         }
+        audioItemCache.put(audioItem);
+        nAudioItems++;
       }
 
     } catch (IOException e) {
       throw new RuntimeException("Unable to initialize caches", e);
     }
+    timer += System.currentTimeMillis();
+    LOG.info(String.format("Filled caches with %d playlists and %d audio items in %d ms",
+        playlistCache.size(), nAudioItems, timer));
 
     addDataChangeListener(new DataChangeListener() {
       @Override
@@ -77,7 +112,7 @@ public class LuceneMetadataStore extends MetadataStore {
             if (event.getEventType() == DataChangeEventType.ITEM_DELETED) {
               audioItemCache.remove(audioItem.getId());
             } else {
-              audioItemCache.put(audioItem.getId(), audioItem);
+              audioItemCache.put(audioItem);
             }
           }
         }
@@ -85,6 +120,28 @@ public class LuceneMetadataStore extends MetadataStore {
     });
   }
 
+  /**
+   * Loads an audio item that has been evicted from the cache, with the playlists it is in.
+   */
+  private AudioItem loadAudioItem(String uid) throws IOException {
+    AudioItem audioItem = index.getAudioItem(uid);
+    if (audioItem != null) {
+      for (Playlist playlist : playlistCache.values()) {
+        if (playlist.getAudioItemList().contains(uid)) {
+          audioItem.addPlaylist(playlist);
+        }
+      }
+    }
+    return audioItem;
+  }
+
+  /**
+   * @return a description of the audio item cache: its size, and hit, miss and eviction counts.
+   */
+  public String getAudioItemCacheStats() {
+    return audioItemCache.getStats().toString();
+  }
+
   @Override
   public AudioItem getAudioItem(String uid) {
     return audioItemCache.get(uid);
@@ -167,6 +224,17 @@ public class LuceneMetadataStore extends MetadataStore {
     }
   }
 
+  @Override
+  public void flush() throws IOException {
+    index.flush();
+  }
+
+  @Override
+  public void close() throws IOException {
+    LOG.info("Audio item cache: " + audioItemCache.getStats());
+    index.close();
+  }
+
   @Override
   public void deleteAudioItem(String uuid) {
     final AudioItem item = getAudioItem(uuid);
@@ -196,6 +264,6 @@ public class LuceneMetadataStore extends MetadataStore {
 
   @Override
   public void newAudioItem(AudioItem audioItem) {
-    audioItemCache.put(audioItem.getId(), audioItem);
+    audioItemCache.put(audioItem);
   }
 }
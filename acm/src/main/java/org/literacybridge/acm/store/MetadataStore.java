@@ -38,6 +38,18 @@ public abstract class MetadataStore {
 
   public abstract Collection<Playlist> getPlaylists();
 
+  /**
+   * Makes any committed changes durable. Stores may defer writing committed transactions.
+   */
+  public void flush() throws IOException {
+  }
+
+  /**
+   * Makes any committed changes durable, and releases resources held for writing.
+   */
+  public void close() throws IOException {
+  }
+
   public boolean hasChanges() {
     return haveChanges;
   }
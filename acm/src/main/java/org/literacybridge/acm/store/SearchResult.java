@@ -1,5 +1,6 @@
 package org.literacybridge.acm.store;
 
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -36,7 +37,8 @@ public class SearchResult {
     this.categoryFacetCounts = facetCounts;
     this.languageFacetCounts = languageFacetCounts;
     this.playlistFacetCounts = playlistFacetCounts;
-    this.audioItems = Sets.newLinkedHashSet(audioItems);
+    // Results may be cached and shared, so they can't be changed.
+    this.audioItems = Collections.unmodifiableSet(Sets.newLinkedHashSet(audioItems));
   }
 
   public int getTotalNumDocsInIndex() {
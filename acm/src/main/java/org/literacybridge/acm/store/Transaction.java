@@ -1,11 +1,14 @@
 package org.literacybridge.acm.store;
 
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
+import org.apache.lucene.document.Document;
 import org.apache.lucene.index.IndexWriter;
 
 import java.io.IOException;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 public class Transaction {
@@ -14,6 +17,13 @@ public class Transaction {
   private final IndexWriter writer;
   private final MetadataStore store;
 
+  // This transaction's changes to the index, given to the shared writer only once every object
+  // has committed: audio item uid -> new document, or null to delete the item.
+  private final Map<String, Document> documents = Maps.newLinkedHashMap();
+  private final Set<String> newDocuments = Sets.newHashSet();
+  // The new playlist names, if they were changed.
+  private Map<String, String> commitData;
+
   private boolean active;
 
   public Transaction(MetadataStore store, AudioItemIndex index,
@@ -59,7 +69,8 @@ public class Transaction {
       if (success) {
         boolean success2 = false;
         try {
-          writer.close();
+          // The changes are durably committed with the next group commit.
+          index.transactionCompleted(this);
           success2 = true;
         } finally {
           if (success2) {
@@ -82,7 +93,9 @@ public class Transaction {
   public final void rollback() throws IOException {
     boolean success = false;
     try {
-      writer.rollback();
+      // Discards this transaction's changes. Other transactions are lost only if the writer failed.
+      List<Committable> lostObjects = index.rollbackTransaction(this);
+      objects.addAll(lostObjects);
       success = true;
     } finally {
       if (success) {
@@ -135,4 +148,42 @@ public class Transaction {
   public IndexWriter getWriter() {
     return writer;
   }
+
+  Set<Committable> getObjects() {
+    return objects;
+  }
+
+  void putDocument(String uuid, Document doc, boolean isNew) {
+    documents.put(uuid, doc);
+    if (isNew) {
+      newDocuments.add(uuid);
+    }
+  }
+
+  void deleteDocument(String uuid) {
+    documents.put(uuid, null);
+    newDocuments.remove(uuid);
+  }
+
+  Map<String, Document> getDocuments() {
+    return documents;
+  }
+
+  boolean isNewDocument(String uuid) {
+    return newDocuments.contains(uuid);
+  }
+
+  void setCommitData(Map<String, String> commitData) {
+    this.commitData = commitData;
+  }
+
+  Map<String, String> getCommitData() {
+    return commitData;
+  }
+
+  void clearChanges() {
+    documents.clear();
+    newDocuments.clear();
+    commitData = null;
+  }
 }
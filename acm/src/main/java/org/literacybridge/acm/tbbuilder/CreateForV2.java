@@ -5,6 +5,7 @@ import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.FilenameUtils;
 import org.literacybridge.acm.Constants;
 import org.literacybridge.acm.audioconverter.converters.BaseAudioConverter;
+import org.literacybridge.acm.audioconverter.converters.ConverterProcessService;
 import org.literacybridge.acm.cloud.UfKeyHelper;
 import org.literacybridge.acm.config.ACMConfiguration;
 import org.literacybridge.acm.config.AmplioHome;
@@ -14,6 +15,7 @@ import org.literacybridge.acm.deployment.DeploymentInfo.PackageInfo.PlaylistInfo
 import org.literacybridge.acm.deployment.DeploymentInfo.PromptInfo;
 import org.literacybridge.acm.gui.assistants.Deployment.PlaylistPrompts;
 import org.literacybridge.acm.repository.AudioItemRepository;
+import org.literacybridge.acm.repository.BatchExport;
 import org.literacybridge.acm.store.AudioItem;
 import org.literacybridge.acm.store.MetadataStore;
 import org.literacybridge.acm.store.RFC3066LanguageCode;
@@ -129,6 +131,8 @@ class CreateForV2 extends CreateFromDeploymentInfo {
     private final AudioItemRepository.AudioFormat audioFormat;
     private final PackagesData allPackagesData;
     private final File imagesDir;
+    // Audio exports for all of the images, performed together when the deployment is finalized.
+    private final BatchExport pendingExports;
 
     public static final List<String> requiredFirmwareFiles = Arrays.asList("TBookRev2b.hex", "firmware_built.txt");
 
@@ -168,6 +172,7 @@ class CreateForV2 extends CreateFromDeploymentInfo {
         allPackagesData = new PackagesData(builderContext.deploymentName);
         imagesDir = new File(builderContext.stagedDeploymentDir, "images.v2");
         audioFormat = AudioItemRepository.AudioFormat.MP3;
+        pendingExports = new BatchExport(repository);
     }
 
 
@@ -195,6 +200,7 @@ class CreateForV2 extends CreateFromDeploymentInfo {
     @Override
     protected void finalizeDeployment() throws Exception {
         super.finalizeDeployment();
+        exportPendingAudio();
         exportGreetings();
 
         File of = new File(imagesDir, PackagesData.PACKAGES_DATA_TXT);
@@ -205,6 +211,33 @@ class CreateForV2 extends CreateFromDeploymentInfo {
         createMp3FrameOffsetsFiles();
     }
 
+    /**
+     * Performs all of the audio item exports queued while the images were being built. They run
+     * concurrently, and a message used in several packages is only exported once.
+     *
+     * @throws Exception if an intro or playlist prompt could not be exported.
+     */
+    private void exportPendingAudio() throws Exception {
+        builderContext.reportStatus("%nExporting %d audio files.%n", pendingExports.size());
+        BatchExport.Results results = pendingExports.run((entry, completed, total) ->
+            builderContext.reportStatus("    %s audioitem %s to %s in %d ms (%d of %d)%n",
+                entry.isShared() ? "Copied" : "Exported",
+                entry.getAudioItem().getId(),
+                entry.getTargetFile().getParentFile(),
+                entry.getElapsedMillis(),
+                completed,
+                total));
+        // Keep going after failing to export a message; a failed prompt or intro fails the deployment.
+        for (BatchExport.Entry failed : results.getFailures()) {
+            if (!failed.isRequired()) {
+                builderContext.logException(failed.getFailure());
+            }
+        }
+        builderContext.reportStatus("Done exporting audio: %s.%n", results);
+        builderContext.reportStatus("Converter timings: %s.%n", ConverterProcessService.getInstance());
+        results.throwIfRequiredFailed();
+    }
+
     private void createMp3FrameOffsetsFiles() throws IOException {
         if (getAudioFormat() != AudioItemRepository.AudioFormat.MP3) {
             return;
@@ -460,7 +493,7 @@ class CreateForV2 extends CreateFromDeploymentInfo {
                 // Export the audio file.
                 File exportFile = determineShadowFile(messagesDir, filename, shadowMessagesDir);
                 if (!exportFile.exists()) {
-                    repository.exportAudioFileWithFormat(audioItem, exportFile, getAudioFormat());
+                    pendingExports.addRequired(audioItem, exportFile, getAudioFormat());
                 }
                 // Add audio item to the package_data.txt.
                 Path exportPath = makePath(new File(messagesDir, filename));
@@ -488,19 +521,15 @@ class CreateForV2 extends CreateFromDeploymentInfo {
                 // Export the audio item.
                 AudioItem audioItem = ACMConfiguration.getInstance().getCurrentDB()
                     .getMetadataStore().getAudioItem(audioItemId);
-                builderContext.reportStatus(String.format("    Exporting audioitem %s to %s%n",
+                builderContext.reportStatus(String.format("    Adding audioitem %s to %s%n",
                     audioItemId,
                     messagesDir));
                 String filename = repository.getAudioFilename(audioItem, getAudioFormat());
 
-                // Export the audio file.
+                // Queue the export of the audio file; failures are logged when the batch runs.
                 File exportFile = determineShadowFile(messagesDir, filename, shadowMessagesDir);
                 if (!exportFile.exists()) {
-                    try {
-                        repository.exportAudioFileWithFormat(audioItem, exportFile, getAudioFormat());
-                    } catch (Exception ex) {
-                        builderContext.logException(ex);
-                    }
+                    pendingExports.add(audioItem, exportFile, getAudioFormat());
                 }
                 // Add audio item to the package_data.txt.
                 Path exportPath = makePath(new File(messagesDir, filename));
@@ -536,7 +565,7 @@ class CreateForV2 extends CreateFromDeploymentInfo {
                 String promptFilename = promptInfo.audioItem.getId() + '.' + getAudioFormat().getFileExtension();
                 exportFile = determineShadowFile(messagesDir, promptFilename, shadowMessagesDir);
                 if (!exportFile.exists()) {
-                    repository.exportAudioFileWithFormat(promptInfo.audioItem, exportFile, getAudioFormat());
+                    pendingExports.addRequired(promptInfo.audioItem, exportFile, getAudioFormat());
                 }
             } else {
                 // export from languages/{language}/cat/{categoryId} to promptsDir
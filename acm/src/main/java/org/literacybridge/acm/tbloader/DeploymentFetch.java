@@ -0,0 +1,206 @@
+package org.literacybridge.acm.tbloader;
+
+import org.apache.commons.io.input.TeeInputStream;
+import org.apache.commons.lang3.StringUtils;
+import org.literacybridge.acm.cloud.Authenticator;
+import org.literacybridge.acm.cloud.ProjectsHelper.DeploymentInfo;
+import org.literacybridge.acm.utils.IOUtils;
+import org.literacybridge.core.fs.StreamingUnzip;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.util.Objects;
+import java.util.Properties;
+import java.util.function.BiConsumer;
+import java.util.logging.Logger;
+
+/**
+ * Fetches a Deployment into the local TB-Loader directory, unzipping it as it downloads, rather
+ * than downloading the whole .zip and then unzipping it.
+ * <p>
+ * The progress of a fetch is kept in a .fetch directory in the local directory: which
+ * Deployment is being fetched, the bytes downloaded so far, and the files unzipped so far. If a
+ * fetch is interrupted, the next fetch of the same Deployment resumes it. The download continues
+ * from where it stopped, and files already unzipped aren't written again.
+ */
+class DeploymentFetch {
+    private static final Logger LOG = Logger.getLogger(DeploymentFetch.class.getName());
+
+    private static final String FETCH_DIR = ".fetch";
+    private static final String STATE_FILE = "fetch.properties";
+    private static final String PARTIAL_FILE = "download.partial";
+    private static final String MANIFEST_FILE = "unzipped.manifest";
+
+    private static final String DEPLOYMENT_PROP = "deployment";
+    private static final String REVISION_PROP = "revision";
+    private static final String ETAG_PROP = "etag";
+
+    private static final int UNZIP_THREADS = Math.min(4, Runtime.getRuntime().availableProcessors());
+
+    /**
+     * Is there an interrupted fetch of the given Deployment in the local directory? If so, what it
+     * has unzipped so far should be kept.
+     * @param localProjectDir The local TB-Loader directory, like ~/Amplio/TB-Loaders/TEST.
+     * @param deploymentName The Deployment, like "TEST-19-1".
+     * @param revId The revision of the Deployment, like "a".
+     * @return true if the fetch can be resumed.
+     */
+    static boolean canResume(File localProjectDir, String deploymentName, String revId) {
+        Properties state = readState(new File(localProjectDir, FETCH_DIR));
+        return deploymentName != null && revId != null
+            && deploymentName.equals(state.getProperty(DEPLOYMENT_PROP))
+            && revId.equals(state.getProperty(REVISION_PROP))
+            && StringUtils.isNotEmpty(state.getProperty(ETAG_PROP));
+    }
+
+    /**
+     * Fetches a Deployment, from S3 or from an already downloaded .zip, and unzips it into the
+     * local directory.
+     * @param deploymentInfo The Deployment.
+     * @param localZip The Deployment's .zip, if already present with the other program data,
+     *                 otherwise null, to download it.
+     * @param localProjectDir The local TB-Loader directory.
+     * @param progressHandler Optional, called with (bytes received, bytes expected).
+     * @throws IOException if the Deployment can't be downloaded or unzipped. What has been done
+     * so far is kept, to be resumed.
+     */
+    static void fetch(DeploymentInfo deploymentInfo,
+        File localZip,
+        File localProjectDir,
+        BiConsumer<Long, Long> progressHandler) throws IOException
+    {
+        File fetchDir = new File(localProjectDir, FETCH_DIR);
+        Properties wanted = new Properties();
+        wanted.setProperty(DEPLOYMENT_PROP, deploymentInfo.getDeploymentName());
+        wanted.setProperty(REVISION_PROP, deploymentInfo.getRevId());
+        wanted.setProperty(ETAG_PROP, Objects.toString(deploymentInfo.geteTag(), ""));
+        // Without an eTag, there's no telling whether the object is the one partly fetched before,
+        // so the partial download and the files unzipped from it can't be trusted.
+        boolean resumable = StringUtils.isNotEmpty(deploymentInfo.geteTag());
+        if (!resumable || !wanted.equals(readState(fetchDir))) {
+            // Nothing to resume, or it's of something else.
+            IOUtils.deleteRecursive(fetchDir);
+            if (!fetchDir.mkdirs()) {
+                throw new IOException("Unable to create " + fetchDir.getAbsolutePath());
+            }
+            try (OutputStream out = new FileOutputStream(new File(fetchDir, STATE_FILE))) {
+                wanted.store(out, null);
+            }
+        }
+
+        StreamingUnzip unzipper = new StreamingUnzip(localProjectDir, new File(fetchDir, MANIFEST_FILE), UNZIP_THREADS);
+        long timer = -System.currentTimeMillis();
+        int nFiles;
+        try (InputStream in = localZip != null
+                                ? new BufferedInputStream(new FileInputStream(localZip), 65536)
+                                : openDownload(deploymentInfo, new File(fetchDir, PARTIAL_FILE), progressHandler)) {
+            nFiles = unzipper.unzip(in);
+        }
+        timer += System.currentTimeMillis();
+        LOG.info(String.format("Fetched %s: %d file(s) unzipped in %d ms", deploymentInfo.getVersionMarker(), nFiles, timer));
+
+        IOUtils.deleteRecursive(fetchDir);
+    }
+
+    /**
+     * Opens the Deployment's .zip for reading as it downloads. Any part downloaded earlier is
+     * read from the partial file, and only the rest is downloaded. Everything downloaded is
+     * appended to the partial file, so that an interrupted download can be resumed.
+     * <p>
+     * A download is only resumed if the Deployment has an eTag, which the ranged request for the
+     * rest must match. Otherwise, it is downloaded from the start.
+     */
+    private static InputStream openDownload(DeploymentInfo deploymentInfo,
+        File partialFile,
+        BiConsumer<Long, Long> progressHandler) throws IOException
+    {
+        if (StringUtils.isEmpty(deploymentInfo.geteTag()) && partialFile.exists() && !partialFile.delete()) {
+            throw new IOException("Unable to delete " + partialFile.getAbsolutePath());
+        }
+        long downloaded = partialFile.length();
+        long size = deploymentInfo.getSize();
+        InputStream earlier = downloaded > 0 ? new FileInputStream(partialFile) : new ByteArrayInputStream(new byte[0]);
+        InputStream rest = new ByteArrayInputStream(new byte[0]);
+        if (size <= 0 || downloaded < size) {
+            InputStream remote = Authenticator.getInstance()
+                .getProjectsHelper()
+                .openDeployment(deploymentInfo, downloaded);
+            if (remote == null) {
+                earlier.close();
+                throw new IOException("Unable to download " + deploymentInfo.getFileName());
+            }
+            rest = new TeeInputStream(remote, new FileOutputStream(partialFile, true), true);
+        }
+        if (downloaded > 0) {
+            LOG.info(String.format("Resuming download of %s at %d of %d bytes", deploymentInfo.getFileName(), downloaded, size));
+        }
+        InputStream in = new SequenceInputStream(earlier, rest);
+        if (progressHandler != null) {
+            in = new ProgressInputStream(in, size, progressHandler);
+        }
+        return new BufferedInputStream(in, 65536);
+    }
+
+    /**
+     * Reports the bytes read, as (bytes so far, bytes expected).
+     */
+    private static class ProgressInputStream extends FilterInputStream {
+        private final long expected;
+        private final BiConsumer<Long, Long> progressHandler;
+        private long count = 0;
+
+        ProgressInputStream(InputStream in, long expected, BiConsumer<Long, Long> progressHandler) {
+            super(in);
+            this.expected = expected;
+            this.progressHandler = progressHandler;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) advance(1);
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) advance(n);
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            advance(skipped);
+            return skipped;
+        }
+
+        private void advance(long n) {
+            count += n;
+            progressHandler.accept(count, expected);
+        }
+    }
+
+    private static Properties readState(File fetchDir) {
+        Properties state = new Properties();
+        File stateFile = new File(fetchDir, STATE_FILE);
+        if (stateFile.exists()) {
+            try (InputStream in = new FileInputStream(stateFile)) {
+                state.load(in);
+            } catch (IOException e) {
+                // Treat as nothing to resume.
+                state.clear();
+            }
+        }
+        return state;
+    }
+}
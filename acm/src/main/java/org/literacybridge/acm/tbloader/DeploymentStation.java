@@ -0,0 +1,372 @@
+package org.literacybridge.acm.tbloader;
+
+import org.apache.commons.io.FileUtils;
+import org.literacybridge.core.fs.OperationLog;
+import org.literacybridge.core.fs.TbFile;
+import org.literacybridge.core.tbdevice.TbDeviceInfo;
+import org.literacybridge.core.tbloader.DeploymentInfo;
+import org.literacybridge.core.tbloader.ProgressListener;
+import org.literacybridge.core.tbloader.TBLoaderConfig;
+import org.literacybridge.core.tbloader.TBLoaderCore;
+import org.literacybridge.core.tbloader.TbsCollected;
+import org.literacybridge.core.tbloader.TbsDeployed;
+
+import javax.swing.Box;
+import javax.swing.JButton;
+import javax.swing.JDialog;
+import javax.swing.JFrame;
+import javax.swing.JScrollPane;
+import javax.swing.JTable;
+import javax.swing.SwingUtilities;
+import javax.swing.WindowConstants;
+import javax.swing.table.AbstractTableModel;
+import java.awt.BorderLayout;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Updates several attached Talking Books at once.
+ * <p>
+ * Each Talking Book gets its own job, with its own TBLoaderCore, progress, log, collected data
+ * directory, and temporary directory, so that the jobs share nothing but the things that are
+ * safe to share: serial number allocation, the TB history, the operation log, and the upload
+ * queue.
+ * <p>
+ * No more than the station size jobs run at once; the rest wait their turn.
+ */
+class DeploymentStation {
+    private static final Logger LOG = Logger.getLogger(DeploymentStation.class.getName());
+
+    private static final String STATION_SUFFIX = ".station";
+
+    private final TBLoader tbLoader;
+    private final StatisticsUploader statisticsUploader;
+    private final File stationDir;
+    private final TbFile temporaryDir;
+    private final boolean doNotUpload;
+    private final ExecutorService executor;
+    private final List<Job> jobs = new ArrayList<>();
+    private final AtomicInteger running = new AtomicInteger();
+    private final JobTableModel tableModel = new JobTableModel();
+
+    /**
+     * The directory in which station jobs collect their data; a sibling of the single-device
+     * collection directory, so that the two never see each other's data.
+     * @param collectionWorkDir The single-device collection directory.
+     * @return the station's collection directory.
+     */
+    static File getStationDir(File collectionWorkDir) {
+        return new File(collectionWorkDir.getParentFile(), collectionWorkDir.getName() + STATION_SUFFIX);
+    }
+
+    /**
+     * Creates a station.
+     * @param tbLoader The TB-Loader, for configuration and deployment info.
+     * @param statisticsUploader Where to queue collected statistics.
+     * @param collectionWorkDir The single-device collection directory.
+     * @param temporaryDir A temporary directory; each job uses its own sub-directory.
+     * @param stationSize Maximum number of Talking Books to update at once.
+     * @param doNotUpload If true, discard collected statistics rather than uploading them.
+     */
+    DeploymentStation(TBLoader tbLoader,
+        StatisticsUploader statisticsUploader,
+        File collectionWorkDir,
+        TbFile temporaryDir,
+        int stationSize,
+        boolean doNotUpload)
+    {
+        this.tbLoader = tbLoader;
+        this.statisticsUploader = statisticsUploader;
+        this.stationDir = getStationDir(collectionWorkDir);
+        this.temporaryDir = temporaryDir;
+        this.doNotUpload = doNotUpload;
+        this.executor = Executors.newFixedThreadPool(Math.max(1, stationSize), r -> {
+            Thread t = new Thread(r, "DeploymentStation");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Adds a Talking Book to be updated. The job's configuration is read from the TB-Loader and its
+     * UI now, so call this on the UI thread.
+     * @param tbDevice The Talking Book.
+     * @param oldDeploymentInfo What is on the Talking Book now, if known.
+     * @param newDeploymentInfo What is to be put on the Talking Book.
+     */
+    void addJob(TbDeviceInfo tbDevice, DeploymentInfo oldDeploymentInfo, DeploymentInfo newDeploymentInfo) {
+        jobs.add(new Job(jobs.size() + 1, tbDevice, oldDeploymentInfo, newDeploymentInfo));
+    }
+
+    /**
+     * Starts all of the jobs, and shows their progress in a dialog. Returns immediately.
+     * @param owner Parent of the dialog.
+     * @param onFinished Called, on the UI thread, when every job has finished and the dialog has
+     *                   been closed.
+     */
+    void start(JFrame owner, Runnable onFinished) {
+        StationDialog dialog = new StationDialog(owner, onFinished);
+        running.set(jobs.size());
+        for (Job job : jobs) {
+            executor.execute(() -> {
+                try {
+                    job.run();
+                } finally {
+                    if (running.decrementAndGet() == 0) {
+                        executor.shutdown();
+                        SwingUtilities.invokeLater(dialog::onAllFinished);
+                    }
+                }
+            });
+        }
+        dialog.setVisible(true);
+    }
+
+    private enum Status {
+        Waiting, Updating, Success, Failure
+    }
+
+    /**
+     * One Talking Book's update.
+     */
+    private class Job {
+        private final int jobId;
+        private final TbDeviceInfo tbDevice;
+        private final DeploymentInfo oldDeploymentInfo;
+        private final DeploymentInfo newDeploymentInfo;
+        private final File jobCollectionDir;
+        private final TbFile jobTempDir;
+        private final TBLoaderCore.Builder updateBuilder;
+
+        // Written by the worker, read by the UI.
+        private volatile Status status = Status.Waiting;
+        private volatile String step = "";
+        private volatile String detail = "";
+        private final StringBuilder log = new StringBuilder();
+
+        private TbsCollected tbsCollected;
+        private TbsDeployed tbsDeployed;
+
+        Job(int jobId, TbDeviceInfo tbDevice, DeploymentInfo oldDeploymentInfo, DeploymentInfo newDeploymentInfo) {
+            this.jobId = jobId;
+            this.tbDevice = tbDevice;
+            this.oldDeploymentInfo = oldDeploymentInfo;
+            this.newDeploymentInfo = newDeploymentInfo;
+
+            String jobName = "job" + jobId;
+            jobCollectionDir = new File(stationDir, jobName);
+            jobTempDir = temporaryDir.open(jobName);
+            // Everything from the TB-Loader's configuration and UI is captured here, on the UI
+            // thread; the worker thread only runs the update.
+            TBLoaderConfig tbLoaderConfig = tbLoader.getTbLoaderConfig(jobCollectionDir, jobTempDir);
+            updateBuilder = tbLoader.newUpdateBuilder(tbDevice,
+                    oldDeploymentInfo, newDeploymentInfo, tbLoaderConfig, new JobProgress())
+                .withTbDeviceVersion(tbDevice.getDeviceVersion());
+        }
+
+        private void run() {
+            setStatus(Status.Updating, "Starting");
+            OperationLog.Operation opLog = null;
+            boolean success = false;
+            try {
+                jobTempDir.mkdirs();
+                opLog = OperationLog.startOperation("TbLoaderUpdate");
+                opLog.put("serialno", newDeploymentInfo.getSerialNumber())
+                    .put("project", newDeploymentInfo.getProjectName())
+                    .put("deployment", newDeploymentInfo.getDeploymentName())
+                    .put("package", String.join(",", newDeploymentInfo.getPackageNames()))
+                    .put("community", newDeploymentInfo.getCommunity())
+                    .put("station", jobs.size());
+                if (oldDeploymentInfo != null && !newDeploymentInfo.getSerialNumber().equals(oldDeploymentInfo.getSerialNumber())) {
+                    opLog.put("oldSerialno", oldDeploymentInfo.getSerialNumber());
+                }
+
+                TBLoaderCore tbLoaderCore = updateBuilder.build();
+                TBLoaderCore.Result result = tbLoaderCore.update();
+
+                tbsCollected = tbLoaderCore.getTbsCollected();
+                tbsDeployed = tbLoaderCore.getTbsDeployed();
+                if (tbsCollected != null) {
+                    TbHistory.getInstance().addTbCollected(tbsCollected);
+                }
+                if (tbsDeployed != null) {
+                    TbHistory.getInstance().addTbDeployed(tbsDeployed);
+                }
+
+                opLog.put("gotstatistics", result.gotStatistics)
+                    .put("corrupted", result.corrupted)
+                    .put("reformatfailed", result.reformatOp == TBLoaderCore.Result.FORMAT_OP.failed)
+                    .put("verified", result.verified);
+                success = result.verified;
+                detail = success ? "Updated and verified in " + result.duration : "Update failed verification";
+            } catch (Exception e) {
+                LOG.log(Level.WARNING, "Exception updating " + tbDevice.getLabel(), e);
+                if (opLog != null) {
+                    opLog.put("exception", e.getMessage());
+                }
+                detail = "Exception: " + e.getMessage();
+            } finally {
+                if (opLog != null) {
+                    opLog.finish();
+                }
+                try {
+                    finishCollection(jobCollectionDir);
+                    jobTempDir.deleteDirectory();
+                } finally {
+                    setStatus(success ? Status.Success : Status.Failure, null);
+                }
+            }
+        }
+
+        /**
+         * Queues this job's collected data for upload, or discards it, and removes the job's
+         * collection directory.
+         */
+        private void finishCollection(File jobCollectionDir) {
+            if (!jobCollectionDir.isDirectory()) {
+                return;
+            }
+            if (!doNotUpload) {
+                statisticsUploader.zipAndEnqueue(jobCollectionDir, tbLoader.getUploadKeyPrefix(tbDevice));
+            }
+            try {
+                FileUtils.deleteDirectory(jobCollectionDir);
+            } catch (IOException e) {
+                LOG.log(Level.WARNING, "Couldn't remove " + jobCollectionDir.getName(), e);
+            }
+        }
+
+        private void setStatus(Status status, String step) {
+            this.status = status;
+            if (step != null) {
+                this.step = step;
+            }
+            tableModel.jobChanged(this);
+        }
+
+        /**
+         * Receives progress from this job's TBLoaderCore.
+         */
+        private class JobProgress extends ProgressListener {
+            @Override
+            public void step(Steps step) {
+                Job.this.step = step.description();
+                detail = "";
+                tableModel.jobChanged(Job.this);
+            }
+
+            @Override
+            public void detail(String value) {
+                detail = value;
+                tableModel.jobChanged(Job.this);
+            }
+
+            @Override
+            public void log(String value) {
+                synchronized (log) {
+                    log.append('\n').append(value);
+                }
+                LOG.log(Level.INFO, String.format("PROGRESS %s: %s", tbDevice.getLabel(), value));
+            }
+
+            @Override
+            public void log(boolean append, String value) {
+                if (!append) {
+                    log(value);
+                } else {
+                    synchronized (log) {
+                        log.append(value);
+                    }
+                    LOG.log(Level.INFO, String.format("PROGRESS %s: %s", tbDevice.getLabel(), value));
+                }
+            }
+        }
+    }
+
+    private class JobTableModel extends AbstractTableModel {
+        private final String[] columnNames = {"Drive", "Talking Book", "Status", "Step", "Detail"};
+
+        /**
+         * Called from any thread when a job's state changes.
+         */
+        void jobChanged(Job job) {
+            int row = job.jobId - 1;
+            SwingUtilities.invokeLater(() -> fireTableRowsUpdated(row, row));
+        }
+
+        @Override
+        public int getRowCount() {
+            return jobs.size();
+        }
+
+        @Override
+        public int getColumnCount() {
+            return columnNames.length;
+        }
+
+        @Override
+        public String getColumnName(int column) {
+            return columnNames[column];
+        }
+
+        @Override
+        public Object getValueAt(int rowIndex, int columnIndex) {
+            Job job = jobs.get(rowIndex);
+            switch (columnIndex) {
+                case 0: return job.tbDevice.getLabel();
+                case 1: return job.newDeploymentInfo.getSerialNumber();
+                case 2: return job.status;
+                case 3: return job.step;
+                case 4: return job.detail;
+            }
+            return null;
+        }
+    }
+
+    private class StationDialog extends JDialog {
+        private final Runnable onFinished;
+        private final JButton closeButton;
+
+        StationDialog(JFrame owner, Runnable onFinished) {
+            super(owner, "Updating " + jobs.size() + " Talking Books", true);
+            this.onFinished = onFinished;
+            setDefaultCloseOperation(WindowConstants.DO_NOTHING_ON_CLOSE);
+            setLayout(new BorderLayout());
+
+            JTable table = new JTable(tableModel);
+            table.getColumnModel().getColumn(4).setPreferredWidth(300);
+            add(new JScrollPane(table), BorderLayout.CENTER);
+
+            closeButton = new JButton("Close");
+            closeButton.setEnabled(false);
+            closeButton.addActionListener(e -> close());
+            Box buttonBox = Box.createHorizontalBox();
+            buttonBox.add(Box.createHorizontalGlue());
+            buttonBox.add(closeButton);
+            buttonBox.add(Box.createHorizontalStrut(10));
+            add(buttonBox, BorderLayout.SOUTH);
+
+            setSize(800, 120 + 20 * jobs.size());
+            setLocationRelativeTo(owner);
+        }
+
+        void onAllFinished() {
+            long succeeded = jobs.stream().filter(j -> j.status == Status.Success).count();
+            setTitle(String.format("Updated %d of %d Talking Books", succeeded, jobs.size()));
+            closeButton.setEnabled(true);
+        }
+
+        private void close() {
+            setVisible(false);
+            dispose();
+            onFinished.run();
+        }
+    }
+}
@@ -9,12 +9,10 @@ import org.literacybridge.acm.config.ACMConfiguration;
 import org.literacybridge.acm.config.DBConfiguration;
 import org.literacybridge.acm.config.PathsProvider;
 import org.literacybridge.acm.utils.IOUtils;
-import org.literacybridge.core.fs.ZipUnzip;
 import org.literacybridge.core.spec.ProgramSpec;
 
 import java.io.File;
 import java.io.IOException;
-import java.nio.file.Files;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
@@ -259,7 +257,15 @@ class DeploymentsManager {
      * @throws IOException if the Deployment can't be unzipped.
      */
     void getDeployment(String desiredDeployment, BiConsumer<Long, Long> progressHandler) throws IOException {
-        clearLocalDeployments();
+        // If an earlier fetch of this same Deployment was interrupted, keep what it unzipped, so
+        // that it can be resumed.
+        if (DeploymentFetch.canResume(localProjectDir, desiredDeployment,
+            availableDeployments.getRevIdForDeployment(desiredDeployment))) {
+            deleteRevFiles(localProjectDir);
+            localDeployment = null;
+        } else {
+            clearLocalDeployments();
+        }
         availableDeployments.fetchDeployment(desiredDeployment, localProjectDir, progressHandler);
     }
 
@@ -507,19 +513,12 @@ class DeploymentsManager {
                 zipFile = new File(publishedDir, "content-"+publishedDir.getName()+".zip");
                 if (!zipFile.exists()) zipFile = new File(publishedDir, publishedDir.getName()+".zip");
             }
-            if (zipFile == null || !zipFile.exists()) {
-                File tempDir = Files.createTempDirectory("tbloader-tmp").toFile();
-                File tempFile = new File(tempDir, di.getFileName());
-                Authenticator authInstance = Authenticator.getInstance();
-                ProjectsHelper projectsHelper = authInstance.getProjectsHelper();
-                projectsHelper.downloadDeployment(di,
-                    tempFile,
-                    progressHandler/*(p,t)->{System.out.printf("%d/%d\n",p,t);}*/);
-                zipFile = tempFile;
+            if (zipFile != null && !zipFile.exists()) {
+                zipFile = null;
             }
 
-            //    7z x -y -o"%userprofile%\LiteracyBridge\TB-Loaders\%project%" "..\ACM-%project%\TB-Loaders\published\%latestUpdate%\content-%latestUpdate%.zip"
-            ZipUnzip.unzip(zipFile, localProjectDir);
+            // Otherwise, download it, unzipping as it arrives.
+            DeploymentFetch.fetch(di, zipFile, localProjectDir, progressHandler);
 
             // Leave a marker to indicate what is here.
             String revFileName = di.getVersionMarker() + ".rev";
@@ -29,7 +29,7 @@ class OperationLogImpl implements OperationLog.Implementation{
 
     private File logDir;
     private File logFile;
-    private DateFormat filenameFormat = ISO8601;
+    private final DateFormat filenameFormat = ISO8601;
 
     OperationLogImpl(File logDir) {
         this.logDir = logDir;
@@ -42,7 +42,10 @@ class OperationLogImpl implements OperationLog.Implementation{
 
     private synchronized File getLogFile() {
         if (logFile == null) {
-            String logTimestamp = filenameFormat.format(new Date());
+            String logTimestamp;
+            synchronized (filenameFormat) {
+                logTimestamp = filenameFormat.format(new Date());
+            }
             logFile = new File(logDir, logTimestamp + ".log");
         }
         return logFile;
@@ -1,23 +1,29 @@
 package org.literacybridge.acm.tbloader;
 
 import org.apache.commons.io.FileUtils;
-import org.literacybridge.acm.cloud.Authenticator;
 import org.literacybridge.acm.config.ACMConfiguration;
 import org.literacybridge.core.fs.ZipUnzip;
 
 import javax.swing.SwingWorker;
 import java.io.File;
 import java.io.IOException;
-import java.nio.file.Path;
-import java.nio.file.Paths;
-import java.util.ArrayList;
-import java.util.Comparator;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 public class StatisticsUploader {
+    private static final int MAX_CONCURRENT_UPLOADS = 3;
+    // How long to wait for work when the queue is idle; a backstop, as enqueuing wakes the worker.
+    private static final long IDLE_DELAY = 60_000;
+    private static final long MIN_OFFLINE_DELAY = 5_000;
+    private static final long MAX_OFFLINE_DELAY = 5 * 60_000;
+
     private final TBLoader tbLoader;
 
     private final File uploadQueueDir;
+    private final UploadQueue uploadQueue;
+    private final UploadTarget uploadTarget;
 
     private boolean suppressUpload = ACMConfiguration.getInstance().isSuppressStatisticsUpload();
 
@@ -26,6 +32,9 @@ public class StatisticsUploader {
 
         this.tbLoader = tbLoader;
         this.uploadQueueDir = uploadQueueDir;
+        this.uploadQueue = new UploadQueue(uploadQueueDir);
+        File standIn = ACMConfiguration.getInstance().getStatisticsUploadDirectory();
+        this.uploadTarget = standIn != null ? new UploadTarget.LocalDirectory(standIn) : new UploadTarget.S3();
     }
 
     /**
@@ -36,7 +45,7 @@ public class StatisticsUploader {
      * @param keyPrefix     A prefix to prepend the file name to construct the S3 key, for
      *                      example "collected-data.v2/tbcd000c"
      */
-    void zipAndEnqueue(File fromDirectory, String keyPrefix) {
+    synchronized void zipAndEnqueue(File fromDirectory, String keyPrefix) {
         if (!fromDirectory.isDirectory()) {
             throw new IllegalArgumentException("'fromDirectory' must be a directory");
         }
@@ -50,8 +59,10 @@ public class StatisticsUploader {
                         ZipUnzip.zip(uploadable, zipFile, true);
                         FileUtils.deleteDirectory(uploadable);
                         FileUtils.moveFileToDirectory(zipFile, uploadTargetDir, true);
+                        uploadQueue.add(new File(uploadTargetDir, zipFile.getName()));
                     } else {
                         FileUtils.moveFileToDirectory(uploadable, uploadTargetDir, true);
+                        uploadQueue.add(new File(uploadTargetDir, uploadable.getName()));
                     }
                 } catch (IOException e) {
                     // This really shouldn't happen. If it does, then what?
@@ -62,53 +73,76 @@ public class StatisticsUploader {
             uploadWorker = new UploadWorker();
             uploadWorker.execute();
         } else {
-            tbLoader.updateUploadStatus(new StatisticsUploader.UploadStatus(getUploadQueue()));
+            tbLoader.updateUploadStatus(uploadQueue.getStatus());
         }
     }
 
     /**
      * Helper class to upload stats and user feedback to S3.
+     * <p>
+     * Uploads up to MAX_CONCURRENT_UPLOADS files at once, smallest first. Rather than sleeping
+     * for fixed intervals, the worker waits until there is something to do: a file is enqueued,
+     * an upload finishes, or a failed upload's retry delay expires.
      */
     class UploadWorker extends SwingWorker<UploadStatus, UploadStatus> {
-        final Path uploadQueuePath = Paths.get(uploadQueueDir.getAbsolutePath());
-
         @Override
         protected StatisticsUploader.UploadStatus doInBackground() throws Exception {
-            final String bucket = "acm-stats";
-            final Authenticator authInstance = Authenticator.getInstance();
-            List<File> queue = getUploadQueue();
-            while (!isCancelled()) {
-                if (queue.size() == 0) {
-                    queue = getUploadQueue();
+            ExecutorService uploadExecutor = Executors.newFixedThreadPool(MAX_CONCURRENT_UPLOADS, r -> {
+                Thread t = new Thread(r, "StatisticsUploader");
+                t.setDaemon(true);
+                return t;
+            });
+            long offlineDelay = MIN_OFFLINE_DELAY;
+            try {
+                while (!isCancelled()) {
+                    publish(uploadQueue.getStatus());
+                    if (!uploadTarget.isOnline()) {
+                        // Currently, we never go offline->online. But if the implementation changes
+                        // such that it does, this code will at least work.
+                        uploadQueue.awaitWork(offlineDelay);
+                        offlineDelay = Math.min(MAX_OFFLINE_DELAY, offlineDelay * 2);
+                        continue;
+                    }
+                    offlineDelay = MIN_OFFLINE_DELAY;
+                    for (Map.Entry<String, String> entry : uploadQueue.getAbandoned().entrySet()) {
+                        if (uploadTarget.abandon(entry.getValue(), entry.getKey())) {
+                            uploadQueue.discarded(entry.getKey());
+                        }
+                    }
+                    UploadQueue.Item item;
+                    while ((item = uploadQueue.take(MAX_CONCURRENT_UPLOADS)) != null) {
+                        UploadQueue.Item toUpload = item;
+                        uploadExecutor.execute(() -> upload(toUpload));
+                    }
+                    uploadQueue.awaitWork(IDLE_DELAY);
                 }
-                publish(new StatisticsUploader.UploadStatus(queue));
-                if (!authInstance.isOnline()) {
-                    // Currently, we never go offline->online. But if the implementation changes
-                    // such that it does, this code will at least work.
-                    Thread.sleep(60000);
-                } else if (queue.size() > 0) {
-                    // Given an uploadQueue ~/Users/alice/Amplio/uploadQueue, and a file in that directory
-                    // collected-data/tbcd000c/20220110T085217.123Z.zip, upload the file to
-                    // s3://acm-stats/collected-data/tbcd000c/2022-110T085217.123Z.zip
-                    File nextFile = queue.remove(0);
-                    Path keyPath = Paths.get(nextFile.getAbsolutePath());
-                    Path relativePath = uploadQueuePath.relativize(keyPath);
-                    String key = relativePath.toString();
-                    System.out.printf("%s => ", key);
-                    key = key.replaceAll("\\\\", "/");
-                    System.out.printf("%s\n", key);
-                    if (suppressUpload) {
-                        System.out.println("** upload suppressed by config; deleting **");
-                        nextFile.delete();
-                    } else if (authInstance.getAwsInterface().uploadS3Object(bucket, key, nextFile)) {
-                        nextFile.delete();
+            } finally {
+                uploadExecutor.shutdown();
+            }
+            return null;
+        }
+
+        private void upload(UploadQueue.Item item) {
+            boolean uploaded = false;
+            try {
+                System.out.printf("%s => %s\n", item.file.getName(), item.key);
+                if (suppressUpload) {
+                    System.out.println("** upload suppressed by config; deleting **");
+                    if (item.resumeState != null) {
+                        uploadTarget.abandon(item.key, item.resumeState);
                     }
-                    Thread.sleep(2000);
+                    uploaded = true;
+                } else {
+                    uploaded = uploadTarget.upload(item.key, item.file, item.resumeState,
+                        state -> uploadQueue.checkpoint(item, state));
+                }
+            } finally {
+                if (uploaded) {
+                    uploadQueue.succeeded(item);
                 } else {
-                    Thread.sleep(10000);
+                    uploadQueue.failed(item);
                 }
             }
-            return null;
         }
 
         protected void process(List<StatisticsUploader.UploadStatus> list) {
@@ -119,52 +153,16 @@ public class StatisticsUploader {
 
     UploadWorker uploadWorker;
 
-
-    /**
-     * Scans the upload queue for anything waiting to be uploaded.
-     *
-     * @return a list of files in the upload queue.
-     */
-    private List<File> getUploadQueue() {
-        List<File> result = new ArrayList<>();
-        StatisticsUploader.addFiles(uploadQueueDir, result, true);
-        result.sort(Comparator.comparingLong(File::length));
-        return result;
-    }
-
-    /**
-     * Helper for recursively getting the files in a directory.
-     *
-     * @param file        a file to be added, or a directory to be scanned recursively.
-     * @param list        of files to be appended to.
-     * @param removeEmpty if true, rmdir empty directories.
-     */
-    private static void addFiles(File file, List<File> list, boolean removeEmpty) {
-        if (!file.exists()) return;
-        if (file.isDirectory()) {
-            File[] dirList = file.listFiles();
-            if (dirList.length == 0 && removeEmpty) {
-                file.delete();
-            } else {
-                for (File f : dirList)
-                    addFiles(f, list, removeEmpty);
-            }
-        } else {
-            list.add(file);
-        }
-    }
-
     /**
      * Object to hold upload status: number of files, number of bytes.
      */
     static class UploadStatus {
-        List<File> queued;
         int nFiles;
         long nBytes;
 
-        public UploadStatus(List<File> files) {
-            nFiles = files.size();
-            nBytes = files.stream().map(File::length).reduce(0L, Long::sum);
+        public UploadStatus(int nFiles, long nBytes) {
+            this.nFiles = nFiles;
+            this.nBytes = nBytes;
         }
     }
 
@@ -23,6 +23,7 @@ import org.literacybridge.core.spec.ProgramSpec;
 import org.literacybridge.core.spec.Recipient;
 import org.literacybridge.core.tbdevice.TbDeviceInfo;
 import org.literacybridge.core.tbloader.DeploymentInfo;
+import org.literacybridge.core.tbloader.ProgressListener;
 import org.literacybridge.core.tbloader.TBLoaderConfig;
 import org.literacybridge.core.tbloader.TBLoaderConstants;
 import org.literacybridge.core.tbloader.TBLoaderCore;
@@ -54,6 +55,7 @@ import java.net.URL;
 import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashSet;
 import java.util.List;
@@ -241,6 +243,8 @@ public class TBLoader extends JFrame {
     private ProgramSpec programSpec = null;
     private DeploymentChooser deploymentChooser;
     private FsRootMonitor fsRootMonitor;
+    // The drives most recently reported by the FsRootMonitor.
+    private List<File> currentRoots = new ArrayList<>();
     private StatisticsUploader statisticsUploader;
 
     String getProgram() {
@@ -376,6 +380,13 @@ public class TBLoader extends JFrame {
 
         statisticsUploader = new StatisticsUploader(this, uploadQueueDir);
         statisticsUploader.zipAndEnqueue(collectionWorkDir, "abandoned-data/tbcd"+deviceIdHex);
+        File[] abandonedStationJobs = DeploymentStation.getStationDir(collectionWorkDir).listFiles(File::isDirectory);
+        if (abandonedStationJobs != null) {
+            for (File jobDir : abandonedStationJobs) {
+                statisticsUploader.zipAndEnqueue(jobDir, "abandoned-data/tbcd"+deviceIdHex);
+                FileUtils.deleteQuietly(jobDir);
+            }
+        }
     }
 
     public FsRootMonitor getFsRootMonitor() {
@@ -448,7 +459,7 @@ public class TBLoader extends JFrame {
      * @param tbDevice The device for which to get the key.
      * @return the key.
      */
-    private String getUploadKeyPrefix(TbDeviceInfo tbDevice) {
+    String getUploadKeyPrefix(TbDeviceInfo tbDevice) {
         String key = tbDevice.getDeviceVersion()==TbDeviceInfo.DEVICE_VERSION.TBv2
                 ? "collected-data.v2"
                 : "collected-data";
@@ -508,6 +519,7 @@ public class TBLoader extends JFrame {
             .withPackageNameMap(packageNameMap)
             .withSettingsClickedListener(TblSettingsDialog::showDialog)
             .withGoListener(this::onTbLoaderGo)
+            .withStationListener(tbArgs.stationSize > 0 ? this::onStationGo : null)
             .withRecipientListener(this::onRecipientSelected)
             .withDeviceSelectedListener(this::onDeviceSelected)
             .withDeviceVersionSelectedListener(this::onDeviceVersionSelected)
@@ -829,9 +841,21 @@ public class TBLoader extends JFrame {
      * @return the new TBLoaderConfig.
      */
     private TBLoaderConfig getTbLoaderConfig() {
+        return getTbLoaderConfig(collectionWorkDir, temporaryDir);
+    }
+
+    /**
+     * Allocate a new TBLoaderConfig, with a new timestamp for the collected data.
+     * @param collectionRoot The directory in which to collect the data.
+     * @param tempDir A temporary directory for the TBLoaderCore's use.
+     * @return the new TBLoaderConfig.
+     */
+    TBLoaderConfig getTbLoaderConfig(File collectionRoot, TbFile tempDir) {
         commandLineUtils = new CommandLineUtils(softwareDir);
-        String collectionTimestamp = ISO8601.format(new Date());
-        File collectionRoot = collectionWorkDir;
+        String collectionTimestamp;
+        synchronized (ISO8601) {
+            collectionTimestamp = ISO8601.format(new Date());
+        }
 
         // If we're deploying to a pseudo-device, don't collect statistics to where
         // the'll upload. Collect to a pseudo-location instead.
@@ -844,7 +868,7 @@ public class TBLoader extends JFrame {
 
         TBLoaderConfig.Builder builder = new TBLoaderConfig.Builder().withTbLoaderId(deviceIdHex)
             .withCollectedDataDirectory(collectedDataTbFile)
-            .withTempDirectory(temporaryDir)
+            .withTempDirectory(tempDir)
             .withUserEmail(userEmail)
             .withUserName(userName);
         if (!tbLoaderConfig.suppressDosTools && OSChecker.WINDOWS) {
@@ -981,7 +1005,7 @@ public class TBLoader extends JFrame {
      *
      * @return The next serial number.
      */
-    private int allocateNextSerialNumberFromTbLoader() throws Exception {
+    int allocateNextSerialNumberFromTbLoader() throws Exception {
         int serialnumber;
             serialnumber = Authenticator.getInstance().getTbSrnHelper().allocateNextSrn();
             if (serialnumber == 0) {
@@ -992,6 +1016,7 @@ public class TBLoader extends JFrame {
 
     FileSystemView fsView = FileSystemView.getFileSystemView();
     private void rootsHandler(List<File> files) {
+        currentRoots = new ArrayList<>(files);
         int lastMatchIndex = -1;
         String currentPath = (currentTbDevice == null || currentTbDevice.getRootFile() == null) ? "::" : currentTbDevice.getRootFile().getAbsolutePath();
         List<TbDeviceInfoHolder> newList = new ArrayList<>();
@@ -1050,6 +1075,17 @@ public class TBLoader extends JFrame {
 
 
     private void fillPackageFromRecipient(Recipient recipient) {
+        // If ever we can configure the program specification with multiple default content packages, change this to
+        // setDefaultPackages(listOfPackages);
+        tbLoaderPanel.setDefaultPackage(getPackageForRecipient(recipient));
+    }
+
+    /**
+     * Finds the default content package for a recipient in the current deployment.
+     * @param recipient The recipient.
+     * @return the package, or "" if there is none.
+     */
+    private String getPackageForRecipient(Recipient recipient) {
         Properties deploymentProperties = getProgramSpec().getDeploymentProperties();
         String key = recipient.languagecode;
         if (StringUtils.isNotEmpty(recipient.variant)) {
@@ -1074,9 +1110,7 @@ public class TBLoader extends JFrame {
                 contentPackage = "";
             }
         }
-        // If ever we can configure the program specification with multiple default content packages, change this to
-        // setDefaultPackages(listOfPackages);
-        tbLoaderPanel.setDefaultPackage(contentPackage);
+        return contentPackage;
     }
 
     /**
@@ -1302,6 +1336,113 @@ public class TBLoader extends JFrame {
         }
     }
 
+    /**
+     * Handles the "Update All" button. Updates every attached Talking Book, up to the station
+     * size at a time. Each Talking Book keeps its own recipient, and gets that recipient's
+     * package; only a Talking Book without a known recipient gets the community and packages
+     * selected in the UI.
+     */
+    private void onStationGo() {
+        LOG.log(Level.INFO, "ACTION: Station update");
+        if (!tbLoaderPanel.hasSelectedPackage()) {
+            JOptionPane.showMessageDialog(applicationWindow,
+                "Please choose a Content Package to\nupdate the Talking Books.",
+                "No Content Package",
+                JOptionPane.PLAIN_MESSAGE);
+            return;
+        }
+        DeploymentStation station = new DeploymentStation(this,
+            statisticsUploader,
+            collectionWorkDir,
+            temporaryDir,
+            tbArgs.stationSize,
+            tbLoaderConfig.isDoNotUpload());
+        int count = 0;
+        List<String> skipped = new ArrayList<>();
+        try {
+            for (File root : currentRoots) {
+                String label = fsView.getSystemDisplayName(root);
+                TbDeviceInfo tbDevice = TbDeviceInfo.getDeviceInfoFor(new FsFile(root),
+                    label,
+                    srnPrefix,
+                    tbLoaderPanel.getSelectedDeviceVersion());
+                TbDeviceInfo.DEVICE_VERSION version = tbDevice.getDeviceVersion();
+                if (version != TbDeviceInfo.DEVICE_VERSION.TBv1 && version != TbDeviceInfo.DEVICE_VERSION.TBv2) {
+                    LOG.log(Level.INFO, String.format("Skipping %s, not a Talking Book", label));
+                    continue;
+                }
+                DeploymentInfo oldInfo = tbDevice.createDeploymentInfo(newProject);
+
+                Recipient recipient = oldInfo == null ? null
+                    : getProgramSpec().getRecipients().getRecipient(oldInfo.getRecipientid());
+                String recipientid;
+                List<String> packages;
+                if (recipient != null) {
+                    String contentPackage = getPackageForRecipient(recipient);
+                    if (StringUtils.isEmpty(contentPackage)) {
+                        LOG.log(Level.INFO, String.format("Skipping %s, no content package for %s", label, recipient.recipientid));
+                        skipped.add(label);
+                        continue;
+                    }
+                    recipientid = recipient.recipientid;
+                    packages = Collections.singletonList(contentPackage);
+                } else if (tbLoaderPanel.getSelectedRecipient() != null) {
+                    recipientid = tbLoaderPanel.getSelectedRecipient().recipientid;
+                    packages = tbLoaderPanel.getSelectedPackages();
+                } else {
+                    LOG.log(Level.INFO, String.format("Skipping %s, no recipient", label));
+                    skipped.add(label);
+                    continue;
+                }
+
+                // As for a single Talking Book, in onTbLoaderGo.
+                String srn = oldInfo != null ? oldInfo.getSerialNumber() : TBLoaderConstants.NEED_SERIAL_NUMBER;
+                if (!tbDevice.isSerialNumberFormatGood(srn) || tbDevice.newSerialNumberNeeded()) {
+                    srn = TBLoaderConstants.NEED_SERIAL_NUMBER;
+                }
+                boolean isNewSrn = false;
+                if (version == TbDeviceInfo.DEVICE_VERSION.TBv1 &&
+                    (!TBLoaderUtils.isSerialNumberFormatGood(srnPrefix, srn) || TBLoaderUtils.newSerialNumberNeeded(srnPrefix, srn))) {
+                    int intSrn = allocateNextSerialNumberFromTbLoader();
+                    srn = (srnPrefix + deviceIdHex + String.format("%04x", intSrn)).toUpperCase();
+                    tbDevice.setSerialNumber(srn);
+                    isNewSrn = true;
+                }
+                station.addJob(tbDevice, oldInfo,
+                    buildNewDeploymentInfo(tbDevice, recipientid, packages, srn, isNewSrn));
+                count++;
+            }
+        } catch (Exception ex) {
+            LOG.log(Level.WARNING, ex.toString(), ex);
+            JOptionPane.showMessageDialog(applicationWindow,
+                "An error occured: " + ex.getMessage(),
+                "Error",
+                JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+        if (!skipped.isEmpty()) {
+            JOptionPane.showMessageDialog(applicationWindow,
+                "No Content Package was found for these Talking Books,\nso they will not be updated:\n"
+                    + String.join("\n", skipped),
+                "No Content Package",
+                JOptionPane.PLAIN_MESSAGE);
+        }
+        if (count == 0) {
+            JOptionPane.showMessageDialog(applicationWindow,
+                "No Talking Books are attached.",
+                "No Talking Books",
+                JOptionPane.PLAIN_MESSAGE);
+            return;
+        }
+
+        updatingTB = true;
+        setEnabledStates();
+        station.start(applicationWindow, () -> {
+            updatingTB = false;
+            resetUI(true);
+        });
+    }
+
     private void resetUI(boolean resetDrives) {
         LOG.log(Level.INFO, "Resetting UI");
         tbLoaderPanel.resetUi();
@@ -1356,6 +1497,133 @@ public class TBLoader extends JFrame {
     }
 
 
+    /**
+     * Builds the DeploymentInfo for updating a Talking Book with the deployment, recipient and
+     * packages currently selected in the UI.
+     * @param tbDevice The Talking Book to be updated.
+     * @param serialNumber The Talking Book's serial number, possibly newly allocated.
+     * @param isNewSerialNumber True if the serial number was newly allocated.
+     * @return the DeploymentInfo.
+     */
+    DeploymentInfo buildNewDeploymentInfo(TbDeviceInfo tbDevice, String serialNumber, boolean isNewSerialNumber) {
+        return buildNewDeploymentInfo(tbDevice,
+            tbLoaderPanel.getSelectedRecipient().recipientid,
+            tbLoaderPanel.getSelectedPackages(),
+            serialNumber,
+            isNewSerialNumber);
+    }
+
+    /**
+     * Builds the DeploymentInfo for updating a Talking Book with the deployment currently selected
+     * in the UI, for the given recipient and packages.
+     * @param tbDevice The Talking Book to be updated.
+     * @param recipientid The recipient to receive the Talking Book.
+     * @param selectedPackages The packages to put on the Talking Book.
+     * @param serialNumber The Talking Book's serial number, possibly newly allocated.
+     * @param isNewSerialNumber True if the serial number was newly allocated.
+     * @return the DeploymentInfo.
+     */
+    private DeploymentInfo buildNewDeploymentInfo(TbDeviceInfo tbDevice,
+        String recipientid,
+        List<String> selectedPackages,
+        String serialNumber,
+        boolean isNewSerialNumber)
+    {
+        String directory = getMappedDirectoryForRecipient(recipientid);
+
+        ////////////////////////////////////////////////////////////////////////////////////////////////////////////
+        ////////////////////////////////////////////////////////////////////////////////////////////////////////////
+        // HACK to work around problem with encoded package names.
+        if (newProject.equals("UNICEF-GH-CHPS") && tbDevice.getDeviceVersion()== TbDeviceInfo.DEVICE_VERSION.TBv1) {
+            selectedPackages = selectedPackages.stream()
+                    .map(pkg -> {
+                        switch (pkg) {
+                            case "UNICEF-GH-CHPS-5-dga":
+                                return "NCF-GH-CHPS5dga";
+                            case "UNICEF-GH-CHPS-5-en":
+                                return "UNICEF-GH-CHPS5en";
+                            case "UNICEF-GH-CHPS-5-ssl":
+                                return "NCF-GH-CHPS5ssl";
+                        }
+                        return pkg;})
+                    .collect(Collectors.toList());
+        }
+        ////////////////////////////////////////////////////////////////////////////////////////////////////////////
+        ////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+        assert(recipientid.equals(getRecipientIdForCommunity(directory)));
+        DeploymentInfo.DeploymentInfoBuilder builder = new DeploymentInfo.DeploymentInfoBuilder()
+            .withSerialNumber(serialNumber)
+            .withNewSerialNumber(isNewSerialNumber)
+            .withProjectName(newProject)
+            .withDeploymentName(deploymentChooser.getNewDeployment())
+            .withPackageNames(selectedPackages)
+            .withUpdateDirectory(null)
+            .withUpdateTimestamp(tbLoaderPanel.getDateRotation())
+            .withFirmwareRevision(newTbFirmware)
+            .withCommunity(directory)
+            .withRecipientid(recipientid)
+            .asTestDeployment(tbLoaderPanel.isTestDeployment());
+        if (getProgramSpec() != null) {
+            String numberStr = getProgramSpec().getDeploymentProperties().getProperty(DEPLOYMENT_NUMBER);
+            if (numberStr != null) {
+                builder.withDeploymentNumber(Integer.parseInt(numberStr));
+            }
+        }
+
+        return builder.build();
+    }
+
+    /**
+     * Creates a TBLoaderCore.Builder to update a Talking Book with the new deployment. Reads the
+     * UI, so call it on the UI thread.
+     * @param tbDevice The Talking Book to be updated.
+     * @param oldDeploymentInfo What was on the Talking Book, if known.
+     * @param newDeploymentInfo What is to be put on the Talking Book.
+     * @param tbLoaderConfig The configuration for this update.
+     * @param progressListener To receive progress of the update.
+     * @return the Builder.
+     */
+    TBLoaderCore.Builder newUpdateBuilder(TbDeviceInfo tbDevice,
+        DeploymentInfo oldDeploymentInfo,
+        DeploymentInfo newDeploymentInfo,
+        TBLoaderConfig tbLoaderConfig,
+        ProgressListener progressListener)
+    {
+        File newDeploymentContentDir = new File(localTbLoaderDir,
+            TBLoaderConstants.CONTENT_SUBDIR + File.separator
+                + newDeploymentInfo.getDeploymentName());
+        TbFile deploymentContents = new FsFile(newDeploymentContentDir);
+        String acceptableFirmwareVersions = programSpec.getDeploymentProperties().getProperty(
+            TBLoaderConstants.ACCEPTABLE_FIRMWARE_VERSIONS);
+        // Programs can trade the time spent verifying against confidence in the result.
+        int verifySamplePercent = TBLoaderConstants.DEFAULT_VERIFY_SAMPLE_PERCENT;
+        String verifySampleProperty = programSpec.getDeploymentProperties().getProperty(
+            TBLoaderConstants.VERIFY_SAMPLE_PERCENT);
+        if (StringUtils.isNotBlank(verifySampleProperty)) {
+            try {
+                verifySamplePercent = Integer.parseInt(verifySampleProperty.trim());
+            } catch (NumberFormatException e) {
+                LOG.log(Level.WARNING, "Ignoring bad " + TBLoaderConstants.VERIFY_SAMPLE_PERCENT + ": " + verifySampleProperty);
+            }
+        }
+
+        return new TBLoaderCore.Builder().withTbLoaderConfig(tbLoaderConfig)
+            .withTbDeviceInfo(tbDevice)
+            .withTbDeviceVersion(tbLoaderPanel.getDeviceVersion())
+            .withDeploymentDirectory(deploymentContents)
+            .withOldDeploymentInfo(oldDeploymentInfo!=null?oldDeploymentInfo:newDeploymentInfo)
+            .withNewDeploymentInfo(newDeploymentInfo)
+            .withAcceptableFirmware(acceptableFirmwareVersions)
+//            .withLocation(currentLocationChooser.getSelectedItem().toString())
+            .withRefreshFirmware(tbLoaderPanel.isForceFirmware())
+            .withDifferentialUpdate(!tbArgs.fullUpdate)
+            .withCopyStreams(tbArgs.copyStreams)
+            .withVerifySamplePercent(verifySamplePercent)
+            .withProgressListener(progressListener)
+            .withProgramSpec(programSpec);
+    }
+
     // TODO: Move this to its own file.
     public class CopyThread extends Thread {
 
@@ -1439,52 +1707,8 @@ public class TBLoader extends JFrame {
         }
 
         private void collectStatsAndDeployNewContent() {
-            String recipientid = tbLoaderPanel.getSelectedRecipient().recipientid;
-            String directory = getMappedDirectoryForRecipient(recipientid);
-            List<String> selectedPackages = tbLoaderPanel.getSelectedPackages();
-
-            ////////////////////////////////////////////////////////////////////////////////////////////////////////////
-            ////////////////////////////////////////////////////////////////////////////////////////////////////////////
-            // HACK to work around problem with encoded package names.
-            if (newProject.equals("UNICEF-GH-CHPS") && currentTbDevice.getDeviceVersion()== TbDeviceInfo.DEVICE_VERSION.TBv1) {
-                selectedPackages = selectedPackages.stream()
-                        .map(pkg -> {
-                            switch (pkg) {
-                                case "UNICEF-GH-CHPS-5-dga":
-                                    return "NCF-GH-CHPS5dga";
-                                case "UNICEF-GH-CHPS-5-en":
-                                    return "UNICEF-GH-CHPS5en";
-                                case "UNICEF-GH-CHPS-5-ssl":
-                                    return "NCF-GH-CHPS5ssl";
-                            }
-                            return pkg;})
-                        .collect(Collectors.toList());
-            }
-            ////////////////////////////////////////////////////////////////////////////////////////////////////////////
-            ////////////////////////////////////////////////////////////////////////////////////////////////////////////
-
             assert(tbLoaderPanel.getNewSrn().equals(newTbSrn));
-            assert(recipientid.equals(getRecipientIdForCommunity(directory)));
-            DeploymentInfo.DeploymentInfoBuilder builder = new DeploymentInfo.DeploymentInfoBuilder()
-                .withSerialNumber(newTbSrn)
-                .withNewSerialNumber(isNewSerialNumber)
-                .withProjectName(newProject)
-                .withDeploymentName(deploymentChooser.getNewDeployment())
-                .withPackageNames(selectedPackages)
-                .withUpdateDirectory(null)
-                .withUpdateTimestamp(tbLoaderPanel.getDateRotation())
-                .withFirmwareRevision(newTbFirmware)
-                .withCommunity(directory)
-                .withRecipientid(recipientid)
-                .asTestDeployment(tbLoaderPanel.isTestDeployment());
-            if (getProgramSpec() != null) {
-                String numberStr = getProgramSpec().getDeploymentProperties().getProperty(DEPLOYMENT_NUMBER);
-                if (numberStr != null) {
-                    builder.withDeploymentNumber(Integer.parseInt(numberStr));
-                }
-            }
-
-            DeploymentInfo newDeploymentInfo = builder.build();
+            DeploymentInfo newDeploymentInfo = buildNewDeploymentInfo(currentTbDevice, newTbSrn, isNewSerialNumber);
 
             String endMsg = null;
             String endTitle = null;
@@ -1507,29 +1731,12 @@ public class TBLoader extends JFrame {
                 }
             }
 
-            File newDeploymentContentDir = new File(localTbLoaderDir,
-                TBLoaderConstants.CONTENT_SUBDIR + File.separator
-                    + newDeploymentInfo.getDeploymentName());
-
-            TbFile deploymentContents = new FsFile(newDeploymentContentDir);
-
             TBLoaderCore.Result result = null;
             try {
                 TBLoaderConfig tbLoaderConfig = getTbLoaderConfig();
-                String acceptableFirmwareVersions = programSpec.getDeploymentProperties().getProperty(
-                    TBLoaderConstants.ACCEPTABLE_FIRMWARE_VERSIONS);
 
-                TBLoaderCore tbLoader = new TBLoaderCore.Builder().withTbLoaderConfig(tbLoaderConfig)
-                    .withTbDeviceInfo(currentTbDevice)
-                    .withTbDeviceVersion(tbLoaderPanel.getDeviceVersion())
-                    .withDeploymentDirectory(deploymentContents)
-                    .withOldDeploymentInfo(oldDeploymentInfo!=null?oldDeploymentInfo:newDeploymentInfo)
-                    .withNewDeploymentInfo(newDeploymentInfo)
-                    .withAcceptableFirmware(acceptableFirmwareVersions)
-//                    .withLocation(currentLocationChooser.getSelectedItem().toString())
-                    .withRefreshFirmware(tbLoaderPanel.isForceFirmware())
-                    .withProgressListener(tbLoaderPanel.getProgressDisplayManager())
-                    .withProgramSpec(programSpec)
+                TBLoaderCore tbLoader = newUpdateBuilder(currentTbDevice, oldDeploymentInfo, newDeploymentInfo,
+                        tbLoaderConfig, tbLoaderPanel.getProgressDisplayManager())
                     .build();
                 result = tbLoader.update();
 
@@ -5,10 +5,12 @@ import org.literacybridge.acm.cloud.Authenticator;
 import org.literacybridge.acm.config.ACMConfiguration;
 import org.literacybridge.core.spec.ProgramSpec;
 import org.literacybridge.core.spec.RecipientList.RecipientAdapter;
+import org.literacybridge.core.tbloader.TbOperation;
 import org.literacybridge.core.tbloader.TbsCollected;
 import org.literacybridge.core.tbloader.TbsDeployed;
 import org.literacybridge.core.utils.CsvReader;
 
+import javax.swing.SwingUtilities;
 import javax.swing.event.ChangeEvent;
 import javax.swing.event.ChangeListener;
 import javax.swing.event.EventListenerList;
@@ -18,14 +20,19 @@ import java.io.FileWriter;
 import java.io.IOException;
 import java.io.Reader;
 import java.io.StringReader;
+import java.io.UnsupportedEncodingException;
 import java.io.Writer;
+import java.net.URLEncoder;
+import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.stream.Collectors;
+import java.util.function.Function;
 
 import static org.apache.commons.text.StringEscapeUtils.escapeCsv;
 
@@ -36,6 +43,11 @@ public class TbHistory {
     public static final String DEPLOYED_LOCAL = "tbsdeployed-local.csv";
     public static final String COLLECTED_LOCAL = "tbscollected-local.csv";
     public static final String CHANGED = "tbschanged.csv";
+    public static final String DEPLOYED_STORE = "tbsdeployed-global.bin";
+    public static final String COLLECTED_STORE = "tbscollected-global.bin";
+
+    private static final String DEPLOYED_TIMESTAMP = "deployedtimestamp";
+    private static final String COLLECTED_TIMESTAMP = "collectedtimestamp";
 
     public enum HISTORY_SOURCE {
         NO_HISTORY, LOCAL, ONLINE;
@@ -50,8 +62,9 @@ public class TbHistory {
 
     private List<TbsDeployed> tbsDeployedLocal;
     private List<TbsCollected> tbsCollectedLocal;
-    List<TbsDeployed> tbsDeployedGlobal;
-    List<TbsCollected> tbsCollectedGlobal;
+    // Deployments and collections from all users/laptops, plus those made here not yet known globally.
+    private TbHistoryTable tbsDeployedGlobal;
+    private TbHistoryTable tbsCollectedGlobal;
     // Some TBs have had serial number changes; map {from:to}
     private Map<String, String> tbsChanged;
     private String latestDeploymentName;
@@ -80,7 +93,27 @@ public class TbHistory {
     public void setRelevantRecipients(Collection<RecipientAdapter> relevantRecipients) {
         if (haveHistory()) {
             summarizer.setRecipients(relevantRecipients);
-            fireChangeEvent();
+            fireChangeEvent(null);
+        }
+    }
+
+    /**
+     * Notification that the history has changed. If only some recipients' summaries changed,
+     * the event says which; listeners may then update only those.
+     */
+    public static class HistoryChangeEvent extends ChangeEvent {
+        private final Set<String> changedRecipients;
+
+        HistoryChangeEvent(Object source, Set<String> changedRecipients) {
+            super(source);
+            this.changedRecipients = changedRecipients;
+        }
+
+        /**
+         * @return the recipientids whose summaries changed, or null if anything may have changed.
+         */
+        public Set<String> getChangedRecipients() {
+            return changedRecipients;
         }
     }
 
@@ -92,66 +125,133 @@ public class TbHistory {
     }
 
     private TbHistory(String programid) {
+        this(programid, TBLoader.getApplication().getProgramSpec(),
+            ACMConfiguration.getInstance().getPathProvider(programid).getLocalTbLoaderHistoryDir());
+    }
+
+    TbHistory(String programid, ProgramSpec programSpec, File historyDir) {
         this.programid = programid;
-        historyDir = ACMConfiguration.getInstance().getPathProvider(programid).getLocalTbLoaderHistoryDir();
-        programSpec = TBLoader.getApplication().getProgramSpec();
+        this.historyDir = historyDir;
+        this.programSpec = programSpec;
         summarizer = new TbHistorySummarizer(this, programSpec.getRecipients());
     }
 
-    public void initializeHistory() {
+    public synchronized void initializeHistory() {
         historySource = HISTORY_SOURCE.NO_HISTORY;
         try {
-            latestDeploymentName = TBLoader.getApplication().getNewDeployment();
-            latestDeploymentNumber = programSpec.getDeployment(latestDeploymentName).deploymentnumber;
+            loadHistory(TBLoader.getApplication().getNewDeployment(), true);
+        } catch (Exception ignored) {}
+    }
 
-            if (refreshGlobalHistory()) {
-                historySource = HISTORY_SOURCE.ONLINE;
-            } else if (loadSavedHistory()) {
-                historySource = HISTORY_SOURCE.LOCAL;
-            }
-            if (loadLocalHistory()) {
-                if (historySource == HISTORY_SOURCE.ONLINE) {
-                    reconcileLocalHistory();
-                }
+    /**
+     * Loads the saved and local history, and, if online, brings it up to date from the server.
+     *
+     * @param latestDeploymentName The deployment being sent out now.
+     * @param online If true, the global history is fetched from the server.
+     */
+    synchronized void loadHistory(String latestDeploymentName, boolean online) {
+        this.latestDeploymentName = latestDeploymentName;
+        latestDeploymentNumber = programSpec.getDeployment(latestDeploymentName).deploymentnumber;
+
+        // The saved history is the base for any update from the server.
+        boolean haveSavedHistory = loadSavedHistory();
+        if (online && refreshGlobalHistory()) {
+            historySource = HISTORY_SOURCE.ONLINE;
+        } else if (haveSavedHistory) {
+            historySource = HISTORY_SOURCE.LOCAL;
+        }
+        if (loadLocalHistory()) {
+            if (historySource == HISTORY_SOURCE.ONLINE) {
+                reconcileLocalHistory();
             }
-            summarizer.invalidate();
-        } catch (Exception ignored) {}
+        }
+        summarizer.invalidate();
     }
 
-    private void fireChangeEvent() {
-        ChangeEvent event = new ChangeEvent(this);
+    private void fireChangeEvent(Set<String> changedRecipients) {
+        ChangeEvent event = new HistoryChangeEvent(this, changedRecipients);
         for (ChangeListener listener : listenerList.getListeners(ChangeListener.class)) {
             listener.stateChanged(event);
         }
     }
 
+    /**
+     * Updates the summary with a new operation and notifies listeners of the recipients that
+     * changed. Records may be added from the threads that update Talking Books, but the summary
+     * is read, and listeners run, on the event thread, so that is where this happens.
+     */
+    private void historyChanged(TbOperation op) {
+        if (SwingUtilities.isEventDispatchThread()) {
+            Set<String> changedRecipients = summarizer.apply(op);
+            if (changedRecipients == null || !changedRecipients.isEmpty()) {
+                fireChangeEvent(changedRecipients);
+            }
+        } else {
+            SwingUtilities.invokeLater(() -> historyChanged(op));
+        }
+    }
+
+    /**
+     * @return a view of all known deployments, safe to read while more are added.
+     */
+    synchronized TbHistoryTable.View getTbsDeployedGlobal() {
+        return tbsDeployedGlobal.view();
+    }
+
+    /**
+     * @return a view of all known collections, safe to read while more are added.
+     */
+    synchronized TbHistoryTable.View getTbsCollectedGlobal() {
+        return tbsCollectedGlobal.view();
+    }
+
+    /**
+     * Identifies an operation, to the second, by Talking Book and time.
+     */
+    private static String operationKey(String talkingbookid, long timestamp) {
+        return talkingbookid + "+" + timestamp / 1000;
+    }
+
+    /**
+     * @return the keys of the operations in a table.
+     */
+    private static Set<String> operationKeys(TbHistoryTable table) {
+        TbHistoryTable.View view = table.view();
+        int tbCol = view.column("talkingbookid");
+        Set<String> keys = new HashSet<>();
+        for (int row = 0; row < view.size; row++) {
+            keys.add(operationKey(view.get(row, tbCol), view.timestamp(row)));
+        }
+        return keys;
+    }
+
+    private static void addOperation(TbHistoryTable table, TbOperation op) {
+        table.add(op.toRecord(), op.getOperationTimestamp());
+    }
+
     private void reconcileLocalHistory() {
         // Activity known globally
-        Set<String> knownDeployments = tbsDeployedGlobal.stream()
-            .map(tbd -> tbd.getTalkingbookid() + "+" + tbd.getDeployedtimestamp().toString())
-            .collect(Collectors.toSet());
-        Set<String> knownCollections = tbsCollectedGlobal.stream()
-            .map(tbc -> tbc.getTalkingbookid() + "+" + tbc.getCollectedtimestamp().toString())
-            .collect(Collectors.toSet());
+        Set<String> knownDeployments = operationKeys(tbsDeployedGlobal);
+        Set<String> knownCollections = operationKeys(tbsCollectedGlobal);
 
         // Remove from list of locally known activity
         int size = tbsDeployedLocal.size();
-        tbsDeployedLocal.removeIf(tbd -> knownDeployments.contains(tbd.getTalkingbookid() + "+" + tbd.getDeployedtimestamp()
-            .toString()));
+        tbsDeployedLocal.removeIf(tbd -> knownDeployments.contains(operationKey(tbd.getTalkingbookid(),
+            tbd.getDeployedtimestamp().getTime())));
         if (tbsDeployedLocal.size() != size) {
             persistTbsDeployed();
         }
 
         size = tbsCollectedLocal.size();
-        tbsCollectedLocal.removeIf(tbc -> knownCollections.contains(tbc.getTalkingbookid() + "+" + tbc.getCollectedtimestamp()
-            .toString()));
+        tbsCollectedLocal.removeIf(tbc -> knownCollections.contains(operationKey(tbc.getTalkingbookid(),
+            tbc.getCollectedtimestamp().getTime())));
         if (tbsCollectedLocal.size() != size) {
             persistTbsCollected();
         }
 
-        // Build one list of (each) activity
-        tbsDeployedGlobal.addAll(tbsDeployedLocal);
-        tbsCollectedGlobal.addAll(tbsCollectedLocal);
+        // Build one table of (each) activity
+        tbsDeployedLocal.forEach(tbd -> addOperation(tbsDeployedGlobal, tbd));
+        tbsCollectedLocal.forEach(tbc -> addOperation(tbsCollectedGlobal, tbc));
     }
 
     private void applyTbIdChanges() {
@@ -179,30 +279,41 @@ public class TbHistory {
     /**
      * Fetches the global deployment and collection history from server. Includes deployments and collections
      * from all users/laptops.
+     * <p>
+     * If there is saved history, only the operations since it was saved are requested. A server
+     * that can send only those indicates so with a "since" value in the response; otherwise the
+     * response is the complete history, and replaces the saved history.
      *
      * @return True if the data was refreshed.
      */
     private boolean refreshGlobalHistory() {
         String host = "l0im73yun2.execute-api.us-west-2.amazonaws.com";
         String url = String.format("/prod/tb_depl_history?programid=%s", programid);
+        String watermark = tbsDeployedGlobal.getWatermark();
+        if (watermark != null) {
+            try {
+                url += "&since=" + URLEncoder.encode(watermark, "UTF-8");
+            } catch (UnsupportedEncodingException ignored) {
+                // UTF-8 is always supported.
+            }
+        }
         String request = "https://" + host + url;
         long startTime = System.nanoTime();
 
         Authenticator authInstance = Authenticator.getInstance();
         if (!authInstance.isAuthenticated()) return false;
         JSONObject result = authInstance.getAwsInterface().authenticatedGetCall(request);
+        if (result == null) return false;
         long afterNet = System.nanoTime();
 
-        tbsDeployedGlobal = new ArrayList<>();
-        tbsCollectedGlobal = new ArrayList<>();
-        tbsChanged = new HashMap<>();
-
-        // Decode results from server
+        // Decode results from server. Nothing is changed until all of it has been decoded.
+        List<TbsDeployed> deployed = new ArrayList<>();
+        List<TbsCollected> collected = new ArrayList<>();
+        Map<String, String> changed = new HashMap<>();
         try (StringReader tbsDeployedReader = new StringReader(result.get("tbsdeployed").toString());
              CsvReader csvReader = new CsvReader(tbsDeployedReader)) {
             for (Map<String, String> record : csvReader) {
-                TbsDeployed tbsDeployed = new TbsDeployed(record);
-                tbsDeployedGlobal.add(tbsDeployed);
+                deployed.add(new TbsDeployed(record));
             }
         } catch (IOException e) {
             throw new RuntimeException(e);
@@ -210,8 +321,7 @@ public class TbHistory {
         try (StringReader tbsCollectedReader = new StringReader(result.get("tbscollected").toString());
              CsvReader csvReader = new CsvReader(tbsCollectedReader)) {
             for (Map<String, String> record : csvReader) {
-                TbsCollected tbsCollected = new TbsCollected(record);
-                tbsCollectedGlobal.add(tbsCollected);
+                collected.add(new TbsCollected(record));
             }
         } catch (IOException e) {
             throw new RuntimeException(e);
@@ -221,86 +331,123 @@ public class TbHistory {
         try (StringReader tbsChangedReader = new StringReader(result.get("tbschanged").toString());
              CsvReader csvReader = new CsvReader(tbsChangedReader)) {
             for (Map<String, String> record : csvReader) {
-                tbsChanged.put(record.get("from"), record.get("to"));
+                changed.put(record.get("from"), record.get("to"));
             }
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
 
+        boolean isDelta = watermark != null && result.containsKey("since");
+        if (isDelta) {
+            // Add what isn't already known; a delta may overlap the saved history.
+            Set<String> knownDeployments = operationKeys(tbsDeployedGlobal);
+            for (TbsDeployed tbd : deployed) {
+                if (knownDeployments.add(operationKey(tbd.getTalkingbookid(), tbd.getDeployedtimestamp().getTime()))) {
+                    addOperation(tbsDeployedGlobal, tbd);
+                }
+            }
+            Set<String> knownCollections = operationKeys(tbsCollectedGlobal);
+            for (TbsCollected tbc : collected) {
+                if (knownCollections.add(operationKey(tbc.getTalkingbookid(), tbc.getCollectedtimestamp().getTime()))) {
+                    addOperation(tbsCollectedGlobal, tbc);
+                }
+            }
+            tbsChanged.putAll(changed);
+        } else {
+            TbHistoryTable newDeployed = new TbHistoryTable(TbsDeployed.columns(), DEPLOYED_TIMESTAMP);
+            deployed.forEach(tbd -> addOperation(newDeployed, tbd));
+            TbHistoryTable newCollected = new TbHistoryTable(TbsCollected.columns(), COLLECTED_TIMESTAMP);
+            collected.forEach(tbc -> addOperation(newCollected, tbc));
+            tbsDeployedGlobal = newDeployed;
+            tbsCollectedGlobal = newCollected;
+            tbsChanged = changed;
+        }
+        // The server's watermark if it sends one, otherwise the time of the latest operation.
+        Object newWatermark = result.get("watermark");
+        watermark = newWatermark != null ? newWatermark.toString() : latestOperationTime();
+        tbsDeployedGlobal.setWatermark(watermark);
+        tbsCollectedGlobal.setWatermark(watermark);
+
         long afterDecode = System.nanoTime();
 
         applyTbIdChanges();
 
         // Save the decoded data to local storage.
-        File tbsDeployedFile = new File(historyDir, DEPLOYED_GLOBAL);
-        if (!tbsDeployedFile.getParentFile().exists()) {
-            tbsDeployedFile.getParentFile().mkdirs();
-        }
-        File tbsCollectedFile = new File(historyDir, COLLECTED_GLOBAL);
-        File tbsChangedFile = new File(historyDir, CHANGED);
-        try (Writer deployedWriter = new FileWriter(tbsDeployedFile);
-             Writer collectedWriter = new FileWriter(tbsCollectedFile);
-             Writer changedWriter = new FileWriter(tbsChangedFile)) {
+        saveGlobalHistory();
+        long afterWrite = System.nanoTime();
 
-            deployedWriter.write(TbsDeployed.header() + '\n');
-            for (TbsDeployed tbd : tbsDeployedGlobal) {
-                deployedWriter.write(tbd.toString());
-                deployedWriter.write('\n');
-            }
+        // So, how long did all that take?
+        System.out.printf("%d deployed, %d collected, %d changes (%s)\n",
+            deployed.size(),
+            collected.size(),
+            changed.size(),
+            isDelta ? "since " + result.get("since") : "full");
+        System.out.printf("Total: %.3f ms, net: %.3f ms, decode: %.3f ms, save: %.3f ms\n",
+            (afterWrite - startTime) / 1e6,
+            (afterNet - startTime) / 1e6,
+            (afterDecode - afterNet) / 1e6,
+            (afterWrite - afterDecode) / 1e6);
+        return true;
+    }
 
-            collectedWriter.write(TbsCollected.header() + '\n');
-            for (TbsCollected tbd : tbsCollectedGlobal) {
-                collectedWriter.write(tbd.toString());
-                collectedWriter.write('\n');
+    /**
+     * @return the time of the latest known operation, formatted as in the .csv files, or null
+     * if there are none.
+     */
+    private String latestOperationTime() {
+        long latest = Long.MIN_VALUE;
+        for (TbHistoryTable table : new TbHistoryTable[]{tbsDeployedGlobal, tbsCollectedGlobal}) {
+            TbHistoryTable.View view = table.view();
+            for (int row = 0; row < view.size; row++) {
+                latest = Math.max(latest, view.timestamp(row));
             }
+        }
+        if (latest == Long.MIN_VALUE) return null;
+        return new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS").format(new Date(latest));
+    }
+
+    /**
+     * Writes the global history to local storage.
+     */
+    private void saveGlobalHistory() {
+        if (!historyDir.exists()) {
+            historyDir.mkdirs();
+        }
+        File tbsChangedFile = new File(historyDir, CHANGED);
+        try (Writer changedWriter = new FileWriter(tbsChangedFile)) {
+            tbsDeployedGlobal.write(new File(historyDir, DEPLOYED_STORE));
+            tbsCollectedGlobal.write(new File(historyDir, COLLECTED_STORE));
 
             // {from:to} -> [from,to]
             changedWriter.write("from,to\n");
             for (Map.Entry<String, String> tbc : tbsChanged.entrySet()) {
                 changedWriter.write(String.format("%s,%s\n", escapeCsv(tbc.getKey()), escapeCsv(tbc.getValue())));
             }
-
         } catch (Exception e) {
             e.printStackTrace();
         }
-        long afterWrite = System.nanoTime();
-
-        // So, how long did all that take?
-        System.out.printf("%d deployed, %d collected, %d changes\n",
-            tbsDeployedGlobal.size(),
-            tbsCollectedGlobal.size(),
-            tbsChanged.size());
-        System.out.printf("Total: %.3f ms, net: %.3f ms, decode: %.3f ms, save: %.3f ms\n",
-            (afterWrite - startTime) / 1e6,
-            (afterNet - startTime) / 1e6,
-            (afterDecode - afterNet) / 1e6,
-            (afterWrite - afterDecode) / 1e6);
-        return true;
+        // The .csv files are superseded by the stores.
+        new File(historyDir, DEPLOYED_GLOBAL).delete();
+        new File(historyDir, COLLECTED_GLOBAL).delete();
     }
 
     private boolean loadSavedHistory() {
         long startTime = System.nanoTime();
-        tbsDeployedGlobal = new ArrayList<>();
-        tbsCollectedGlobal = new ArrayList<>();
+        tbsDeployedGlobal = new TbHistoryTable(TbsDeployed.columns(), DEPLOYED_TIMESTAMP);
+        tbsCollectedGlobal = new TbHistoryTable(TbsCollected.columns(), COLLECTED_TIMESTAMP);
+        tbsChanged = new HashMap<>();
 
         try {
-            File deployedFile = new File(historyDir, DEPLOYED_GLOBAL);
-            if (deployedFile.exists()) {
-                try (Reader tbsDeployedReader = new FileReader(deployedFile);
-                     CsvReader csvReader = new CsvReader(tbsDeployedReader)) {
+            tbsDeployedGlobal = loadSavedTable(DEPLOYED_STORE, DEPLOYED_GLOBAL, TbsDeployed.columns(),
+                DEPLOYED_TIMESTAMP, TbsDeployed::new);
+            tbsCollectedGlobal = loadSavedTable(COLLECTED_STORE, COLLECTED_GLOBAL, TbsCollected.columns(),
+                COLLECTED_TIMESTAMP, TbsCollected::new);
+            File changedFile = new File(historyDir, CHANGED);
+            if (changedFile.exists()) {
+                try (Reader tbsChangedReader = new FileReader(changedFile);
+                     CsvReader csvReader = new CsvReader(tbsChangedReader)) {
                     for (Map<String, String> record : csvReader) {
-                        TbsDeployed tbsDeployed = new TbsDeployed(record);
-                        tbsDeployedGlobal.add(tbsDeployed);
-                    }
-                }
-            }
-            File collectedFile = new File(historyDir, COLLECTED_GLOBAL);
-            if (collectedFile.exists()) {
-                try (Reader tbsCollectedReader = new FileReader(collectedFile);
-                     CsvReader csvReader = new CsvReader(tbsCollectedReader)) {
-                    for (Map<String, String> record : csvReader) {
-                        TbsCollected tbsCollected = new TbsCollected(record);
-                        tbsCollectedGlobal.add(tbsCollected);
+                        tbsChanged.put(record.get("from"), record.get("to"));
                     }
                 }
             }
@@ -317,6 +464,37 @@ public class TbHistory {
         return true;
     }
 
+    /**
+     * Loads a saved table of global history. If there is no saved table, but there is a .csv
+     * file from an earlier version, it is read instead (and replaced by a table when the global
+     * history is next saved).
+     */
+    private TbHistoryTable loadSavedTable(String storeName,
+        String csvName,
+        List<String> columns,
+        String timestampColumn,
+        Function<Map<String, String>, TbOperation> parser) throws IOException
+    {
+        File storeFile = new File(historyDir, storeName);
+        if (storeFile.exists()) {
+            TbHistoryTable table = TbHistoryTable.read(storeFile, columns);
+            if (table != null) {
+                return table;
+            }
+        }
+        TbHistoryTable table = new TbHistoryTable(columns, timestampColumn);
+        File csvFile = new File(historyDir, csvName);
+        if (csvFile.exists()) {
+            try (Reader csvFileReader = new FileReader(csvFile);
+                 CsvReader csvReader = new CsvReader(csvFileReader)) {
+                for (Map<String, String> record : csvReader) {
+                    addOperation(table, parser.apply(record));
+                }
+            }
+        }
+        return table;
+    }
+
     /**
      * Loads the local history. Note that there may be entries that also exist in the global list,
      * which need to be removed.
@@ -411,13 +589,12 @@ public class TbHistory {
         if (haveHistory()) {
             long startTime = System.nanoTime();
             if (tbsDeployedLocal == null) {loadLocalHistory();}
-            tbsDeployedGlobal.add(tbd);
+            addOperation(tbsDeployedGlobal, tbd);
             tbsDeployedLocal.add(tbd);
             persistTbsDeployed();
             long endTime = System.nanoTime();
             System.out.printf("addTbDeployed in %.3f\n", (endTime - startTime) / 1e6);
-            summarizer.invalidate();
-            fireChangeEvent();
+            historyChanged(tbd);
         }
     }
 
@@ -430,13 +607,12 @@ public class TbHistory {
         if (haveHistory()) {
             long startTime = System.nanoTime();
             if (tbsCollectedLocal == null) {loadLocalHistory();}
-            tbsCollectedGlobal.add(tbc);
+            addOperation(tbsCollectedGlobal, tbc);
             tbsCollectedLocal.add(tbc);
             persistTbsCollected();
             long endTime = System.nanoTime();
             System.out.printf("addTbCollected in %.3f\n", (endTime - startTime) / 1e6);
-            summarizer.invalidate();
-            fireChangeEvent();
+            historyChanged(tbc);
         }
     }
 
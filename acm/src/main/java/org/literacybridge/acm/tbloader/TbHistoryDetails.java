@@ -34,6 +34,7 @@ import java.util.Comparator;
 import java.util.Date;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.function.Supplier;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
@@ -125,6 +126,12 @@ public class TbHistoryDetails extends JDialog {
     }
 
     private final ChangeListener historyChangeListener = (changeEvent) -> {
+        if (changeEvent instanceof TbHistory.HistoryChangeEvent && dataModel instanceof RecipientAndCountModel) {
+            Set<String> changedRecipients = ((TbHistory.HistoryChangeEvent) changeEvent).getChangedRecipients();
+            if (changedRecipients != null && ((RecipientAndCountModel) dataModel).recipientsUpdated(changedRecipients)) {
+                return;
+            }
+        }
         relevantRecipients = summarizer.getRelevantRecipients();
         recipientMap = relevantRecipients.stream()
             .collect(Collectors.toMap(Recipient::getRecipientid, x -> x));
@@ -198,6 +205,29 @@ public class TbHistoryDetails extends JDialog {
             this.columnNames = columnNames.toArray(new String[0]);
         }
 
+        /**
+         * Updates the rows of recipients whose counts have changed. The counts are live views
+         * of the summary, so only the rows need to be redrawn.
+         *
+         * @param changedRecipients The recipientids whose counts changed.
+         * @return true if the rows were updated; false if the set of recipients listed changed,
+         * and the whole table needs to be refreshed.
+         */
+        boolean recipientsUpdated(Set<String> changedRecipients) {
+            List<String> listed = new ArrayList<>(recipientList);
+            fetchData();
+            if (!listed.equals(recipientList)) {
+                return false;
+            }
+            for (String recipientId : changedRecipients) {
+                int row = recipientList.indexOf(recipientId);
+                if (row >= 0) {
+                    fireTableRowsUpdated(row, row);
+                }
+            }
+            return true;
+        }
+
         @Override
         public int getRowCount() {
             return recipientList.size();
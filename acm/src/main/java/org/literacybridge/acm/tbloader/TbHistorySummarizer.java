@@ -6,22 +6,31 @@ import org.literacybridge.core.tbloader.TbsCollected;
 import org.literacybridge.core.tbloader.TbsDeployed;
 
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
+/**
+ * Summarizes the TB-Loader history for the relevant recipients.
+ * <p>
+ * The summary is built from the history on first use, and after invalidate(). After that, it is
+ * kept up to date as operations are added, with apply(), so every accessor is a lookup. The maps
+ * returned are live, read-only views, that follow those updates. The summary is only used, and
+ * updated, on the event thread.
+ */
 public class TbHistorySummarizer {
     private final TbHistory tbHistory;
-    private Integer numSpecTbs;
-    private Integer totalDeployed;
-    private Integer numCollected;
-    private Integer numToCollect;
-    private Integer numDeployedLatest;
-    private Integer numToDeploy;
 
+    private Set<String> relevantRecipientIds;
+
+    private boolean built = false;
+    private int numSpecTbs;
+    private int numToDeploy;
     private Map<String, TbsDeployed> tbsDeployedAll;
     private Map<String, TbsDeployed> tbsDeployedLatest;
     private Map<String, TbsCollected> tbsCollected;
@@ -30,8 +39,6 @@ public class TbHistorySummarizer {
     private Map<String, Integer> toDeployPerRecipient;
     private Map<String, Integer> toCollectPerRecipient;
 
-    private Set<String> relevantRecipientIds;
-
     TbHistorySummarizer(TbHistory tbHistory, Collection<RecipientAdapter> relevantRecipients) {
         this.tbHistory = tbHistory;
         if (relevantRecipients == null) {
@@ -51,7 +58,7 @@ public class TbHistorySummarizer {
     }
 
     void invalidate() {
-        numSpecTbs = totalDeployed = numCollected = numToCollect = numDeployedLatest = numToDeploy = null;
+        built = false;
         tbsDeployedAll = tbsDeployedLatest = null;
         tbsCollected = null;
         latestOpPerTb = null;
@@ -64,84 +71,39 @@ public class TbHistorySummarizer {
     }
 
     public Integer getNumSpecTbs() {
-        if (numSpecTbs == null) {
-            numSpecTbs = tbHistory.programSpec.getRecipients().stream()
-                .filter(r->relevantRecipientIds.contains(r.getRecipientid()))
-                .map(RecipientAdapter::getNumtbs)
-                .reduce(0, Integer::sum);
-        }
+        build();
         return numSpecTbs;
     }
 
     public Integer getTotalDeployed() {
-        if (totalDeployed == null) {
-            totalDeployed = getLatestOpPerTb().size();
-        }
-        return totalDeployed;
+        build();
+        return latestOpPerTb.size();
     }
 
     public Integer getNumCollected() {
-        if (numCollected == null) {
-            numCollected = (int) getLatestOpPerTb().values().stream()
-                .filter(tbo -> tbo instanceof TbsCollected)
-                .count();
-        }
-        return numCollected;
+        build();
+        return tbsCollected.size();
     }
 
     public Integer getNumToCollect() {
-        if (numToCollect == null) {
-            numToCollect = getToCollectPerRecipient().values().stream().reduce(0, Integer::sum);
-        }
-        return numToCollect;
+        build();
+        // Every TB whose latest operation was a deployment needs collecting.
+        return latestOpPerTb.size() - tbsCollected.size();
     }
 
     public Integer getNumDeployedLatest() {
-        if (numDeployedLatest == null) {
-            numDeployedLatest = getNumTbsDeployedLatestPerRecipient().values().stream()
-                .reduce(0, Integer::sum);
-        }
-        return numDeployedLatest;
+        build();
+        return tbsDeployedLatest.size();
     }
 
     public Integer getNumToDeploy() {
-        if (numToDeploy == null) {
-            numToDeploy = getToDeployPerRecipient().values().stream().reduce(0, Integer::sum);
-        }
+        build();
         return numToDeploy;
     }
 
     public Map<String, TbsCollected> getTbsCollected() {
-        if (tbsCollected == null) {
-            tbsCollected = new HashMap<>();
-            getLatestOpPerTb().values().stream()
-                .filter(tbo -> tbo instanceof TbsCollected)
-                .forEach(tbc -> tbsCollected.put(tbc.getTalkingbookid(), (TbsCollected)tbc));
-        }
-        return tbsCollected;
-    }
-
-    /**
-     * Helper function to get the latest operation for every TB in the program, filteed by a subset of recipientids.
-     *
-     * @return a map of {talkingbookId: TbOperation} of the lateset operation performed on the Talking Books.
-     */
-    private Map<String, TbOperation> getLatestOpPerTb() {
-        // This gets the most recent deployment for every TB.
-        if (latestOpPerTb == null) {
-            latestOpPerTb = getTbsDeployedAll().values().stream()
-                .collect(Collectors.toMap(TbsDeployed::getTalkingbookid, tbd -> tbd));
-            // If the later operation for the TB was a collection, add it or replace the deployment.
-            tbHistory.tbsCollectedGlobal.stream()
-                .filter(tbc -> relevantRecipientIds.contains(tbc.getRecipientid()))
-                .forEach(tbc -> {
-                    TbOperation latestOp = latestOpPerTb.get(tbc.getTalkingbookid());
-                    if (latestOp == null || latestOp.compareTo(tbc) < 0) {
-                        latestOpPerTb.put(tbc.getTalkingbookid(), tbc);
-                    }
-                });
-        }
-        return latestOpPerTb;
+        build();
+        return Collections.unmodifiableMap(tbsCollected);
     }
 
     /**
@@ -151,18 +113,8 @@ public class TbHistorySummarizer {
      * @return a Map of {talkingbookid : TbsDeployed}
      */
     public Map<String, TbsDeployed> getTbsDeployedAll() {
-        if (tbsDeployedAll == null) {
-            tbsDeployedAll = new HashMap<>();
-            tbHistory.tbsDeployedGlobal.stream()
-                .filter(tbd -> relevantRecipientIds.contains(tbd.getRecipientid()))
-                .forEach(tbd -> {
-                    TbOperation latestOp = tbsDeployedAll.get(tbd.getTalkingbookid());
-                    if (latestOp == null || latestOp.compareTo(tbd) < 0) {
-                        tbsDeployedAll.put(tbd.getTalkingbookid(), tbd);
-                    }
-                });
-        }
-        return tbsDeployedAll;
+        build();
+        return Collections.unmodifiableMap(tbsDeployedAll);
     }
 
     /**
@@ -172,20 +124,8 @@ public class TbHistorySummarizer {
      * @return a Map of {talkingbookid : TbsDeployed}
      */
     public Map<String, TbsDeployed> getTbsDeployedLatest() {
-        if (tbsDeployedLatest == null) {
-            tbsDeployedLatest = new HashMap<>();
-            tbHistory.tbsDeployedGlobal.stream()
-                .filter(tbd -> relevantRecipientIds.contains(tbd.getRecipientid()))
-                .filter(tbd -> tbHistory.programSpec.getDeployment(tbd.getDeployment()) != null &&
-                    tbHistory.programSpec.getDeployment(tbd.getDeployment()).deploymentnumber == tbHistory.latestDeploymentNumber)
-                .forEach(tbd -> {
-                    TbOperation latestOp = tbsDeployedLatest.get(tbd.getTalkingbookid());
-                    if (latestOp == null || latestOp.compareTo(tbd) < 0) {
-                        tbsDeployedLatest.put(tbd.getTalkingbookid(), tbd);
-                    }
-                });
-        }
-        return tbsDeployedLatest;
+        build();
+        return Collections.unmodifiableMap(tbsDeployedLatest);
     }
 
     /**
@@ -194,35 +134,16 @@ public class TbHistorySummarizer {
      * @return a Map of {recipientid: integer} of TBs updated with latest deployment.
      */
     public Map<String, Integer> getNumTbsDeployedLatestPerRecipient() {
-        if (numTbsDeployedLatestPerRecipient == null) {
-            numTbsDeployedLatestPerRecipient = new HashMap<>();
-            Map<String, TbsDeployed> tbsDeployedLatest = getTbsDeployedLatest();
-            tbsDeployedLatest.values().forEach(tbd -> {
-                Integer n = numTbsDeployedLatestPerRecipient.getOrDefault(tbd.getRecipientid(), 0) + 1;
-                numTbsDeployedLatestPerRecipient.put(tbd.getRecipientid(), n);
-            });
-        }
-        return numTbsDeployedLatestPerRecipient;
+        build();
+        return Collections.unmodifiableMap(numTbsDeployedLatestPerRecipient);
     }
 
     /**
      * @return a Map of {recipientid : numRemainingToDeploy} of recipients with pending deployments.
      */
-    public synchronized Map<String, Integer> getToDeployPerRecipient() {
-        if (toDeployPerRecipient == null) {
-            // Start with the #TBs per recip, per the program spec.
-            toDeployPerRecipient = relevantRecipientIds.stream()
-                .collect(Collectors.toMap(id -> id,
-                    id -> tbHistory.programSpec.getRecipients().getRecipient(id).getNumtbs()));
-            // Reduce by the ones already deployed.
-            getTbsDeployedLatest().values()
-                .forEach(tbd -> {
-                    Integer n = toDeployPerRecipient.getOrDefault(tbd.getRecipientid(), 0);
-                    n = Math.max(0, n - 1);
-                    toDeployPerRecipient.put(tbd.getRecipientid(), n);
-                });
-        }
-        return toDeployPerRecipient;
+    public Map<String, Integer> getToDeployPerRecipient() {
+        build();
+        return Collections.unmodifiableMap(toDeployPerRecipient);
     }
 
     /**
@@ -231,18 +152,196 @@ public class TbHistorySummarizer {
      * @return a Map of {recipientid: numRemainingToColledt} of recipients with pending collections.
      */
     public Map<String, Integer> getToCollectPerRecipient() {
-        if (toCollectPerRecipient == null) {
-            toCollectPerRecipient = new HashMap<>();
-            // If the latest operation on a TB was a deployment, that TB needs collecting.
-            getLatestOpPerTb().values()
-                .forEach(tbo -> {
-                    if (tbo instanceof TbsDeployed) {
-                        Integer n = toCollectPerRecipient.getOrDefault(tbo.getRecipientid(), 0) + 1;
-                        toCollectPerRecipient.put(tbo.getRecipientid(), n);
+        build();
+        return Collections.unmodifiableMap(toCollectPerRecipient);
+    }
+
+    /**
+     * Updates the summary with an operation just added to the history.
+     *
+     * @param op The deployment or collection.
+     * @return the recipientids whose summaries changed, or null if the summary hasn't been built,
+     * in which case it will be built, including the operation, when next used.
+     */
+    Set<String> apply(TbOperation op) {
+        if (!built) return null;
+        Set<String> changed = new HashSet<>();
+        String recipientid = op.getRecipientid();
+        if (!relevantRecipientIds.contains(recipientid)) return changed;
+        String talkingbookid = op.getTalkingbookid();
+
+        if (op instanceof TbsDeployed) {
+            TbsDeployed tbd = (TbsDeployed) op;
+            TbsDeployed previous = tbsDeployedAll.get(talkingbookid);
+            if (previous == null || previous.compareTo(tbd) < 0) {
+                tbsDeployedAll.put(talkingbookid, tbd);
+            }
+            if (isLatestDeployment(tbd.getDeployment())) {
+                previous = tbsDeployedLatest.get(talkingbookid);
+                if (previous == null || previous.compareTo(tbd) < 0) {
+                    tbsDeployedLatest.put(talkingbookid, tbd);
+                    if (previous != null) {
+                        countDeployedLatest(previous.getRecipientid(), -1, changed);
                     }
-                });
+                    countDeployedLatest(recipientid, +1, changed);
+                }
+            }
+        }
+
+        TbOperation previousOp = latestOpPerTb.get(talkingbookid);
+        if (previousOp == null || previousOp.compareTo(op) < 0) {
+            latestOpPerTb.put(talkingbookid, op);
+            if (previousOp instanceof TbsCollected) {
+                tbsCollected.remove(talkingbookid);
+            } else if (previousOp != null) {
+                count(toCollectPerRecipient, previousOp.getRecipientid(), -1);
+            }
+            if (op instanceof TbsCollected) {
+                tbsCollected.put(talkingbookid, (TbsCollected) op);
+            } else {
+                count(toCollectPerRecipient, recipientid, +1);
+            }
+            if (previousOp != null) {
+                changed.add(previousOp.getRecipientid());
+            }
+            changed.add(recipientid);
+        }
+        return changed;
+    }
+
+    /**
+     * Adjusts the number of TBs of a recipient updated with the latest deployment, and so the
+     * number remaining to be updated.
+     */
+    private void countDeployedLatest(String recipientid, int delta, Set<String> changed) {
+        int deployed = count(numTbsDeployedLatestPerRecipient, recipientid, delta);
+        int toDeploy = Math.max(0, numSpecTbs(recipientid) - deployed);
+        numToDeploy += toDeploy - toDeployPerRecipient.getOrDefault(recipientid, 0);
+        toDeployPerRecipient.put(recipientid, toDeploy);
+        changed.add(recipientid);
+    }
+
+    /**
+     * Adjusts a count in a map of counts. Counts that reach zero are removed.
+     * @return the new count.
+     */
+    private static int count(Map<String, Integer> counts, String key, int delta) {
+        int n = counts.getOrDefault(key, 0) + delta;
+        if (n > 0) {
+            counts.put(key, n);
+        } else {
+            counts.remove(key);
+        }
+        return Math.max(0, n);
+    }
+
+    private int numSpecTbs(String recipientid) {
+        RecipientAdapter recipient = tbHistory.programSpec.getRecipients().getRecipient(recipientid);
+        return recipient == null ? 0 : recipient.getNumtbs();
+    }
+
+    private boolean isLatestDeployment(String deployment) {
+        return tbHistory.programSpec.getDeployment(deployment) != null &&
+            tbHistory.programSpec.getDeployment(deployment).deploymentnumber == tbHistory.latestDeploymentNumber;
+    }
+
+    /**
+     * Builds the summary from the history, if it isn't already built.
+     */
+    private void build() {
+        if (built) return;
+
+        TbHistoryTable.View deployed = tbHistory.getTbsDeployedGlobal();
+        // This gets the most recent deployment for every TB.
+        tbsDeployedAll = toTbsDeployed(deployed, latestRowPerTb(deployed, null));
+        tbsDeployedLatest = toTbsDeployed(deployed, latestRowPerTb(deployed, this::isLatestDeployment));
+
+        latestOpPerTb = new HashMap<>(tbsDeployedAll);
+        // If the later operation for the TB was a collection, add it or replace the deployment.
+        TbHistoryTable.View collected = tbHistory.getTbsCollectedGlobal();
+        int tbCol = collected.column("talkingbookid");
+        latestRowPerTb(collected, null).forEach((tbCode, row) -> {
+            TbOperation latestOp = latestOpPerTb.get(collected.decode(tbCol, tbCode));
+            // On a tie, the deployment is taken as the later operation.
+            if (latestOp == null || latestOp.getOperationTimestamp().getTime() < collected.timestamp(row)) {
+                TbsCollected tbc = new TbsCollected(collected.record(row));
+                latestOpPerTb.put(tbc.getTalkingbookid(), tbc);
+            }
+        });
+
+        tbsCollected = new HashMap<>();
+        toCollectPerRecipient = new HashMap<>();
+        for (TbOperation tbo : latestOpPerTb.values()) {
+            if (tbo instanceof TbsCollected) {
+                tbsCollected.put(tbo.getTalkingbookid(), (TbsCollected) tbo);
+            } else {
+                // If the latest operation on a TB was a deployment, that TB needs collecting.
+                count(toCollectPerRecipient, tbo.getRecipientid(), +1);
+            }
+        }
+
+        numTbsDeployedLatestPerRecipient = new HashMap<>();
+        tbsDeployedLatest.values().forEach(tbd -> count(numTbsDeployedLatestPerRecipient, tbd.getRecipientid(), +1));
+
+        // Start with the #TBs per recip, per the program spec, reduced by the ones already deployed.
+        numSpecTbs = 0;
+        numToDeploy = 0;
+        toDeployPerRecipient = new HashMap<>();
+        for (String recipientid : relevantRecipientIds) {
+            int specTbs = numSpecTbs(recipientid);
+            int toDeploy = Math.max(0, specTbs - numTbsDeployedLatestPerRecipient.getOrDefault(recipientid, 0));
+            numSpecTbs += specTbs;
+            numToDeploy += toDeploy;
+            toDeployPerRecipient.put(recipientid, toDeploy);
+        }
+        built = true;
+    }
+
+    /**
+     * Scans the history for the latest operation on each Talking Book of the relevant recipients,
+     * looking only at the columns needed to choose them.
+     *
+     * @param view The deployments or collections.
+     * @param deploymentFilter If not null, only operations for deployments it accepts are considered.
+     * @return a map of {talkingbookid code : row of latest operation}
+     */
+    private Map<Integer, Integer> latestRowPerTb(TbHistoryTable.View view, Predicate<String> deploymentFilter) {
+        int tbCol = view.column("talkingbookid");
+        int recipientCol = view.column("recipientid");
+        int deploymentCol = view.column("deployment");
+        // Decisions are made once per distinct value, by its code, rather than once per row.
+        Map<Integer, Boolean> relevantRecipients = new HashMap<>();
+        Map<Integer, Boolean> acceptedDeployments = new HashMap<>();
+        Map<Integer, Integer> latestRows = new HashMap<>();
+        for (int row = 0; row < view.size; row++) {
+            if (!relevantRecipients.computeIfAbsent(view.code(row, recipientCol),
+                code -> relevantRecipientIds.contains(view.decode(recipientCol, code)))) {
+                continue;
+            }
+            if (deploymentFilter != null && !acceptedDeployments.computeIfAbsent(view.code(row, deploymentCol),
+                code -> deploymentFilter.test(view.decode(deploymentCol, code)))) {
+                continue;
+            }
+            Integer latestRow = latestRows.get(view.code(row, tbCol));
+            if (latestRow == null || view.timestamp(latestRow) < view.timestamp(row)) {
+                latestRows.put(view.code(row, tbCol), row);
+            }
+        }
+        return latestRows;
+    }
+
+    /**
+     * Creates the TbsDeployed records for the chosen rows of the deployment history.
+     *
+     * @return a Map of {talkingbookid : TbsDeployed}
+     */
+    private Map<String, TbsDeployed> toTbsDeployed(TbHistoryTable.View deployed, Map<Integer, Integer> rows) {
+        Map<String, TbsDeployed> result = new HashMap<>();
+        for (int row : rows.values()) {
+            TbsDeployed tbd = new TbsDeployed(deployed.record(row));
+            result.put(tbd.getTalkingbookid(), tbd);
         }
-        return toCollectPerRecipient;
+        return result;
     }
 
 }
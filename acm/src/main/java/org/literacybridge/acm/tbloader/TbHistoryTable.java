@@ -0,0 +1,328 @@
+package org.literacybridge.acm.tbloader;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A column-oriented table of Talking Book operations (deployments or collections), as kept in
+ * the TB-Loader history.
+ * <p>
+ * Each column other than the timestamp is dictionary encoded: the table holds each distinct
+ * value once, and an int code per row. The timestamp is held as a long per row. This is much
+ * smaller than a list of TbsDeployed or TbsCollected objects, it can be saved and loaded
+ * without any parsing, and the summaries can be computed by scanning a few columns, creating
+ * objects only for the rows they return.
+ * <p>
+ * Rows are only ever appended. A View, taken while synchronized with the writer, may be read
+ * from any thread while more rows are appended.
+ */
+class TbHistoryTable {
+    private static final int MAGIC = 0x54424854; // "TBHT"
+    private static final int VERSION = 1;
+    private static final int NULL_CODE = -1;
+
+    private final String[] columns;
+    private final int timestampColumn;
+    private final SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS");
+
+    // Opaque marker, from the server, of how up-to-date the table is.
+    private String watermark;
+    private int size;
+    private long[] timestamps;
+    // Per column, the code of each row's value. Null for the timestamp column.
+    private final int[][] codes;
+    // Per column, the distinct values.
+    private final String[][] dictionaries;
+    private final int[] dictionarySizes;
+    // Per column, value -> code. Built when first needed, as loading a table doesn't need them.
+    private final List<Map<String, Integer>> encoders;
+
+    /**
+     * Creates an empty table.
+     * @param columns The names of the columns, as in the .csv files.
+     * @param timestampColumn The name of the column holding the time of the operation.
+     */
+    TbHistoryTable(List<String> columns, String timestampColumn) {
+        this(columns.toArray(new String[0]), columns.indexOf(timestampColumn), 16);
+    }
+
+    private TbHistoryTable(String[] columns, int timestampColumn, int capacity) {
+        if (timestampColumn < 0) {
+            throw new IllegalArgumentException("No timestamp column");
+        }
+        this.columns = columns;
+        this.timestampColumn = timestampColumn;
+        this.timestamps = new long[capacity];
+        this.codes = new int[columns.length][];
+        this.dictionaries = new String[columns.length][];
+        this.dictionarySizes = new int[columns.length];
+        this.encoders = new ArrayList<>(Collections.nCopies(columns.length, null));
+        for (int c = 0; c < columns.length; c++) {
+            if (c != timestampColumn) {
+                codes[c] = new int[capacity];
+                dictionaries[c] = new String[16];
+            }
+        }
+    }
+
+    synchronized int size() {
+        return size;
+    }
+
+    synchronized String getWatermark() {
+        return watermark;
+    }
+
+    synchronized void setWatermark(String watermark) {
+        this.watermark = watermark;
+    }
+
+    /**
+     * Appends a row.
+     * @param record The row's values, {column:value}. Columns not in the table are ignored.
+     * @param timestamp The time of the operation.
+     */
+    synchronized void add(Map<String, String> record, Date timestamp) {
+        if (size == timestamps.length) {
+            int capacity = Math.max(16, size * 2);
+            timestamps = Arrays.copyOf(timestamps, capacity);
+            for (int c = 0; c < columns.length; c++) {
+                if (c != timestampColumn) {
+                    codes[c] = Arrays.copyOf(codes[c], capacity);
+                }
+            }
+        }
+        timestamps[size] = timestamp.getTime();
+        for (int c = 0; c < columns.length; c++) {
+            if (c != timestampColumn) {
+                codes[c][size] = encode(c, record.get(columns[c]));
+            }
+        }
+        size++;
+    }
+
+    private int encode(int column, String value) {
+        if (value == null) return NULL_CODE;
+        Map<String, Integer> encoder = encoders.get(column);
+        if (encoder == null) {
+            encoder = new HashMap<>();
+            for (int i = 0; i < dictionarySizes[column]; i++) {
+                encoder.put(dictionaries[column][i], i);
+            }
+            encoders.set(column, encoder);
+        }
+        Integer code = encoder.get(value);
+        if (code == null) {
+            code = dictionarySizes[column];
+            if (code == dictionaries[column].length) {
+                dictionaries[column] = Arrays.copyOf(dictionaries[column], code * 2);
+            }
+            dictionaries[column][code] = value;
+            dictionarySizes[column]++;
+            encoder.put(value, code);
+        }
+        return code;
+    }
+
+    /**
+     * @return a consistent view of the rows appended so far.
+     */
+    synchronized View view() {
+        String[][] dicts = new String[columns.length][];
+        int[][] cols = new int[columns.length][];
+        for (int c = 0; c < columns.length; c++) {
+            dicts[c] = dictionaries[c];
+            cols[c] = codes[c];
+        }
+        return new View(size, timestamps, cols, dicts, dictionarySizes.clone(), watermark);
+    }
+
+    /**
+     * A read-only view of the first 'size' rows of the table. Rows are never changed once
+     * appended, and growing the table replaces, rather than changes, the arrays, so a view can be
+     * read without synchronization. The dictionary sizes and the watermark are copied, as they
+     * do change in place.
+     */
+    class View {
+        final int size;
+        private final long[] timestamps;
+        private final int[][] codes;
+        private final String[][] dictionaries;
+        private final int[] dictionarySizes;
+        private final String watermark;
+
+        private View(int size,
+            long[] timestamps,
+            int[][] codes,
+            String[][] dictionaries,
+            int[] dictionarySizes,
+            String watermark)
+        {
+            this.size = size;
+            this.timestamps = timestamps;
+            this.codes = codes;
+            this.dictionaries = dictionaries;
+            this.dictionarySizes = dictionarySizes;
+            this.watermark = watermark;
+        }
+
+        /**
+         * @param name of a column.
+         * @return the index of the column, for the accessors below.
+         */
+        int column(String name) {
+            int column = Arrays.asList(columns).indexOf(name);
+            if (column < 0 || column == timestampColumn) {
+                throw new IllegalArgumentException("Not a value column: " + name);
+            }
+            return column;
+        }
+
+        long timestamp(int row) {
+            return timestamps[row];
+        }
+
+        /**
+         * @return the code of the value in the given row and column. Rows with equal values
+         * have equal codes, so codes can be compared, and used as keys, in place of the values.
+         */
+        int code(int row, int column) {
+            return codes[column][row];
+        }
+
+        /**
+         * @return the value with the given code in the given column.
+         */
+        String decode(int column, int code) {
+            return code == NULL_CODE ? null : dictionaries[column][code];
+        }
+
+        String get(int row, int column) {
+            return decode(column, codes[column][row]);
+        }
+
+        /**
+         * @return the values of a row, {column:value}, as from a .csv file.
+         */
+        Map<String, String> record(int row) {
+            Map<String, String> record = new LinkedHashMap<>();
+            for (int c = 0; c < columns.length; c++) {
+                if (c == timestampColumn) {
+                    synchronized (dateFormat) {
+                        record.put(columns[c], dateFormat.format(new Date(timestamps[row])));
+                    }
+                } else {
+                    record.put(columns[c], get(row, c));
+                }
+            }
+            return record;
+        }
+
+        /**
+         * Writes the rows of the view to a file, replacing the file only once the write is
+         * complete.
+         * @param file to be written.
+         * @throws IOException if the file can't be written.
+         */
+        void write(File file) throws IOException {
+            File tempFile = new File(file.getParentFile(), file.getName() + ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile), 65536))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeUTF(watermark == null ? "" : watermark);
+                out.writeInt(columns.length);
+                for (String column : columns) {
+                    out.writeUTF(column);
+                }
+                out.writeInt(timestampColumn);
+                out.writeInt(size);
+                for (int row = 0; row < size; row++) {
+                    out.writeLong(timestamps[row]);
+                }
+                for (int c = 0; c < columns.length; c++) {
+                    if (c == timestampColumn) continue;
+                    out.writeInt(dictionarySizes[c]);
+                    for (int i = 0; i < dictionarySizes[c]; i++) {
+                        out.writeUTF(dictionaries[c][i]);
+                    }
+                    for (int row = 0; row < size; row++) {
+                        out.writeInt(codes[c][row]);
+                    }
+                }
+            }
+            Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Writes the table to a file, replacing the file only once the write is complete.
+     * @param file to be written.
+     * @throws IOException if the file can't be written.
+     */
+    void write(File file) throws IOException {
+        view().write(file);
+    }
+
+    /**
+     * Reads a table written by write().
+     * @param file to be read.
+     * @param columns The columns expected. If the file's columns differ, it is from another
+     *                version, and is not read.
+     * @return the table, or null if the file is from another version.
+     * @throws IOException if the file can't be read.
+     */
+    static TbHistoryTable read(File file, List<String> columns) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 65536))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                return null;
+            }
+            String savedWatermark = in.readUTF();
+            String[] savedColumns = new String[in.readInt()];
+            for (int c = 0; c < savedColumns.length; c++) {
+                savedColumns[c] = in.readUTF();
+            }
+            if (!Arrays.asList(savedColumns).equals(columns)) {
+                return null;
+            }
+            int timestampColumn = in.readInt();
+            int size = in.readInt();
+            TbHistoryTable table = new TbHistoryTable(savedColumns, timestampColumn, Math.max(16, size));
+            for (int row = 0; row < size; row++) {
+                table.timestamps[row] = in.readLong();
+            }
+            for (int c = 0; c < savedColumns.length; c++) {
+                if (c == timestampColumn) continue;
+                int dictionarySize = in.readInt();
+                String[] dictionary = new String[Math.max(16, dictionarySize)];
+                for (int i = 0; i < dictionarySize; i++) {
+                    dictionary[i] = in.readUTF();
+                }
+                table.dictionaries[c] = dictionary;
+                table.dictionarySizes[c] = dictionarySize;
+                for (int row = 0; row < size; row++) {
+                    table.codes[c][row] = in.readInt();
+                }
+            }
+            table.size = size;
+            table.watermark = savedWatermark.isEmpty() ? null : savedWatermark;
+            return table;
+        }
+    }
+}
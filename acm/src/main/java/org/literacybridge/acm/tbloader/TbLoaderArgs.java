@@ -2,6 +2,7 @@ package org.literacybridge.acm.tbloader;
 
 import org.kohsuke.args4j.Argument;
 import org.kohsuke.args4j.Option;
+import org.literacybridge.core.fs.CopyEngine;
 
 class TbLoaderArgs {
     @Option(name = "--oldtbs", aliases = "-o", usage = "Target OLD Talking Books.")
@@ -19,6 +20,15 @@ class TbLoaderArgs {
     @Option(name = "--test", aliases = "-t", usage = "Run TB-Loader in testing mode.")
     boolean testMode = false;
 
+    @Option(name = "--full", aliases = "-f", usage = "Erase and re-copy all content, rather than only what has changed.")
+    boolean fullUpdate = false;
+
+    @Option(name = "--station", aliases = "-s", usage = "Offer to update up to N attached Talking Books at once.", metaVar = "N")
+    int stationSize = 0;
+
+    @Option(name = "--copy-streams", usage = "Number of files to copy at once to or from a Talking Book.", metaVar = "N")
+    int copyStreams = CopyEngine.DEFAULT_STREAMS;
+
     @Argument(usage = "Project or ACM name to export.", index = 0, metaVar = "ACM")
     String project;
 
@@ -90,6 +90,7 @@ public class TbLoaderPanel extends JPanel {
         private Consumer<Boolean> forceFirmwareListener;
         private Consumer<Boolean> forceSrnListener;
         private Supplier<Boolean> updateTb2FirmwareListener;
+        private Runnable stationListener;
         private TBLoader.TB_ID_STRATEGY tbIdStrategy;
         private boolean allowPackageChoice;
         private TBLoader.TbLoaderConfig tbLoaderConfig;
@@ -99,6 +100,7 @@ public class TbLoaderPanel extends JPanel {
         public Builder withPackageNameMap(Map<String, String> packageNameMap) {this.packageNameMap = packageNameMap; return this;}
         public Builder withSettingsClickedListener(Consumer<ActionEvent> settingsIconClickedListener) {this.settingsIconClickedListener = settingsIconClickedListener; return this;}
         public Builder withGoListener(Consumer<TBLoader.Operation> goListener) {this.goListener = goListener; return this;}
+        public Builder withStationListener(Runnable stationListener) {this.stationListener = stationListener; return this;}
         public Builder withRecipientListener(Consumer<Recipient> recipientListener) {this.recipientListener = recipientListener; return this;}
         public Builder withDeviceSelectedListener(Consumer<TbDeviceInfo> deviceSelectedListener) {this.deviceSelectedListener = deviceSelectedListener; return this;}
         public Builder withDeviceVersionSelectedListener(Consumer<TbDeviceInfo.DEVICE_VERSION> deviceVersionSelectedListener) {this.deviceVersionSelectedListener = deviceVersionSelectedListener; return this;}
@@ -134,6 +136,7 @@ public class TbLoaderPanel extends JPanel {
     private String dateRotation;
 
     private JButton goButton;
+    private JButton stationButton;
     private JLabel firmwareVersionLabel;
     private JTextField oldFirmwareVersionText;
     private JLabel newDeploymentText;
@@ -937,11 +940,21 @@ public class TbLoaderPanel extends JPanel {
         goButton.setForeground(Color.GRAY);
         goButton.setOpaque(true);
         goButton.addActionListener(this::onGoButton);
+        if (builder.stationListener != null) {
+            stationButton = new JButton("Update All...");
+            stationButton.setToolTipText("Update every attached Talking Book at once.");
+            stationButton.setEnabled(false);
+            stationButton.addActionListener(e -> builder.stationListener.run());
+        }
         Box actionBox = Box.createHorizontalBox();
         actionBox.add(Box.createHorizontalGlue());
         actionBox.add(updateTb2FirmwareBox);
         actionBox.add(actionChooser);
         actionBox.add(goButton);
+        if (stationButton != null) {
+            actionBox.add(Box.createHorizontalStrut(10));
+            actionBox.add(stationButton);
+        }
         actionBox.add(Box.createHorizontalGlue());
 
         contentPanel.add(actionBox, gbc);
@@ -1126,6 +1139,11 @@ public class TbLoaderPanel extends JPanel {
         goButton.setEnabled(enabled);
         goButton.setBackground(enabled ? Color.GREEN : defaultButtonBackgroundColor);
         goButton.setForeground(enabled ? Color.BLACK : Color.GRAY);
+        if (stationButton != null) {
+            // Updating several at once only makes sense for updates, with a community chosen.
+            stationButton.setEnabled(isUpdate && isEnabled() && getSelectedRecipient() != null
+                && currentLocationChooser.getSelectedIndex() != 0);
+        }
 
         recipientChooser.setHighlightWhenNoSelection(isUpdate);
         deviceVersionBox.setVisible(tbLoaderConfig.hasTbV2Devices());
@@ -0,0 +1,334 @@
+package org.literacybridge.acm.tbloader;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Random;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The files waiting in the upload queue directory, with what is known about uploading each.
+ * <p>
+ * The directory is scanned once, when the queue is created; after that, files are added as they
+ * are enqueued. The number of failed attempts, and any state needed to resume an interrupted
+ * upload, are kept in an index file in the queue directory, so that a restart neither forgets
+ * how a file has fared nor starts a large upload over.
+ * <p>
+ * A file whose upload fails is retried after a delay that doubles with each failure. Smaller
+ * files are offered first, as they are most likely to succeed on a poor connection.
+ * <p>
+ * An interrupted upload that will not be resumed, because its file was replaced or has gone
+ * from the queue, is remembered (also in the index) until it has been abandoned at the target.
+ */
+class UploadQueue {
+    private static final Logger LOG = Logger.getLogger(UploadQueue.class.getName());
+
+    // Starts with '.' so that it is never itself uploaded.
+    private static final String INDEX_NAME = ".uploadqueue.properties";
+    // Index entries for abandoned uploads are ".abandoned.{resumeState}=key". Keys of queued
+    // files never start with '.'.
+    private static final String ABANDONED_PREFIX = ".abandoned.";
+    private static final long MIN_RETRY_DELAY = 2_000;
+    private static final long MAX_RETRY_DELAY = 15 * 60_000;
+
+    /**
+     * A file in the queue.
+     */
+    static class Item {
+        final String key;
+        final File file;
+        final long size;
+        int attempts;
+        long notBefore;
+        String resumeState;
+        boolean inFlight;
+
+        Item(String key, File file) {
+            this.key = key;
+            this.file = file;
+            this.size = file.length();
+        }
+    }
+
+    private final File queueDir;
+    private final Path queuePath;
+    private final File indexFile;
+    private final Random random = new Random();
+    // key -> item
+    private final Map<String, Item> items = new HashMap<>();
+    // resumeState -> key, of interrupted uploads that won't be resumed.
+    private final Map<String, String> abandoned = new HashMap<>();
+    private int inFlight;
+    // Set when something may have become ready; cleared by awaitWork().
+    private boolean changed;
+
+    UploadQueue(File queueDir) {
+        this.queueDir = queueDir;
+        this.queuePath = Paths.get(queueDir.getAbsolutePath());
+        this.indexFile = new File(queueDir, INDEX_NAME);
+        load();
+    }
+
+    /**
+     * Reads the index, and reconciles it with the files actually in the queue directory.
+     */
+    private synchronized void load() {
+        Properties index = new Properties();
+        if (indexFile.exists()) {
+            try (InputStream is = new FileInputStream(indexFile)) {
+                index.load(is);
+            } catch (IOException e) {
+                LOG.log(Level.WARNING, "Can't read upload queue index; rebuilding it", e);
+            }
+        }
+        scan(queueDir);
+        for (Item item : items.values()) {
+            String saved = index.getProperty(item.key);
+            if (saved != null) {
+                // attempts,resumeState
+                String[] parts = saved.split(",", 2);
+                try {
+                    item.attempts = Integer.parseInt(parts[0]);
+                } catch (NumberFormatException ignored) {
+                    // ignore
+                }
+                item.resumeState = parts.length > 1 && !parts[1].isEmpty() ? parts[1] : null;
+            }
+        }
+        for (String name : index.stringPropertyNames()) {
+            String value = index.getProperty(name);
+            if (name.startsWith(ABANDONED_PREFIX)) {
+                abandoned.put(name.substring(ABANDONED_PREFIX.length()), value);
+            } else if (!items.containsKey(name)) {
+                // The file is gone; an upload of it that was under way won't be resumed.
+                String[] parts = value.split(",", 2);
+                if (parts.length > 1 && !parts[1].isEmpty()) {
+                    abandoned.put(parts[1], name);
+                }
+            }
+        }
+        save();
+    }
+
+    private void scan(File file) {
+        if (file.isDirectory()) {
+            File[] dirList = file.listFiles();
+            if (dirList != null && dirList.length == 0 && !file.equals(queueDir)) {
+                file.delete();
+            } else if (dirList != null) {
+                for (File f : dirList) {
+                    scan(f);
+                }
+            }
+        } else if (!file.getName().startsWith(".")) {
+            Item item = new Item(keyOf(file), file);
+            items.put(item.key, item);
+        }
+    }
+
+    /**
+     * Given an uploadQueue ~/Users/alice/Amplio/uploadQueue, and a file in that directory
+     * collected-data/tbcd000c/20220110T085217.123Z.zip, the key is
+     * collected-data/tbcd000c/20220110T085217.123Z.zip
+     */
+    private String keyOf(File file) {
+        return queuePath.relativize(Paths.get(file.getAbsolutePath())).toString().replaceAll("\\\\", "/");
+    }
+
+    /**
+     * Adds a file, which has been moved into the queue directory.
+     * @param file The file.
+     */
+    synchronized void add(File file) {
+        Item item = new Item(keyOf(file), file);
+        Item previous = items.put(item.key, item);
+        if (previous != null && previous.inFlight) {
+            // Replaced while being uploaded; the replacement is uploaded when that finishes.
+            item.inFlight = true;
+        } else if (previous != null) {
+            abandon(previous);
+        }
+        save();
+        signal();
+    }
+
+    /**
+     * Takes the smallest file that is ready to be uploaded, if fewer than maxInFlight uploads
+     * are already in progress.
+     * @param maxInFlight The most uploads to have in progress at once.
+     * @return the item, or null if there is none ready, or too many are in progress.
+     */
+    synchronized Item take(int maxInFlight) {
+        if (inFlight >= maxInFlight) return null;
+        long now = System.currentTimeMillis();
+        Item next = null;
+        for (Item item : items.values()) {
+            if (!item.inFlight && item.notBefore <= now && (next == null || item.size < next.size)) {
+                next = item;
+            }
+        }
+        if (next != null) {
+            next.inFlight = true;
+            inFlight++;
+        }
+        return next;
+    }
+
+    /**
+     * Records a successful upload; the file is removed from the queue, and deleted.
+     */
+    synchronized void succeeded(Item item) {
+        inFlight--;
+        if (items.get(item.key) == item) {
+            items.remove(item.key);
+            item.file.delete();
+            removeEmptyParents(item.file.getParentFile());
+        } else {
+            releaseReplacement(item.key);
+        }
+        save();
+        signal();
+    }
+
+    /**
+     * Records a failed upload; the file will be retried after a delay.
+     */
+    synchronized void failed(Item item) {
+        inFlight--;
+        if (items.get(item.key) == item) {
+            item.inFlight = false;
+            item.attempts++;
+            long delay = Math.min(MAX_RETRY_DELAY, MIN_RETRY_DELAY << Math.min(20, item.attempts - 1));
+            // +/- 25%, so that files that failed together aren't all retried together.
+            delay += (long) (delay * (random.nextDouble() - 0.5) / 2);
+            item.notBefore = System.currentTimeMillis() + delay;
+        } else {
+            // Replaced while being uploaded; what was uploaded of it won't be resumed.
+            abandon(item);
+            releaseReplacement(item.key);
+        }
+        save();
+        signal();
+    }
+
+    /**
+     * Notes that an item's interrupted upload, if any, will not be resumed.
+     */
+    private void abandon(Item item) {
+        if (item.resumeState != null) {
+            abandoned.put(item.resumeState, item.key);
+        }
+    }
+
+    /**
+     * @return the interrupted uploads that won't be resumed, as resumeState -> key.
+     */
+    synchronized Map<String, String> getAbandoned() {
+        return new HashMap<>(abandoned);
+    }
+
+    /**
+     * Records that an abandoned upload has been discarded at the target.
+     */
+    synchronized void discarded(String resumeState) {
+        if (abandoned.remove(resumeState) != null) {
+            save();
+        }
+    }
+
+    /**
+     * Saves state from which an interrupted upload can be resumed.
+     */
+    synchronized void checkpoint(Item item, String resumeState) {
+        item.resumeState = resumeState;
+        save();
+    }
+
+    private void releaseReplacement(String key) {
+        Item replacement = items.get(key);
+        if (replacement != null) {
+            replacement.inFlight = false;
+        }
+    }
+
+    private void removeEmptyParents(File dir) {
+        while (dir != null && !dir.equals(queueDir)) {
+            String[] children = dir.list();
+            if (children == null || children.length > 0 || !dir.delete()) break;
+            dir = dir.getParentFile();
+        }
+    }
+
+    private void signal() {
+        changed = true;
+        notifyAll();
+    }
+
+    /**
+     * Waits until a file may be ready to upload: one has been added, an upload has finished,
+     * a retry delay has expired, or maxWait has passed.
+     * @param maxWait The longest to wait, in ms.
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    synchronized void awaitWork(long maxWait) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + maxWait;
+        for (Item item : items.values()) {
+            if (!item.inFlight) {
+                deadline = Math.min(deadline, item.notBefore);
+            }
+        }
+        long wait = deadline - System.currentTimeMillis();
+        if (!changed && wait > 0) {
+            wait(wait);
+        }
+        changed = false;
+    }
+
+    /**
+     * @return the number and size of the files waiting to be uploaded.
+     */
+    synchronized StatisticsUploader.UploadStatus getStatus() {
+        long nBytes = 0;
+        for (Item item : items.values()) {
+            nBytes += item.size;
+        }
+        return new StatisticsUploader.UploadStatus(items.size(), nBytes);
+    }
+
+    /**
+     * Writes the index, to a temporary file that then replaces the old index, so that a crash
+     * can't leave a partial index.
+     */
+    private void save() {
+        Properties index = new Properties();
+        for (Item item : items.values()) {
+            if (item.attempts > 0 || item.resumeState != null) {
+                index.setProperty(item.key, item.attempts + "," + (item.resumeState == null ? "" : item.resumeState));
+            }
+        }
+        for (Map.Entry<String, String> entry : abandoned.entrySet()) {
+            index.setProperty(ABANDONED_PREFIX + entry.getKey(), entry.getValue());
+        }
+        File tempFile = new File(queueDir, INDEX_NAME + ".tmp");
+        try {
+            queueDir.mkdirs();
+            try (OutputStream os = new FileOutputStream(tempFile)) {
+                index.store(os, null);
+            }
+            Files.move(tempFile.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            LOG.log(Level.WARNING, "Can't write upload queue index", e);
+        }
+    }
+}
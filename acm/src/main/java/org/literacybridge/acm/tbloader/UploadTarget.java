@@ -0,0 +1,105 @@
+package org.literacybridge.acm.tbloader;
+
+import org.apache.commons.io.FileUtils;
+import org.literacybridge.acm.cloud.Authenticator;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.function.Consumer;
+
+/**
+ * Where the StatisticsUploader sends queued files: S3, or, for testing, a local directory
+ * standing in for S3.
+ */
+interface UploadTarget {
+    /**
+     * @return true if uploads can be attempted now.
+     */
+    boolean isOnline();
+
+    /**
+     * Uploads a file.
+     * @param key The S3 key (or path in the stand-in directory) for the file.
+     * @param file The file to be uploaded.
+     * @param resumeState State saved from an earlier, interrupted upload of the file, or null.
+     * @param checkpoint Called with state from which an interrupted upload can be resumed.
+     * @return true if the file was uploaded.
+     */
+    boolean upload(String key, File file, String resumeState, Consumer<String> checkpoint);
+
+    /**
+     * Discards an interrupted upload that will not be resumed.
+     * @param key The S3 key of the upload.
+     * @param resumeState The state saved from the interrupted upload.
+     * @return true if the upload was discarded, false if that should be tried again later.
+     */
+    boolean abandon(String key, String resumeState);
+
+    /**
+     * Uploads to the "acm-stats" S3 bucket. Large files are uploaded in parts, and an interrupted
+     * upload resumes with the parts not yet sent.
+     * <p>
+     * The resume state is the S3 multipart upload id. An upload that is abandoned is aborted,
+     * but one whose id was lost (the queue index was deleted, say) is not known to be abandoned;
+     * the bucket's lifecycle rule to abort incomplete multipart uploads cleans those up.
+     */
+    class S3 implements UploadTarget {
+        private static final String BUCKET = "acm-stats";
+        // Files larger than this are uploaded in parts.
+        private static final long MULTIPART_THRESHOLD = 16 * 1024 * 1024;
+        private static final long PART_SIZE = 8 * 1024 * 1024;
+
+        private final Authenticator authInstance = Authenticator.getInstance();
+
+        @Override
+        public boolean isOnline() {
+            return authInstance.isOnline();
+        }
+
+        @Override
+        public boolean upload(String key, File file, String resumeState, Consumer<String> checkpoint) {
+            Authenticator.AwsInterface awsInterface = authInstance.getAwsInterface();
+            if (file.length() > MULTIPART_THRESHOLD) {
+                return awsInterface.uploadS3ObjectMultipart(BUCKET, key, file, PART_SIZE, resumeState, checkpoint);
+            }
+            return awsInterface.uploadS3Object(BUCKET, key, file);
+        }
+
+        @Override
+        public boolean abandon(String key, String resumeState) {
+            return authInstance.getAwsInterface().abortS3MultipartUpload(BUCKET, key, resumeState);
+        }
+    }
+
+    /**
+     * Copies files to a local directory, as a stand-in for S3.
+     */
+    class LocalDirectory implements UploadTarget {
+        private final File directory;
+
+        LocalDirectory(File directory) {
+            this.directory = directory;
+        }
+
+        @Override
+        public boolean isOnline() {
+            return true;
+        }
+
+        @Override
+        public boolean upload(String key, File file, String resumeState, Consumer<String> checkpoint) {
+            try {
+                FileUtils.copyFile(file, new File(directory, key));
+                return true;
+            } catch (IOException e) {
+                return false;
+            }
+        }
+
+        @Override
+        public boolean abandon(String key, String resumeState) {
+            // Copies are never partial, so there is nothing to discard.
+            return true;
+        }
+    }
+}
@@ -10,11 +10,13 @@ import org.literacybridge.acm.config.ACMConfiguration;
 import org.literacybridge.acm.gui.CommandLineParams;
 import org.literacybridge.acm.importexport.AudioImporter;
 import org.literacybridge.acm.store.AudioItem;
+import org.literacybridge.acm.store.Category;
 import org.literacybridge.acm.store.Metadata;
 import org.literacybridge.acm.store.MetadataSpecification;
 import org.literacybridge.acm.store.MetadataStore;
 import org.literacybridge.acm.store.MetadataValue;
 import org.literacybridge.acm.store.Taxonomy;
+import org.literacybridge.acm.store.Transaction;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -30,6 +32,13 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -47,6 +56,9 @@ public class FeedbackImporter {
   private static final Set<String> EXTENSIONS_TO_IMPORT = new HashSet<>(
           Collections.singletonList("a18"));
   private static final String FEEDBACK_IMPORT_REPORT = "feedbackImport.txt";
+  // Conversions run concurrently; metadata is committed to the store this many items at a time.
+  private static final int NUM_CONVERTERS = Math.max(1, Runtime.getRuntime().availableProcessors());
+  private static final int COMMIT_BATCH_SIZE = 500;
   private final Params params;
   // Cache for includelisted content updates (only includelisted updates are to be imported).
   private Map<String, Includelister> deploymentsIncludelistCache = new HashMap<>();
@@ -371,44 +383,164 @@ public class FeedbackImporter {
 
   /**
    * Imports a set of files into the currently opened Acm project.
+   *
+   * The files are converted concurrently, on a pool of worker threads. As each conversion
+   * completes, the feedback metadata is applied to the new audio item, and the items are committed
+   * to the metadata store in batches, each in a single transaction.
    * @param filesToImport A Set<File> of files to import.
-   * @return True if all imported with no error, False if one or more errors.
+   * @return the results, with the success or failure of each file.
    */
   private ImportResults importFiles(Set<File> filesToImport) {
-    ImportResults results = new ImportResults();
-    int count = 0;
-    // Array hack because the variable must final. Not the contents, though.
-    final ImportResults.TWEAKS[] tweaks = new ImportResults.TWEAKS[1];
-    Metadata metadata = new Metadata();
     logger.info(String.format("      Importing %d files", filesToImport.size()));
 
     AudioImporter importer = AudioImporter.getInstance();
     MetadataStore store = ACMConfiguration.getInstance().getCurrentDB().getMetadataStore();
 
-    for (File file : filesToImport) {
-      try {
-        if (params.verbose) {
+    return importFiles(filesToImport, importer::importAudioItemFromFileWithoutCommit, store,
+        COMMIT_BATCH_SIZE, params.verbose);
+  }
+
+  /**
+   * Converts the audio of a file, and creates its audio item, without committing the item.
+   */
+  interface AudioFileImporter {
+    AudioItem importFile(File file) throws Exception;
+  }
+
+  /**
+   * Imports a set of files, converting them concurrently, and committing them in batches.
+   * @param filesToImport The files to import.
+   * @param importer Converts each file, on a worker thread.
+   * @param store The metadata store to which the audio items are committed.
+   * @param batchSize The number of audio items to commit in each transaction.
+   * @param verbose If true, report each file as it is imported.
+   * @return the results, with the success or failure of each file.
+   */
+  static ImportResults importFiles(Set<File> filesToImport, AudioFileImporter importer, MetadataStore store,
+      int batchSize, boolean verbose) {
+    ImportResults results = new ImportResults();
+    int count = 0;
+    Metadata metadata = new Metadata();
+
+    AtomicInteger threadNumber = new AtomicInteger();
+    ExecutorService converters = Executors.newFixedThreadPool(NUM_CONVERTERS, r -> {
+      Thread thread = new Thread(r, "feedback-import-" + threadNumber.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    });
+    try {
+      CompletionService<AudioItem> completionService = new ExecutorCompletionService<>(converters);
+      Map<Future<AudioItem>, File> pending = new HashMap<>();
+      for (File file : filesToImport) {
+        pending.put(completionService.submit(() -> importer.importFile(file)), file);
+      }
+
+      List<ImportedFile> batch = new ArrayList<>();
+      while (!pending.isEmpty()) {
+        Future<AudioItem> future = completionService.take();
+        File file = pending.remove(future);
+        if (verbose) {
           System.out.printf("Importing %d of %d: %s%n", ++count, filesToImport.size(), file.getName());
-          logger.info(String.format("        Importing %d of %d: %s", ++count, filesToImport.size(), file.getName()));
+          logger.info(String.format("        Importing %d of %d: %s", count, filesToImport.size(), file.getName()));
+        }
+        try {
+          AudioItem item = future.get();
+          item.getMetadata().addValuesFromOtherWithExclusions(metadata);
+          ImportResults.TWEAKS tweaks = adjustCategoriesForDuration(item);
+          batch.add(new ImportedFile(file, item, tweaks));
+          if (batch.size() >= batchSize) {
+            commitBatch(store, batch, results);
+            batch.clear();
+          }
+        } catch (ExecutionException e) {
+          fileFailedToImport(file, e.getCause(), results);
         }
-        // Reset the value, because the lambda may not be called, if the file is already in DB.
-        tweaks[0] = ImportResults.TWEAKS.NO_CHANGE;
-        importer.importAudioItemFromFile(file,
-                            (item)->{
-                                item.getMetadata().addValuesFromOtherWithExclusions(metadata);
-                                tweaks[0] = adjustCategoriesForDuration(item);
-                            });
-        results.fileImported(file.getName(), tweaks[0]);
-      } catch (Exception e) {
-        System.err.printf("Failed to import '%s': %s%n", file.getName(), e.getMessage());
-        logger.info(String.format("Failed to import '%s': %s", file.getName(), e.getMessage()));
-        results.fileFailedToImport(file.getName());
       }
+      commitBatch(store, batch, results);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      logger.info("Interrupted while importing files");
+    } finally {
+      converters.shutdownNow();
     }
 
     return results;
   }
 
+  /**
+   * Commits a batch of imported audio items to the metadata store, in one transaction. If that
+   * fails, the transaction is rolled back, and the items are committed one at a time, so that
+   * the failure is reported for only the file(s) at fault. The rollback resets the items it
+   * held, so each is committed as a new copy of what was imported.
+   * @param store The metadata store.
+   * @param batch The imported files, with their (uncommitted) audio items.
+   * @param results Accumulates the per-file results.
+   */
+  private static void commitBatch(MetadataStore store, List<ImportedFile> batch, ImportResults results) {
+    if (batch.isEmpty()) return;
+    try {
+      Transaction transaction = store.newTransaction();
+      if (transaction == null) {
+        throw new IOException("Can't start a transaction");
+      }
+      for (ImportedFile imported : batch) {
+        imported.item.ensureIsCommittable();
+        transaction.add(imported.item);
+      }
+      transaction.commit();
+      for (ImportedFile imported : batch) {
+        results.fileImported(imported.file.getName(), imported.tweaks);
+      }
+      return;
+    } catch (Exception e) {
+      logger.info(String.format("Failed to commit %d files; retrying individually: %s", batch.size(), e.getMessage()));
+    }
+    for (ImportedFile imported : batch) {
+      try {
+        store.commit(imported.newItem(store));
+        results.fileImported(imported.file.getName(), imported.tweaks);
+      } catch (Exception e) {
+        fileFailedToImport(imported.file, e, results);
+      }
+    }
+  }
+
+  private static void fileFailedToImport(File file, Throwable e, ImportResults results) {
+    System.err.printf("Failed to import '%s': %s%n", file.getName(), e.getMessage());
+    logger.info(String.format("Failed to import '%s': %s", file.getName(), e.getMessage()));
+    results.fileFailedToImport(file.getName());
+  }
+
+  /**
+   * A file whose audio has been imported, and its audio item, awaiting commit.
+   */
+  private static class ImportedFile {
+    final File file;
+    final AudioItem item;
+    final ImportResults.TWEAKS tweaks;
+    // What the item held when imported, in case it must be committed again.
+    private final Metadata metadata = new Metadata();
+    private final List<Category> categories;
+
+    ImportedFile(File file, AudioItem item, ImportResults.TWEAKS tweaks) {
+      this.file = file;
+      this.item = item;
+      this.tweaks = tweaks;
+      this.metadata.addValuesFromOtherWithExclusions(item.getMetadata());
+      this.categories = new ArrayList<>(item.getCategoryList());
+    }
+
+    /**
+     * @return a new audio item with the id, metadata, and categories of the imported one.
+     */
+    AudioItem newItem(MetadataStore store) {
+      AudioItem copy = store.newAudioItem(item.getId());
+      copy.getMetadata().addValuesFromOtherWithExclusions(metadata);
+      copy.addCategories(categories);
+      return copy;
+    }
+  }
+
   /**
    * Given a directory, recursively find all importable files within it.
    * @param dir The directory to search.
@@ -475,7 +607,7 @@ public class FeedbackImporter {
    * Results can be accumulated from other results objects, allowing for
    * individual and aggregate results.
    */
-  private static class ImportResults {
+  static class ImportResults {
     public enum TWEAKS {NO_CHANGE, TOO_SHORT, TOO_LONG, INDETERMINATE}
 
     List<String> filesImported = new ArrayList<>();
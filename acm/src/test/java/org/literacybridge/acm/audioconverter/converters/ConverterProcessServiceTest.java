@@ -0,0 +1,165 @@
+package org.literacybridge.acm.audioconverter.converters;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.literacybridge.acm.audioconverter.converters.BaseAudioConverter.AudioConverterInitializationException;
+import org.literacybridge.acm.audioconverter.converters.BaseAudioConverter.ConversionException;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ConverterProcessServiceTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testExecutableIsValidatedOnce() throws Exception {
+        ConverterProcessService service = new ConverterProcessService(2);
+        File exe = folder.newFile("ffmpeg.exe");
+        Files.write(exe.toPath(), new byte[100]);
+        AtomicInteger probes = new AtomicInteger();
+
+        service.validate(exe.getPath(), probes::incrementAndGet);
+        service.validate(exe.getPath(), probes::incrementAndGet);
+        assertEquals(1, probes.get());
+
+        // A changed executable is probed again.
+        Files.write(exe.toPath(), new byte[200]);
+        service.validate(exe.getPath(), probes::incrementAndGet);
+        assertEquals(2, probes.get());
+    }
+
+    @Test
+    public void testFailedValidationIsNotRemembered() throws Exception {
+        ConverterProcessService service = new ConverterProcessService(2);
+        File exe = folder.newFile("lame.exe");
+        AtomicInteger probes = new AtomicInteger();
+        for (int i = 0; i < 2; i++) {
+            try {
+                service.validate(exe.getPath(), () -> {
+                    probes.incrementAndGet();
+                    throw new AudioConverterInitializationException("Converter executable could not be executed.");
+                });
+                fail("The validation should have failed.");
+            } catch (AudioConverterInitializationException expected) {
+                // expected
+            }
+        }
+        assertEquals(2, probes.get());
+    }
+
+    @Test
+    public void testProcessesAreBounded() throws Exception {
+        int maxProcesses = 2;
+        ConverterProcessService service = new ConverterProcessService(maxProcesses);
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger mostRunning = new AtomicInteger();
+        CountDownLatch full = new CountDownLatch(maxProcesses);
+
+        List<Future<String>> futures = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            int n = i;
+            futures.add(executor.submit(() -> service.invoke("ffmpeg", () -> {
+                mostRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                full.countDown();
+                try {
+                    // Hold the slot until every slot has been taken at least once.
+                    full.await(10, TimeUnit.SECONDS);
+                    Thread.sleep(10);
+                } catch (InterruptedException e) {
+                    throw new ConversionException("interrupted", e);
+                } finally {
+                    running.decrementAndGet();
+                }
+                return "converted " + n;
+            })));
+        }
+        for (int i = 0; i < futures.size(); i++) {
+            assertEquals("converted " + i, futures.get(i).get(10, TimeUnit.SECONDS));
+        }
+
+        assertEquals(maxProcesses, mostRunning.get());
+        assertEquals(8, service.getLatencies().get("ffmpeg").getCount());
+    }
+
+    @Test
+    public void testFailureReleasesSlotAndIsTimed() throws Exception {
+        ConverterProcessService service = new ConverterProcessService(1);
+        ConversionException failure = new ConversionException("Converter: Internal error");
+        try {
+            service.invoke("AudioBatchConverter", () -> {
+                throw failure;
+            });
+            fail("The invocation should have failed.");
+        } catch (ConversionException expected) {
+            assertSame(failure, expected);
+        }
+
+        // The only slot is free again.
+        assertEquals("ok", executor.submit(() -> service.invoke("lame", () -> "ok")).get(10, TimeUnit.SECONDS));
+        assertEquals(1, service.getLatencies().get("AudioBatchConverter").getCount());
+        assertEquals(1, service.getLatencies().get("lame").getCount());
+        assertTrue(service.toString().startsWith("AudioBatchConverter: 1 runs"));
+    }
+
+    @Test
+    public void testInterruptedWhileWaiting() throws Exception {
+        ConverterProcessService service = new ConverterProcessService(1);
+        CountDownLatch holding = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Future<String> holder = executor.submit(() -> service.invoke("ffmpeg", () -> {
+            holding.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                throw new ConversionException("interrupted", e);
+            }
+            return "done";
+        }));
+        assertTrue(holding.await(10, TimeUnit.SECONDS));
+
+        Thread.currentThread().interrupt();
+        try {
+            service.invoke("ffmpeg", () -> "never runs");
+            fail("The wait should have been interrupted.");
+        } catch (ConversionException expected) {
+            assertTrue("The interrupt is kept.", Thread.interrupted());
+        }
+
+        release.countDown();
+        assertEquals("done", holder.get(10, TimeUnit.SECONDS));
+        assertEquals("Only the run is timed.", 1, service.getLatencies().get("ffmpeg").getCount());
+    }
+
+    @Test
+    public void testToolName() {
+        assertEquals("ffmpeg", ConverterProcessService.toolName(
+            "C:\\Program Files\\Amplio\\converters\\ffmpeg\\ffmpeg.exe -i \"in put.mp3\" -y out.wav"));
+        assertEquals("AudioBatchConverter", ConverterProcessService.toolName(
+            "\"C:/Amplio Software/converters/a18/AudioBatchConverter.EXE\" \"a.wav\""));
+        assertEquals("lame", ConverterProcessService.toolName("/usr/local/bin/lame -b 16 - -"));
+        assertEquals("sh", ConverterProcessService.toolName("/bin/sh"));
+    }
+}
@@ -0,0 +1,214 @@
+package org.literacybridge.acm.audioconverter.converters;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.junit.Assume.assumeTrue;
+import static org.literacybridge.acm.Constants.JAVA_TMP_DIR;
+
+public class PipelineConverterTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final Map<String, String> parameters = new HashMap<>();
+
+    @Before
+    public void setUp() {
+        // The stages are shell commands standing in for ffmpeg and lame.
+        assumeTrue(new File("/bin/sh").canExecute());
+    }
+
+    /**
+     * A stage that translates one character to another, converting a file at a time.
+     */
+    private static class FileStage extends BaseAudioConverter {
+        private final char from;
+        private final char to;
+        private final boolean failsStaged;
+        int stagedConversions;
+
+        FileStage(String extension, char from, char to, boolean failsStaged) {
+            super(extension);
+            this.from = from;
+            this.to = to;
+            this.failsStaged = failsStaged;
+        }
+
+        @Override
+        public ConversionResult doConvertFile(File inputFile, File targetDir, File targetFile,
+            Map<String, String> parameters) throws ConversionException {
+            stagedConversions++;
+            if (failsStaged) {
+                throw new ConversionException("Can't convert " + inputFile.getName());
+            }
+            try {
+                String content = new String(Files.readAllBytes(inputFile.toPath()), StandardCharsets.ISO_8859_1);
+                Files.write(targetFile.toPath(), content.replace(from, to).getBytes(StandardCharsets.ISO_8859_1));
+            } catch (IOException e) {
+                throw new ConversionException("Can't convert " + inputFile.getName(), e);
+            }
+            ConversionResult result = new ConversionResult();
+            result.outputFile = targetFile;
+            result.response = "staged " + targetFormatExtension;
+            return result;
+        }
+
+        @Override
+        public String getShortDescription() {
+            return "test stage";
+        }
+
+        @Override
+        public Set<String> getSourceFileExtensions() {
+            return Collections.singleton("a");
+        }
+
+        @Override
+        public void validateConverter() {
+        }
+    }
+
+    /**
+     * The same stage, which can also stream, running a shell script from stdin to stdout.
+     */
+    private static class ShellStage extends FileStage implements StreamingStage {
+        private final String script;
+
+        ShellStage(String extension, String script, char from, char to, boolean failsStaged) {
+            super(extension, from, to, failsStaged);
+            this.script = script;
+        }
+
+        ShellStage(String extension, char from, char to) {
+            this(extension, "tr " + from + " " + to, from, to, false);
+        }
+
+        @Override
+        public List<String> getStreamingCommand(File inputFile, File outputFile, Map<String, String> parameters) {
+            String command = script;
+            if (inputFile != null) command += " < '" + inputFile.getAbsolutePath() + "'";
+            if (outputFile != null) command += " > '" + outputFile.getAbsolutePath() + "'";
+            return Arrays.asList("/bin/sh", "-c", command);
+        }
+    }
+
+    private File newSource(String name, int size) throws IOException {
+        char[] content = new char[size];
+        Arrays.fill(content, 'a');
+        File file = folder.newFile(name);
+        Files.write(file.toPath(), new String(content).getBytes(StandardCharsets.ISO_8859_1));
+        return file;
+    }
+
+    private static String content(File file) throws IOException {
+        return new String(Files.readAllBytes(file.toPath()), StandardCharsets.ISO_8859_1);
+    }
+
+    private static String expected(char c, int size) {
+        char[] content = new char[size];
+        Arrays.fill(content, c);
+        return new String(content);
+    }
+
+    @Test
+    public void testStagesStreamThroughPipes() throws Exception {
+        // Several times the size of a pipe's buffer.
+        int size = 1_000_000;
+        File source = newSource("source.a", size);
+        File outDir = folder.newFolder("out");
+        File target = new File(outDir, "source.c");
+        ShellStage first = new ShellStage(".b", 'a', 'b');
+        ShellStage second = new ShellStage(".c", 'b', 'c');
+
+        new PipelineConverter(first, second).convertFile(source, target, true, parameters);
+
+        assertEquals(expected('c', size), content(target));
+        assertEquals("Nothing was converted in stages.", 0, first.stagedConversions + second.stagedConversions);
+        assertFalse("No intermediate file was written.", new File(JAVA_TMP_DIR, "source.b").exists());
+        assertEquals(Collections.singletonList("source.c"), Arrays.asList(outDir.list()));
+    }
+
+    @Test
+    public void testChattyStageDoesNotBlock() throws Exception {
+        int size = 100_000;
+        File source = newSource("chatty.a", size);
+        File target = new File(folder.newFolder("out"), "chatty.c");
+        // Writes far more diagnostics than a pipe holds before passing its input along.
+        String chatty = "i=0; while [ $i -lt 20000 ]; do echo 'progress line' >&2; i=$((i+1)); done; tr a b";
+        ShellStage first = new ShellStage(".b", chatty, 'a', 'b', false);
+        ShellStage second = new ShellStage(".c", 'b', 'c');
+
+        String response = new PipelineConverter(first, second).convertFile(source, target, true, parameters);
+
+        assertEquals(expected('c', size), content(target));
+        assertTrue(response.contains("progress line"));
+        assertEquals(0, first.stagedConversions + second.stagedConversions);
+    }
+
+    @Test
+    public void testFailedStreamFallsBackToStages() throws Exception {
+        int size = 100_000;
+        File source = newSource("fallback.a", size);
+        File target = new File(folder.newFolder("out"), "fallback.c");
+        ShellStage first = new ShellStage(".b", 'a', 'b');
+        // Reads its input, then fails, as a tool that mishandles pipes might.
+        ShellStage second = new ShellStage(".c", "cat > /dev/null; echo 'pipe:0: Invalid data' >&2; exit 1",
+            'b', 'c', false);
+
+        new PipelineConverter(first, second).convertFile(source, target, true, parameters);
+
+        assertEquals(expected('c', size), content(target));
+        assertEquals(1, first.stagedConversions);
+        assertEquals(1, second.stagedConversions);
+        assertFalse("The intermediate file is removed.", new File(JAVA_TMP_DIR, "fallback.b").exists());
+    }
+
+    @Test
+    public void testFailureIsReported() throws Exception {
+        File source = newSource("failure.a", 1000);
+        File target = new File(folder.newFolder("out"), "failure.c");
+        ShellStage first = new ShellStage(".b", 'a', 'b');
+        ShellStage second = new ShellStage(".c", "exit 3", 'b', 'c', true);
+
+        try {
+            new PipelineConverter(first, second).convertFile(source, target, true, parameters);
+            fail("The conversion should have failed.");
+        } catch (BaseAudioConverter.ConversionException expected) {
+            // expected
+        }
+        assertFalse("No partial output is left.", target.exists());
+        assertFalse("The intermediate file is removed.", new File(JAVA_TMP_DIR, "failure.b").exists());
+    }
+
+    @Test
+    public void testFileOnlyStageIsNotStreamed() throws Exception {
+        int size = 1000;
+        File source = newSource("staged.a", size);
+        File target = new File(folder.newFolder("out"), "staged.c");
+        FileStage first = new FileStage(".b", 'a', 'b', false);
+        ShellStage second = new ShellStage(".c", 'b', 'c');
+
+        String response = new PipelineConverter(first, second).convertFile(source, target, true, parameters);
+
+        assertEquals(expected('c', size), content(target));
+        assertEquals("staged .b\nstaged .c", response);
+        assertFalse(new File(JAVA_TMP_DIR, "staged.b").exists());
+    }
+}
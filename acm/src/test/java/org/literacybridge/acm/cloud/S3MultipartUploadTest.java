@@ -0,0 +1,366 @@
+package org.literacybridge.acm.cloud;
+
+import com.amazonaws.ClientConfiguration;
+import com.amazonaws.auth.AWSStaticCredentialsProvider;
+import com.amazonaws.auth.BasicAWSCredentials;
+import com.amazonaws.client.builder.AwsClientBuilder;
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.AmazonS3ClientBuilder;
+import com.amazonaws.services.s3.model.AmazonS3Exception;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Runs S3MultipartUpload against a minimal S3-compatible server, implementing just the
+ * multipart upload calls.
+ */
+public class S3MultipartUploadTest {
+    private static final String BUCKET = "acm-stats";
+    private static final String KEY = "collected-data/tbcd000c/20220110T085217.123Z.zip";
+    private static final int PART_SIZE = 1000;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private FakeS3 s3;
+    private AmazonS3 s3Client;
+
+    @Before
+    public void setUp() throws IOException {
+        s3 = new FakeS3();
+        s3Client = AmazonS3ClientBuilder.standard()
+            .withEndpointConfiguration(new AwsClientBuilder.EndpointConfiguration(s3.endpoint(), "us-west-2"))
+            .withPathStyleAccessEnabled(true)
+            .disableChunkedEncoding()
+            .withCredentials(new AWSStaticCredentialsProvider(new BasicAWSCredentials("access", "secret")))
+            .withClientConfiguration(new ClientConfiguration().withMaxErrorRetry(0))
+            .build();
+    }
+
+    @After
+    public void tearDown() {
+        s3Client.shutdown();
+        s3.stop();
+    }
+
+    private File newFile(int size) throws IOException {
+        byte[] content = new byte[size];
+        new Random(size).nextBytes(content);
+        File file = folder.newFile();
+        Files.write(file.toPath(), content);
+        return file;
+    }
+
+    private S3MultipartUpload newUpload() {
+        return new S3MultipartUpload(s3Client, BUCKET, KEY);
+    }
+
+    @Test
+    public void testUpload() throws Exception {
+        File file = newFile(4 * PART_SIZE + 500);
+        List<String> checkpoints = new ArrayList<>();
+
+        newUpload().upload(file, PART_SIZE, null, checkpoints::add);
+
+        assertEquals(1, checkpoints.size());
+        assertArrayEquals(Files.readAllBytes(file.toPath()), s3.objects.get(BUCKET + "/" + KEY));
+        assertEquals(Collections.emptySet(), s3.uploads.keySet());
+        assertEquals(5, s3.partsReceived.size());
+    }
+
+    @Test
+    public void testResumeAfterInterruption() throws Exception {
+        File file = newFile(4 * PART_SIZE + 500);
+        List<String> checkpoints = new ArrayList<>();
+        s3.failPart = 4;
+        try {
+            newUpload().upload(file, PART_SIZE, null, checkpoints::add);
+            fail("The upload should have been interrupted.");
+        } catch (AmazonS3Exception expected) {
+            assertEquals(500, expected.getStatusCode());
+        }
+        assertEquals(1, checkpoints.size());
+        String uploadId = checkpoints.get(0);
+        assertFalse(s3.objects.containsKey(BUCKET + "/" + KEY));
+
+        // Resume, as after a restart, with the saved upload id. The three parts already
+        // uploaded are listed on two pages.
+        s3.partsReceived.clear();
+        checkpoints.clear();
+        newUpload().upload(file, PART_SIZE, uploadId, checkpoints::add);
+
+        assertEquals("Only the parts not yet uploaded are sent.", Arrays.asList(4, 5), s3.partsReceived);
+        assertEquals("The upload is resumed, not restarted.", 0, checkpoints.size());
+        assertArrayEquals(Files.readAllBytes(file.toPath()), s3.objects.get(BUCKET + "/" + KEY));
+    }
+
+    @Test
+    public void testResumeResendsPartsOfTheWrongSize() throws Exception {
+        File file = newFile(3 * PART_SIZE);
+        List<String> checkpoints = new ArrayList<>();
+        s3.failPart = 3;
+        try {
+            newUpload().upload(file, PART_SIZE / 2, null, checkpoints::add);
+            fail("The upload should have been interrupted.");
+        } catch (AmazonS3Exception expected) {
+            // expected
+        }
+
+        // Resumed with a different part size; none of the parts fit.
+        s3.partsReceived.clear();
+        newUpload().upload(file, PART_SIZE, checkpoints.get(0), checkpoints::add);
+
+        assertEquals(Arrays.asList(1, 2, 3), s3.partsReceived);
+        assertArrayEquals(Files.readAllBytes(file.toPath()), s3.objects.get(BUCKET + "/" + KEY));
+    }
+
+    @Test
+    public void testResumeExpiredUploadStartsOver() throws Exception {
+        File file = newFile(2 * PART_SIZE + 1);
+        List<String> checkpoints = new ArrayList<>();
+
+        newUpload().upload(file, PART_SIZE, "no-such-upload", checkpoints::add);
+
+        assertEquals(1, checkpoints.size());
+        assertNotEquals("no-such-upload", checkpoints.get(0));
+        assertEquals(Arrays.asList(1, 2, 3), s3.partsReceived);
+        assertArrayEquals(Files.readAllBytes(file.toPath()), s3.objects.get(BUCKET + "/" + KEY));
+    }
+
+    @Test
+    public void testAbort() throws Exception {
+        File file = newFile(3 * PART_SIZE);
+        List<String> checkpoints = new ArrayList<>();
+        s3.failPart = 2;
+        try {
+            newUpload().upload(file, PART_SIZE, null, checkpoints::add);
+            fail("The upload should have been interrupted.");
+        } catch (AmazonS3Exception expected) {
+            // expected
+        }
+        String uploadId = checkpoints.get(0);
+        assertTrue(s3.uploads.containsKey(uploadId));
+
+        newUpload().abort(uploadId);
+        assertFalse("The parts should be discarded.", s3.uploads.containsKey(uploadId));
+
+        // Aborting an upload that is already gone is not an error.
+        newUpload().abort(uploadId);
+    }
+
+    @Test
+    public void testAwsInterfaceUsesClientSetByTest() throws Exception {
+        Authenticator.AwsInterface awsInterface = new Authenticator() {}.getAwsInterface();
+        File file = newFile(2 * PART_SIZE);
+        List<String> checkpoints = new ArrayList<>();
+        assertFalse("No one is signed in.",
+            awsInterface.uploadS3ObjectMultipart(BUCKET, KEY, file, PART_SIZE, null, checkpoints::add));
+
+        awsInterface.setS3Client(s3Client);
+        s3.failPart = 2;
+        assertFalse(awsInterface.uploadS3ObjectMultipart(BUCKET, KEY, file, PART_SIZE, null, checkpoints::add));
+        assertTrue(awsInterface.uploadS3ObjectMultipart(BUCKET, KEY, file, PART_SIZE, checkpoints.get(0),
+            checkpoints::add));
+
+        assertArrayEquals(Files.readAllBytes(file.toPath()), s3.objects.get(BUCKET + "/" + KEY));
+        assertTrue(awsInterface.abortS3MultipartUpload(BUCKET, KEY, checkpoints.get(0)));
+    }
+
+    /**
+     * Just enough of S3 for multipart uploads, with path style addressing. ListParts returns two
+     * parts per page, so that paging is exercised.
+     */
+    private static class FakeS3 {
+        private static final int PARTS_PER_PAGE = 2;
+        private static final Pattern PART = Pattern.compile(
+            "<PartNumber>(\\d+)</PartNumber>\\s*<ETag>([^<]*)</ETag>");
+
+        private final HttpServer server;
+        // uploadId -> part number -> content
+        final Map<String, TreeMap<Integer, byte[]>> uploads = new HashMap<>();
+        final Map<String, byte[]> objects = new HashMap<>();
+        final List<Integer> partsReceived = new ArrayList<>();
+        // Part number to fail, once, with a 500.
+        int failPart;
+        private int nextUploadId = 1;
+
+        FakeS3() throws IOException {
+            server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+            server.createContext("/", this::handle);
+            server.start();
+        }
+
+        String endpoint() {
+            return "http://localhost:" + server.getAddress().getPort();
+        }
+
+        void stop() {
+            server.stop(0);
+        }
+
+        private synchronized void handle(HttpExchange exchange) throws IOException {
+            try {
+                String path = exchange.getRequestURI().getPath().substring(1);
+                Map<String, String> query = parseQuery(exchange.getRequestURI().getRawQuery());
+                byte[] body = readAll(exchange.getRequestBody());
+                String method = exchange.getRequestMethod();
+                String uploadId = query.get("uploadId");
+                if (method.equals("POST") && query.containsKey("uploads")) {
+                    uploadId = "upload-" + nextUploadId++;
+                    uploads.put(uploadId, new TreeMap<>());
+                    reply(exchange, 200, "<InitiateMultipartUploadResult><Bucket>" + BUCKET + "</Bucket><Key>"
+                        + KEY + "</Key><UploadId>" + uploadId + "</UploadId></InitiateMultipartUploadResult>");
+                } else if (uploadId == null) {
+                    error(exchange, 400, "InvalidRequest");
+                } else if (!uploads.containsKey(uploadId)) {
+                    error(exchange, 404, "NoSuchUpload");
+                } else if (method.equals("PUT")) {
+                    int partNumber = Integer.parseInt(query.get("partNumber"));
+                    partsReceived.add(partNumber);
+                    if (partNumber == failPart) {
+                        failPart = 0;
+                        error(exchange, 500, "InternalError");
+                        return;
+                    }
+                    uploads.get(uploadId).put(partNumber, body);
+                    exchange.getResponseHeaders().add("ETag", etag(body));
+                    reply(exchange, 200, null);
+                } else if (method.equals("GET")) {
+                    listParts(exchange, uploads.get(uploadId), query.get("part-number-marker"), uploadId);
+                } else if (method.equals("POST")) {
+                    ByteArrayOutputStream object = new ByteArrayOutputStream();
+                    Matcher matcher = PART.matcher(new String(body, StandardCharsets.UTF_8));
+                    while (matcher.find()) {
+                        byte[] part = uploads.get(uploadId).get(Integer.parseInt(matcher.group(1)));
+                        String etag = matcher.group(2).replace("&quot;", "").replace("\"", "");
+                        if (part == null || !etag(part).equals('"' + etag + '"')) {
+                            error(exchange, 400, "InvalidPart");
+                            return;
+                        }
+                        object.write(part);
+                    }
+                    uploads.remove(uploadId);
+                    objects.put(path, object.toByteArray());
+                    reply(exchange, 200, "<CompleteMultipartUploadResult><Location>" + path + "</Location><Bucket>"
+                        + BUCKET + "</Bucket><Key>" + KEY + "</Key><ETag>\"x-1\"</ETag></CompleteMultipartUploadResult>");
+                } else if (method.equals("DELETE")) {
+                    uploads.remove(uploadId);
+                    reply(exchange, 204, null);
+                } else {
+                    error(exchange, 405, "MethodNotAllowed");
+                }
+            } finally {
+                exchange.close();
+            }
+        }
+
+        private void listParts(HttpExchange exchange, TreeMap<Integer, byte[]> parts, String marker, String uploadId)
+            throws IOException
+        {
+            StringBuilder xml = new StringBuilder("<ListPartsResult><Bucket>" + BUCKET + "</Bucket><Key>" + KEY
+                + "</Key><UploadId>" + uploadId + "</UploadId>");
+            int after = marker == null ? 0 : Integer.parseInt(marker);
+            int count = 0;
+            int last = after;
+            boolean truncated = false;
+            for (Map.Entry<Integer, byte[]> part : parts.tailMap(after, false).entrySet()) {
+                if (count++ == PARTS_PER_PAGE) {
+                    truncated = true;
+                    break;
+                }
+                last = part.getKey();
+                xml.append("<Part><PartNumber>").append(part.getKey())
+                    .append("</PartNumber><LastModified>2022-01-10T08:52:17.000Z</LastModified><ETag>")
+                    .append(etag(part.getValue())).append("</ETag><Size>").append(part.getValue().length)
+                    .append("</Size></Part>");
+            }
+            xml.append("<PartNumberMarker>").append(after).append("</PartNumberMarker><NextPartNumberMarker>")
+                .append(last).append("</NextPartNumberMarker><MaxParts>").append(PARTS_PER_PAGE)
+                .append("</MaxParts><IsTruncated>").append(truncated).append("</IsTruncated></ListPartsResult>");
+            reply(exchange, 200, xml.toString());
+        }
+
+        private static void error(HttpExchange exchange, int status, String code) throws IOException {
+            reply(exchange, status, "<Error><Code>" + code + "</Code><Message>" + code
+                + "</Message><RequestId>1</RequestId></Error>");
+        }
+
+        private static void reply(HttpExchange exchange, int status, String xml) throws IOException {
+            if (xml == null) {
+                exchange.sendResponseHeaders(status, -1);
+                return;
+            }
+            byte[] bytes = ("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" + xml).getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "application/xml");
+            exchange.sendResponseHeaders(status, bytes.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(bytes);
+            }
+        }
+
+        private static String etag(byte[] content) {
+            try {
+                StringBuilder hex = new StringBuilder("\"");
+                for (byte b : MessageDigest.getInstance("MD5").digest(content)) {
+                    hex.append(String.format("%02x", b));
+                }
+                return hex.append('"').toString();
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        private static Map<String, String> parseQuery(String query) {
+            Map<String, String> result = new HashMap<>();
+            if (query != null) {
+                for (String param : query.split("&")) {
+                    String[] parts = param.split("=", 2);
+                    result.put(parts[0], parts.length > 1 ? parts[1] : "");
+                }
+            }
+            return result;
+        }
+
+        private static byte[] readAll(InputStream in) throws IOException {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int n;
+            while ((n = in.read(buffer)) > 0) {
+                out.write(buffer, 0, n);
+            }
+            return out.toByteArray();
+        }
+    }
+}
@@ -0,0 +1,206 @@
+package org.literacybridge.acm.config;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.literacybridge.acm.sandbox.Sandbox;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class DbSnapshotsTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File programHomeDir; // Like ~/Amplio/acm-dbs/NADA
+    private Sandbox sandbox;
+
+    @Before
+    public void setUp() throws IOException {
+        programHomeDir = folder.newFolder("NADA");
+        sandbox = new Sandbox(programHomeDir, folder.newFolder("sandbox"));
+    }
+
+    private static void write(File dir, String path, String content) throws IOException {
+        File file = new File(dir, path);
+        file.getParentFile().mkdirs();
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * A small database, like a Lucene directory, with two files of the same content.
+     */
+    private File newDb(String name) throws IOException {
+        File db = folder.newFolder(name);
+        write(db, "segments_2", "segments 2");
+        write(db, "_0.cfs", "segment zero");
+        write(db, "_0.cfe", "segment zero entries");
+        write(db, "_1.si", "same content");
+        write(db, "write.lock", "same content");
+        write(db, "sub dir/file with spaces.txt", "spaces");
+        return db;
+    }
+
+    private static Map<String, byte[]> contents(File dir) throws IOException {
+        Path base = dir.toPath();
+        Map<String, byte[]> result = new HashMap<>();
+        try (Stream<Path> walk = Files.walk(base)) {
+            for (Path file : walk.filter(Files::isRegularFile).collect(Collectors.toList())) {
+                result.put(base.relativize(file).toString().replace('\\', '/'), Files.readAllBytes(file));
+            }
+        }
+        return result;
+    }
+
+    private static void assertSameContents(File expected, File actual) throws IOException {
+        Map<String, byte[]> expectedContents = contents(expected);
+        Map<String, byte[]> actualContents = contents(actual);
+        assertEquals(expectedContents.keySet(), actualContents.keySet());
+        for (Map.Entry<String, byte[]> entry : expectedContents.entrySet()) {
+            assertArrayEquals(entry.getKey(), entry.getValue(), actualContents.get(entry.getKey()));
+        }
+    }
+
+    private int segmentCount() {
+        return sandbox.listPaths(programHomeDir.toPath().resolve(DbSnapshots.SEGMENTS_DIR)).size();
+    }
+
+    @Test
+    public void testCheckInAndOut() throws Exception {
+        File db = newDb("db");
+
+        int written = new DbSnapshots(sandbox, programHomeDir).checkIn("db1.manifest", db);
+        sandbox.commit();
+
+        assertEquals("Files with the same content share a segment.", 5, written);
+        assertEquals(5, segmentCount());
+        DbSnapshots snapshots = new DbSnapshots(sandbox, programHomeDir);
+        assertTrue(snapshots.isComplete("db1.manifest"));
+        File out = new File(folder.getRoot(), "out");
+        snapshots.checkOut("db1.manifest", out);
+        assertSameContents(db, out);
+    }
+
+    @Test
+    public void testCheckInWritesOnlyNewSegments() throws Exception {
+        File db = newDb("db");
+        new DbSnapshots(sandbox, programHomeDir).checkIn("db1.manifest", db);
+        sandbox.commit();
+
+        // Check out, as the next user of the program would, change the database, and check in.
+        DbSnapshots snapshots = new DbSnapshots(sandbox, programHomeDir);
+        File mirror = new File(folder.getRoot(), "mirror");
+        snapshots.checkOut("db1.manifest", mirror);
+        assertEquals("Nothing has changed.", 0, snapshots.checkIn("db2.manifest", mirror));
+        assertTrue(new File(mirror, "_0.cfs").delete());
+        write(mirror, "_2.cfs", "segment two");
+        Files.delete(new File(mirror, "segments_2").toPath());
+        write(mirror, "segments_3", "segments 3");
+        assertEquals(2, snapshots.checkIn("db3.manifest", mirror));
+        sandbox.commit();
+
+        assertEquals(7, segmentCount());
+        File out = new File(folder.getRoot(), "out");
+        new DbSnapshots(sandbox, programHomeDir).checkOut("db3.manifest", out);
+        assertSameContents(mirror, out);
+        // The earlier versions are intact.
+        File out1 = new File(folder.getRoot(), "out1");
+        new DbSnapshots(sandbox, programHomeDir).checkOut("db1.manifest", out1);
+        assertSameContents(db, out1);
+    }
+
+    @Test
+    public void testMissingSegment() throws Exception {
+        File db = newDb("db");
+        new DbSnapshots(sandbox, programHomeDir).checkIn("db1.manifest", db);
+        sandbox.commit();
+        Path segments = programHomeDir.toPath().resolve(DbSnapshots.SEGMENTS_DIR);
+        sandbox.delete(sandbox.listPaths(segments).iterator().next());
+        sandbox.commit();
+
+        DbSnapshots snapshots = new DbSnapshots(sandbox, programHomeDir);
+        assertFalse("The segment may not have been synchronized yet.", snapshots.isComplete("db1.manifest"));
+        try {
+            snapshots.checkOut("db1.manifest", new File(folder.getRoot(), "out"));
+            fail("Checking out an incomplete snapshot should fail.");
+        } catch (FileNotFoundException expected) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testNotAManifest() throws Exception {
+        write(programHomeDir, "db1.manifest", "not a manifest\n");
+        write(programHomeDir, "db2.manifest", "# ACM database snapshot v1\nabc123 xyz _0.cfs\n");
+
+        DbSnapshots snapshots = new DbSnapshots(sandbox, programHomeDir);
+        assertFalse(snapshots.isComplete("db1.manifest"));
+        assertFalse(snapshots.isComplete("db2.manifest"));
+        assertFalse(snapshots.isComplete("db3.manifest"));
+        try {
+            snapshots.checkOut("db2.manifest", new File(folder.getRoot(), "out"));
+            fail("A malformed manifest should fail.");
+        } catch (IOException expected) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testDeleteUnreferencedSegments() throws Exception {
+        File db = newDb("db");
+        DbSnapshots snapshots = new DbSnapshots(sandbox, programHomeDir);
+        snapshots.checkIn("db1.manifest", db);
+        Files.delete(new File(db, "_0.cfs").toPath());
+        write(db, "_2.cfs", "segment two");
+        snapshots.checkIn("db2.manifest", db);
+        sandbox.commit();
+        assertEquals(6, segmentCount());
+
+        snapshots.deleteUnreferencedSegments(Collections.singletonList("db2.manifest"));
+        sandbox.commit();
+
+        assertEquals("Only the segment unique to db1 is deleted.", 5, segmentCount());
+        assertTrue(snapshots.isComplete("db2.manifest"));
+        assertFalse(snapshots.isComplete("db1.manifest"));
+    }
+
+    @Test
+    public void testDeleteKeepsSegmentsIfAManifestCantBeRead() throws Exception {
+        File db = newDb("db");
+        DbSnapshots snapshots = new DbSnapshots(sandbox, programHomeDir);
+        snapshots.checkIn("db1.manifest", db);
+        sandbox.commit();
+
+        snapshots.deleteUnreferencedSegments(Arrays.asList("db1.manifest", "db9.manifest"));
+
+        assertEquals(5, segmentCount());
+        assertTrue(snapshots.isComplete("db1.manifest"));
+    }
+
+    @Test
+    public void testIsManifest() {
+        assertTrue(DbSnapshots.isManifest("db12.manifest"));
+        assertTrue(DbSnapshots.isManifest("DB12.MANIFEST"));
+        assertFalse(DbSnapshots.isManifest("db12.zip"));
+        assertFalse(DbSnapshots.isManifest(null));
+        assertTrue(AccessControl.DB_ZIP_MATCHER.matcher("db12.manifest").matches());
+        assertTrue(AccessControl.DB_ZIP_MATCHER.matcher("db12.zip").matches());
+    }
+}
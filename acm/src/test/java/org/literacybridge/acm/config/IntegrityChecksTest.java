@@ -0,0 +1,124 @@
+package org.literacybridge.acm.config;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.literacybridge.acm.store.AudioItem;
+import org.literacybridge.acm.store.LuceneMetadataStore;
+import org.literacybridge.acm.store.MetadataStore;
+import org.literacybridge.acm.store.MetadataValue;
+import org.literacybridge.acm.store.RFC3066LanguageCode;
+import org.literacybridge.acm.store.Taxonomy;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.literacybridge.acm.store.MetadataSpecification.DC_IDENTIFIER;
+import static org.literacybridge.acm.store.MetadataSpecification.DC_LANGUAGE;
+import static org.literacybridge.acm.store.MetadataSpecification.DC_TITLE;
+
+public class IntegrityChecksTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private MetadataStore store;
+    private final ExecutorService scanner = Executors.newSingleThreadExecutor();
+
+    @Before
+    public void setUp() throws Exception {
+        store = new LuceneMetadataStore(Taxonomy.createTaxonomy(null, null), folder.newFolder());
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        scanner.shutdown();
+        store.close();
+    }
+
+    private AudioItem newItem(String id, String language, String dcIdentifier) throws Exception {
+        AudioItem item = store.newAudioItem(id);
+        item.getMetadata().putMetadataField(DC_TITLE, MetadataValue.newValue("Title " + id));
+        item.getMetadata().putMetadataField(DC_LANGUAGE, new MetadataValue<>(new RFC3066LanguageCode(language)));
+        if (dcIdentifier != null) {
+            item.getMetadata().put(DC_IDENTIFIER, dcIdentifier);
+        }
+        store.commit(item);
+        return item;
+    }
+
+    private static String dcIdentifier(AudioItem item) {
+        MetadataValue<String> value = item.getMetadata().getMetadataValue(DC_IDENTIFIER);
+        return value == null ? null : value.getValue();
+    }
+
+    /**
+     * Scans on another thread, as the ACM does, and applies the fixes on this one.
+     */
+    private List<Integer> scanAndFix(IntegrityChecks checks) throws Exception {
+        List<Integer> progress = new ArrayList<>();
+        scanner.submit(() -> checks.scan(progress::add)).get();
+        checks.applyFixes();
+        return progress;
+    }
+
+    @Test
+    public void testFixesLanguageCode() throws Exception {
+        newItem("1", "ssl1", "1");
+        newItem("2", "en", "2");
+
+        List<Integer> progress = scanAndFix(new IntegrityChecks(store, false));
+
+        assertEquals("sil", store.getAudioItem("1").getLanguageCode());
+        assertEquals("en", store.getAudioItem("2").getLanguageCode());
+        assertEquals(Integer.valueOf(100), progress.get(progress.size() - 1));
+    }
+
+    @Test
+    public void testFixesMessageIdOnlyIfAutoFix() throws Exception {
+        newItem("1", "en", "wrong");
+        newItem("2", "en", null);
+        // The identifier of another item; not fixed, as it may be that item's data.
+        newItem("3", "en", "1");
+
+        scanAndFix(new IntegrityChecks(store, false));
+        assertEquals("wrong", dcIdentifier(store.getAudioItem("1")));
+
+        scanAndFix(new IntegrityChecks(store, true));
+        assertEquals("1", dcIdentifier(store.getAudioItem("1")));
+        assertEquals("2", dcIdentifier(store.getAudioItem("2")));
+        assertEquals("1", dcIdentifier(store.getAudioItem("3")));
+    }
+
+    @Test
+    public void testScanSeesTheSnapshot() throws Exception {
+        AudioItem item = newItem("1", "ssl1", "1");
+        IntegrityChecks checks = new IntegrityChecks(store, false);
+
+        // A change after the snapshot isn't seen by the scan, which reads only its copies.
+        item.getMetadata().putMetadataField(DC_LANGUAGE, new MetadataValue<>(new RFC3066LanguageCode("en")));
+        store.commit(item);
+        scanAndFix(checks);
+
+        assertEquals("The item was re-checked before being fixed.", "en",
+            store.getAudioItem("1").getLanguageCode());
+    }
+
+    @Test
+    public void testItemDeletedSinceSnapshot() throws Exception {
+        newItem("1", "ssl1", "wrong");
+        newItem("2", "ssl1", "2");
+        IntegrityChecks checks = new IntegrityChecks(store, true);
+
+        store.deleteAudioItem("1");
+        scanAndFix(checks);
+
+        assertNull(store.getAudioItem("1"));
+        assertEquals("sil", store.getAudioItem("2").getLanguageCode());
+    }
+}
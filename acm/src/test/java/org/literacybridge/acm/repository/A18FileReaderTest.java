@@ -0,0 +1,122 @@
+package org.literacybridge.acm.repository;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.literacybridge.acm.store.Category;
+import org.literacybridge.acm.store.LBMetadataSerializer;
+import org.literacybridge.acm.store.Metadata;
+import org.literacybridge.acm.store.MetadataSpecification;
+import org.literacybridge.acm.store.MetadataValue;
+import org.literacybridge.acm.store.Taxonomy;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class A18FileReaderTest {
+    private static final int BIT_RATE = 16000;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Writes an a18 file with the given number of audio bytes (after the length), followed by the
+     * given metadata bytes.
+     */
+    private File newA18(int audioBytes, byte[] metadata) throws IOException {
+        File file = folder.newFile();
+        ByteBuffer header = ByteBuffer.allocate(6).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(audioBytes).putShort((short) BIT_RATE);
+        byte[] audio = new byte[audioBytes];
+        Arrays.fill(audio, 2, audio.length, (byte) 0x5a);
+        System.arraycopy(header.array(), 4, audio, 0, 2);
+        try (OutputStream out = Files.newOutputStream(file.toPath())) {
+            out.write(header.array(), 0, 4);
+            out.write(audio);
+            out.write(metadata);
+        }
+        return file;
+    }
+
+    @Test
+    public void testWithoutMetadata() throws Exception {
+        File file = newA18(4000, new byte[0]);
+        try (A18FileReader reader = new A18FileReader(file)) {
+            assertEquals(4000, reader.getAudioByteCount());
+            assertEquals(4004, reader.getAudioFileSize());
+            assertEquals(BIT_RATE, reader.getBitRate());
+            assertEquals(2, reader.getDurationSeconds());
+            assertFalse(reader.hasMetadata());
+            assertNull(reader.getMetadataBuffer());
+        }
+    }
+
+    @Test
+    public void testMetadataBuffer() throws Exception {
+        byte[] metadata = "some metadata".getBytes();
+        File file = newA18(100, metadata);
+        try (A18FileReader reader = new A18FileReader(file)) {
+            assertTrue(reader.hasMetadata());
+            ByteBuffer buffer = reader.getMetadataBuffer();
+            byte[] read = new byte[buffer.remaining()];
+            buffer.get(read);
+            assertArrayEquals(metadata, read);
+        }
+        // Nothing still refers to the file.
+        assertTrue(file.delete());
+    }
+
+    @Test
+    public void testReadMetadata() throws Exception {
+        Taxonomy taxonomy = Taxonomy.createTaxonomy(null, null);
+        Metadata metadata = new Metadata();
+        metadata.putMetadataField(MetadataSpecification.DC_TITLE, MetadataValue.newValue("A title"));
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            new LBMetadataSerializer().serialize(new ArrayList<>(), metadata, out);
+        }
+        File file = newA18(100, bytes.toByteArray());
+
+        Metadata read = new Metadata();
+        List<Category> categories = new ArrayList<>();
+        try (A18FileReader reader = new A18FileReader(file)) {
+            assertTrue(reader.readMetadata(read, taxonomy, categories));
+        }
+        assertEquals("A title", read.getMetadataValue(MetadataSpecification.DC_TITLE).getValue());
+        assertTrue(categories.isEmpty());
+    }
+
+    @Test
+    public void testTransferAudio() throws Exception {
+        File file = newA18(1000, "metadata".getBytes());
+        File audio = folder.newFile();
+        try (A18FileReader reader = new A18FileReader(file)) {
+            reader.transferAudioTo(audio);
+        }
+        byte[] original = Files.readAllBytes(file.toPath());
+        byte[] copied = Files.readAllBytes(audio.toPath());
+        assertArrayEquals(Arrays.copyOf(original, 1004), copied);
+    }
+
+    @Test(expected = IOException.class)
+    public void testTooShort() throws Exception {
+        File file = folder.newFile();
+        Files.write(file.toPath(), new byte[] { 1, 2, 3 });
+        new A18FileReader(file).close();
+    }
+}
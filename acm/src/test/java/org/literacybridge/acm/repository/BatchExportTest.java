@@ -0,0 +1,212 @@
+package org.literacybridge.acm.repository;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.literacybridge.acm.audioconverter.converters.BaseAudioConverter.ConversionException;
+import org.literacybridge.acm.repository.AudioItemRepository.AudioFormat;
+import org.literacybridge.acm.store.AudioItem;
+import org.literacybridge.acm.store.LuceneMetadataStore;
+import org.literacybridge.acm.store.MetadataStore;
+import org.literacybridge.acm.store.Taxonomy;
+import org.powermock.api.mockito.PowerMockito;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.powermock.api.mockito.PowerMockito.when;
+
+public class BatchExportTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private MetadataStore store;
+    private AudioItemRepository repository;
+    private final ExecutorService workers = Executors.newCachedThreadPool();
+    // The target of every export the repository was asked for.
+    private final List<String> exported = new ArrayList<>();
+    private Exporter exporter = BatchExportTest::export;
+
+    private interface Exporter {
+        File export(AudioItem audioItem, File targetFile) throws Exception;
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        store = new LuceneMetadataStore(Taxonomy.createTaxonomy(null, null), folder.newFolder("store"));
+        repository = PowerMockito.mock(AudioItemRepository.class);
+        when(repository.exportAudioFileWithFormatAsync(any(AudioItem.class), any(File.class), any(AudioFormat.class)))
+            .thenAnswer(invocation -> {
+                AudioItem audioItem = (AudioItem) invocation.getArguments()[0];
+                File targetFile = (File) invocation.getArguments()[1];
+                synchronized (exported) {
+                    exported.add(targetFile.getName());
+                }
+                Exporter thisExporter = exporter;
+                return workers.submit(() -> thisExporter.export(audioItem, targetFile));
+            });
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        workers.shutdownNow();
+        store.close();
+    }
+
+    private static File export(AudioItem audioItem, File targetFile) throws IOException {
+        targetFile.getParentFile().mkdirs();
+        Files.write(targetFile.toPath(), audioItem.getId().getBytes(StandardCharsets.UTF_8));
+        return targetFile;
+    }
+
+    private File target(String path) {
+        return new File(folder.getRoot(), path);
+    }
+
+    private static String content(File file) throws IOException {
+        return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void testSameItemIsExportedOnce() throws Exception {
+        AudioItem a = store.newAudioItem("a");
+        AudioItem b = store.newAudioItem("b");
+        BatchExport batch = new BatchExport(repository);
+        batch.add(a, target("package1/a.a18"), AudioFormat.A18);
+        batch.add(b, target("package1/b.a18"), AudioFormat.A18);
+        batch.add(a, target("package2/a.a18"), AudioFormat.A18);
+        batch.add(a, target("package3/a.a18"), AudioFormat.A18);
+        // Another format is another export.
+        batch.add(a, target("package4/a.mp3"), AudioFormat.MP3);
+        List<Integer> progress = new ArrayList<>();
+
+        BatchExport.Results results = batch.run((entry, completed, total) -> {
+            assertEquals(5, total);
+            progress.add(completed);
+        });
+
+        assertEquals(3, results.getExportedCount());
+        assertEquals(3, exported.size());
+        assertEquals("a", content(target("package2/a.a18")));
+        assertEquals("a", content(target("package3/a.a18")));
+        assertEquals("b", content(target("package1/b.a18")));
+        assertFalse(results.getEntries().get(0).isShared());
+        assertTrue(results.getEntries().get(2).isShared());
+        assertTrue(results.getFailures().isEmpty());
+        List<Integer> expected = new ArrayList<>();
+        for (int i = 1; i <= 5; i++) expected.add(i);
+        assertEquals(expected, progress);
+    }
+
+    @Test
+    public void testSameTargetIsExportedOnce() throws Exception {
+        AudioItem a = store.newAudioItem("a");
+        BatchExport batch = new BatchExport(repository);
+        batch.add(a, target("a.a18"), AudioFormat.A18);
+        batch.add(a, target("a.a18"), AudioFormat.A18);
+        batch.addRequired(a, target("a.a18"), AudioFormat.A18);
+        batch.add(a, target("a.a18"), AudioFormat.A18);
+        assertEquals(1, batch.size());
+
+        BatchExport.Results results = batch.run(null);
+
+        assertEquals(1, exported.size());
+        assertTrue("Required wins over optional.", results.getEntries().get(0).isRequired());
+    }
+
+    @Test
+    public void testExportsRunConcurrently() throws Exception {
+        int n = 4;
+        CountDownLatch allStarted = new CountDownLatch(n);
+        exporter = (audioItem, targetFile) -> {
+            allStarted.countDown();
+            // Only completes if every export is running at once.
+            if (!allStarted.await(10, TimeUnit.SECONDS)) {
+                throw new IOException("Exports ran one at a time");
+            }
+            return export(audioItem, targetFile);
+        };
+        BatchExport batch = new BatchExport(repository);
+        for (int i = 0; i < n; i++) {
+            batch.add(store.newAudioItem("item" + i), target("item" + i + ".a18"), AudioFormat.A18);
+        }
+
+        BatchExport.Results results = batch.run(null);
+
+        assertTrue(results.getFailures().isEmpty());
+        assertEquals(n, results.getExportedCount());
+    }
+
+    @Test
+    public void testFailures() throws Exception {
+        AudioItem good = store.newAudioItem("good");
+        AudioItem bad = store.newAudioItem("bad");
+        ConversionException failure = new ConversionException("Can't convert");
+        exporter = (audioItem, targetFile) -> {
+            if (audioItem == bad) throw failure;
+            return export(audioItem, targetFile);
+        };
+        BatchExport batch = new BatchExport(repository);
+        batch.add(bad, target("package1/bad.a18"), AudioFormat.A18);
+        batch.add(good, target("package1/good.a18"), AudioFormat.A18);
+        batch.add(bad, target("package2/bad.a18"), AudioFormat.A18);
+
+        BatchExport.Results results = batch.run(null);
+
+        assertEquals("The copy fails with the export.", 2, results.getFailures().size());
+        assertSame(failure, results.getEntries().get(2).getFailure());
+        assertFalse(target("package2/bad.a18").exists());
+        assertEquals("good", content(target("package1/good.a18")));
+        // Nothing was required.
+        results.throwIfRequiredFailed();
+
+        batch.addRequired(bad, target("package2/bad.a18"), AudioFormat.A18);
+        try {
+            batch.run(null).throwIfRequiredFailed();
+            fail("The required export failed.");
+        } catch (ConversionException expected) {
+            assertSame(failure, expected);
+        }
+    }
+
+    @Test
+    public void testUnexpectedFailure() throws Exception {
+        AudioItem a = store.newAudioItem("a");
+        when(repository.exportAudioFileWithFormatAsync(any(AudioItem.class), any(File.class), any(AudioFormat.class)))
+            .thenAnswer(invocation -> {
+                CompletableFuture<File> future = new CompletableFuture<>();
+                future.completeExceptionally(new IllegalStateException("No converter"));
+                return (Future<File>) future;
+            });
+        BatchExport batch = new BatchExport(repository);
+        batch.addRequired(a, target("a.a18"), AudioFormat.A18);
+
+        BatchExport.Results results = batch.run(null);
+
+        assertTrue(results.getEntries().get(0).getFailure() instanceof IllegalStateException);
+        try {
+            results.throwIfRequiredFailed();
+            fail("The required export failed.");
+        } catch (IOException expected) {
+            assertTrue(expected.getCause() instanceof IllegalStateException);
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package org.literacybridge.acm.repository;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.literacybridge.acm.audioconverter.api.A18Format;
+import org.literacybridge.acm.audioconverter.api.AudioConversionFormat;
+import org.literacybridge.acm.repository.AudioItemRepository.AudioFormat;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ConversionCacheTest {
+    private static final AudioConversionFormat A18 = AudioFormat.A18.getAudioConversionFormat();
+    private static final AudioConversionFormat MP3 = AudioFormat.MP3.getAudioConversionFormat();
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    private ConversionCache newCache() throws IOException {
+        return new ConversionCache(folder.newFolder("conversions"), 100_000_000);
+    }
+
+    private File newFile(String path, byte[] content) throws IOException {
+        File file = new File(folder.getRoot(), path);
+        file.getParentFile().mkdirs();
+        Files.write(file.toPath(), content);
+        return file;
+    }
+
+    private static byte[] random(int size, long seed) {
+        byte[] content = new byte[size];
+        new Random(seed).nextBytes(content);
+        return content;
+    }
+
+    @Test
+    public void testKeyDependsOnContentNotLocation() throws Exception {
+        ConversionCache cache = newCache();
+        File a = newFile("program1/content/a.wav", random(1000, 1));
+        File copyOfA = newFile("program2/prompts/en/1.wav", random(1000, 1));
+        File b = newFile("program1/content/b.wav", random(1000, 2));
+
+        assertEquals(cache.keyFor(a, A18), cache.keyFor(copyOfA, A18));
+        assertNotEquals(cache.keyFor(a, A18), cache.keyFor(b, A18));
+    }
+
+    @Test
+    public void testKeyDependsOnFormatsAndParameters() throws Exception {
+        ConversionCache cache = newCache();
+        File wav = newFile("a.wav", random(1000, 1));
+        File mp3 = newFile("a.mp3", random(1000, 1));
+
+        String key = cache.keyFor(wav, A18);
+        assertNotEquals("Another target format.", key, cache.keyFor(wav, MP3));
+        assertNotEquals("Another source format.", key, cache.keyFor(mp3, A18));
+        assertNotEquals("Another sample rate.", key, cache.keyFor(wav, new A18Format(8000, 128, 1)));
+        assertEquals(key, cache.keyFor(wav, new A18Format(16000, 128, 1)));
+    }
+
+    @Test
+    public void testChangedSourceIsHashedAgain() throws Exception {
+        ConversionCache cache = newCache();
+        File wav = newFile("a.wav", random(1000, 1));
+        String key = cache.keyFor(wav, A18);
+
+        Files.write(wav.toPath(), random(1000, 2));
+        assertTrue(wav.setLastModified(wav.lastModified() + 2000));
+
+        assertNotEquals(key, cache.keyFor(wav, A18));
+    }
+
+    @Test
+    public void testStoreAndFetch() throws Exception {
+        File cacheDir = folder.newFolder("conversions");
+        ConversionCache cache = new ConversionCache(cacheDir, 100_000_000);
+        File wav = newFile("a.wav", random(1000, 1));
+        String key = cache.keyFor(wav, A18);
+        File target = new File(folder.getRoot(), "export/package/a.a18");
+        assertFalse(cache.fetch(key, "a18", target));
+        assertFalse(target.exists());
+
+        File converted = newFile("converted/a.a18", random(500, 3));
+        cache.store(key, "a18", converted);
+
+        assertTrue(cache.fetch(key, "a18", target));
+        assertArrayEquals(Files.readAllBytes(converted.toPath()), Files.readAllBytes(target.toPath()));
+        assertFalse("Another format isn't found.", cache.fetch(key, "mp3", new File(folder.getRoot(), "a.mp3")));
+        // A cache opened later, as by another program, finds it too.
+        File other = new File(folder.getRoot(), "other/a.a18");
+        assertTrue(new ConversionCache(cacheDir, 100_000_000).fetch(key, "a18", other));
+    }
+
+    @Test
+    public void testFetchNeverSeesPartialEntry() throws Exception {
+        ConversionCache cache = newCache();
+        byte[] content = random(2_000_000, 3);
+        File converted = newFile("converted/a.a18", content);
+        String key = cache.keyFor(newFile("a.wav", random(1000, 1)), A18);
+
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            futures.add(executor.submit(() -> {
+                for (int i = 0; i < 10; i++) {
+                    cache.store(key, "a18", converted);
+                }
+                return null;
+            }));
+            int reader = t;
+            futures.add(executor.submit(() -> {
+                File target = new File(folder.getRoot(), "reader" + reader + "/a.a18");
+                for (int i = 0; i < 20; i++) {
+                    if (cache.fetch(key, "a18", target)) {
+                        assertArrayEquals(content, Files.readAllBytes(target.toPath()));
+                    }
+                }
+                return null;
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+
+        assertTrue(cache.fetch(key, "a18", new File(folder.getRoot(), "last.a18")));
+        try (Stream<Path> files = Files.walk(new File(folder.getRoot(), "conversions").toPath())) {
+            List<String> temps = files.map(p -> p.getFileName().toString())
+                .filter(name -> name.startsWith(".") && name.contains(".a18."))
+                .collect(Collectors.toList());
+            assertEquals("No temporary files are left behind.", new ArrayList<String>(), temps);
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package org.literacybridge.acm.repository;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static junit.framework.TestCase.assertEquals;
+import static junit.framework.TestCase.assertFalse;
+import static junit.framework.TestCase.assertSame;
+import static junit.framework.TestCase.assertTrue;
+
+public class ConversionSchedulerTest {
+
+    @Test
+    public void testDuplicateRequestsShareOneConversion() throws Exception {
+        ConversionScheduler scheduler = new ConversionScheduler(2);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger conversions = new AtomicInteger();
+        File result = new File("item.a18");
+
+        Future<File> first = scheduler.submit("item.a18", () -> {
+            conversions.incrementAndGet();
+            release.await();
+            return result;
+        });
+        Future<File> second = scheduler.submit("item.a18", () -> {
+            conversions.incrementAndGet();
+            return result;
+        });
+        assertSame("A pending request should be shared.", first, second);
+
+        release.countDown();
+        assertEquals(result, first.get(5, TimeUnit.SECONDS));
+        assertEquals("Only one conversion should have run.", 1, conversions.get());
+    }
+
+    @Test
+    public void testSynchronousRunDoesNotWaitForWorkers() throws Exception {
+        // One worker, kept busy; a synchronous request must still complete.
+        ConversionScheduler scheduler = new ConversionScheduler(1);
+        CountDownLatch release = new CountDownLatch(1);
+        scheduler.execute(() -> {
+            release.await();
+            return null;
+        });
+        Future<File> queued = scheduler.submit("other.mp3", () -> new File("other.mp3"));
+
+        File file = scheduler.run("other.mp3", () -> new File("not-used.mp3"));
+        assertEquals("The queued conversion should have been run by the caller.", "other.mp3", file.getName());
+        assertTrue(queued.isDone());
+        release.countDown();
+    }
+
+    @Test
+    public void testCompletedConversionIsForgotten() throws Exception {
+        ConversionScheduler scheduler = new ConversionScheduler(1);
+        AtomicInteger conversions = new AtomicInteger();
+        scheduler.run("item.wav", () -> new File("a" + conversions.incrementAndGet()));
+        scheduler.run("item.wav", () -> new File("a" + conversions.incrementAndGet()));
+        assertEquals("A completed conversion should not satisfy a later request.", 2, conversions.get());
+    }
+
+    @Test
+    public void testLocksAreForgottenWhenReleased() throws Exception {
+        ConversionScheduler scheduler = new ConversionScheduler(1);
+        for (int i = 0; i < 1000; i++) {
+            ConversionScheduler.LockHandle lock = scheduler.lockFor("item" + i);
+            lock.lock();
+            try {
+                // Re-entrant, as an export needing a conversion of the same item would be.
+                ConversionScheduler.LockHandle again = scheduler.lockFor("item" + i);
+                again.lock();
+                again.unlock();
+                assertEquals(1, scheduler.lockCount());
+            } finally {
+                lock.unlock();
+            }
+        }
+        assertEquals("Released locks should not be retained.", 0, scheduler.lockCount());
+    }
+
+    @Test
+    public void testLockExcludesOtherThreads() throws Exception {
+        ConversionScheduler scheduler = new ConversionScheduler(1);
+        AtomicInteger holders = new AtomicInteger();
+        AtomicInteger maxHolders = new AtomicInteger();
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            Thread thread = new Thread(() -> {
+                for (int i = 0; i < 2000; i++) {
+                    ConversionScheduler.LockHandle lock = scheduler.lockFor("item");
+                    lock.lock();
+                    try {
+                        maxHolders.accumulateAndGet(holders.incrementAndGet(), Math::max);
+                        holders.decrementAndGet();
+                    } finally {
+                        lock.unlock();
+                    }
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals("Only one thread at a time should hold the lock.", 1, maxHolders.get());
+        assertEquals(0, scheduler.lockCount());
+    }
+
+    @Test
+    public void testWaitedForLockIsForgotten() throws Exception {
+        ConversionScheduler scheduler = new ConversionScheduler(1);
+        CountDownLatch locked = new CountDownLatch(1);
+        ConversionScheduler.LockHandle lock = scheduler.lockFor("item");
+        lock.lock();
+        Thread other;
+        try {
+            other = new Thread(() -> {
+                ConversionScheduler.LockHandle otherLock = scheduler.lockFor("item");
+                otherLock.lock();
+                try {
+                    locked.countDown();
+                } finally {
+                    otherLock.close();
+                }
+            });
+            other.start();
+            assertFalse(locked.await(50, TimeUnit.MILLISECONDS));
+            assertEquals(1, scheduler.lockCount());
+        } finally {
+            lock.unlock();
+        }
+        assertTrue(locked.await(10, TimeUnit.SECONDS));
+        other.join();
+        assertEquals(0, scheduler.lockCount());
+    }
+}
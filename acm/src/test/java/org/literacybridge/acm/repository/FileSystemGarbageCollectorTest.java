@@ -0,0 +1,108 @@
+package org.literacybridge.acm.repository;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.literacybridge.acm.repository.GarbageCollectedFileSystemRepository.FileSystemGarbageCollector;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class FileSystemGarbageCollectorTest {
+    private static final int FILE_SIZE = 1000;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File newFile(File dir, String name, long ageMillis) throws IOException {
+        File file = new File(dir, name);
+        file.getParentFile().mkdirs();
+        try (OutputStream out = Files.newOutputStream(file.toPath())) {
+            out.write(new byte[FILE_SIZE]);
+        }
+        assertTrue(file.setLastModified(System.currentTimeMillis() - ageMillis));
+        return file;
+    }
+
+    private static FileSystemGarbageCollector newCollector(File dir, long maxSize) {
+        return new FileSystemGarbageCollector(dir, maxSize, (d, name) -> name.endsWith(".wav"));
+    }
+
+    @Test
+    public void testSizeIsKnownBeforeAnyUse() throws Exception {
+        File dir = folder.newFolder("cache");
+        newFile(dir, "a/a.wav", 3000);
+        newFile(dir, "b/b.wav", 2000);
+        newFile(dir, "b/b.mp3", 2000);
+
+        FileSystemGarbageCollector.GCInfo info = newCollector(dir, FILE_SIZE).getGcInfo();
+        assertEquals("Only collectable files count.", 2 * FILE_SIZE, info.getCurrentSizeInBytes());
+        assertTrue(info.isGcRecommended());
+
+        // Again, from the saved index.
+        assertTrue(new File(dir, FileSystemGarbageCollector.INDEX_FILE_NAME).isFile());
+        info = newCollector(dir, FILE_SIZE).getGcInfo();
+        assertEquals(2 * FILE_SIZE, info.getCurrentSizeInBytes());
+    }
+
+    @Test
+    public void testGcWithoutPriorUseCollects() throws Exception {
+        File dir = folder.newFolder("cache");
+        File a = newFile(dir, "a/a.wav", 3000);
+        File b = newFile(dir, "b/b.wav", 2000);
+        File c = newFile(dir, "c/c.wav", 1000);
+
+        newCollector(dir, 2 * FILE_SIZE).gc();
+        assertFalse("The oldest file should be collected.", a.exists());
+        assertTrue(b.exists());
+        assertTrue(c.exists());
+    }
+
+    @Test
+    public void testAccessedFilesAreCollectedLast() throws Exception {
+        File dir = folder.newFolder("cache");
+        File a = newFile(dir, "a/a.wav", 3000);
+        File b = newFile(dir, "b/b.wav", 2000);
+        File c = newFile(dir, "c/c.wav", 1000);
+
+        FileSystemGarbageCollector collector = newCollector(dir, FILE_SIZE);
+        collector.recordAccessed(a);
+        collector.gc();
+        assertTrue("The recently used file should be kept.", a.exists());
+        assertFalse(b.exists());
+        assertFalse(c.exists());
+        assertEquals(FILE_SIZE, collector.getGcInfo().getCurrentSizeInBytes());
+    }
+
+    @Test
+    public void testWrittenAndDeletedFilesAreTracked() throws Exception {
+        File dir = folder.newFolder("cache");
+        newFile(dir, "a/a.wav", 3000);
+        FileSystemGarbageCollector collector = newCollector(dir, 10 * FILE_SIZE);
+        assertEquals(FILE_SIZE, collector.getGcInfo().getCurrentSizeInBytes());
+
+        File b = new File(dir, "b/b.wav");
+        collector.recordWriting(b);
+        newFile(dir, "b/b.wav", 0);
+        assertEquals(2 * FILE_SIZE, collector.getGcInfo().getCurrentSizeInBytes());
+
+        assertTrue(b.delete());
+        collector.recordDeleted(b.getParentFile());
+        assertEquals(FILE_SIZE, collector.getGcInfo().getCurrentSizeInBytes());
+    }
+
+    @Test
+    public void testFilesOutsideTheRepositoryAreIgnored() throws Exception {
+        File dir = folder.newFolder("cache");
+        File other = newFile(folder.newFolder("other"), "x/x.wav", 0);
+        FileSystemGarbageCollector collector = newCollector(dir, FILE_SIZE);
+        collector.recordAccessed(other);
+        assertEquals(0, collector.getGcInfo().getCurrentSizeInBytes());
+    }
+}
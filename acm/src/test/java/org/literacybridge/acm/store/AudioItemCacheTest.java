@@ -0,0 +1,220 @@
+package org.literacybridge.acm.store;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.ref.SoftReference;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class AudioItemCacheTest {
+  private final ExecutorService executor = Executors.newCachedThreadPool();
+  // The most recent reference created for each item, so that a test can clear it, as the
+  // garbage collector would.
+  private final Map<String, SoftReference<AudioItem>> references = new HashMap<>();
+  private final AtomicInteger loads = new AtomicInteger();
+
+  @After
+  public void tearDown() {
+    executor.shutdownNow();
+  }
+
+  private AudioItemCache newCache(int maxHotItems, AudioItemCache.Loader loader) {
+    return new AudioItemCache(maxHotItems, loader) {
+      @Override
+      SoftReference<AudioItem> newReference(AudioItem audioItem) {
+        SoftReference<AudioItem> reference = super.newReference(audioItem);
+        synchronized (references) {
+          references.put(audioItem.getId(), reference);
+        }
+        return reference;
+      }
+    };
+  }
+
+  /**
+   * Waits for a latch, in a loader, which can't throw InterruptedException.
+   */
+  private static void await(CountDownLatch latch) {
+    try {
+      latch.await(10, TimeUnit.SECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * A loader that creates a new instance of the item each time it is called.
+   */
+  private AudioItem load(String uid) {
+    loads.incrementAndGet();
+    return new AudioItem(uid);
+  }
+
+  @Test
+  public void testColdItemsAreHeldSoftly() {
+    AudioItemCache cache = newCache(2, this::load);
+    List<AudioItem> items = new ArrayList<>();
+    for (int i = 0; i < 5; i++) {
+      AudioItem item = new AudioItem("id" + i);
+      items.add(item);
+      cache.put(item);
+    }
+
+    AudioItemCache.Stats stats = cache.getStats();
+    assertEquals(5, stats.size);
+    assertEquals(2, stats.hotSize);
+    assertEquals(3, stats.evictions);
+    // Evicted items are still there, while anything else holds them.
+    for (AudioItem item : items) {
+      assertSame(item, cache.get(item.getId()));
+    }
+    assertEquals(0, loads.get());
+  }
+
+  @Test
+  public void testClearedItemIsReloaded() {
+    AudioItemCache cache = newCache(1, this::load);
+    AudioItem a = new AudioItem("a");
+    cache.put(a);
+    cache.put(new AudioItem("b"));
+    // "a" is cold; reclaim it.
+    references.get("a").clear();
+
+    AudioItem reloaded = cache.get("a");
+
+    assertNotNull(reloaded);
+    assertNotSame(a, reloaded);
+    assertEquals("a", reloaded.getId());
+    assertEquals(1, loads.get());
+    assertEquals(1, cache.getStats().misses);
+    assertSame("The reloaded item is cached.", reloaded, cache.get("a"));
+    assertEquals(1, loads.get());
+  }
+
+  @Test
+  public void testItemGoneFromIndexIsRemoved() {
+    AudioItemCache cache = newCache(1, uid -> null);
+    cache.put(new AudioItem("a"));
+    cache.put(new AudioItem("b"));
+    references.get("a").clear();
+
+    assertNull(cache.get("a"));
+    assertFalse(cache.contains("a"));
+    assertEquals(1, cache.size());
+  }
+
+  @Test
+  public void testConcurrentGetsLoadOneInstance() throws Exception {
+    int nThreads = 8;
+    CountDownLatch loading = new CountDownLatch(nThreads);
+    AudioItemCache cache = newCache(1, uid -> {
+      // Hold every load until all of the threads are loading.
+      loading.countDown();
+      await(loading);
+      return load(uid);
+    });
+    cache.put(new AudioItem("a"));
+    cache.put(new AudioItem("b"));
+    references.get("a").clear();
+
+    List<Future<AudioItem>> futures = new ArrayList<>();
+    for (int i = 0; i < nThreads; i++) {
+      futures.add(executor.submit(() -> cache.get("a")));
+    }
+    AudioItem first = futures.get(0).get();
+    for (Future<AudioItem> future : futures) {
+      assertSame(first, future.get());
+    }
+    assertEquals("Every thread loaded it.", nThreads, loads.get());
+    assertSame("Only one instance is kept.", first, cache.get("a"));
+  }
+
+  @Test
+  public void testRemoveDuringLoad() throws Exception {
+    CountDownLatch loading = new CountDownLatch(1);
+    CountDownLatch removed = new CountDownLatch(1);
+    AudioItemCache cache = newCache(1, uid -> {
+      loading.countDown();
+      await(removed);
+      return load(uid);
+    });
+    cache.put(new AudioItem("a"));
+    cache.put(new AudioItem("b"));
+    references.get("a").clear();
+
+    Future<AudioItem> get = executor.submit(() -> cache.get("a"));
+    assertTrue(loading.await(10, TimeUnit.SECONDS));
+    cache.remove("a");
+    removed.countDown();
+
+    assertNull("A deleted item isn't brought back.", get.get());
+    assertFalse(cache.contains("a"));
+    assertEquals(1, cache.getStats().hotSize);
+  }
+
+  @Test
+  public void testPutDuringLoadWins() throws Exception {
+    CountDownLatch loading = new CountDownLatch(1);
+    CountDownLatch put = new CountDownLatch(1);
+    AudioItemCache cache = newCache(1, uid -> {
+      loading.countDown();
+      await(put);
+      return load(uid);
+    });
+    cache.put(new AudioItem("a"));
+    cache.put(new AudioItem("b"));
+    references.get("a").clear();
+
+    Future<AudioItem> get = executor.submit(() -> cache.get("a"));
+    assertTrue(loading.await(10, TimeUnit.SECONDS));
+    AudioItem updated = new AudioItem("a");
+    cache.put(updated);
+    put.countDown();
+
+    assertSame("The newer item is kept, not the one loaded.", updated, get.get());
+    assertSame(updated, cache.get("a"));
+  }
+
+  @Test
+  public void testIteratingDoesNotDisplaceHotItems() {
+    AudioItemCache cache = newCache(2, this::load);
+    List<AudioItem> items = new ArrayList<>();
+    for (int i = 0; i < 5; i++) {
+      AudioItem item = new AudioItem("id" + i);
+      items.add(item);
+      cache.put(item);
+    }
+    AudioItemCache.Stats before = cache.getStats();
+    references.get("id0").clear();
+
+    int count = 0;
+    for (AudioItem item : cache.values()) {
+      assertNotNull(item);
+      count++;
+    }
+
+    assertEquals(5, count);
+    AudioItemCache.Stats after = cache.getStats();
+    assertEquals("Nothing was evicted by iterating.", before.evictions, after.evictions);
+    assertEquals(before.hits, after.hits);
+    assertEquals(2, after.hotSize);
+    assertEquals("The cleared item was loaded.", 1, loads.get());
+  }
+}
@@ -0,0 +1,370 @@
+package org.literacybridge.acm.store;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.facet.FacetsConfig;
+import org.apache.lucene.index.DocValuesType;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.IndexWriterConfig.OpenMode;
+import org.apache.lucene.index.IndexableField;
+import org.apache.lucene.store.FSDirectory;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class AudioItemIndexTest {
+  @Rule
+  public TemporaryFolder tmp = new TemporaryFolder();
+
+  private final Taxonomy taxonomy = Taxonomy.createTaxonomy(null, null);
+
+  private static void put(AudioItem audioItem, String title, String language, String duration) {
+    Metadata metadata = audioItem.getMetadata();
+    metadata.putMetadataField(MetadataSpecification.DC_TITLE, MetadataValue.newValue(title));
+    if (language != null) {
+      metadata.putMetadataField(MetadataSpecification.DC_LANGUAGE,
+          MetadataValue.newValue(new RFC3066LanguageCode(language)));
+    }
+    if (duration != null) {
+      metadata.putMetadataField(MetadataSpecification.LB_DURATION, MetadataValue.newValue(duration));
+    }
+    metadata.putMetadataField(MetadataSpecification.DC_PUBLISHER,
+        MetadataValue.newValue("Publisher of " + title));
+  }
+
+  private Category leaf(int n) {
+    Iterator<Category> it = taxonomy.getRootCategory().getChildren().iterator();
+    Category category = it.next();
+    for (int i = 0; i < n; i++) {
+      category = it.next();
+    }
+    while (category.hasChildren()) {
+      category = category.getChildren().iterator().next();
+    }
+    return category;
+  }
+
+  private static Map<String, AudioItem> byId(Collection<AudioItem> audioItems) {
+    Map<String, AudioItem> result = new HashMap<>();
+    for (AudioItem audioItem : audioItems) {
+      result.put(audioItem.getId(), audioItem);
+    }
+    return result;
+  }
+
+  private static Set<String> categoryIds(AudioItem audioItem) {
+    Set<String> result = new HashSet<>();
+    for (Category category : audioItem.getCategoryLeavesList()) {
+      result.add(category.getId());
+    }
+    return result;
+  }
+
+  /**
+   * Writes an index with two items, like the one from an earlier ACM.
+   */
+  private File newIndexDir() throws Exception {
+    File indexDir = tmp.newFolder();
+    LuceneMetadataStore store = new LuceneMetadataStore(taxonomy, indexDir);
+    AudioItem a1 = store.newAudioItem("1");
+    put(a1, "Lorem", "en-us", "01:23 l");
+    a1.addCategory(leaf(0));
+    a1.addCategory(leaf(1));
+    AudioItem a2 = store.newAudioItem("2");
+    put(a2, "Lorem ipsum", null, null);
+    store.commit(a1, a2);
+    Playlist playlist = store.newPlaylist("playlist");
+    playlist.addAudioItem(a2);
+    playlist.addAudioItem(a1);
+    store.commit(playlist);
+    store.close();
+    return indexDir;
+  }
+
+  private void assertLoaded(Map<String, AudioItem> audioItems) {
+    assertEquals(2, audioItems.size());
+
+    AudioItem a1 = audioItems.get("1");
+    assertEquals("Lorem", a1.getTitle());
+    assertEquals("en_us", a1.getLanguageCode());
+    assertEquals("01:23 l", a1.getDuration());
+    Set<String> expected = new HashSet<>();
+    expected.add(leaf(0).getId());
+    expected.add(leaf(1).getId());
+    assertEquals(expected, categoryIds(a1));
+    assertTrue("Parents of the leaves are there too.", a1.hasCategory(leaf(0).getParent()));
+    // Only in the full metadata.
+    assertEquals("Publisher of Lorem",
+        a1.getMetadata().getMetadataValue(MetadataSpecification.DC_PUBLISHER).getValue());
+    assertEquals("Lorem", a1.getTitle());
+
+    AudioItem a2 = audioItems.get("2");
+    assertEquals("Lorem ipsum", a2.getTitle());
+    assertNull(a2.getLanguageCode());
+    assertTrue(a2.getCategoryList().isEmpty());
+    assertEquals("Publisher of Lorem ipsum",
+        a2.getMetadata().getMetadataValue(MetadataSpecification.DC_PUBLISHER).getValue());
+  }
+
+  @Test
+  public void testLoadFromDocValues() throws Exception {
+    File indexDir = newIndexDir();
+
+    AudioItemIndex index = AudioItemIndex.load(indexDir, taxonomy, 100);
+    try {
+      assertLoaded(byId(index.getAudioItems()));
+      assertEquals(2, index.search("lor", (Playlist) null).getAudioItems().size());
+    } finally {
+      index.close();
+    }
+
+    // As the store loads them, with their playlists.
+    LuceneMetadataStore store = new LuceneMetadataStore(taxonomy, indexDir);
+    try {
+      assertLoaded(byId(store.getAudioItems()));
+      Playlist playlist = store.findPlaylistByName("playlist");
+      assertNotNull(playlist);
+      assertEquals(0, playlist.getAudioItemPosition("2"));
+      assertEquals(1, playlist.getAudioItemPosition("1"));
+      assertEquals(1, store.getAudioItem("1").getPlaylists().size());
+      assertEquals(2, store.search("lor", playlist).getAudioItems().size());
+    } finally {
+      store.close();
+    }
+  }
+
+  @Test
+  public void testLoadWithoutDocValues() throws Exception {
+    File indexDir = newIndexDir();
+    // Add an item as an earlier ACM indexed it, without the DocValues.
+    LuceneMetadataStore store = new LuceneMetadataStore(taxonomy, tmp.newFolder());
+    AudioItem old = store.newAudioItem("old");
+    put(old, "Lorem ipsum dolor", "de-de", "00:10 m");
+    old.addCategory(leaf(2));
+    Document doc = new AudioItemDocumentFactory().createLuceneDocument(old);
+    store.close();
+    Iterator<IndexableField> fields = doc.iterator();
+    while (fields.hasNext()) {
+      IndexableField field = fields.next();
+      if (field.fieldType().docValuesType() != DocValuesType.NONE) {
+        fields.remove();
+      }
+    }
+    FacetsConfig facetsConfig = new FacetsConfig();
+    facetsConfig.setMultiValued(AudioItemIndex.CATEGORIES_FACET_FIELD, true);
+    facetsConfig.setMultiValued(AudioItemIndex.LOCALES_FACET_FIELD, true);
+    facetsConfig.setMultiValued(AudioItemIndex.PLAYLISTS_FACET_FIELD, true);
+    IndexWriterConfig config = new IndexWriterConfig(new AudioItemDocumentFactory.PrefixAnalyzer());
+    config.setOpenMode(OpenMode.APPEND);
+    try (IndexWriter writer = new IndexWriter(FSDirectory.open(indexDir.toPath()), config)) {
+      writer.addDocument(facetsConfig.build(doc));
+      writer.commit();
+    }
+
+    store = new LuceneMetadataStore(taxonomy, indexDir);
+    try {
+      Map<String, AudioItem> audioItems = byId(store.getAudioItems());
+      AudioItem loaded = audioItems.remove("old");
+      assertEquals("Lorem ipsum dolor", loaded.getTitle());
+      assertEquals("de_de", loaded.getLanguageCode());
+      assertEquals("00:10 m", loaded.getDuration());
+      assertEquals(categoryIds(old), categoryIds(loaded));
+      assertEquals("Publisher of Lorem ipsum dolor",
+          loaded.getMetadata().getMetadataValue(MetadataSpecification.DC_PUBLISHER).getValue());
+      assertLoaded(audioItems);
+      assertEquals(3, store.search("lor", (Playlist) null).getAudioItems().size());
+
+      // Once re-indexed, it has the DocValues too.
+      loaded.getMetadata().putMetadataField(MetadataSpecification.DC_TITLE,
+          MetadataValue.newValue("Lorem ipsum dolor sit"));
+      store.commit(loaded);
+    } finally {
+      store.close();
+    }
+    AudioItemIndex index = AudioItemIndex.load(indexDir, taxonomy, 100);
+    try {
+      assertEquals("Lorem ipsum dolor sit", byId(index.getAudioItems()).get("old").getTitle());
+    } finally {
+      index.close();
+    }
+  }
+
+  @Test
+  public void testLongTitle() throws Exception {
+    // Longer than any sorted DocValue may be, which is 32766 bytes.
+    StringBuilder title = new StringBuilder("Lorem");
+    while (title.length() < 40_000) {
+      title.append(" ipsum");
+    }
+    File indexDir = tmp.newFolder();
+    LuceneMetadataStore store = new LuceneMetadataStore(taxonomy, indexDir);
+    try {
+      AudioItem audioItem = store.newAudioItem("long");
+      put(audioItem, title.toString(), "en-us", null);
+      store.commit(audioItem);
+    } finally {
+      store.close();
+    }
+
+    AudioItemIndex index = AudioItemIndex.load(indexDir, taxonomy, 100);
+    try {
+      AudioItem loaded = byId(index.getAudioItems()).get("long");
+      assertEquals(title.toString(), loaded.getTitle());
+      assertEquals("en_us", loaded.getLanguageCode());
+      assertEquals(1, index.search("lor", (Playlist) null).getAudioItems().size());
+    } finally {
+      index.close();
+    }
+  }
+
+  @Test
+  public void testRepeatedSearchIsCached() throws Exception {
+    LuceneMetadataStore store = new LuceneMetadataStore(taxonomy, newIndexDir());
+    try {
+      List<Category> categories = Collections.singletonList(leaf(0));
+      List<Locale> locales = Collections.singletonList(Locale.ENGLISH);
+
+      SearchResult result = store.search("lor", categories, locales);
+      assertEquals(Collections.singleton("1"), result.getAudioItems());
+      // An equal query, built again, finds the cached result.
+      assertSame(result, store.search("lor", Collections.singletonList(leaf(0)),
+          Collections.singletonList(Locale.ENGLISH)));
+      assertNotSame(result, store.search("lor", categories, null));
+      assertNotSame(result, store.search("lore", categories, locales));
+
+      // The cached result is shared, so it can't be changed by the caller.
+      try {
+        result.getAudioItems().clear();
+        fail("The audio items of a search result should not be modifiable.");
+      } catch (UnsupportedOperationException expected) {
+        // expected
+      }
+      assertEquals(Collections.singleton("1"), store.search("lor", categories, locales).getAudioItems());
+    } finally {
+      store.close();
+    }
+  }
+
+  @Test
+  public void testSearchSeesChanges() throws Exception {
+    LuceneMetadataStore store = new LuceneMetadataStore(taxonomy, newIndexDir());
+    try {
+      SearchResult result = store.search("lor", null, null);
+      assertEquals(2, result.getAudioItems().size());
+      assertEquals(1, result.getFacetCount(leaf(0)));
+      assertEquals(0, result.getFacetCount(leaf(2)));
+      assertEquals(1, result.getLanguageFacetCount("en_us"));
+
+      AudioItem a3 = store.newAudioItem("3");
+      put(a3, "Lorem ipsum dolor", "en-us", null);
+      a3.addCategory(leaf(0));
+      a3.addCategory(leaf(2));
+      store.commit(a3);
+
+      result = store.search("lor", null, null);
+      assertEquals(3, result.getAudioItems().size());
+      assertEquals(2, result.getFacetCount(leaf(0)));
+      assertEquals(1, result.getFacetCount(leaf(2)));
+      assertEquals(2, result.getLanguageFacetCount("en_us"));
+      assertEquals(3, result.getTotalNumDocsInIndex());
+
+      store.deleteAudioItem("1");
+      store.commit(store.getAudioItem("1"));
+      result = store.search("lor", null, null);
+      assertEquals(2, result.getAudioItems().size());
+      assertEquals(1, result.getFacetCount(leaf(0)));
+    } finally {
+      store.close();
+    }
+  }
+
+  @Test
+  public void testEmptyIndexThenFacets() throws Exception {
+    LuceneMetadataStore store = new LuceneMetadataStore(taxonomy, tmp.newFolder());
+    try {
+      SearchResult result = store.search("", null, null);
+      assertTrue(result.getAudioItems().isEmpty());
+      assertEquals(0, result.getFacetCount(leaf(0)));
+
+      AudioItem a1 = store.newAudioItem("1");
+      put(a1, "Lorem", "en-us", null);
+      a1.addCategory(leaf(0));
+      store.commit(a1);
+
+      // The index had no facets before; now it does.
+      result = store.search("", null, null);
+      assertEquals(1, result.getAudioItems().size());
+      assertEquals(1, result.getFacetCount(leaf(0)));
+      assertEquals(1, result.getLanguageFacetCount("en_us"));
+    } finally {
+      store.close();
+    }
+  }
+
+  @Test
+  public void testSearchWhileCommitting() throws Exception {
+    LuceneMetadataStore store = new LuceneMetadataStore(taxonomy, newIndexDir());
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    AtomicBoolean committing = new AtomicBoolean(true);
+    try {
+      List<Future<?>> searchers = new ArrayList<>();
+      for (int t = 0; t < 4; t++) {
+        searchers.add(executor.submit(() -> {
+          int lastCount = 0;
+          while (committing.get()) {
+            SearchResult result = store.search("lor", null, null);
+            int count = result.getAudioItems().size();
+            // Items are only added, so a later search never finds fewer.
+            assertTrue(count >= lastCount);
+            assertEquals(count, result.getFacetCount(leaf(2)) + 2);
+            lastCount = count;
+          }
+          return null;
+        }));
+      }
+      for (int i = 0; i < 20; i++) {
+        AudioItem audioItem = store.newAudioItem("new" + i);
+        put(audioItem, "Lorem " + i, null, null);
+        audioItem.addCategory(leaf(2));
+        store.commit(audioItem);
+      }
+      committing.set(false);
+      for (Future<?> searcher : searchers) {
+        searcher.get(30, TimeUnit.SECONDS);
+      }
+
+      SearchResult result = store.search("lor", null, null);
+      assertEquals(22, result.getAudioItems().size());
+      assertEquals(20, result.getFacetCount(leaf(2)));
+    } finally {
+      committing.set(false);
+      executor.shutdownNow();
+      store.close();
+    }
+  }
+}
@@ -5,15 +5,28 @@ import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 
+import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.concurrent.atomic.AtomicReference;
-
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.store.AlreadyClosedException;
+import org.apache.commons.io.FileUtils;
 import org.javatuples.Pair;
+import org.junit.After;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
@@ -24,6 +37,16 @@ public class LuceneMetadataStoreTest {
   @Rule
   public TemporaryFolder tmp = new TemporaryFolder();
 
+  // Every store opened by a test, to be closed after it, stopping their background threads.
+  private final List<LuceneMetadataStore> stores = new ArrayList<>();
+
+  @After
+  public void tearDown() throws Exception {
+    for (LuceneMetadataStore store : stores) {
+      store.close();
+    }
+  }
+
   private final static Committable newFailingCommittable() {
     return new Committable() {
       @Override
@@ -412,6 +435,110 @@ public class LuceneMetadataStoreTest {
     assertNumSearchResults(store, "lorem", p3, 1);
   }
 
+  @Test
+  public void testFailedTransactionKeepsEarlierTransactions() throws Exception {
+    LuceneMetadataStore store = newStore();
+
+    AudioItem a1 = store.newAudioItem("1");
+    AudioItem a2 = store.newAudioItem("2");
+    a1.getMetadata().putMetadataField(MetadataSpecification.DC_TITLE,
+        MetadataValue.newValue("Lorem"));
+    a2.getMetadata().putMetadataField(MetadataSpecification.DC_TITLE,
+        MetadataValue.newValue("Ipsum"));
+    store.commit(a1, a2);
+
+    // Completed, but not yet durably committed, when the next transaction fails.
+    a1.getMetadata().putMetadataField(MetadataSpecification.DC_TITLE,
+        MetadataValue.newValue("Lorem 123"));
+    store.commit(a1);
+
+    a2.getMetadata().putMetadataField(MetadataSpecification.DC_TITLE,
+        MetadataValue.newValue("Ipsum 456"));
+    Exception expectedException = null;
+    try {
+      store.commit(a2, newFailingCommittable());
+    } catch (Exception e) {
+      expectedException = e;
+    }
+    assertNotNull(expectedException);
+
+    assertNumSearchResults(store, "123", 1);
+    assertNumSearchResults(store, "456", 0);
+    assertEquals("Ipsum", a2.getTitle());
+
+    // The index is still writable after the rollback.
+    a2.getMetadata().putMetadataField(MetadataSpecification.DC_TITLE,
+        MetadataValue.newValue("Ipsum 789"));
+    store.commit(a2);
+    store.deleteAudioItem(a1.getId());
+    store.commit(a1);
+    assertNumSearchResults(store, "789", 1);
+    assertNumSearchResults(store, "lorem", 0);
+  }
+
+  @Test
+  public void testWriterFailureIsUndone() throws Exception {
+    LuceneMetadataStore store = newStore();
+
+    AudioItem a1 = store.newAudioItem("1");
+    AudioItem a2 = store.newAudioItem("2");
+    a1.getMetadata().putMetadataField(MetadataSpecification.DC_TITLE,
+        MetadataValue.newValue("Lorem"));
+    a2.getMetadata().putMetadataField(MetadataSpecification.DC_TITLE,
+        MetadataValue.newValue("Lorem ipsum"));
+    store.commit(a1, a2);
+    Playlist p1 = store.newPlaylist("1");
+    p1.addAudioItem(a2);
+    p1.addAudioItem(a1);
+    store.commit(p1);
+
+    // a1 is given to the writer, and then the writer fails on the next document.
+    a1.getMetadata().putMetadataField(MetadataSpecification.DC_TITLE,
+        MetadataValue.newValue("Dolor"));
+    Exception expectedException = null;
+    try {
+      store.commit(a1, newFailingDocument());
+    } catch (Exception e) {
+      expectedException = e;
+    }
+    assertNotNull(expectedException);
+
+    assertNumSearchResults(store, "dolor", 0);
+    assertNumSearchResults(store, "lorem", 2);
+    assertNumSearchResults(store, "lorem", p1, 2);
+    assertEquals(1, store.getPlaylist(p1.getId()).getAudioItemPosition(a1.getId()));
+    assertEquals("Lorem", store.getAudioItem(a1.getId()).getTitle());
+
+    a1.getMetadata().putMetadataField(MetadataSpecification.DC_TITLE,
+        MetadataValue.newValue("Dolor"));
+    store.commit(a1);
+    assertNumSearchResults(store, "dolor", 1);
+  }
+
+  /**
+   * A Committable whose document makes the index writer fail.
+   */
+  private static Committable newFailingDocument() {
+    return new Committable() {
+      @Override
+      public boolean doCommit(Transaction t) throws IOException {
+        Document doc = new Document();
+        doc.add(new Field(AudioItemIndex.TEXT_FIELD, new TokenStream() {
+          @Override
+          public boolean incrementToken() throws IOException {
+            throw new IOException("Trigger writer failure");
+          }
+        }, TextField.TYPE_NOT_STORED));
+        t.putDocument("failing", doc, true);
+        return true;
+      }
+
+      @Override
+      public void doRollback(Transaction t) throws IOException {
+      }
+    };
+  }
+
   @Test
   public void testNoNestedTransactions() throws Exception {
     LuceneMetadataStore store = newStore();
@@ -482,9 +609,58 @@ public class LuceneMetadataStoreTest {
     assertNull(active.get());
   }
 
+  @Test
+  public void testCommitterStopsWhenDirectoryIsGone() throws Exception {
+    File indexDir = tmp.newFolder();
+    LuceneMetadataStore store = new LuceneMetadataStore(Taxonomy.createTaxonomy(null, null), indexDir);
+    List<LogRecord> records = new ArrayList<>();
+    Handler handler = new Handler() {
+      @Override
+      public synchronized void publish(LogRecord record) {
+        records.add(record);
+      }
+
+      @Override
+      public void flush() {
+      }
+
+      @Override
+      public void close() {
+      }
+    };
+    Logger logger = Logger.getLogger(AudioItemIndex.class.getName());
+    logger.addHandler(handler);
+    try {
+      AudioItem a1 = store.newAudioItem("1");
+      a1.getMetadata().putMetadataField(MetadataSpecification.DC_TITLE, MetadataValue.newValue("Lorem"));
+      store.commit(a1);
+      FileUtils.deleteDirectory(indexDir);
+      // Several times as long as the committer waits between attempts.
+      Thread.sleep(3000);
+    } finally {
+      logger.removeHandler(handler);
+      try {
+        store.close();
+      } catch (IOException | AlreadyClosedException expected) {
+        // The pending transaction can't be committed.
+      }
+    }
+
+    synchronized (handler) {
+      int warnings = 0;
+      for (LogRecord record : records) {
+        assertFalse(record.getMessage(), record.getLevel() == Level.SEVERE);
+        if (record.getLevel() == Level.WARNING) warnings++;
+      }
+      assertEquals(1, warnings);
+    }
+  }
+
   private LuceneMetadataStore newStore() throws Exception {
     Taxonomy taxonomy = Taxonomy.createTaxonomy(null,null);
-    return new LuceneMetadataStore(taxonomy, tmp.newFolder());
+    LuceneMetadataStore store = new LuceneMetadataStore(taxonomy, tmp.newFolder());
+    stores.add(store);
+    return store;
   }
 
   private static void assertNumSearchResults(MetadataStore store, String query,
@@ -0,0 +1,200 @@
+package org.literacybridge.acm.tbloader;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.literacybridge.acm.cloud.Authenticator;
+import org.literacybridge.acm.cloud.ProjectsHelper;
+import org.literacybridge.acm.cloud.ProjectsHelper.DeploymentInfo;
+import org.powermock.api.mockito.PowerMockito;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.powermock.api.mockito.PowerMockito.when;
+
+public class DeploymentFetchTest {
+    private static final String DEPLOYMENT = "TEST-19-1";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File localProjectDir;
+    private final Map<String, byte[]> contents = new LinkedHashMap<>();
+    private byte[] zip;
+    // The offset of every download opened, and where the next download is cut off, if at all.
+    private final List<Long> offsets = new ArrayList<>();
+    private long cutOff = -1;
+
+    @Before
+    public void setUp() throws IOException {
+        localProjectDir = folder.newFolder("TEST");
+        for (int i = 0; i < 10; i++) {
+            byte[] content = new byte[100_000 + i];
+            new Random(i).nextBytes(content);
+            contents.put("content/" + DEPLOYMENT + "/messages/" + i + ".a18", content);
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ZipOutputStream zout = new ZipOutputStream(bytes)) {
+            for (Map.Entry<String, byte[]> e : contents.entrySet()) {
+                zout.putNextEntry(new ZipEntry(e.getKey()));
+                zout.write(e.getValue());
+                zout.closeEntry();
+            }
+        }
+        zip = bytes.toByteArray();
+
+        // Downloads come from the zip, starting at the requested offset.
+        Authenticator.setDebugInstance(new Authenticator() {
+            private ProjectsHelper projectsHelper;
+
+            @Override
+            public ProjectsHelper getProjectsHelper() {
+                if (projectsHelper == null) {
+                    projectsHelper = new ProjectsHelper(null) {
+                        @Override
+                        public InputStream openDeployment(DeploymentInfo deploymentInfo, long offset) {
+                            offsets.add(offset);
+                            InputStream in = new ByteArrayInputStream(zip, (int) offset, zip.length - (int) offset);
+                            long limit = cutOff < 0 ? Long.MAX_VALUE : cutOff - offset;
+                            cutOff = -1;
+                            return new CutOffInputStream(in, limit);
+                        }
+                    };
+                }
+                return projectsHelper;
+            }
+        });
+    }
+
+    @After
+    public void tearDown() {
+        Authenticator.setDebugInstance(null);
+    }
+
+    private DeploymentInfo deploymentInfo(String revId, String eTag) {
+        DeploymentInfo deploymentInfo = PowerMockito.mock(DeploymentInfo.class);
+        when(deploymentInfo.getDeploymentName()).thenReturn(DEPLOYMENT);
+        when(deploymentInfo.getRevId()).thenReturn(revId);
+        when(deploymentInfo.getVersionMarker()).thenReturn(DEPLOYMENT + "-" + revId);
+        when(deploymentInfo.getFileName()).thenReturn(DEPLOYMENT + "-" + revId + ".zip");
+        when(deploymentInfo.geteTag()).thenReturn(eTag);
+        when(deploymentInfo.getSize()).thenReturn((long) zip.length);
+        return deploymentInfo;
+    }
+
+    private void assertFetched() throws IOException {
+        for (Map.Entry<String, byte[]> e : contents.entrySet()) {
+            assertArrayEquals(e.getKey(), e.getValue(), Files.readAllBytes(new File(localProjectDir, e.getKey()).toPath()));
+        }
+        assertFalse("The fetch state is removed when done.", new File(localProjectDir, ".fetch").exists());
+    }
+
+    /**
+     * Fetches, with the download cut off half way.
+     */
+    private void fetchInterrupted(DeploymentInfo deploymentInfo) {
+        cutOff = zip.length / 2;
+        try {
+            DeploymentFetch.fetch(deploymentInfo, null, localProjectDir, null);
+            fail("The fetch should have been interrupted.");
+        } catch (IOException expected) {
+            // expected
+        }
+    }
+
+    /**
+     * Fails after a number of bytes, like a download that is cut off.
+     */
+    private static class CutOffInputStream extends FilterInputStream {
+        private long remaining;
+
+        CutOffInputStream(InputStream in, long cutOff) {
+            super(in);
+            this.remaining = cutOff;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (remaining <= 0) throw new IOException("Connection reset");
+            remaining--;
+            return super.read();
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (remaining <= 0) throw new IOException("Connection reset");
+            int n = super.read(b, off, (int) Math.min(len, remaining));
+            if (n > 0) remaining -= n;
+            return n;
+        }
+    }
+
+    @Test
+    public void testFetchLocalZip() throws Exception {
+        File localZip = folder.newFile(DEPLOYMENT + "-a.zip");
+        Files.write(localZip.toPath(), zip);
+
+        DeploymentFetch.fetch(deploymentInfo("a", "abc"), localZip, localProjectDir, null);
+
+        assertFetched();
+        assertTrue("Nothing was downloaded.", offsets.isEmpty());
+    }
+
+    @Test
+    public void testResumeInterruptedDownload() throws Exception {
+        List<Long> progress = new ArrayList<>();
+        fetchInterrupted(deploymentInfo("a", "abc"));
+        assertTrue(DeploymentFetch.canResume(localProjectDir, DEPLOYMENT, "a"));
+        assertFalse(DeploymentFetch.canResume(localProjectDir, DEPLOYMENT, "b"));
+
+        DeploymentFetch.fetch(deploymentInfo("a", "abc"), null, localProjectDir, (received, expected) -> progress.add(received));
+
+        assertEquals("The download continued where it stopped.", Arrays.asList(0L, (long) zip.length / 2), offsets);
+        assertEquals("Progress counts the part downloaded earlier.", (long) zip.length, (long) progress.get(progress.size() - 1));
+        assertFetched();
+        assertFalse(DeploymentFetch.canResume(localProjectDir, DEPLOYMENT, "a"));
+    }
+
+    @Test
+    public void testNoETagStartsOver() throws Exception {
+        fetchInterrupted(deploymentInfo("a", null));
+        assertFalse("Without an eTag, the download can't be known to be the same.",
+            DeploymentFetch.canResume(localProjectDir, DEPLOYMENT, "a"));
+
+        DeploymentFetch.fetch(deploymentInfo("a", null), null, localProjectDir, null);
+
+        assertEquals(Arrays.asList(0L, 0L), offsets);
+        assertFetched();
+    }
+
+    @Test
+    public void testOtherETagStartsOver() throws Exception {
+        fetchInterrupted(deploymentInfo("a", "abc"));
+
+        DeploymentFetch.fetch(deploymentInfo("a", "def"), null, localProjectDir, null);
+
+        assertEquals(Arrays.asList(0L, 0L), offsets);
+        assertFetched();
+    }
+}
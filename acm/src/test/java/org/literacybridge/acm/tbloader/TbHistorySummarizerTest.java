@@ -0,0 +1,190 @@
+package org.literacybridge.acm.tbloader;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.literacybridge.core.spec.ProgramSpec;
+import org.literacybridge.core.tbloader.TbOperation;
+import org.literacybridge.core.tbloader.TbsCollected;
+import org.literacybridge.core.tbloader.TbsDeployed;
+
+import javax.swing.SwingUtilities;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class TbHistorySummarizerTest {
+    private static final String OLD_DEPLOYMENT = "TEST-21-1";
+    private static final String LATEST_DEPLOYMENT = "TEST-21-2";
+    private static final long BASE_TIME = 1_620_000_000_000L;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private ProgramSpec programSpec;
+    private TbHistory tbHistory;
+
+    @Before
+    public void setUp() throws Exception {
+        File specDir = folder.newFolder("progspec");
+        Files.write(new File(specDir, "deployments.csv").toPath(), Arrays.asList(
+            "deployment,deploymentname,deploymentnumber,startdate,enddate,component",
+            OLD_DEPLOYMENT + "," + OLD_DEPLOYMENT + ",1,2021-01-01,2021-03-31,",
+            LATEST_DEPLOYMENT + "," + LATEST_DEPLOYMENT + ",2,2021-04-01,2021-06-30,"),
+            StandardCharsets.UTF_8);
+        Files.write(new File(specDir, "recipients.csv").toPath(), Arrays.asList(
+            "recipientid,project,partner,affiliate,component,country,region,district,communityname,groupname,numhouseholds,numtbs,supportentity,model,language,coordinates,agent",
+            "r1,TEST,Amplio,Amplio,Terrestrial,HI,HI,Haiku,Point of View,Studio,0,2,Kamehameha,Group,en,,",
+            "r2,TEST,Amplio,Amplio,Terrestrial,HI,HI,Haiku,Cottage West,Go Farm,0,3,Kamehameha,Group,en,,",
+            "r3,TEST,Amplio,Amplio,Terrestrial,HI,HI,Paia,Baldwin,Beach,0,1,Kamehameha,Group,en,,"),
+            StandardCharsets.UTF_8);
+        programSpec = new ProgramSpec(specDir);
+
+        tbHistory = new TbHistory("TEST", programSpec, folder.newFolder("history"));
+        tbHistory.loadHistory(LATEST_DEPLOYMENT, false);
+    }
+
+    private static String timestamp(long time) {
+        return new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS").format(new Date(time));
+    }
+
+    private static TbsDeployed deployed(String talkingbookid, String recipientid, String deployment, long time) {
+        Map<String, String> values = new HashMap<>();
+        values.put("talkingbookid", talkingbookid);
+        values.put("recipientid", recipientid);
+        values.put("deployment", deployment);
+        values.put("deployedtimestamp", timestamp(time));
+        return new TbsDeployed(values);
+    }
+
+    private static TbsCollected collected(String talkingbookid, String recipientid, String deployment, long time) {
+        Map<String, String> values = new HashMap<>();
+        values.put("talkingbookid", talkingbookid);
+        values.put("recipientid", recipientid);
+        values.put("deployment", deployment);
+        values.put("collectedtimestamp", timestamp(time));
+        return new TbsCollected(values);
+    }
+
+    /**
+     * Adds an operation as the TB-Loader does, and waits for the summary to be updated on the
+     * event thread.
+     */
+    private void add(TbOperation op) throws Exception {
+        SwingUtilities.invokeAndWait(() -> {
+            if (op instanceof TbsDeployed) {
+                tbHistory.addTbDeployed((TbsDeployed) op);
+            } else {
+                tbHistory.addTbCollected((TbsCollected) op);
+            }
+        });
+    }
+
+    private static Map<String, String> asStrings(Map<String, ? extends TbOperation> operations) {
+        Map<String, String> result = new TreeMap<>();
+        operations.forEach((tb, op) -> result.put(tb, op.toString()));
+        return result;
+    }
+
+    /**
+     * Checks a summary that has been kept up to date against one built from the history.
+     */
+    private void assertSameAsRebuilt(TbHistorySummarizer summarizer, String message) {
+        TbHistorySummarizer rebuilt = new TbHistorySummarizer(tbHistory, programSpec.getRecipients());
+        assertEquals(message, rebuilt.getNumSpecTbs(), summarizer.getNumSpecTbs());
+        assertEquals(message, rebuilt.getTotalDeployed(), summarizer.getTotalDeployed());
+        assertEquals(message, rebuilt.getNumCollected(), summarizer.getNumCollected());
+        assertEquals(message, rebuilt.getNumToCollect(), summarizer.getNumToCollect());
+        assertEquals(message, rebuilt.getNumDeployedLatest(), summarizer.getNumDeployedLatest());
+        assertEquals(message, rebuilt.getNumToDeploy(), summarizer.getNumToDeploy());
+        assertEquals(message, asStrings(rebuilt.getTbsCollected()), asStrings(summarizer.getTbsCollected()));
+        assertEquals(message, asStrings(rebuilt.getTbsDeployedAll()), asStrings(summarizer.getTbsDeployedAll()));
+        assertEquals(message, asStrings(rebuilt.getTbsDeployedLatest()),
+            asStrings(summarizer.getTbsDeployedLatest()));
+        assertEquals(message, rebuilt.getNumTbsDeployedLatestPerRecipient(),
+            summarizer.getNumTbsDeployedLatestPerRecipient());
+        assertEquals(message, rebuilt.getToDeployPerRecipient(), summarizer.getToDeployPerRecipient());
+        assertEquals(message, rebuilt.getToCollectPerRecipient(), summarizer.getToCollectPerRecipient());
+    }
+
+    @Test
+    public void testAppliedOperationsMatchRebuiltSummary() throws Exception {
+        TbHistorySummarizer summarizer = tbHistory.getSummarizer();
+        add(deployed("B-00000001", "r1", OLD_DEPLOYMENT, BASE_TIME));
+        assertEquals(Integer.valueOf(1), summarizer.getTotalDeployed());
+
+        // TBs are deployed and collected, sometimes moved between recipients, sometimes to a
+        // recipient not in the program spec, and records sometimes arrive out of order.
+        List<Long> times = new ArrayList<>();
+        for (int i = 1; i <= 200; i++) {
+            times.add(BASE_TIME + i * 1000L);
+        }
+        Random random = new Random(19);
+        for (int i = 0; i < times.size(); i++) {
+            if (random.nextInt(5) == 0 && i < times.size() - 1) {
+                Collections.swap(times, i, i + 1 + random.nextInt(Math.min(5, times.size() - i - 1)));
+            }
+        }
+        String[] recipients = {"r1", "r2", "r3", "r9"};
+        for (int i = 0; i < times.size(); i++) {
+            String tb = String.format("B-%08X", 1 + random.nextInt(8));
+            String recipient = recipients[random.nextInt(recipients.length)];
+            String deployment = random.nextInt(3) == 0 ? OLD_DEPLOYMENT : LATEST_DEPLOYMENT;
+            TbOperation op = random.nextBoolean() ? deployed(tb, recipient, deployment, times.get(i))
+                                                  : collected(tb, recipient, deployment, times.get(i));
+            add(op);
+            assertSameAsRebuilt(summarizer, "After " + (i + 1) + " operations");
+        }
+    }
+
+    @Test
+    public void testChangedRecipientsAreReported() throws Exception {
+        List<TbHistory.HistoryChangeEvent> events = new ArrayList<>();
+        tbHistory.addChangeListener(e -> events.add((TbHistory.HistoryChangeEvent) e));
+
+        // Before the summary is built, anything may have changed.
+        add(deployed("B-00000001", "r1", LATEST_DEPLOYMENT, BASE_TIME));
+        assertEquals(1, events.size());
+        assertNull(events.get(0).getChangedRecipients());
+
+        TbHistorySummarizer summarizer = tbHistory.getSummarizer();
+        assertEquals(Integer.valueOf(5), summarizer.getNumToDeploy());
+        events.clear();
+
+        add(deployed("B-00000002", "r2", LATEST_DEPLOYMENT, BASE_TIME + 1000));
+        assertEquals(Collections.singleton("r2"), events.get(0).getChangedRecipients());
+        assertEquals(Integer.valueOf(4), summarizer.getNumToDeploy());
+
+        // A TB moved to another recipient changes both.
+        add(deployed("B-00000001", "r3", LATEST_DEPLOYMENT, BASE_TIME + 2000));
+        assertEquals(new HashSet<>(Arrays.asList("r1", "r3")), events.get(1).getChangedRecipients());
+        assertEquals(Integer.valueOf(2), summarizer.getToDeployPerRecipient().get("r1"));
+        assertEquals(Integer.valueOf(0), summarizer.getToDeployPerRecipient().get("r3"));
+
+        add(collected("B-00000002", "r2", LATEST_DEPLOYMENT, BASE_TIME + 3000));
+        assertEquals(Collections.singleton("r2"), events.get(2).getChangedRecipients());
+        assertEquals(Integer.valueOf(1), summarizer.getNumCollected());
+        assertNull(summarizer.getToCollectPerRecipient().get("r2"));
+
+        // Nothing is reported for a recipient outside the program spec.
+        add(deployed("B-00000003", "r9", LATEST_DEPLOYMENT, BASE_TIME + 4000));
+        assertEquals(3, events.size());
+
+        assertSameAsRebuilt(summarizer, "After the changes");
+    }
+}
@@ -0,0 +1,127 @@
+package org.literacybridge.acm.tbloader;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class TbHistoryTableTest {
+    private static final List<String> COLUMNS = Arrays.asList("talkingbookid", "timestamp", "project", "community");
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static Map<String, String> record(int i) {
+        Map<String, String> record = new HashMap<>();
+        record.put("talkingbookid", String.format("B-%08X", i));
+        record.put("project", "PROJECT" + (i % 3));
+        // Every other row has no community.
+        record.put("community", i % 2 == 0 ? "COMMUNITY" + i : null);
+        return record;
+    }
+
+    private static TbHistoryTable newTable(int rows) {
+        TbHistoryTable table = new TbHistoryTable(COLUMNS, "timestamp");
+        for (int i = 0; i < rows; i++) {
+            table.add(record(i), new Date(1_600_000_000_000L + i));
+        }
+        return table;
+    }
+
+    private static void assertRows(TbHistoryTable.View view, int rows) {
+        assertEquals(rows, view.size);
+        int talkingbookid = view.column("talkingbookid");
+        int project = view.column("project");
+        int community = view.column("community");
+        for (int i = 0; i < rows; i++) {
+            Map<String, String> expected = record(i);
+            assertEquals(1_600_000_000_000L + i, view.timestamp(i));
+            assertEquals(expected.get("talkingbookid"), view.get(i, talkingbookid));
+            assertEquals(expected.get("project"), view.get(i, project));
+            assertEquals(expected.get("community"), view.get(i, community));
+        }
+    }
+
+    @Test
+    public void testWriteAndRead() throws Exception {
+        TbHistoryTable table = newTable(100);
+        table.setWatermark("2022-01-10T08:52:17Z");
+        File file = new File(folder.getRoot(), "deployed.table");
+
+        table.write(file);
+        TbHistoryTable read = TbHistoryTable.read(file, COLUMNS);
+
+        assertEquals("2022-01-10T08:52:17Z", read.getWatermark());
+        assertRows(read.view(), 100);
+        // Values are encoded to the same codes they had.
+        TbHistoryTable.View view = read.view();
+        int project = view.column("project");
+        assertEquals(view.code(0, project), view.code(3, project));
+        // And rows can still be appended.
+        read.add(record(100), new Date(1_600_000_000_100L));
+        assertRows(read.view(), 101);
+    }
+
+    @Test
+    public void testOtherColumnsAreNotRead() throws Exception {
+        File file = new File(folder.getRoot(), "deployed.table");
+        newTable(10).write(file);
+
+        assertNull(TbHistoryTable.read(file, Arrays.asList("talkingbookid", "timestamp", "project")));
+    }
+
+    @Test
+    public void testViewWrittenAfterTableGrows() throws Exception {
+        TbHistoryTable table = newTable(10);
+        table.setWatermark("first");
+        TbHistoryTable.View view = table.view();
+        // New values grow the dictionaries, past their original capacity.
+        for (int i = 10; i < 100; i++) {
+            table.add(record(i), new Date(1_600_000_000_000L + i));
+        }
+        table.setWatermark("second");
+        File file = new File(folder.getRoot(), "deployed.table");
+
+        view.write(file);
+        TbHistoryTable read = TbHistoryTable.read(file, COLUMNS);
+
+        assertEquals("The watermark is the view's.", "first", read.getWatermark());
+        assertRows(read.view(), 10);
+    }
+
+    @Test
+    public void testWriteWhileAdding() throws Exception {
+        TbHistoryTable table = newTable(10);
+        int rows = 5000;
+        CountDownLatch started = new CountDownLatch(1);
+        Thread adder = new Thread(() -> {
+            started.countDown();
+            for (int i = 10; i < rows; i++) {
+                table.add(record(i), new Date(1_600_000_000_000L + i));
+            }
+        });
+        adder.start();
+        started.await();
+        File file = new File(folder.getRoot(), "deployed.table");
+        int writes = 0;
+        while (adder.isAlive() || writes == 0) {
+            table.write(file);
+            TbHistoryTable read = TbHistoryTable.read(file, COLUMNS);
+            assertRows(read.view(), read.size());
+            writes++;
+        }
+        adder.join();
+        table.write(file);
+        assertRows(TbHistoryTable.read(file, COLUMNS).view(), rows);
+    }
+}
@@ -0,0 +1,160 @@
+package org.literacybridge.acm.tbloader;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class UploadQueueTest {
+    private static final String KEY = "collected-data/tbcd000c/20220110T085217.123Z.zip";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File newFile(File queueDir, String key, int size) throws IOException {
+        File file = new File(queueDir, key);
+        file.getParentFile().mkdirs();
+        Files.write(file.toPath(), new byte[size]);
+        return file;
+    }
+
+    @Test
+    public void testResumeStateSurvivesRestart() throws Exception {
+        File queueDir = folder.newFolder("uploadQueue");
+        newFile(queueDir, KEY, 100);
+        UploadQueue queue = new UploadQueue(queueDir);
+        UploadQueue.Item item = queue.take(1);
+        queue.checkpoint(item, "upload-1");
+        queue.failed(item);
+
+        UploadQueue restarted = new UploadQueue(queueDir);
+        // The retry delay isn't saved, so the item is ready at once.
+        item = restarted.take(1);
+        assertEquals(KEY, item.key);
+        assertEquals(1, item.attempts);
+        assertEquals("upload-1", item.resumeState);
+        assertTrue(restarted.getAbandoned().isEmpty());
+    }
+
+    @Test
+    public void testSmallestFirst() throws Exception {
+        File queueDir = folder.newFolder("uploadQueue");
+        newFile(queueDir, "a/big.zip", 1000);
+        newFile(queueDir, "b/small.zip", 10);
+        UploadQueue queue = new UploadQueue(queueDir);
+
+        assertEquals("b/small.zip", queue.take(2).key);
+        assertEquals("a/big.zip", queue.take(2).key);
+        assertNull(queue.take(2));
+    }
+
+    @Test
+    public void testSucceededRemovesFile() throws Exception {
+        File queueDir = folder.newFolder("uploadQueue");
+        File file = newFile(queueDir, KEY, 100);
+        UploadQueue queue = new UploadQueue(queueDir);
+        queue.succeeded(queue.take(1));
+
+        assertFalse(file.exists());
+        assertEquals(0, queue.getStatus().nFiles);
+        assertEquals("Emptied directories are removed too.",
+            Collections.singletonList(".uploadqueue.properties"), Arrays.asList(queueDir.list()));
+    }
+
+    @Test
+    public void testReplacedFileAbandonsItsUpload() throws Exception {
+        File queueDir = folder.newFolder("uploadQueue");
+        File file = newFile(queueDir, KEY, 100);
+        UploadQueue queue = new UploadQueue(queueDir);
+        UploadQueue.Item item = queue.take(1);
+        queue.checkpoint(item, "upload-1");
+        queue.failed(item);
+
+        queue.add(newFile(queueDir, KEY, 200));
+
+        assertEquals(Collections.singletonMap("upload-1", KEY), queue.getAbandoned());
+        assertNull("The replacement starts a new upload.", queue.take(1).resumeState);
+        assertTrue(file.exists());
+    }
+
+    @Test
+    public void testReplacedWhileUploadingAbandonsItsUpload() throws Exception {
+        File queueDir = folder.newFolder("uploadQueue");
+        newFile(queueDir, KEY, 100);
+        UploadQueue queue = new UploadQueue(queueDir);
+        UploadQueue.Item item = queue.take(2);
+        queue.checkpoint(item, "upload-1");
+
+        queue.add(newFile(queueDir, KEY, 200));
+        assertNull("The replacement waits for the upload in progress.", queue.take(2));
+        queue.failed(item);
+
+        assertEquals(Collections.singletonMap("upload-1", KEY), queue.getAbandoned());
+        UploadQueue.Item replacement = queue.take(2);
+        assertEquals(200, replacement.size);
+        assertNull(replacement.resumeState);
+    }
+
+    @Test
+    public void testMissingFileAbandonsItsUpload() throws Exception {
+        File queueDir = folder.newFolder("uploadQueue");
+        File file = newFile(queueDir, KEY, 100);
+        UploadQueue queue = new UploadQueue(queueDir);
+        UploadQueue.Item item = queue.take(1);
+        queue.checkpoint(item, "upload-1");
+        queue.failed(item);
+        assertTrue(file.delete());
+
+        UploadQueue restarted = new UploadQueue(queueDir);
+
+        assertEquals(Collections.singletonMap("upload-1", KEY), restarted.getAbandoned());
+        assertEquals(0, restarted.getStatus().nFiles);
+    }
+
+    @Test
+    public void testAbandonedUploadsAreKeptUntilDiscarded() throws Exception {
+        File queueDir = folder.newFolder("uploadQueue");
+        newFile(queueDir, KEY, 100);
+        UploadQueue queue = new UploadQueue(queueDir);
+        UploadQueue.Item item = queue.take(1);
+        queue.checkpoint(item, "upload-1");
+        queue.failed(item);
+        queue.add(newFile(queueDir, KEY, 200));
+
+        // Not yet discarded at the target; still known after a restart.
+        UploadQueue restarted = new UploadQueue(queueDir);
+        assertEquals(Collections.singletonMap("upload-1", KEY), restarted.getAbandoned());
+        assertEquals("The abandoned upload isn't a queued file.", 1, restarted.getStatus().nFiles);
+
+        restarted.discarded("upload-1");
+        assertTrue(restarted.getAbandoned().isEmpty());
+        assertTrue(new UploadQueue(queueDir).getAbandoned().isEmpty());
+    }
+
+    @Test
+    public void testSucceededWhileReplacedReleasesReplacement() throws Exception {
+        File queueDir = folder.newFolder("uploadQueue");
+        newFile(queueDir, KEY, 100);
+        UploadQueue queue = new UploadQueue(queueDir);
+        UploadQueue.Item item = queue.take(2);
+        queue.checkpoint(item, "upload-1");
+        queue.add(newFile(queueDir, KEY, 200));
+
+        queue.succeeded(item);
+
+        assertTrue("A completed upload isn't abandoned.", queue.getAbandoned().isEmpty());
+        UploadQueue.Item replacement = queue.take(2);
+        assertEquals(200, replacement.size);
+        assertNull(replacement.resumeState);
+    }
+}
@@ -0,0 +1,169 @@
+package org.literacybridge.acm.utils;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.literacybridge.acm.store.AudioItem;
+import org.literacybridge.acm.store.Category;
+import org.literacybridge.acm.store.Committable;
+import org.literacybridge.acm.store.LuceneMetadataStore;
+import org.literacybridge.acm.store.MetadataSpecification;
+import org.literacybridge.acm.store.MetadataValue;
+import org.literacybridge.acm.store.Taxonomy;
+import org.literacybridge.acm.store.Transaction;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class FeedbackImporterTest {
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private final Taxonomy taxonomy = Taxonomy.createTaxonomy(null, null);
+    private final AtomicInteger transactions = new AtomicInteger();
+    private final Set<Integer> failingTransactions = ConcurrentHashMap.newKeySet();
+    private final Set<String> importingThreads = ConcurrentHashMap.newKeySet();
+    private LuceneMetadataStore store;
+    private Category category;
+
+    @Before
+    public void setUp() throws IOException {
+        store = new LuceneMetadataStore(taxonomy, tmp.newFolder()) {
+            @Override
+            public synchronized Transaction newTransaction() {
+                Transaction transaction = super.newTransaction();
+                if (failingTransactions.contains(transactions.incrementAndGet())) {
+                    transaction.add(new FailingCommit());
+                }
+                return transaction;
+            }
+        };
+        category = taxonomy.getRootCategory().getChildren().iterator().next();
+        while (category.hasChildren()) {
+            category = category.getChildren().iterator().next();
+        }
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        store.close();
+    }
+
+    /**
+     * Makes the transaction it is in fail to commit.
+     */
+    private static class FailingCommit extends Committable {
+        @Override
+        public boolean doCommit(Transaction t) throws IOException {
+            throw new IOException("Commit failed");
+        }
+
+        @Override
+        public void doRollback(Transaction t) {
+        }
+    }
+
+    private static Set<File> files(int count) {
+        Set<File> files = new LinkedHashSet<>();
+        for (int i = 0; i < count; i++) {
+            files.add(new File(String.format("feedback-%03d.a18", i)));
+        }
+        return files;
+    }
+
+    private static String id(File file) {
+        return "id-" + file.getName();
+    }
+
+    /**
+     * Stands in for the audio conversion. Files named in 'failing' can't be converted.
+     */
+    private FeedbackImporter.AudioFileImporter importer(Set<String> failing) {
+        return file -> {
+            importingThreads.add(Thread.currentThread().getName());
+            if (failing.contains(file.getName())) {
+                throw new IOException("Can't convert " + file.getName());
+            }
+            AudioItem item = store.newAudioItem(id(file));
+            item.getMetadata().putMetadataField(MetadataSpecification.DC_TITLE,
+                MetadataValue.newValue(file.getName() + " title"));
+            item.addCategory(category);
+            return item;
+        };
+    }
+
+    private void assertImported(File file) {
+        AudioItem item = store.getAudioItem(id(file));
+        assertNotNull(file.getName(), item);
+        assertTrue(item.getTitle().startsWith(file.getName()));
+        assertTrue(item.hasCategory(category));
+    }
+
+    @Test
+    public void testFilesAreCommittedInBatches() {
+        Set<File> files = files(23);
+
+        FeedbackImporter.ImportResults results = FeedbackImporter.importFiles(files,
+            importer(Collections.emptySet()), store, 5, false);
+
+        assertEquals(23, results.filesImported.size());
+        assertTrue(results.filesFailedToImport.isEmpty());
+        assertEquals(0, results.getExitCode());
+        assertEquals("Five items per transaction.", 5, transactions.get());
+        assertEquals(23, store.getAudioItems().size());
+        files.forEach(this::assertImported);
+        assertFalse("Files are converted by the workers.",
+            importingThreads.contains(Thread.currentThread().getName()));
+    }
+
+    @Test
+    public void testFailedConversionsAreReported() {
+        Set<File> files = files(12);
+        Set<String> failing = new HashSet<>(Arrays.asList("feedback-003.a18", "feedback-010.a18"));
+
+        FeedbackImporter.ImportResults results = FeedbackImporter.importFiles(files,
+            importer(failing), store, 5, false);
+
+        assertEquals(new HashSet<>(results.filesFailedToImport), failing);
+        assertEquals(10, results.filesImported.size());
+        assertEquals(1, results.getExitCode());
+        assertEquals(10, store.getAudioItems().size());
+    }
+
+    @Test
+    public void testFailedBatchIsCommittedOneAtATime() {
+        Set<File> files = files(12);
+        // The second batch fails, and then the third of its files, committed on its own.
+        failingTransactions.addAll(Arrays.asList(2, 5));
+
+        FeedbackImporter.ImportResults results = FeedbackImporter.importFiles(files,
+            importer(Collections.emptySet()), store, 5, false);
+
+        assertEquals(1, results.filesFailedToImport.size());
+        assertEquals(11, results.filesImported.size());
+        assertEquals(11, store.getAudioItems().size());
+        String failed = results.filesFailedToImport.get(0);
+        assertNull(store.getAudioItem("id-" + failed));
+        // Including the others in the failed batch, with all that was imported.
+        for (File file : files) {
+            if (!file.getName().equals(failed)) {
+                assertImported(file);
+            }
+        }
+    }
+}
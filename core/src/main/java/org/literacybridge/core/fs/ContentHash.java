@@ -0,0 +1,78 @@
+package org.literacybridge.core.fs;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Helpers to compute content hashes of files and streams. Hashes are SHA-256, rendered as
+ * lower case hex strings.
+ */
+public class ContentHash {
+    public static final String ALGORITHM = "SHA-256";
+    private static final int BUFFER_SIZE = 65536;
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private ContentHash() {}
+
+    /**
+     * @return a new MessageDigest for the content hash algorithm.
+     */
+    public static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance(ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java platform is required to support SHA-256.
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public static String of(File file) throws IOException {
+        try (InputStream in = new FileInputStream(file)) {
+            return of(in);
+        }
+    }
+
+    public static String of(TbFile file) throws IOException {
+        try (InputStream in = file.openFileInputStream()) {
+            return of(in);
+        }
+    }
+
+    /**
+     * Hashes the remaining contents of a stream. Does not close the stream.
+     * @param in The stream to be hashed.
+     * @return the hash, as a hex string.
+     */
+    public static String of(InputStream in) throws IOException {
+        MessageDigest digest = newDigest();
+        byte[] buffer = new byte[BUFFER_SIZE];
+        int bytesRead;
+        while ((bytesRead = in.read(buffer)) != -1) {
+            digest.update(buffer, 0, bytesRead);
+        }
+        return toHex(digest.digest());
+    }
+
+    /**
+     * Hashes a string, as UTF-8.
+     */
+    public static String ofString(String string) {
+        MessageDigest digest = newDigest();
+        digest.update(string.getBytes(StandardCharsets.UTF_8));
+        return toHex(digest.digest());
+    }
+
+    public static String toHex(byte[] bytes) {
+        char[] chars = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            chars[i * 2] = HEX[(bytes[i] >> 4) & 0x0f];
+            chars[i * 2 + 1] = HEX[bytes[i] & 0x0f];
+        }
+        return new String(chars);
+    }
+}
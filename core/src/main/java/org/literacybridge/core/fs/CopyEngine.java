@@ -0,0 +1,219 @@
+package org.literacybridge.core.fs;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Copies files and directory trees using several concurrent streams.
+ * <p>
+ * A Talking Book update copies thousands of small files; copying them one at a time leaves
+ * both the host disk and the USB device mostly idle, waiting on each other. The engine first
+ * walks the source tree (in the same order as TbFile.copyDir, so filters with side effects see
+ * the same sequence), creates every needed target directory, and then copies the files on a
+ * number of streams. Copies between two FsFiles use FileChannel.transferTo.
+ * <p>
+ * The CopyProgress callback is never called from more than one thread at a time, so existing
+ * listeners need no synchronization.
+ * <p>
+ * The engine keeps a running count of files, bytes, and time spent copying, which may be taken
+ * (and reset) at the end of each step, for throughput statistics.
+ */
+public class CopyEngine {
+    public static final int DEFAULT_STREAMS = 4;
+
+    private final int streams;
+    private final Object progressLock = new Object();
+
+    private long statsFiles;
+    private long statsBytes;
+    private long statsNanos;
+
+    public CopyEngine(int streams) {
+        this.streams = Math.max(1, streams);
+    }
+
+    public int getStreams() {
+        return streams;
+    }
+
+    /**
+     * Copies a file or directory tree, like TbFile.copyDir.
+     * @param src File or directory to be copied.
+     * @param dst Where to copy it.
+     * @param filter If not null, only files and directories it accepts are copied.
+     * @param progress If not null, called as each file is copied.
+     * @return the number of bytes copied.
+     * @throws IOException if any file can't be copied.
+     */
+    public long copyDir(TbFile src, TbFile dst, TbFile.CopyFilter filter, TbFile.CopyProgress progress)
+        throws IOException
+    {
+        Map<TbFile, TbFile> files = new LinkedHashMap<>();
+        collect(src, dst, filter, files);
+        return copyFiles(files, progress);
+    }
+
+    /**
+     * Copies a set of files.
+     * @param files Map of target file to source file. Copies are started in the map's order.
+     * @param progress If not null, called as each file is copied.
+     * @return the number of bytes copied.
+     * @throws IOException if any file can't be copied.
+     */
+    public long copyFiles(Map<TbFile, TbFile> files, TbFile.CopyProgress progress) throws IOException {
+        if (files.isEmpty()) {
+            return 0;
+        }
+        long startTime = System.nanoTime();
+        createTargetDirectories(files.keySet());
+
+        long bytesCopied = 0;
+        int numStreams = Math.min(streams, files.size());
+        if (numStreams == 1) {
+            for (Map.Entry<TbFile, TbFile> e : files.entrySet()) {
+                bytesCopied += copyOne(e.getValue(), e.getKey(), progress);
+            }
+        } else {
+            bytesCopied = copyConcurrently(files, progress, numStreams);
+        }
+
+        synchronized (this) {
+            statsFiles += files.size();
+            statsBytes += bytesCopied;
+            statsNanos += System.nanoTime() - startTime;
+        }
+        return bytesCopied;
+    }
+
+    /**
+     * Gets the files, bytes and time copied since the last call, and resets them.
+     * @return the statistics.
+     */
+    public synchronized Stats takeStats() {
+        Stats stats = new Stats(statsFiles, statsBytes, statsNanos);
+        statsFiles = 0;
+        statsBytes = 0;
+        statsNanos = 0;
+        return stats;
+    }
+
+    private void collect(TbFile src, TbFile dst, TbFile.CopyFilter filter, Map<TbFile, TbFile> files) {
+        if (src.isDirectory()) {
+            String[] children = src.list();
+            if (children != null) {
+                for (String child : children) {
+                    TbFile srcChild = src.open(child);
+                    if (filter == null || filter.accept(srcChild)) {
+                        collect(srcChild, dst.open(child), filter, files);
+                    }
+                }
+            }
+        } else {
+            files.put(dst, src);
+        }
+    }
+
+    /**
+     * Creates the directories to hold the target files, once each, before any copying starts.
+     */
+    private void createTargetDirectories(Iterable<TbFile> targets) {
+        Set<String> created = new LinkedHashSet<>();
+        for (TbFile target : targets) {
+            TbFile parent = target.getParent();
+            if (created.add(parent.getAbsolutePath())) {
+                parent.mkdirs();
+            }
+        }
+    }
+
+    private long copyOne(TbFile src, TbFile dst, TbFile.CopyProgress progress) throws IOException {
+        if (progress != null) {
+            synchronized (progressLock) {
+                progress.copying(src, dst);
+            }
+        }
+        return TbFile.copy(src, dst);
+    }
+
+    private long copyConcurrently(Map<TbFile, TbFile> files, TbFile.CopyProgress progress, int numStreams)
+        throws IOException
+    {
+        ExecutorService executor = Executors.newFixedThreadPool(numStreams, r -> {
+            Thread t = new Thread(r, "CopyEngine");
+            t.setDaemon(true);
+            return t;
+        });
+        // Once any copy fails, the ones not yet started are skipped.
+        AtomicReference<IOException> failure = new AtomicReference<>();
+        List<Future<Long>> results = new ArrayList<>(files.size());
+        try {
+            for (Map.Entry<TbFile, TbFile> e : files.entrySet()) {
+                results.add(executor.submit(() -> {
+                    if (failure.get() != null) return 0L;
+                    try {
+                        return copyOne(e.getValue(), e.getKey(), progress);
+                    } catch (IOException ex) {
+                        failure.compareAndSet(null, ex);
+                        throw ex;
+                    }
+                }));
+            }
+            long bytesCopied = 0;
+            for (Future<Long> result : results) {
+                try {
+                    bytesCopied += result.get();
+                } catch (ExecutionException e) {
+                    // An IOException is already in 'failure'; anything else is wrapped.
+                    failure.compareAndSet(null, new IOException(e.getCause()));
+                }
+            }
+            if (failure.get() != null) {
+                throw failure.get();
+            }
+            return bytesCopied;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while copying files", e);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Files, bytes, and time copied.
+     */
+    public static class Stats {
+        public final long files;
+        public final long bytes;
+        public final long nanos;
+
+        Stats(long files, long bytes, long nanos) {
+            this.files = files;
+            this.bytes = bytes;
+            this.nanos = nanos;
+        }
+
+        /**
+         * @return bytes per second, or 0 if nothing was copied.
+         */
+        public double getBytesPerSecond() {
+            return nanos == 0 ? 0 : bytes * 1e9 / nanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "%.1f MB/s", getBytesPerSecond() / (1024 * 1024));
+        }
+    }
+}
@@ -9,6 +9,8 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
@@ -148,4 +150,27 @@ public class FsFile extends TbFile {
     public InputStream openFileInputStream() throws IOException {
         return new FileInputStream(file);
     }
+
+    /**
+     * Copies one file to another with FileChannel.transferTo, which lets the OS move the bytes
+     * directly where it can.
+     * @param src The file to copy.
+     * @param dst The file to create or overwrite.
+     * @return the number of bytes copied.
+     * @throws IOException if the copy fails.
+     */
+    static long transfer(FsFile src, FsFile dst) throws IOException {
+        try (FileChannel in = FileChannel.open(src.file.toPath(), StandardOpenOption.READ);
+            FileChannel out = FileChannel.open(dst.file.toPath(), StandardOpenOption.WRITE,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            long size = in.size();
+            long position = 0;
+            while (position < size) {
+                long transferred = in.transferTo(position, size - position, out);
+                if (transferred <= 0) break;
+                position += transferred;
+            }
+            return position;
+        }
+    }
 }
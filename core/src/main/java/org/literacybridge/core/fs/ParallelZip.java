@@ -0,0 +1,459 @@
+package org.literacybridge.core.fs;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * Zips a directory straight to its destination, compressing the files on several threads.
+ * <p>
+ * Files are compressed independently, so they can be deflated in parallel; the compressed
+ * entries are then written, in order, to the .zip by a single writer. A compressed entry is kept
+ * in memory only up to a limit, and beyond that in a temporary file, so memory use is bounded
+ * however large the files are. Audio files, which are already compressed, are stored rather than
+ * deflated; the writer copies them directly, computing the CRC as it goes, and fills the CRC into
+ * the entry's header afterwards, so that each is read only once. Entries and their order are the
+ * same as ZipUnzip.zip(), so the result unzips identically.
+ * <p>
+ * The .zip is written under a temporary name, and renamed only when complete, so a failure never
+ * leaves a partial .zip behind.
+ * <p>
+ * The .zip is written without Zip64 extensions. A directory that would need them (more than
+ * 65535 entries, or more than 4GB) is zipped with ZipUnzip instead.
+ */
+public class ParallelZip {
+    private static final int BUFFER_SIZE = 256 * 1024;
+    // A compressed entry larger than this is kept in a temporary file until it is written.
+    private static final int MAX_IN_MEMORY = 1024 * 1024;
+    private static final String TEMP_SUFFIX = ".tmp";
+    private static final long MAX_ZIP32 = 0xFFFFFFFFL;
+    private static final int MAX_ZIP32_ENTRIES = 0xFFFF;
+    // Audio formats that are already compressed; deflating them only costs time.
+    private static final Set<String> STORED_EXTENSIONS = new HashSet<>(Arrays.asList("a18", "mp3", "ogg", "m4a", "opus", "zip"));
+
+    private static final int LOCAL_HEADER_SIG = 0x04034b50;
+    private static final int CENTRAL_HEADER_SIG = 0x02014b50;
+    private static final int END_OF_CENTRAL_SIG = 0x06054b50;
+    private static final int VERSION = 20;
+    private static final int FLAG_UTF8 = 0x0800;
+    private static final int STORED = 0;
+    private static final int DEFLATED = 8;
+    // Offset of the CRC in the local file header.
+    private static final int LOCAL_CRC_OFFSET = 14;
+
+    private ParallelZip() {}
+
+    /**
+     * Zips a directory.
+     * @param inDir The directory to be zipped.
+     * @param outFile The .zip file to create. Any existing file is replaced.
+     * @param includeBaseDir If true, entries are prefixed with the name of inDir.
+     * @param threads How many files to compress at once.
+     * @return the size of the .zip file.
+     * @throws IOException if a file can't be read, or the .zip can't be written.
+     */
+    public static long zip(File inDir, File outFile, boolean includeBaseDir, int threads) throws IOException {
+        List<Entry> entries = new ArrayList<>();
+        String prefix = includeBaseDir ? inDir.getName() + '/' : "";
+        if (includeBaseDir) {
+            entries.add(new Entry(prefix, null));
+        }
+        long totalSize = listEntries(inDir, prefix, entries);
+
+        outFile.getAbsoluteFile().getParentFile().mkdirs();
+        File tempFile = new File(outFile.getAbsoluteFile().getParentFile(), outFile.getName() + TEMP_SUFFIX);
+        boolean success = false;
+        try {
+            if (entries.size() > MAX_ZIP32_ENTRIES || totalSize >= MAX_ZIP32) {
+                ZipUnzip.zip(inDir, tempFile, includeBaseDir);
+            } else {
+                zip(inDir, entries, tempFile, threads);
+            }
+            Files.move(tempFile.toPath(), outFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            success = true;
+            return outFile.length();
+        } finally {
+            if (!success) {
+                tempFile.delete();
+            }
+        }
+    }
+
+    private static void zip(File inDir, List<Entry> entries, File zipFile, int threads) throws IOException {
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, threads), r -> {
+            Thread t = new Thread(r, "ParallelZip");
+            t.setDaemon(true);
+            return t;
+        });
+        Deque<Future<Entry>> pending = new ArrayDeque<>();
+        try (FileChannel channel = FileChannel.open(zipFile.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+            CountingOutputStream out = new CountingOutputStream(
+                new BufferedOutputStream(Channels.newOutputStream(channel), BUFFER_SIZE))) {
+            // Compress a few entries ahead of the writer, but not the whole directory, to bound memory.
+            int window = Math.max(2, threads * 2);
+            int next = 0;
+            while (next < entries.size() || !pending.isEmpty()) {
+                while (next < entries.size() && pending.size() < window) {
+                    Entry entry = entries.get(next++);
+                    pending.add(executor.submit(() -> entry.prepare()));
+                }
+                Entry entry = pending.remove().get();
+                entry.writeLocal(out);
+            }
+            long centralStart = out.count;
+            for (Entry entry : entries) {
+                entry.writeCentral(out);
+            }
+            long centralSize = out.count - centralStart;
+            if (out.count >= MAX_ZIP32) {
+                throw new IOException("Zip file too large: " + zipFile.getName());
+            }
+            writeInt(out, END_OF_CENTRAL_SIG);
+            writeShort(out, 0);                 // this disk
+            writeShort(out, 0);                 // disk with the central directory
+            writeShort(out, entries.size());    // entries on this disk
+            writeShort(out, entries.size());    // total entries
+            writeInt(out, centralSize);
+            writeInt(out, centralStart);
+            writeShort(out, 0);                 // comment length
+            out.flush();
+
+            // The CRCs of stored entries were only known once they had been copied.
+            ByteBuffer crc = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+            for (Entry entry : entries) {
+                if (entry.method == STORED && entry.file != null) {
+                    crc.clear();
+                    crc.putInt((int) entry.crc).flip();
+                    while (crc.hasRemaining()) {
+                        channel.write(crc, entry.offset + LOCAL_CRC_OFFSET + crc.position());
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while zipping " + inDir.getName(), e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        } finally {
+            List<Runnable> notStarted = executor.shutdownNow();
+            // Entries compressed ahead of a failure may hold temporary files.
+            for (Future<Entry> future : pending) {
+                if (notStarted.contains(future)) {
+                    continue;
+                }
+                try {
+                    future.get().discard();
+                } catch (Exception ignored) {
+                    // Didn't complete, so holds nothing.
+                }
+            }
+        }
+    }
+
+    /**
+     * Lists the entries for a directory, in the same order as ZipUnzip.
+     * @return the total size of the files.
+     */
+    private static long listEntries(File dir, String prefix, List<Entry> entries) {
+        long totalSize = 0;
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                if (file.isDirectory()) {
+                    String dirName = prefix + file.getName() + '/';
+                    entries.add(new Entry(dirName, null));
+                    totalSize += listEntries(file, dirName, entries);
+                } else {
+                    entries.add(new Entry(prefix + file.getName(), file));
+                    totalSize += file.length();
+                }
+            }
+        }
+        return totalSize;
+    }
+
+    private static boolean isStored(File file) {
+        String name = file.getName();
+        int dot = name.lastIndexOf('.');
+        return dot >= 0 && STORED_EXTENSIONS.contains(name.substring(dot + 1).toLowerCase(Locale.ROOT));
+    }
+
+    /**
+     * One entry in the .zip; a directory if file is null.
+     */
+    private static class Entry {
+        final byte[] name;
+        final File file;
+        int method = STORED;
+        long dosTime;
+        long crc;
+        long size;
+        long compressedSize;
+        long offset;
+        // The deflated content; null for stored entries, which are copied from the file.
+        SpillOutputStream compressed;
+
+        Entry(String name, File file) {
+            this.name = name.getBytes(StandardCharsets.UTF_8);
+            this.file = file;
+        }
+
+        /**
+         * For deflated entries, computes the CRC and the compressed content. Runs on a worker.
+         */
+        Entry prepare() throws IOException {
+            dosTime = toDosTime(file != null ? file.lastModified() : System.currentTimeMillis());
+            if (file == null) {
+                return this;
+            }
+            if (isStored(file)) {
+                // The CRC is computed as the file is copied.
+                size = file.length();
+                compressedSize = size;
+                return this;
+            }
+            method = DEFLATED;
+            CRC32 crc32 = new CRC32();
+            byte[] buffer = new byte[BUFFER_SIZE];
+            Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+            compressed = new SpillOutputStream(file.getName());
+            boolean success = false;
+            try (InputStream in = new FileInputStream(file);
+                DeflaterOutputStream deflaterStream = new DeflaterOutputStream(compressed, deflater, BUFFER_SIZE)) {
+                int n;
+                while ((n = in.read(buffer)) > 0) {
+                    crc32.update(buffer, 0, n);
+                    deflaterStream.write(buffer, 0, n);
+                    size += n;
+                }
+                success = true;
+            } finally {
+                deflater.end();
+                if (!success) {
+                    discard();
+                }
+            }
+            compressedSize = compressed.count;
+            crc = crc32.getValue();
+            return this;
+        }
+
+        /**
+         * Writes the local header and the content. A stored entry's header is written with a CRC
+         * of 0, to be filled in once the content has been copied.
+         */
+        void writeLocal(CountingOutputStream out) throws IOException {
+            offset = out.count;
+            writeInt(out, LOCAL_HEADER_SIG);
+            writeShort(out, VERSION);
+            writeShort(out, FLAG_UTF8);
+            writeShort(out, method);
+            writeInt(out, dosTime);
+            writeInt(out, crc);
+            writeInt(out, compressedSize);
+            writeInt(out, size);
+            writeShort(out, name.length);
+            writeShort(out, 0);                 // extra field length
+            out.write(name);
+            if (compressed != null) {
+                try {
+                    compressed.writeTo(out);
+                } finally {
+                    discard();
+                }
+            } else if (file != null) {
+                CRC32 crc32 = new CRC32();
+                long copied = 0;
+                byte[] buffer = new byte[BUFFER_SIZE];
+                try (InputStream in = new FileInputStream(file)) {
+                    int n;
+                    while ((n = in.read(buffer)) > 0) {
+                        crc32.update(buffer, 0, n);
+                        out.write(buffer, 0, n);
+                        copied += n;
+                    }
+                }
+                if (copied != size) {
+                    throw new IOException("File changed while zipping: " + file.getName());
+                }
+                crc = crc32.getValue();
+            }
+        }
+
+        void discard() {
+            if (compressed != null) {
+                compressed.discard();
+                compressed = null;
+            }
+        }
+
+        void writeCentral(OutputStream out) throws IOException {
+            writeInt(out, CENTRAL_HEADER_SIG);
+            writeShort(out, VERSION);           // version made by
+            writeShort(out, VERSION);           // version needed to extract
+            writeShort(out, FLAG_UTF8);
+            writeShort(out, method);
+            writeInt(out, dosTime);
+            writeInt(out, crc);
+            writeInt(out, compressedSize);
+            writeInt(out, size);
+            writeShort(out, name.length);
+            writeShort(out, 0);                 // extra field length
+            writeShort(out, 0);                 // comment length
+            writeShort(out, 0);                 // disk number start
+            writeShort(out, 0);                 // internal attributes
+            writeInt(out, file == null ? 0x10 : 0); // external attributes; 0x10 is MS-DOS directory
+            writeInt(out, offset);
+            out.write(name);
+        }
+    }
+
+    /**
+     * Holds compressed content in memory, up to MAX_IN_MEMORY bytes, and beyond that in a
+     * temporary file.
+     */
+    private static class SpillOutputStream extends OutputStream {
+        private final String name;
+        private ByteArrayOutputStream memory = new ByteArrayOutputStream();
+        private File spillFile;
+        private OutputStream spill;
+        long count;
+
+        SpillOutputStream(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] { (byte) b }, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (spill == null && count + len > MAX_IN_MEMORY) {
+                spillFile = File.createTempFile("zip-", "-" + name);
+                spill = new BufferedOutputStream(new FileOutputStream(spillFile), BUFFER_SIZE);
+                memory.writeTo(spill);
+                memory = null;
+            }
+            if (spill != null) {
+                spill.write(b, off, len);
+            } else {
+                memory.write(b, off, len);
+            }
+            count += len;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (spill != null) {
+                spill.close();
+            }
+        }
+
+        void writeTo(OutputStream out) throws IOException {
+            if (spillFile == null) {
+                memory.writeTo(out);
+            } else {
+                Files.copy(spillFile.toPath(), out);
+            }
+        }
+
+        void discard() {
+            memory = null;
+            if (spillFile != null) {
+                try {
+                    spill.close();
+                } catch (IOException ignored) {
+                    // Deleting it anyway.
+                }
+                spillFile.delete();
+                spillFile = null;
+            }
+        }
+    }
+
+    /**
+     * Converts a Java time to an MS-DOS date and time, in local time, as ZipEntry does.
+     */
+    private static long toDosTime(long millis) {
+        Calendar c = Calendar.getInstance();
+        c.setTimeInMillis(millis);
+        int year = c.get(Calendar.YEAR);
+        if (year < 1980) {
+            return (1 << 21) | (1 << 16);       // 1980-01-01
+        }
+        return ((long) (year - 1980) << 25)
+            | ((long) (c.get(Calendar.MONTH) + 1) << 21)
+            | ((long) c.get(Calendar.DAY_OF_MONTH) << 16)
+            | ((long) c.get(Calendar.HOUR_OF_DAY) << 11)
+            | ((long) c.get(Calendar.MINUTE) << 5)
+            | ((long) c.get(Calendar.SECOND) >> 1);
+    }
+
+    private static void writeShort(OutputStream out, int v) throws IOException {
+        out.write(v & 0xff);
+        out.write((v >>> 8) & 0xff);
+    }
+
+    private static void writeInt(OutputStream out, long v) throws IOException {
+        out.write((int) (v & 0xff));
+        out.write((int) ((v >>> 8) & 0xff));
+        out.write((int) ((v >>> 16) & 0xff));
+        out.write((int) ((v >>> 24) & 0xff));
+    }
+
+    private static class CountingOutputStream extends FilterOutputStream {
+        long count;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+}
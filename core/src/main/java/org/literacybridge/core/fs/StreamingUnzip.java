@@ -0,0 +1,237 @@
+package org.literacybridge.core.fs;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Unzips from a stream, such as a download in progress, rather than from a .zip file. Each entry
+ * is extracted as soon as its bytes arrive, rather than after the whole archive has been received.
+ * <p>
+ * Decompression is necessarily sequential, but writing the files needn't be: the entries are
+ * decompressed into memory, and written by a pool of threads. Entries too large to hold in
+ * memory are written as they are decompressed.
+ * <p>
+ * Every file completely written is recorded in a manifest. If the unzip is interrupted, and
+ * started again with the same manifest, the files already written are not written again.
+ */
+public class StreamingUnzip {
+    // Entries up to this size are decompressed into memory, and written by the pool.
+    private static final int MAX_BUFFERED_ENTRY = 4 * 1024 * 1024;
+    // Most bytes decompressed, but not yet written.
+    private static final int MAX_BUFFERED_BYTES = 32 * 1024 * 1024;
+
+    private final File outDir;
+    private final File manifestFile;
+    private final int nThreads;
+
+    // {entry name : size} of the files already written.
+    private final Map<String, Long> extracted = new HashMap<>();
+    private PrintWriter manifestWriter;
+
+    /**
+     * @param outDir Where to unzip the files.
+     * @param manifestFile Where to record the files written. If it exists, it is from an earlier,
+     *                     interrupted, unzip of the same archive.
+     * @param nThreads How many threads to write the files.
+     */
+    public StreamingUnzip(File outDir, File manifestFile, int nThreads) {
+        this.outDir = outDir;
+        this.manifestFile = manifestFile;
+        this.nThreads = Math.max(1, nThreads);
+    }
+
+    /**
+     * Unzips a stream. The stream is read to the end of the zip entries, but not closed.
+     * @param zipStream of the .zip data.
+     * @return the number of files written; files already in the manifest aren't counted.
+     * @throws IOException if the stream can't be read, or a file can't be written.
+     */
+    public int unzip(InputStream zipStream) throws IOException {
+        readManifest();
+        // With the separator, so that a sibling like "out-other" doesn't pass for "out".
+        String expectedFilePrefix = outDir.getCanonicalPath() + File.separator;
+        AtomicInteger threadNumber = new AtomicInteger();
+        ExecutorService writers = Executors.newFixedThreadPool(nThreads, r -> {
+            Thread thread = new Thread(r, "unzip-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        Semaphore bufferedBytes = new Semaphore(MAX_BUFFERED_BYTES);
+        List<Future<?>> writes = new ArrayList<>();
+        int nWritten = 0;
+        PrintWriter writer = new PrintWriter(new OutputStreamWriter(
+                new FileOutputStream(manifestFile, true), StandardCharsets.UTF_8));
+        manifestWriter = writer;
+        try {
+            ZipInputStream zin = new ZipInputStream(zipStream);
+            ZipEntry entry;
+            while ((entry = zin.getNextEntry()) != null) {
+                File file = new File(outDir, entry.getName()).getCanonicalFile();
+                if (!(file.getPath() + File.separator).startsWith(expectedFilePrefix)) {
+                    throw new IOException("Unexpected path contained in zip file");
+                }
+                if (entry.isDirectory()) {
+                    file.mkdirs();
+                    continue;
+                }
+                Long size = extracted.get(entry.getName());
+                if (size != null && file.length() == size) {
+                    // Written by an earlier, interrupted, unzip. getNextEntry() skips the data.
+                    continue;
+                }
+                file.getParentFile().mkdirs();
+                String name = entry.getName();
+                ByteArrayOutputStream head = new ByteArrayOutputStream();
+                if (readUpTo(zin, head, MAX_BUFFERED_ENTRY)) {
+                    byte[] data = head.toByteArray();
+                    acquire(bufferedBytes, data.length);
+                    writes.add(writers.submit(() -> {
+                        try {
+                            try (OutputStream out = new FileOutputStream(file)) {
+                                out.write(data);
+                            }
+                            recordExtracted(name, data.length);
+                        } finally {
+                            bufferedBytes.release(data.length);
+                        }
+                        return null;
+                    }));
+                } else {
+                    // Too big to buffer; write it here, as it is decompressed.
+                    long length;
+                    try (OutputStream out = new FileOutputStream(file)) {
+                        head.writeTo(out);
+                        length = head.size() + copy(zin, out);
+                    }
+                    recordExtracted(name, length);
+                }
+                nWritten++;
+                // Fail early if a write has failed.
+                if (writes.size() >= 64) {
+                    awaitAll(writes);
+                }
+            }
+            awaitAll(writes);
+            if (writer.checkError()) {
+                throw new IOException("Error writing " + manifestFile.getName());
+            }
+        } finally {
+            // Let any writes in progress finish, and be recorded, before closing the manifest.
+            writers.shutdown();
+            try {
+                writers.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            writer.close();
+        }
+        return nWritten;
+    }
+
+    /**
+     * Reads the rest of the current entry, up to a limit.
+     * @param in The stream, positioned in an entry.
+     * @param head Receives the bytes read.
+     * @param limit The most bytes to read.
+     * @return true if the entry was read completely, false if it is larger than the limit.
+     */
+    private static boolean readUpTo(InputStream in, ByteArrayOutputStream head, int limit) throws IOException {
+        byte[] buffer = new byte[65536];
+        int readCount;
+        while ((readCount = in.read(buffer)) > 0) {
+            head.write(buffer, 0, readCount);
+            if (head.size() > limit) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static long copy(InputStream in, OutputStream out) throws IOException {
+        long length = 0;
+        byte[] buffer = new byte[65536];
+        int readCount;
+        while ((readCount = in.read(buffer)) > 0) {
+            out.write(buffer, 0, readCount);
+            length += readCount;
+        }
+        return length;
+    }
+
+    private static void acquire(Semaphore semaphore, int permits) throws IOException {
+        try {
+            semaphore.acquire(permits);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while unzipping");
+        }
+    }
+
+    private static void awaitAll(List<Future<?>> writes) throws IOException {
+        try {
+            for (Future<?> write : writes) {
+                write.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while unzipping");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException("Unable to write unzipped file", cause);
+        }
+        writes.clear();
+    }
+
+    private synchronized void recordExtracted(String name, long size) {
+        // size first; the name is last, as it may contain tabs.
+        manifestWriter.printf("%d\t%s%n", size, name);
+        manifestWriter.flush();
+    }
+
+    private void readManifest() throws IOException {
+        extracted.clear();
+        if (!manifestFile.exists()) {
+            return;
+        }
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new FileInputStream(manifestFile), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] parts = line.split("\t", 2);
+                if (parts.length != 2) continue;
+                try {
+                    extracted.put(parts[1], Long.parseLong(parts[0]));
+                } catch (NumberFormatException ignored) {
+                    // A line cut short by the interruption; that file will be written again.
+                }
+            }
+        }
+    }
+}
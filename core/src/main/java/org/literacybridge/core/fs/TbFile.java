@@ -162,6 +162,10 @@ public abstract class TbFile {
     }
 
     public static long copy(TbFile src, TbFile dst) throws IOException {
+        if (src instanceof FsFile && dst instanceof FsFile) {
+            // Let the OS move the bytes, without copying them through a buffer.
+            return FsFile.transfer((FsFile) src, (FsFile) dst);
+        }
         long bytesCopied = src.length();
         try (InputStream content = src.openFileInputStream() ) {
             dst.createNew(content);
@@ -196,12 +200,9 @@ public abstract class TbFile {
         } else {
             // Ensure there's a directory in which to create the file.
             dst.getParent().mkdirs();
-            bytesCopied = src.length();
             long startTime = System.nanoTime();
             if (progress != null) progress.copying(src, dst);
-            try (InputStream content = src.openFileInputStream() ) {
-                dst.createNew(content);
-            }
+            bytesCopied = copy(src, dst);
             double seconds = (System.nanoTime()-startTime)/1e9;
         }
         return bytesCopied;
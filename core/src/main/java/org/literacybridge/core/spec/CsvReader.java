@@ -75,7 +75,6 @@ public class CsvReader {
      * @return a Set of the names of the columns found in the .csv header, or an empty set if there is an error.
      */
     static Set<String> read(InputStream csvStream, String[] columns, Handler handler) throws IOException {
-        List<String[]> entries = null;
         BOMInputStream bis = new BOMInputStream(csvStream);
         try (Reader ir = new InputStreamReader(bis, StandardCharsets.UTF_8);
             CSVReader reader = new CSVReader(ir)) {
@@ -86,19 +85,7 @@ public class CsvReader {
             if (nextLine != null) {
                 indices = indicesOfColumns(columns, nextLine);
                 while ((nextLine = reader.readNext()) != null) {
-                    Map<String, String> record = new HashMap<>();
-                    for (Map.Entry<String, Integer> e : indices.entrySet()) {
-                        int ix = e.getValue();
-                        String value = "";
-                        if (ix < nextLine.length)
-                            value = nextLine[ix];
-                        // If the value is enclosed in quotes, drop the quotes.
-                        if (value.length() > 1 && value.startsWith("\"") && value.endsWith("\"")) {
-                            value = value.substring(1, value.length() - 1);
-                        }
-                        record.put(e.getKey(), value);
-                    }
-                    handler.handle(record);
+                    handler.handle(toRecord(indices, nextLine));
                 }
                 return indices.keySet();
             }
@@ -106,6 +93,65 @@ public class CsvReader {
         return new HashSet<>();
     }
 
+    /**
+     * Reads every line of a csv from a stream, with all of its columns, so that it can be saved
+     * and given to read(List, ...) later, without parsing it again.
+     * @param csvStream of the csv data.
+     * @return the lines, the header first. Empty if the csv is empty.
+     */
+    static List<String[]> readLines(InputStream csvStream) throws IOException {
+        List<String[]> lines = new ArrayList<>();
+        BOMInputStream bis = new BOMInputStream(csvStream);
+        try (Reader ir = new InputStreamReader(bis, StandardCharsets.UTF_8);
+            CSVReader reader = new CSVReader(ir)) {
+            String[] nextLine;
+            while ((nextLine = reader.readNext()) != null) {
+                lines.add(nextLine);
+            }
+        }
+        return lines;
+    }
+
+    /**
+     * Like read(InputStream, ...), but from lines already read by readLines().
+     * @param lines of the csv, the header first.
+     * @param columns of interest.
+     * @param handler to be called with each record.
+     * @return a Set of the names of the columns found in the .csv header, or an empty set if there are no lines.
+     */
+    static Set<String> read(List<String[]> lines, String[] columns, Handler handler) {
+        if (lines.isEmpty()) {
+            return new HashSet<>();
+        }
+        Map<String, Integer> indices = indicesOfColumns(columns, lines.get(0));
+        for (int i = 1; i < lines.size(); i++) {
+            handler.handle(toRecord(indices, lines.get(i)));
+        }
+        return indices.keySet();
+    }
+
+    /**
+     * Extracts the columns of interest from a csv line.
+     * @param indices of the columns of interest.
+     * @param line from the csv.
+     * @return the record, as a Map<Column,Value>.
+     */
+    private static Map<String, String> toRecord(Map<String, Integer> indices, String[] line) {
+        Map<String, String> record = new HashMap<>();
+        for (Map.Entry<String, Integer> e : indices.entrySet()) {
+            int ix = e.getValue();
+            String value = "";
+            if (ix < line.length)
+                value = line[ix];
+            // If the value is enclosed in quotes, drop the quotes.
+            if (value.length() > 1 && value.startsWith("\"") && value.endsWith("\"")) {
+                value = value.substring(1, value.length() - 1);
+            }
+            record.put(e.getKey(), value);
+        }
+        return record;
+    }
+
     /**
      * Given a list of columns of interest, and a csv header line, determine the column number of
      * each column of interest.
@@ -31,6 +31,7 @@ public class ProgramSpec {
     private Boolean haveLanguageLabelProvider = null;
     private LanguageLabelProvider languageLabelProvider;
     private final StreamProvider streamProvider;
+    private final ProgramSpecSnapshot snapshot;
 
     private List<String> components = null;
     private List<Deployment> deployments = null;
@@ -61,7 +62,19 @@ public class ProgramSpec {
      * @param streamProvider that will provide the data for the program spec.
      */
     public ProgramSpec(StreamProvider streamProvider) {
+        this(streamProvider, null);
+    }
+
+    /**
+     * Create a ProgramSpec that will get the .csv parts of its content from a snapshot, without
+     * parsing the .csv files, and anything else from a caller-supplied streamProvider.
+     *
+     * @param streamProvider that will provide the data for the program spec.
+     * @param snapshot of the .csv files from the streamProvider, or null to parse the files.
+     */
+    public ProgramSpec(StreamProvider streamProvider, ProgramSpecSnapshot snapshot) {
         this.streamProvider = streamProvider;
+        this.snapshot = snapshot;
     }
 
     private synchronized LanguageLabelProvider getLanguageLabelProvider() {
@@ -135,6 +148,29 @@ public class ProgramSpec {
         return streamProvider.getSpecStream(filenames);
     }
 
+    /**
+     * Reads the records of a .csv part of the program specification, from the snapshot if
+     * there is one.
+     *
+     * @param filenames of the part, preferred name first.
+     * @param columns   of interest.
+     * @param handler   to be called with each record.
+     * @return the names of the columns found, or null if the part doesn't exist.
+     * @throws IOException if the part can't be read.
+     */
+    private Set<String> readSpecPart(String[] filenames, String[] columns, CsvReader.Handler handler)
+            throws IOException {
+        if (snapshot != null) {
+            return snapshot.read(filenames, columns, handler);
+        }
+        try (InputStream is = getSpecStream(filenames)) {
+            if (is == null) {
+                return null;
+            }
+            return CsvReader.read(is, columns, handler);
+        }
+    }
+
     /**
      * Lazily loads the recipients from the program specification.
      *
@@ -142,10 +178,10 @@ public class ProgramSpec {
      */
     public synchronized RecipientList getRecipients() {
         if (recipients == null) {
-            try (InputStream is = getSpecStream(Recipient.FILENAMES)) {
-                if (is != null) {
-                    final RecipientList result = new RecipientList(getLanguageLabelProvider());
-                    Set<String> columnsInRecips = CsvReader.read(is, Recipient.columnNames, result::add);
+            try {
+                final RecipientList result = new RecipientList(getLanguageLabelProvider());
+                Set<String> columnsInRecips = readSpecPart(Recipient.FILENAMES, Recipient.columnNames, result::add);
+                if (columnsInRecips != null) {
                     result.setFoundColumns(columnsInRecips);
                     recipients = result;
                 }
@@ -267,18 +303,14 @@ public class ProgramSpec {
      */
     public synchronized Map<String, String> getRecipientsMap() {
         if (recipientsMap == null) {
-            try (InputStream is = getSpecStream(RecipientMap.FILENAME)) {
-                if (is != null) {
-                    final Map<String, String> result = new HashMap<>();
-                    CsvReader.read(is,
-                            RecipientMap.columnNames,
-                            record -> result.put(record.get(RecipientMap.columns.recipientid.name()),
-                                    record.get(RecipientMap.columns.directory.name())));
-                    recipientsMap = result;
-                } else {
-                    // No recipients map
-                    recipientsMap = new HashMap<>();
-                }
+            try {
+                final Map<String, String> result = new HashMap<>();
+                // If there is no recipients map, it is empty.
+                readSpecPart(new String[] { RecipientMap.FILENAME },
+                        RecipientMap.columnNames,
+                        record -> result.put(record.get(RecipientMap.columns.recipientid.name()),
+                                record.get(RecipientMap.columns.directory.name())));
+                recipientsMap = result;
             } catch (IOException ignored) {
             }
         }
@@ -320,15 +352,15 @@ public class ProgramSpec {
      */
     public synchronized List<Language> getLanguages() {
         if (languages == null) {
-            try (InputStream is = getSpecStream(Language.FILENAMES)) {
-                if (is != null) {
-                    final List<Language> result = new ArrayList<>();
-                    CsvReader.read(is, Language.columnNames, record -> {
-                        try {
-                            result.add(new Language(record));
-                        } catch (ParseException ignored) {
-                        }
-                    });
+            try {
+                final List<Language> result = new ArrayList<>();
+                Set<String> found = readSpecPart(Language.FILENAMES, Language.columnNames, record -> {
+                    try {
+                        result.add(new Language(record));
+                    } catch (ParseException ignored) {
+                    }
+                });
+                if (found != null) {
                     languages = result;
                 }
             } catch (IOException ignored) {
@@ -345,15 +377,15 @@ public class ProgramSpec {
      */
     public synchronized List<Deployment> getDeployments() {
         if (deployments == null) {
-            try (InputStream is = getSpecStream(Deployment.FILENAMES)) {
-                if (is != null) {
-                    final List<Deployment> result = new ArrayList<>();
-                    CsvReader.read(is, Deployment.columnNames, record -> {
-                        try {
-                            result.add(new Deployment(record));
-                        } catch (ParseException ignored) {
-                        }
-                    });
+            try {
+                final List<Deployment> result = new ArrayList<>();
+                Set<String> found = readSpecPart(Deployment.FILENAMES, Deployment.columnNames, record -> {
+                    try {
+                        result.add(new Deployment(record));
+                    } catch (ParseException ignored) {
+                    }
+                });
+                if (found != null) {
                     deployments = result;
                 }
             } catch (IOException ignored) {
@@ -385,11 +417,11 @@ public class ProgramSpec {
     public synchronized ContentSpec getContentSpec() {
         if (contentSpec == null) {
             ContentSpec newContentSpec = new ContentSpec();
-            try (InputStream fis = getSpecStream(ContentSpec.FILENAMES)) {
-                if (fis != null) {
-                    CsvReader.read(fis,
-                            ContentSpec.columnNames,
-                            x -> newContentSpec.addMessage(newContentSpec.new MessageSpec(x)));
+            try {
+                Set<String> found = readSpecPart(ContentSpec.FILENAMES,
+                        ContentSpec.columnNames,
+                        x -> newContentSpec.addMessage(newContentSpec.new MessageSpec(x)));
+                if (found != null) {
                     contentSpec = newContentSpec;
                 }
             } catch (IOException e) {
@@ -0,0 +1,183 @@
+package org.literacybridge.core.spec;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The .csv parts of a program specification, already parsed, in a binary form that can be
+ * saved and loaded without parsing the .csv files again.
+ * <p>
+ * A snapshot has a key, given by whoever builds it, that identifies the versions of the files it
+ * was built from (in the ACM, the S3 ETags of the files). A saved snapshot is only used if its
+ * key matches the files now present.
+ */
+public class ProgramSpecSnapshot {
+    private static final int MAGIC = 0x50535350; // "PSSP"
+    private static final int VERSION = 1;
+    private static final int STRING_CHUNK = 65536;
+
+    // The parts of the program spec that are read from .csv files, each as its alternative names.
+    private static final String[][] PARTS = new String[][] {
+            Recipient.FILENAMES,
+            Deployment.FILENAMES,
+            ContentSpec.FILENAMES,
+            Language.FILENAMES,
+            new String[] { RecipientMap.FILENAME },
+    };
+
+    private final String key;
+    // {part : lines}, where part is the names of the part, joined, and lines are as from
+    // CsvReader.readLines(). Parts not present in the program spec are absent.
+    private final Map<String, List<String[]>> parts;
+
+    private ProgramSpecSnapshot(String key, Map<String, List<String[]>> parts) {
+        this.key = key;
+        this.parts = parts;
+    }
+
+    /**
+     * Parses the .csv parts of a program spec.
+     * @param streamProvider of the program spec files.
+     * @param key identifying the versions of the files.
+     * @return the snapshot.
+     * @throws IOException if a file can't be read.
+     */
+    public static ProgramSpecSnapshot build(ProgramSpec.StreamProvider streamProvider, String key) throws IOException {
+        Map<String, List<String[]>> parts = new HashMap<>();
+        for (String[] filenames : PARTS) {
+            try (InputStream is = streamProvider.getSpecStream(filenames)) {
+                if (is != null) {
+                    parts.put(partName(filenames), CsvReader.readLines(is));
+                }
+            }
+        }
+        return new ProgramSpecSnapshot(key, parts);
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    private static String partName(String[] filenames) {
+        return String.join("|", filenames);
+    }
+
+    /**
+     * Gives the records of a part to a handler, as CsvReader.read() would from the .csv file.
+     * @param filenames of the part.
+     * @param columns of interest.
+     * @param handler to be called with each record.
+     * @return the names of the columns found, or null if the part is not in the snapshot.
+     */
+    Set<String> read(String[] filenames, String[] columns, CsvReader.Handler handler) {
+        List<String[]> lines = parts.get(partName(filenames));
+        return lines == null ? null : CsvReader.read(lines, columns, handler);
+    }
+
+    /**
+     * Writes the snapshot to a stream.
+     * @param outputStream to be written. Not closed.
+     * @throws IOException if the stream can't be written.
+     */
+    public void write(OutputStream outputStream) throws IOException {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(outputStream, 65536));
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        writeString(out, key);
+        out.writeInt(parts.size());
+        for (Map.Entry<String, List<String[]>> part : parts.entrySet()) {
+            writeString(out, part.getKey());
+            out.writeInt(part.getValue().size());
+            for (String[] line : part.getValue()) {
+                out.writeInt(line.length);
+                for (String value : line) {
+                    writeString(out, value);
+                }
+            }
+        }
+        out.flush();
+    }
+
+    /**
+     * Reads a snapshot written by write().
+     * @param inputStream to be read. Not closed.
+     * @param key that the snapshot must have.
+     * @return the snapshot, or null if it has another key, or is from another version.
+     * @throws IOException if the stream can't be read, or is truncated or corrupt.
+     */
+    public static ProgramSpecSnapshot read(InputStream inputStream, String key) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(inputStream, 65536));
+        if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+            return null;
+        }
+        if (!readString(in).equals(key)) {
+            return null;
+        }
+        // The counts aren't trusted to size anything; a corrupt count runs into the end of the
+        // stream, rather than allocating whatever it says.
+        int nParts = readCount(in);
+        Map<String, List<String[]>> parts = new HashMap<>();
+        for (int p = 0; p < nParts; p++) {
+            String partName = readString(in);
+            int nLines = readCount(in);
+            List<String[]> lines = new ArrayList<>(Math.min(nLines, 1024));
+            for (int l = 0; l < nLines; l++) {
+                int nValues = readCount(in);
+                List<String> line = new ArrayList<>(Math.min(nValues, 64));
+                for (int v = 0; v < nValues; v++) {
+                    line.add(readString(in));
+                }
+                lines.add(line.toArray(new String[0]));
+            }
+            parts.put(partName, lines);
+        }
+        return new ProgramSpecSnapshot(key, parts);
+    }
+
+    private static int readCount(DataInputStream in) throws IOException {
+        int count = in.readInt();
+        if (count < 0) {
+            throw new IOException("Corrupt program spec snapshot: count " + count);
+        }
+        return count;
+    }
+
+    // Not writeUTF(), which is limited to 64K, and a cell of a .csv file need not be.
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = readCount(in);
+        if (length <= STRING_CHUNK) {
+            byte[] bytes = new byte[length];
+            in.readFully(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+        // A long string is read a chunk at a time, so that a corrupt length fails at the end of
+        // the stream, without first allocating it.
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(STRING_CHUNK);
+        byte[] chunk = new byte[STRING_CHUNK];
+        for (int remaining = length; remaining > 0; ) {
+            int n = Math.min(remaining, STRING_CHUNK);
+            in.readFully(chunk, 0, n);
+            bytes.write(chunk, 0, n);
+            remaining -= n;
+        }
+        return new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+    }
+}
@@ -485,7 +485,10 @@ public abstract class TbDeviceInfo {
         String deployed = props.getProperty(TIMESTAMP_PROPERTY);
         if (StringUtils.isNotBlank(deployed)) {
             try {
-                Date deployedDate = ISO8601.parse(deployed);
+                Date deployedDate;
+                synchronized (ISO8601) {
+                    deployedDate = ISO8601.parse(deployed);
+                }
                 deployed = new SimpleDateFormat("d MMMM yyyy @ HH:mm").format(deployedDate);
             } catch (Exception ignored) {}
         }
@@ -0,0 +1,148 @@
+package org.literacybridge.core.tbloader;
+
+import org.literacybridge.core.fs.ContentHash;
+import org.literacybridge.core.fs.TbFile;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A list of the content files on a Talking Book, with the size and content hash of each, as they
+ * were when the Talking Book was last updated. Lets an update copy only the files that have
+ * changed.
+ * <p>
+ * The manifest is a text file of lines like
+ * <pre>
+ *     {hash}\t{size}\t{path/relative/to/the/root}
+ * </pre>
+ * Paths always use "/" as the separator.
+ */
+class ContentManifest {
+    private static final String HEADER = "# content manifest v1";
+
+    static class Entry {
+        final long size;
+        final String hash;
+
+        Entry(long size, String hash) {
+            this.size = size;
+            this.hash = hash;
+        }
+    }
+
+    // Hashes of image files, by path, for as long as their size and modification time are
+    // unchanged. Shared by every update in this process, so each image file is hashed once, not
+    // once per Talking Book.
+    private static final Map<String, ImageFileHash> imageFileHashes = new ConcurrentHashMap<>();
+
+    private static class ImageFileHash {
+        final long length;
+        final long lastModified;
+        final String hash;
+
+        ImageFileHash(long length, long lastModified, String hash) {
+            this.length = length;
+            this.lastModified = lastModified;
+            this.hash = hash;
+        }
+    }
+
+    private final Map<String, Entry> entries = new TreeMap<>();
+
+    ContentManifest() {
+    }
+
+    /**
+     * Reads a manifest from a Talking Book.
+     * @param manifestFile The manifest file.
+     * @return the manifest, or null if there is none, or it can't be read.
+     */
+    static ContentManifest read(TbFile manifestFile) {
+        if (!manifestFile.exists()) {
+            return null;
+        }
+        ContentManifest manifest = new ContentManifest();
+        try (InputStream is = manifestFile.openFileInputStream();
+            BufferedReader reader = new BufferedReader(new InputStreamReader(is, StandardCharsets.UTF_8))) {
+            if (!HEADER.equals(reader.readLine())) {
+                return null;
+            }
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] parts = line.split("\t", 3);
+                if (parts.length == 3) {
+                    manifest.entries.put(parts[2], new Entry(Long.parseLong(parts[1]), parts[0]));
+                }
+            }
+        } catch (IOException | NumberFormatException e) {
+            // Treat a damaged manifest like a missing one; everything will be copied.
+            return null;
+        }
+        return manifest;
+    }
+
+    /**
+     * Writes the manifest to a Talking Book.
+     * @param manifestFile The file to be written.
+     * @throws IOException if the file can't be written.
+     */
+    void write(TbFile manifestFile) throws IOException {
+        try (OutputStream os = manifestFile.createNew();
+            Writer writer = new OutputStreamWriter(os, StandardCharsets.UTF_8)) {
+            writer.write(HEADER);
+            writer.write('\n');
+            for (Map.Entry<String, Entry> e : entries.entrySet()) {
+                writer.write(e.getValue().hash + '\t' + e.getValue().size + '\t' + e.getKey() + '\n');
+            }
+        }
+    }
+
+    void put(String path, long size, String hash) {
+        entries.put(path, new Entry(size, hash));
+    }
+
+    /**
+     * @param path A path on the Talking Book.
+     * @return the hash of the content at that path, or null if the path isn't in the manifest.
+     */
+    String getHash(String path) {
+        Entry entry = entries.get(path);
+        return entry == null ? null : entry.hash;
+    }
+
+    /**
+     * Is the file at the given path, with the given size, known to hold content with the given
+     * hash?
+     */
+    boolean isCurrent(String path, long size, String hash) {
+        Entry entry = entries.get(path);
+        return entry != null && entry.size == size && entry.hash.equals(hash);
+    }
+
+    /**
+     * Gets the content hash of a file in a deployment image.
+     * @param file The image file.
+     * @return its hash.
+     * @throws IOException if the file can't be read.
+     */
+    static String hashOf(TbFile file) throws IOException {
+        String path = file.getAbsolutePath();
+        long length = file.length();
+        long lastModified = file.lastModified();
+        ImageFileHash known = imageFileHashes.get(path);
+        if (known == null || known.length != length || known.lastModified != lastModified) {
+            known = new ImageFileHash(length, lastModified, ContentHash.of(file));
+            imageFileHashes.put(path, known);
+        }
+        return known.hash;
+    }
+}
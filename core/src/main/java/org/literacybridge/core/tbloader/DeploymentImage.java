@@ -0,0 +1,199 @@
+package org.literacybridge.core.tbloader;
+
+import org.apache.commons.lang3.StringUtils;
+import org.literacybridge.core.fs.TbFile;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * What a TBv2 Talking Book should hold for a given deployment and set of packages, worked out
+ * once and shared by every Talking Book updated with that combination.
+ * <p>
+ * Building the image resolves the zero-byte marker files to their real files in shadowFiles,
+ * lets later images replace the files of earlier ones, merges the images' packages_data.txt
+ * files, and hashes every file. Updating a Talking Book is then a straight copy of the file
+ * list, however the packages are composed.
+ * <p>
+ * Images are cached for the life of the process. An image is rebuilt if any of its files has
+ * changed size or modification time since it was built, or if any file has been added to or
+ * removed from its directories.
+ */
+class DeploymentImage {
+    private static final Logger LOG = Logger.getLogger(DeploymentImage.class.getName());
+
+    private static final Map<String, DeploymentImage> images = new HashMap<>();
+
+    // Path on the Talking Book ("/" separated) -> the file to be copied there.
+    private final Map<String, TbFile> files;
+    // Path on the Talking Book -> modification time of the file when the image was built.
+    private final Map<String, Long> lastModified = new HashMap<>();
+    // The images' directories -> their modification times, which change as files are added.
+    private final Map<TbFile, Long> directoriesLastModified = new LinkedHashMap<>();
+    // Sizes and hashes of the files.
+    private final ContentManifest manifest = new ContentManifest();
+    // The merged packages_data.txt.
+    private final byte[] packagesData;
+
+    /**
+     * Gets the image for a deployment and set of packages, building it if necessary.
+     * @param deploymentDirectory The deployment, with its images and shadowFiles.
+     * @param imagesDir The directory of images within the deployment.
+     * @param deploymentName Name of the deployment, for packages_data.txt.
+     * @param imageNames The images (packages) to be put on the Talking Book, in order.
+     * @return the image.
+     * @throws IOException if the image's files can't be read.
+     */
+    static synchronized DeploymentImage get(TbFile deploymentDirectory,
+        TbFile imagesDir,
+        String deploymentName,
+        List<String> imageNames) throws IOException
+    {
+        String key = imagesDir.getAbsolutePath() + '|' + deploymentName + '|' + String.join(",", imageNames);
+        DeploymentImage image = images.get(key);
+        if (image == null || !image.isCurrent()) {
+            long startTime = System.currentTimeMillis();
+            image = new DeploymentImage(deploymentDirectory, imagesDir, deploymentName, imageNames);
+            images.put(key, image);
+            LOG.log(Level.INFO, String.format("Built image for %s in %d ms, %d files",
+                key, System.currentTimeMillis() - startTime, image.files.size()));
+        }
+        return image;
+    }
+
+    private DeploymentImage(TbFile deploymentDirectory,
+        TbFile imagesDir,
+        String deploymentName,
+        List<String> imageNames) throws IOException
+    {
+        Map<String, TbFile> files = new LinkedHashMap<>();
+        Map<String, TbFile> shadowedFiles = new HashMap<>();
+        TbFile shadowFilesDir = deploymentDirectory.open("shadowFiles");
+        for (String imageName : imageNames) {
+            TbFile imagePath = imagesDir.open(imageName);
+            // Directories in which to look for zero-byte marker files.
+            List<String> shadowedDirs = new ArrayList<>();
+            shadowedDirs.add(imagePath.open("content").getAbsolutePath());
+            // packages_data.txt is merged from all of the images, below.
+            Set<String> pathsToProcessLater = new HashSet<>();
+            pathsToProcessLater.add(imagePath.open("content").open(PackagesData.PACKAGES_DATA_TXT).getAbsolutePath());
+            TbFile.CopyFilter markerInterceptor = new TBLoaderCore.ContentCopyFilter(imagePath, shadowedDirs,
+                shadowFilesDir, shadowedFiles, pathsToProcessLater);
+            directoriesLastModified.put(imagePath, imagePath.lastModified());
+            if (imagePath.exists()) {
+                // Later images replace the files of earlier ones, as in a copy.
+                listImageFiles(imagePath, null, markerInterceptor, files, directoriesLastModified);
+            }
+        }
+        // The zero-byte marker files are replaced by their real content.
+        for (Map.Entry<String, TbFile> e : shadowedFiles.entrySet()) {
+            String path = StringUtils.strip(e.getKey().replace(File.separatorChar, '/'), "/");
+            files.put(path, e.getValue());
+        }
+        for (Map.Entry<String, TbFile> e : files.entrySet()) {
+            TbFile file = e.getValue();
+            lastModified.put(e.getKey(), file.lastModified());
+            manifest.put(e.getKey(), file.length(), ContentManifest.hashOf(file));
+        }
+        this.files = Collections.unmodifiableMap(files);
+        this.packagesData = mergePackagesData(imagesDir, deploymentName, imageNames);
+    }
+
+    private static void listImageFiles(TbFile dir, String dirPath, TbFile.CopyFilter filter, Map<String, TbFile> files,
+        Map<TbFile, Long> directories) {
+        String[] names = dir.list();
+        if (names != null) {
+            for (String name : names) {
+                TbFile child = dir.open(name);
+                if (filter.accept(child)) {
+                    String childPath = dirPath == null ? name : dirPath + '/' + name;
+                    if (child.isDirectory()) {
+                        directories.put(child, child.lastModified());
+                        listImageFiles(child, childPath, filter, files, directories);
+                    } else {
+                        files.put(childPath, child);
+                    }
+                }
+            }
+        }
+    }
+
+    private static byte[] mergePackagesData(TbFile imagesDir, String deploymentName, List<String> imageNames)
+        throws IOException
+    {
+        PackagesData packagesData = new PackagesData(deploymentName);
+        for (String imageName : imageNames) {
+            TbFile imagePath = imagesDir.open(imageName).open("content").open(PackagesData.PACKAGES_DATA_TXT);
+            try (InputStream packageDataStream = imagePath.openFileInputStream()) {
+                PackagesData.PackagesDataImporter pdi = new PackagesData.PackagesDataImporter(packageDataStream);
+                packagesData.addPackagesData(pdi.do_import());
+            }
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        packagesData.exportPackageDataFile(bytes);
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Are all of the image's files the same size, and modification time, as when it was built,
+     * with none added or removed?
+     */
+    private boolean isCurrent() {
+        for (Map.Entry<TbFile, Long> e : directoriesLastModified.entrySet()) {
+            if (e.getKey().lastModified() != e.getValue()) {
+                return false;
+            }
+        }
+        for (Map.Entry<String, TbFile> e : files.entrySet()) {
+            String path = e.getKey();
+            TbFile file = e.getValue();
+            if (!manifest.isCurrent(path, file.length(), manifest.getHash(path))
+                || file.lastModified() != lastModified.get(path)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return map of path on the Talking Book ("/" separated) to the file to be copied there.
+     * Does not include packages_data.txt.
+     */
+    Map<String, TbFile> getFiles() {
+        return files;
+    }
+
+    /**
+     * @return the sizes and hashes of the image's files.
+     */
+    ContentManifest getManifest() {
+        return manifest;
+    }
+
+    /**
+     * @param path A path on the Talking Book.
+     * @return the hash of the file to be copied to that path.
+     */
+    String getHash(String path) {
+        return manifest.getHash(path);
+    }
+
+    /**
+     * @return the merged packages_data.txt for the Talking Book.
+     */
+    byte[] getPackagesData() {
+        return packagesData;
+    }
+}
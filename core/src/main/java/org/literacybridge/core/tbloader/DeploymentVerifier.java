@@ -0,0 +1,130 @@
+package org.literacybridge.core.tbloader;
+
+import org.literacybridge.core.fs.ContentHash;
+import org.literacybridge.core.fs.TbFile;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Verifies the files written to a Talking Book against the sizes and content hashes that they
+ * were written with.
+ * <p>
+ * Every file is checked for existence and size, which costs only a directory lookup. The content
+ * of all of the files, or of a random sample of them, is then read back and hashed. Reading
+ * back everything roughly doubles the time spent on the device; a sample catches a failing
+ * card at a fraction of the cost.
+ */
+class DeploymentVerifier {
+    private static final int MAX_FAILURES_REPORTED = 10;
+
+    private static class Expected {
+        final TbFile file;
+        final long size;
+        final String hash;
+
+        Expected(TbFile file, long size, String hash) {
+            this.file = file;
+            this.size = size;
+            this.hash = hash;
+        }
+    }
+
+    // Path on the Talking Book -> what it should contain.
+    private final Map<String, Expected> expected = new LinkedHashMap<>();
+
+    /**
+     * Records a file written to the Talking Book.
+     * @param path The file's path on the Talking Book, for reporting.
+     * @param file The file on the Talking Book.
+     * @param size The number of bytes written.
+     * @param hash The content hash of the bytes written.
+     */
+    void expect(String path, TbFile file, long size, String hash) {
+        expected.put(path, new Expected(file, size, hash));
+    }
+
+    /**
+     * Checks the files on the Talking Book.
+     * @param samplePercent Percentage of the files whose content is read back and compared; 100
+     *                      for all of them, 0 to check only existence and sizes.
+     * @param progressListener To report the files being checked.
+     * @return the result of the checks.
+     */
+    Result verify(int samplePercent, ProgressListener progressListener) {
+        List<String> failures = new ArrayList<>();
+        List<String> toHash = new ArrayList<>();
+        for (Map.Entry<String, Expected> e : expected.entrySet()) {
+            TbFile file = e.getValue().file;
+            if (!file.exists()) {
+                failures.add(e.getKey() + ": missing");
+            } else if (file.length() != e.getValue().size) {
+                failures.add(String.format(Locale.US, "%s: %d bytes, expected %d",
+                    e.getKey(), file.length(), e.getValue().size));
+            } else {
+                toHash.add(e.getKey());
+            }
+        }
+
+        int percent = Math.max(0, Math.min(100, samplePercent));
+        int sampleSize = (int) Math.ceil(toHash.size() * percent / 100.0);
+        if (sampleSize < toHash.size()) {
+            Collections.shuffle(toHash, new Random());
+            toHash = toHash.subList(0, sampleSize);
+        }
+        for (String path : toHash) {
+            Expected exp = expected.get(path);
+            progressListener.detail(exp.file.getName());
+            try {
+                if (!exp.hash.equals(ContentHash.of(exp.file))) {
+                    failures.add(path + ": content differs");
+                }
+            } catch (IOException ex) {
+                failures.add(path + ": " + ex.getMessage());
+            }
+        }
+        return new Result(expected.size(), toHash.size(), percent, failures);
+    }
+
+    /**
+     * What a verification found.
+     */
+    static class Result {
+        // Files checked for existence and size.
+        final int files;
+        // Files whose content was read back and compared.
+        final int hashed;
+        final int samplePercent;
+        final List<String> failures;
+
+        Result(int files, int hashed, int samplePercent, List<String> failures) {
+            this.files = files;
+            this.hashed = hashed;
+            this.samplePercent = samplePercent;
+            this.failures = failures;
+        }
+
+        boolean isOk() {
+            return failures.isEmpty();
+        }
+
+        /**
+         * @return a few of the failures, for the log.
+         */
+        List<String> getReportedFailures() {
+            return failures.size() <= MAX_FAILURES_REPORTED ? failures : failures.subList(0, MAX_FAILURES_REPORTED);
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "%d file(s) checked, %d read back (%d%% sample), %d failure(s)",
+                files, hashed, samplePercent, failures.size());
+        }
+    }
+}
@@ -23,6 +23,7 @@ public abstract class ProgressListener {
         updateSystem("Updating TB system files", true),
         updateContent("Updating TB content", true),
         updateCommunity("Updating community content", true),
+        verifyContent("Verifying TB content", true),
         listDeviceFiles2("Listing device files after update"),
         delay("Finalizing", false),
         finishing("Finished");
@@ -75,6 +75,9 @@ public class TBLoaderConstants {
     public static final DateFormat ISO8601time = new SimpleDateFormat("HHmmss.SSS'Z'", Locale.US); // Quoted "Z" to indicate UTC, no timezone offset
 
     public static final String ACCEPTABLE_FIRMWARE_VERSIONS = "ACCEPTABLE_FIRMWARE_VERSIONS";
+    // Percentage of the files written to a Talking Book to be read back and compared.
+    public static final String VERIFY_SAMPLE_PERCENT = "VERIFY_SAMPLE_PERCENT";
+    public static final int DEFAULT_VERIFY_SAMPLE_PERCENT = 10;
 
     public static final String ACTION_PROPERTY = "ACTION";      // The action that was requested.
     public static final String CLEARED_FLASH_PROPERTY = "CLEARED_FLASH";
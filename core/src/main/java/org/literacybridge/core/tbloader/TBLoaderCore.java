@@ -1,9 +1,10 @@
 package org.literacybridge.core.tbloader;
 
 import org.apache.commons.lang3.StringUtils;
+import org.literacybridge.core.fs.CopyEngine;
 import org.literacybridge.core.fs.OperationLog;
+import org.literacybridge.core.fs.ParallelZip;
 import org.literacybridge.core.fs.TbFile;
-import org.literacybridge.core.fs.ZipUnzip;
 import org.literacybridge.core.spec.ProgramSpec;
 import org.literacybridge.core.spec.RecipientList;
 import org.literacybridge.core.tbdevice.TbDeviceInfo;
@@ -198,7 +199,10 @@ public abstract class TBLoaderCore {
         private ProgressListener mProgressListener;
         private boolean mStatsOnly = false;
         protected boolean mRefreshFirmware = false;
+        protected boolean mDifferentialUpdate = false;
         protected int mPostUpdateDelayMillis = 0;
+        private int mCopyStreams = CopyEngine.DEFAULT_STREAMS;
+        protected int mVerifySamplePercent = TBLoaderConstants.DEFAULT_VERIFY_SAMPLE_PERCENT;
         protected final Set<String> mAcceptableFirmware = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
         private ProgramSpec programSpec = null;
 
@@ -290,6 +294,40 @@ public abstract class TBLoaderCore {
             return this;
         }
 
+        /**
+         * Copy only the content that differs from what the Talking Book already has, rather than
+         * erasing and re-copying all of it. Falls back to a full copy if the Talking Book has no
+         * record of its current content.
+         * @param differentialUpdate true to copy only what has changed.
+         * @return the builder
+         */
+        public Builder withDifferentialUpdate(boolean differentialUpdate) {
+            this.mDifferentialUpdate = differentialUpdate;
+            return this;
+        }
+
+        /**
+         * How many files to copy at once, to and from the Talking Book.
+         * @param copyStreams number of concurrent copies; 1 copies one file at a time.
+         * @return the builder
+         */
+        public Builder withCopyStreams(int copyStreams) {
+            this.mCopyStreams = copyStreams;
+            return this;
+        }
+
+        /**
+         * After an update, the content of this percentage of the files written is read back from
+         * the Talking Book and compared with what was written. Every file's existence and size is
+         * always checked.
+         * @param verifySamplePercent 0 to 100.
+         * @return the builder
+         */
+        public Builder withVerifySamplePercent(int verifySamplePercent) {
+            this.mVerifySamplePercent = verifySamplePercent;
+            return this;
+        }
+
         public Builder withPostUpdateDelay(int postUpdateDelayMillis) {
             this.mPostUpdateDelayMillis = postUpdateDelayMillis;
             return this;
@@ -341,6 +379,10 @@ public abstract class TBLoaderCore {
     protected long mStepBytesCount;
     private OperationLog.Operation mStepsLog;
     protected TbFile.CopyProgress mCopyListener;
+    protected final CopyEngine mCopyEngine;
+    // Files written to the Talking Book, and how they were checked after the update.
+    protected final DeploymentVerifier mVerifier = new DeploymentVerifier();
+    DeploymentVerifier.Result mVerification;
 
     final TbFlashData mTtbFlashData;
 
@@ -374,7 +416,10 @@ public abstract class TBLoaderCore {
 
         // Roughly when an update starts.
         Date now = new Date();
-        mUpdateTimestampISO = ISO8601.format(now);          // 20170928T223152.123Z
+        // Several Talking Books may be updated at once, and SimpleDateFormat is not thread safe.
+        synchronized (ISO8601) {
+            mUpdateTimestampISO = ISO8601.format(now);          // 20170928T223152.123Z
+        }
 
         mOldDeploymentInfo = builder.mOldDeploymentInfo;
         mNewDeploymentInfo = builder.mNewDeploymentInfo;
@@ -388,6 +433,7 @@ public abstract class TBLoaderCore {
         }
         mDeploymentDirectory = builder.mDeploymentDirectory;
         mProgressListener = builder.mProgressListener;
+        mCopyEngine = new CopyEngine(builder.mCopyStreams);
 
         // 2017Y09M28D22H31M52S
         mLegacyFormatUpdateTimestamp = TBLoaderUtils.getDateTime(now);
@@ -396,7 +442,6 @@ public abstract class TBLoaderCore {
 
     protected abstract TbFile getImagesDir();
     protected abstract TbFile getTempTbDataDir();
-    protected abstract TbFile getTempTbDataZip();
     protected abstract TbFile getCollectedOpDataDir();
     protected abstract TbFile getCollectedTbDataDir();
     protected abstract TbFile getCollectedTbDataZip();
@@ -648,7 +693,7 @@ public abstract class TBLoaderCore {
                             String relativeTarget = String.join(File.separator, relativeParent) + File.separator + file.getName();
                             // Only remember the file once.
                             if (!shadowedFiles.containsKey(relativeTarget)) {
-                                shadowedFiles.put(relativeTarget, file);
+                                shadowedFiles.put(relativeTarget, shadowSrcFile);
                             }
                             return false;
                         }
@@ -999,7 +1044,7 @@ public abstract class TBLoaderCore {
     }
 
     /**
-     * Zips the statistics, logs, and other files, and copies them to the collected data directory.
+     * Zips the statistics, logs, and other files into the collected data directory.
      *
      * @param action to be logged, for statistics.
      * @throws IOException If the .zip can't be created.
@@ -1022,19 +1067,14 @@ public abstract class TBLoaderCore {
         // Put a copy into the operationaldata directory.
         eraseAndOverwriteFile(getCollectedOpDataDir().open(STATS_COLLECTED_PROPERTIES_NAME), props.toString());
 
-        // Same name and location as the tempDirectory, but a file with a .zip extension.
-        TbFile tempZip = getTempTbDataZip(); // was: mTempDirectory.open(mTalkingBookDataZipPath);
-
-        File sourceFilesDir = new File(mTalkingBookDataRoot.getAbsolutePath());
-        File tempZipFile = new File(tempZip.getAbsolutePath());
-        ZipUnzip.zip(sourceFilesDir, tempZipFile, true);
-
-        // Where the .zip is supposed to go.
+        // Where the .zip is supposed to go. It is written there directly, in one pass, with the
+        // files compressed in parallel.
         TbFile outputZip = getCollectedTbDataZip(); // was projectCollectedData.open(mTalkingBookDataZipPath);
 
-        // Make the directory to hold the .zip, if necessary, then put it there.
-        outputZip.getParent().mkdirs();
-        mStepBytesCount += TbFile.copy(tempZip, outputZip);
+        File sourceFilesDir = new File(mTalkingBookDataRoot.getAbsolutePath());
+        File outputZipFile = new File(outputZip.getAbsolutePath());
+        mStepBytesCount += ParallelZip.zip(sourceFilesDir, outputZipFile, true,
+            Runtime.getRuntime().availableProcessors());
 
         // Clean out everything we put in the temp directory. Any other cruft that was there, as well.
         mTempDirectory.delete(contentRecursive);
@@ -1120,6 +1160,7 @@ public abstract class TBLoaderCore {
         mStepFileCount = 0;
         mStepBytesCount = 0;
         mStepStartTime = System.currentTimeMillis();
+        mCopyEngine.takeStats();
         mProgressListener.step(step);
     }
 
@@ -1140,6 +1181,12 @@ public abstract class TBLoaderCore {
             if (mStepBytesCount>0) {
                 builder.append(String.format(Locale.US, "%s, ", getBytesString(mStepBytesCount)));
             }
+            CopyEngine.Stats copyStats = mCopyEngine.takeStats();
+            if (copyStats.bytes > 0) {
+                mStepsLog.put(mCurrentStep + ".bytes", copyStats.bytes)
+                    .put(mCurrentStep + ".bytesPerSecond", Math.round(copyStats.getBytesPerSecond()));
+                builder.append(String.format(Locale.US, "%s, ", copyStats));
+            }
         }
         builder.append(getStepTime());
 
@@ -1175,9 +1222,12 @@ public abstract class TBLoaderCore {
     }
 
     protected void eraseAndOverwriteFile(TbFile file, String content) throws IOException {
+        eraseAndOverwriteFile(file, content.getBytes());
+    }
+
+    protected void eraseAndOverwriteFile(TbFile file, byte[] contentBytes) throws IOException {
         mProgressListener.detail(file.getName());
         mStepFileCount++;
-        byte[] contentBytes = content.getBytes();
         mStepBytesCount += contentBytes.length;
         if (file.getParent().exists()) {
             file.getParent().mkdirs();
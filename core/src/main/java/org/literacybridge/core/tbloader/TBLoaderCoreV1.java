@@ -88,7 +88,6 @@ class TBLoaderCoreV1 extends TBLoaderCore {
 
     TbFile imagesDir;
     TbFile tempTbDataDir;
-    TbFile tempTbDataZip;
     TbFile collectedOpDataDir;
     TbFile collectedTbDataDir;
     TbFile collectedTbDataZip;
@@ -118,18 +117,6 @@ class TBLoaderCoreV1 extends TBLoaderCore {
         return tempTbDataDir;
     }
 
-    @Override
-    protected synchronized TbFile getTempTbDataZip() {
-        if (tempTbDataZip == null) {
-            // Same name and location as the tempDirectory, but a file with a .zip extension.
-            tempTbDataZip = mTempDirectory.open(mTalkingBookDataZipPath);
-            if (!tempTbDataZip.getParent().exists()) {
-                tempTbDataZip.getParent().mkdirs();
-            }
-        }
-        return tempTbDataZip;
-    }
-
     @Override
     protected synchronized TbFile getCollectedOpDataDir() {
         if (collectedOpDataDir == null) {
@@ -246,7 +233,7 @@ class TBLoaderCoreV1 extends TBLoaderCore {
             }
         };
 
-        mStepBytesCount += TbFile.copyDir(mTalkingBookRoot, mTalkingBookDataRoot, copyFilesFilter, mCopyListener);
+        mStepBytesCount += mCopyEngine.copyDir(mTalkingBookRoot, mTalkingBookDataRoot, copyFilesFilter, mCopyListener);
 
         finishStep();
     }
@@ -294,7 +281,7 @@ class TBLoaderCoreV1 extends TBLoaderCore {
             return UF_PATTERN.matcher(name).matches();
         };
         if (recordingsSrc.exists()) {
-            mStepBytesCount += TbFile.copyDir(recordingsSrc, recordingsDst, copyRecordingsFilter, localListener);
+            mStepBytesCount += mCopyEngine.copyDir(recordingsSrc, recordingsDst, copyRecordingsFilter, localListener);
         }
 
         finishStep();
@@ -528,7 +515,7 @@ class TBLoaderCoreV1 extends TBLoaderCore {
             TbFile firmwareDir = mDeploymentDirectory.open(TBLoaderConstants.CONTENT_BASIC_SUBDIR);
             if (!firmwareDir.isDirectory()) mDeploymentDirectory.open("firmware.v1");
             if (!firmwareDir.isDirectory()) mDeploymentDirectory.open("firmware");
-            mStepBytesCount += TbFile.copyDir(firmwareDir,
+            mStepBytesCount += mCopyEngine.copyDir(firmwareDir,
                 mTalkingBookRoot,
                 firmwareFilter,
                 mCopyListener);
@@ -626,7 +613,7 @@ class TBLoaderCoreV1 extends TBLoaderCore {
             if (imagePath.exists()) {
                 // Copies most of the content, records 0-byte files that are shadows of real files, and skips
                 // the profiles and profiles.txt, which will be merged later.
-                mStepBytesCount += TbFile.copyDir(imagePath, mTalkingBookRoot, markerInterceptor, mCopyListener);
+                mStepBytesCount += mCopyEngine.copyDir(imagePath, mTalkingBookRoot, markerInterceptor, mCopyListener);
             }
         }
 
@@ -668,7 +655,7 @@ class TBLoaderCoreV1 extends TBLoaderCore {
 
             TbFile listsSource = imagePath.open("messages").open("lists").open("1");
             TbFile listsTarget = mTalkingBookRoot.open("messages").open("lists").open(profileName);
-            mStepBytesCount += TbFile.copyDir(listsSource, listsTarget, null, mCopyListener);
+            mStepBytesCount += mCopyEngine.copyDir(listsSource, listsTarget, null, mCopyListener);
 
             try (
                 InputStream is = imagePath.open("system").open("profiles.txt").openFileInputStream();
@@ -707,7 +694,7 @@ class TBLoaderCoreV1 extends TBLoaderCore {
         TbFile communityPath = mDeploymentDirectory.open(TBLoaderConstants.COMMUNITIES_SUBDIR).open(
             mNewDeploymentInfo.getCommunity());
         if (communityPath.exists()) {
-            mStepBytesCount += TbFile.copyDir(communityPath,
+            mStepBytesCount += mCopyEngine.copyDir(communityPath,
                 mTalkingBookRoot, filter, mCopyListener);
         }
 
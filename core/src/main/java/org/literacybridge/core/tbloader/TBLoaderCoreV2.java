@@ -2,9 +2,11 @@ package org.literacybridge.core.tbloader;
 
 import org.apache.commons.io.FilenameUtils;
 import org.apache.commons.lang3.StringUtils;
+import org.literacybridge.core.fs.ContentHash;
 import org.literacybridge.core.fs.RelativePath;
 import org.literacybridge.core.fs.TbFile;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
@@ -30,6 +32,8 @@ class TBLoaderCoreV2 extends TBLoaderCore {
     public static final String PUBLIC_UF_LIST = "uf_list.txt";
     public static final String SET_RTC_TXT = "SetRTC.txt";
     public static final String DONT_SET_RTC_TXT = "dontSetRTC.txt";
+    // In /system, lists the content copied by the last update. See ContentManifest.
+    public static final String CONTENT_MANIFEST = "content_manifest.txt";
 
     TBLoaderCoreV2(Builder builder) {
         super(builder);
@@ -37,12 +41,17 @@ class TBLoaderCoreV2 extends TBLoaderCore {
 
     TbFile imagesDir;
     TbFile tempTbDataDir;
-    TbFile tempTbDataZip;
     TbFile collectedOpDataDir;
     TbFile collectedTbDataDir;
     TbFile collectedTbDataZip;
     TbFile collectedUfDataDir;
 
+    // For a differential update, the manifest left on the Talking Book by its last update. Null
+    // for a full update.
+    private ContentManifest deviceManifest;
+    // The files to be copied to the Talking Book, resolved from the images.
+    private DeploymentImage deploymentImage;
+
     @Override
     protected synchronized TbFile getImagesDir() {
         if (this.imagesDir == null) {
@@ -61,17 +70,6 @@ class TBLoaderCoreV2 extends TBLoaderCore {
         return tempTbDataDir;
     }
 
-    @Override
-    protected synchronized TbFile getTempTbDataZip() {
-        if (tempTbDataZip == null) {
-            tempTbDataZip = mTempDirectory.open(TBLoaderConstants.TALKING_BOOK_DATA+".zip");
-            if (!tempTbDataZip.getParent().exists()) {
-                tempTbDataZip.getParent().mkdirs();
-            }
-        }
-        return tempTbDataZip;
-    }
-
     @Override
     protected synchronized TbFile getCollectedOpDataDir() {
         if (collectedOpDataDir == null) {
@@ -155,7 +153,7 @@ class TBLoaderCoreV2 extends TBLoaderCore {
                 return !audioExtensions.contains(extension);
             }
         };
-        mStepBytesCount += TbFile.copyDir(mTalkingBookRoot, mTalkingBookDataRoot, copyFilesFilter, mCopyListener);
+        mStepBytesCount += mCopyEngine.copyDir(mTalkingBookRoot, mTalkingBookDataRoot, copyFilesFilter, mCopyListener);
         finishStep();
     }
 
@@ -190,7 +188,7 @@ class TBLoaderCoreV2 extends TBLoaderCore {
         // Watch the file progress, and for every file, create a *.properties
         TbFile.CopyProgress localListener = (fromFile, toFile) -> mCopyListener.copying(fromFile, toFile);
         if (recordingsSrc.exists()) {
-            mStepBytesCount += TbFile.copyDir(recordingsSrc, recordingsDst, null, localListener);
+            mStepBytesCount += mCopyEngine.copyDir(recordingsSrc, recordingsDst, null, localListener);
         }
 
         // If there is a deployment.properties file on the device, look for a .properties file for
@@ -333,6 +331,14 @@ class TBLoaderCoreV2 extends TBLoaderCore {
     @Override
     protected void clearSystemFiles() throws IOException {
         startStep(clearSystem);
+        TbFile system = mTalkingBookRoot.open(SYSTEM_DIR);
+        if (mBuilder.mDifferentialUpdate) {
+            // Without a manifest, we can't know what is on the Talking Book, so do a full update.
+            deviceManifest = ContentManifest.read(system.open(CONTENT_MANIFEST));
+            if (deviceManifest == null) {
+                mProgressListener.log("No content manifest on Talking Book; doing a full update.");
+            }
+        }
         mStepFileCount += mTalkingBookRoot.open("LOST.DIR").delete(TbFile.Flags.recursive);
         mStepFileCount += mTalkingBookRoot.open("$RECYCLE.BIN").delete(TbFile.Flags.recursive);
         // Clean files from root
@@ -356,10 +362,13 @@ class TBLoaderCoreV2 extends TBLoaderCore {
                 mStepFileCount += mTalkingBookRoot.open(name).delete(TbFile.Flags.recursive);
             }
         }
-        // Delete all files except QC_PASS.txt and the ID files from /system
-        TbFile system = mTalkingBookRoot.open(SYSTEM_DIR);
+        // Delete all files except QC_PASS.txt and the ID files from /system. For a differential
+        // update, also keep the files that will be copied anyway. The manifest is deleted either
+        // way, so that an interrupted update can't leave a manifest that doesn't match the content.
         Set<String> keepers = new HashSet<>(Arrays.asList("QC_PASS.TXT", "DEVICE_ID.TXT", "FIRMWARE_ID.TXT"));
-        names = system.list((parent, name) -> !keepers.contains(name.toUpperCase()));
+        Map<String, TbFile> newFiles = deviceManifest != null ? getDeploymentImage().getFiles() : Collections.emptyMap();
+        names = system.list((parent, name) -> !keepers.contains(name.toUpperCase())
+            && !newFiles.containsKey(SYSTEM_DIR + '/' + name));
         if (names != null) {
             for (String name : names) {
                 mProgressListener.detail(name);
@@ -371,12 +380,55 @@ class TBLoaderCoreV2 extends TBLoaderCore {
         if (!qcFile.exists()) {
             eraseAndOverwriteFile(qcFile, "");
         }
-        // Delete all files from content.
-        mStepFileCount += mTalkingBookRoot.open(CONTENT_DIR).delete(contentRecursive);
+        if (deviceManifest != null) {
+            // Delete only the content that is not part of the new deployment.
+            Set<String> newDirs = new HashSet<>();
+            for (String path : newFiles.keySet()) {
+                for (int slash = path.indexOf('/'); slash > 0; slash = path.indexOf('/', slash + 1)) {
+                    newDirs.add(path.substring(0, slash));
+                }
+            }
+            mStepFileCount += pruneDirectory(mTalkingBookRoot.open(CONTENT_DIR), CONTENT_DIR, newFiles.keySet(), newDirs);
+        } else {
+            // Delete all files from content.
+            mStepFileCount += mTalkingBookRoot.open(CONTENT_DIR).delete(contentRecursive);
+        }
 
         finishStep();
     }
 
+    /**
+     * Deletes the files and directories under a directory on the Talking Book that are not in the
+     * given sets.
+     * @param dir The directory to prune.
+     * @param dirPath Its path, relative to the Talking Book root.
+     * @param keepFiles Paths of files to keep.
+     * @param keepDirs Paths of directories to keep.
+     * @return the number of files deleted.
+     */
+    private int pruneDirectory(TbFile dir, String dirPath, Set<String> keepFiles, Set<String> keepDirs) {
+        int numDeleted = 0;
+        String[] names = dir.list();
+        if (names != null) {
+            for (String name : names) {
+                TbFile child = dir.open(name);
+                String childPath = dirPath + '/' + name;
+                if (child.isDirectory()) {
+                    if (keepDirs.contains(childPath)) {
+                        numDeleted += pruneDirectory(child, childPath, keepFiles, keepDirs);
+                    } else {
+                        mProgressListener.detail(name);
+                        numDeleted += child.delete(TbFile.Flags.recursive);
+                    }
+                } else if (!keepFiles.contains(childPath)) {
+                    mProgressListener.detail(name);
+                    if (child.delete()) numDeleted++;
+                }
+            }
+        }
+        return numDeleted;
+    }
+
     @Override
     protected void updateSystemFiles() throws IOException {
         startStep(updateSystem);
@@ -402,70 +454,92 @@ class TBLoaderCoreV2 extends TBLoaderCore {
     @Override
     protected void updateContent() throws IOException {
         startStep(updateContent);
+        if (deviceManifest != null) {
+            updateChangedContent();
+        } else {
+            updateAllContent();
+        }
 
-        // Remember the zero-byte marker files here. Fix them up later.
-        Map<String, TbFile> shadowedFiles = new HashMap<>();
-
-        // The real files to replace zero-byte marker files.
-        TbFile shadowFilesDir = mDeploymentDirectory.open("shadowFiles");
-
-        // Iterate over the images to be copied.
-        for (String imageName : mNewDeploymentInfo.getPackageNames()) {
-            // Where files are copied from.
-            TbFile imagePath = getImagesDir().open(imageName);
+        // Merge/copy the package_data.txt file(s).
+        copyPackageData();
 
-            // Directories in which to look for zero-byte marker files.
-            TbFile shadowedDir = imagePath.open("content");
-            List<String> shadowedDirs = new ArrayList<>();
-            shadowedDirs.add(shadowedDir.getAbsolutePath());
+        // Record what is now on the Talking Book, so the next update can copy only what changes.
+        if (mBuilder.mDifferentialUpdate) {
+            writeContentManifest();
+        }
 
-            // Filter to intercept zero-byte marker files, and track them for copying from their cache.
-            Set<String> pathsToProcessLater = new HashSet<>();
-            pathsToProcessLater.add(imagePath.open("content").open(PackagesData.PACKAGES_DATA_TXT).getAbsolutePath());
-            TbFile.CopyFilter markerInterceptor = new ContentCopyFilter(imagePath, shadowedDirs, shadowFilesDir, shadowedFiles,
-                pathsToProcessLater);
+        finishStep();
+    }
 
-            if (imagePath.exists()) {
-                // Copies most of the content, records 0-byte files that are shadows of real files, and skips
-                // the profiles and profiles.txt, which will be merged later.
-                mStepBytesCount += TbFile.copyDir(imagePath, mTalkingBookRoot, markerInterceptor, mCopyListener);
+    /**
+     * Copies only the image files that are not already on the Talking Book, according to its
+     * manifest. Content that is no longer needed was deleted by clearSystemFiles().
+     */
+    private void updateChangedContent() throws IOException {
+        DeploymentImage image = getDeploymentImage();
+        int unchanged = 0;
+        Map<TbFile, TbFile> changedFiles = new LinkedHashMap<>();
+        for (Map.Entry<String, TbFile> e : image.getFiles().entrySet()) {
+            TbFile targetFile = mTalkingBookRoot.open(new RelativePath(e.getKey().split("/")));
+            expectImageFile(image, e.getKey(), targetFile);
+            if (targetFile.exists() && deviceManifest.isCurrent(e.getKey(), targetFile.length(),
+                image.getHash(e.getKey()))) {
+                unchanged++;
+                continue;
             }
+            changedFiles.put(targetFile, e.getValue());
         }
+        mStepBytesCount += mCopyEngine.copyFiles(changedFiles, mCopyListener);
+        mProgressListener.log(String.format(Locale.US, "%d unchanged file(s) not copied.", unchanged));
+    }
 
-        // If we found zero-byte files that need to be replaced with real content, do that now.
-        if (shadowedFiles.size()>0) {
-            for (Map.Entry<String,TbFile> e : shadowedFiles.entrySet()) {
-                TbFile targetFile = mTalkingBookRoot.open(RelativePath.parse(e.getKey()));
-                TbFile sourceFile = e.getValue();
-                // The single-file copy won't create directories, and it may not have been created in the
-                // copy, so ensure it exists.
-                TbFile targetDir = targetFile.getParent();
-                if (!targetDir.exists()) {
-                    targetDir.mkdirs();
-                }
-                TbFile.copy(sourceFile, targetFile);
-            }
-        }
+    /**
+     * Records what should be in a file copied from the image, for verifyTalkingBook().
+     */
+    private void expectImageFile(DeploymentImage image, String path, TbFile targetFile) {
+        mVerifier.expect(path, targetFile, image.getFiles().get(path).length(), image.getHash(path));
+    }
 
-        // Merge/copy the package_data.txt file(s).
-        copyPackageData();
+    private void writeContentManifest() throws IOException {
+        getDeploymentImage().getManifest().write(mTalkingBookRoot.open(SYSTEM_DIR).open(CONTENT_MANIFEST));
+    }
 
-        finishStep();
+    /**
+     * Gets the image to be copied to the Talking Book. The image is shared with every other
+     * Talking Book getting the same deployment and packages.
+     * @return the image.
+     * @throws IOException if the image can't be built.
+     */
+    private synchronized DeploymentImage getDeploymentImage() throws IOException {
+        if (deploymentImage == null) {
+            deploymentImage = DeploymentImage.get(mDeploymentDirectory,
+                getImagesDir(),
+                mNewDeploymentInfo.getDeploymentName(),
+                mNewDeploymentInfo.getPackageNames());
+        }
+        return deploymentImage;
     }
 
-    private void copyPackageData() throws IOException {
-        PackagesData packagesData = new PackagesData(mNewDeploymentInfo.getDeploymentName());
-        for (String imageName : mNewDeploymentInfo.getPackageNames()) {
-            TbFile imagePath = getImagesDir().open(imageName).open("content").open(PackagesData.PACKAGES_DATA_TXT);
-            try (InputStream packageDataStream = imagePath.openFileInputStream()) {
-                PackagesData.PackagesDataImporter pdi = new PackagesData.PackagesDataImporter(packageDataStream);
-                PackagesData imageData = pdi.do_import();
-                packagesData.addPackagesData(imageData);
-            }
+    /**
+     * Copies all of the content of all of the images.
+     */
+    private void updateAllContent() throws IOException {
+        DeploymentImage image = getDeploymentImage();
+        Map<TbFile, TbFile> allFiles = new LinkedHashMap<>();
+        for (Map.Entry<String, TbFile> e : image.getFiles().entrySet()) {
+            TbFile targetFile = mTalkingBookRoot.open(new RelativePath(e.getKey().split("/")));
+            expectImageFile(image, e.getKey(), targetFile);
+            allFiles.put(targetFile, e.getValue());
         }
+        mStepBytesCount += mCopyEngine.copyFiles(allFiles, mCopyListener);
+    }
+
+    private void copyPackageData() throws IOException {
         TbFile tbPackagesData = mTalkingBookRoot.open("content").open(PackagesData.PACKAGES_DATA_TXT);
-        OutputStream tbPackagesDataStream = tbPackagesData.createNew();
-        packagesData.exportPackageDataFile(tbPackagesDataStream);
+        byte[] packagesData = getDeploymentImage().getPackagesData();
+        eraseAndOverwriteFile(tbPackagesData, packagesData);
+        mVerifier.expect(CONTENT_DIR + '/' + PackagesData.PACKAGES_DATA_TXT, tbPackagesData, packagesData.length,
+            ContentHash.of(new ByteArrayInputStream(packagesData)));
     }
 
     @Override
@@ -475,10 +549,22 @@ class TBLoaderCoreV2 extends TBLoaderCore {
 
     @Override
     protected boolean verifyTalkingBook() {
+        startStep(verifyContent);
         boolean verified;
-        // A file, more or less at random.
         TbFile system = mTalkingBookRoot.open(SYSTEM_DIR);
         verified = system.open(TBLoaderConstants.DEPLOYMENT_PROPERTIES_NAME).exists();
+        if (!verified) {
+            mProgressListener.error("Missing " + TBLoaderConstants.DEPLOYMENT_PROPERTIES_NAME);
+        }
+
+        // Check the content against what was written.
+        mVerification = mVerifier.verify(mBuilder.mVerifySamplePercent, mProgressListener);
+        mStepFileCount += mVerification.hashed;
+        for (String failure : mVerification.getReportedFailures()) {
+            mProgressListener.error(failure);
+        }
+        verified = verified && mVerification.isOk();
+        finishStep(mVerification.toString());
         return verified;
     }
 
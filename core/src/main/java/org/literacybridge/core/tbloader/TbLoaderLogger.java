@@ -41,6 +41,9 @@ class TbLoaderLogger {
         put("newsn", "newsn");
         put("testing", "testing");
         put("deployment_uuid", "deployment_uuid");
+        put("verified_files", "verified_files");
+        put("verified_content", "verified_content");
+        put("verify_failures", "verify_failures");
     }};
     /*
      * Map from columns of tbData.log to tbscollected.csv
@@ -226,6 +229,11 @@ class TbLoaderLogger {
                 if (tbLoaderCore.mCoordinates != null && tbLoaderCore.mCoordinates.length() > 0) {
                     deploymentLog.put("coordinates", tbLoaderCore.mCoordinates);
                 }
+                if (tbLoaderCore.mVerification != null) {
+                    deploymentLog.put("verified_files", tbLoaderCore.mVerification.files)
+                        .put("verified_content", tbLoaderCore.mVerification.hashed)
+                        .put("verify_failures", tbLoaderCore.mVerification.failures.size());
+                }
 
             }
 
@@ -3,6 +3,7 @@ package org.literacybridge.core.tbloader;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.Date;
+import java.util.Map;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -20,7 +21,7 @@ public abstract class TbOperation implements Comparable<TbOperation> {
         Date result = null;
         if (len == 20 && value.charAt(19)=='Z') {
             try {
-                result = alternateDateFormat.parse(value);
+                result = parseDate(alternateDateFormat, value);
             } catch (ParseException ex) {
                 System.out.printf("Could not parse %s as Date, falling back to regex\n", value);
             }
@@ -30,7 +31,7 @@ public abstract class TbOperation implements Comparable<TbOperation> {
             else if (len < 23) parsed = value + "000".substring(0, 23-len);
             else parsed = value;
             try {
-                result = preferredDateFormat.parse(parsed);
+                result = parseDate(preferredDateFormat, parsed);
             } catch (ParseException ex) {
                 System.out.printf("Could not parse %s -> %s as Date, falling back to regex\n", value, parsed);
             }
@@ -50,7 +51,7 @@ public abstract class TbOperation implements Comparable<TbOperation> {
                                   : ".000";
                 normalized += fraction;
                 try {
-                    result = preferredDateFormat.parse(normalized);
+                    result = parseDate(preferredDateFormat, normalized);
                 } catch (ParseException ignored) {}
 //            System.out.printf("%s -> %s -> %s\n", value, normalized, preferredDateFormat.format(result));
             }
@@ -61,6 +62,24 @@ public abstract class TbOperation implements Comparable<TbOperation> {
         return result;
     }
 
+    /**
+     * Parses a date with one of the shared formats, so access is synchronized.
+     */
+    private static Date parseDate(SimpleDateFormat format, String value) throws ParseException {
+        synchronized (format) {
+            return format.parse(value);
+        }
+    }
+
+    /**
+     * Formats a date in the preferred format. The format is shared, so access is synchronized.
+     */
+    protected static String formatDate(Date date) {
+        synchronized (preferredDateFormat) {
+            return preferredDateFormat.format(date);
+        }
+    }
+
     protected Float tryParseFloat(String maybeFloat) {
         try {
             return Float.parseFloat(maybeFloat);
@@ -87,6 +106,11 @@ public abstract class TbOperation implements Comparable<TbOperation> {
     abstract public Date getOperationTimestamp();
     abstract OP getOperation();
 
+    /**
+     * @return the values of the operation, as {column:value}, in the same form as read from a .csv.
+     */
+    public abstract Map<String, String> toRecord();
+
     @Override
     public int compareTo(TbOperation o) {
         int dateCompare = getOperationTimestamp().compareTo(o.getOperationTimestamp());
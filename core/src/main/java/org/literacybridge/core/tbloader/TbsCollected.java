@@ -3,7 +3,10 @@ package org.literacybridge.core.tbloader;
 import org.apache.commons.lang3.StringUtils;
 
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.regex.Matcher;
 import java.util.stream.Collectors;
@@ -155,11 +158,11 @@ public class TbsCollected extends TbOperation {
         return OP.COLLECTED;
     }
 
-    public String toString() {
-        String[] values = {
+    private String[] values() {
+        return new String[] {
             talkingbookid,
             recipientid,
-            preferredDateFormat.format(collectedtimestamp),
+            formatDate(collectedtimestamp),
             project,
             deployment,
             contentpackage,
@@ -174,11 +177,31 @@ public class TbsCollected extends TbOperation {
             latitude != null ? latitude.toString() : null,
             longitude != null ? longitude.toString() : null
         };
-        return Arrays.stream(values)
+    }
+
+    public String toString() {
+        return Arrays.stream(values())
             .map(v -> v == null ? "" : escapeCsv(v))
             .collect(Collectors.joining(","));
     }
 
+    @Override
+    public Map<String, String> toRecord() {
+        String[] values = values();
+        Map<String, String> record = new LinkedHashMap<>();
+        for (int i = 0; i < columns.length; i++) {
+            record.put(columns[i], values[i]);
+        }
+        return record;
+    }
+
+    /**
+     * @return the names of the columns, in order.
+     */
+    public static List<String> columns() {
+        return Collections.unmodifiableList(Arrays.asList(columns));
+    }
+
     public static String header() {
         return Arrays.stream(columns)
             .map(v -> v == null ? "" : escapeCsv(v))
@@ -3,7 +3,10 @@ package org.literacybridge.core.tbloader;
 import org.apache.commons.lang3.StringUtils;
 
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.regex.Matcher;
 import java.util.stream.Collectors;
@@ -29,6 +32,9 @@ public class TbsDeployed extends TbOperation {
         "deployment_uuid",
         "latitude",
         "longitude",
+        "verified_files",
+        "verified_content",
+        "verify_failures",
     };
 
     private final String talkingbookid;
@@ -47,6 +53,9 @@ public class TbsDeployed extends TbOperation {
     private final String deployment_uuid;
     private Float latitude;
     private Float longitude;
+    private final String verified_files;
+    private final String verified_content;
+    private final String verify_failures;
 
     public TbsDeployed(Map<String, String> values) {
         this.talkingbookid = values.get("talkingbookid");
@@ -63,6 +72,9 @@ public class TbsDeployed extends TbOperation {
         this.newsn = values.get("newsn");
         this.testing = values.get("testing");
         this.deployment_uuid = values.get("deployment_uuid");
+        this.verified_files = values.get("verified_files");
+        this.verified_content = values.get("verified_content");
+        this.verify_failures = values.get("verify_failures");
 
         if (values.containsKey("latitude") && values.containsKey("longitude")) {
             this.latitude = tryParseFloat(values.get("latitude"));
@@ -137,6 +149,24 @@ public class TbsDeployed extends TbOperation {
         return deployment_uuid;
     }
 
+    /**
+     * @return the number of files whose existence and size were checked after the update.
+     */
+    public String getVerified_files() {
+        return verified_files;
+    }
+
+    /**
+     * @return the number of files whose content was read back and compared after the update.
+     */
+    public String getVerified_content() {
+        return verified_content;
+    }
+
+    public String getVerify_failures() {
+        return verify_failures;
+    }
+
     public Float getLatitude() {
         return latitude;
     }
@@ -155,11 +185,11 @@ public class TbsDeployed extends TbOperation {
         return OP.DEPLOYED;
     }
 
-    public String toString() {
-        String[] values = {
+    private String[] values() {
+        return new String[] {
             talkingbookid,
             recipientid,
-            preferredDateFormat.format(deployedtimestamp),
+            formatDate(deployedtimestamp),
             project,
             deployment,
             contentpackage,
@@ -172,13 +202,36 @@ public class TbsDeployed extends TbOperation {
             testing,
             deployment_uuid,
             latitude != null ? latitude.toString() : null,
-            longitude != null ? longitude.toString() : null
+            longitude != null ? longitude.toString() : null,
+            verified_files,
+            verified_content,
+            verify_failures
         };
-        return Arrays.stream(values)
+    }
+
+    public String toString() {
+        return Arrays.stream(values())
             .map(v -> v == null ? "" : escapeCsv(v))
             .collect(Collectors.joining(","));
     }
 
+    @Override
+    public Map<String, String> toRecord() {
+        String[] values = values();
+        Map<String, String> record = new LinkedHashMap<>();
+        for (int i = 0; i < columns.length; i++) {
+            record.put(columns[i], values[i]);
+        }
+        return record;
+    }
+
+    /**
+     * @return the names of the columns, in order.
+     */
+    public static List<String> columns() {
+        return Collections.unmodifiableList(Arrays.asList(columns));
+    }
+
     public static String header() {
         return Arrays.stream(columns)
             .map(v -> v == null ? "" : escapeCsv(v))
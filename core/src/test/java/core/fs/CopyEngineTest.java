@@ -0,0 +1,188 @@
+package core.fs;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.literacybridge.core.fs.CopyEngine;
+import org.literacybridge.core.fs.FsFile;
+import org.literacybridge.core.fs.TbFile;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class CopyEngineTest {
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private static byte[] random(int size) {
+    byte[] content = new byte[size];
+    new Random(size).nextBytes(content);
+    return content;
+  }
+
+  private static void write(File file, byte[] content) throws IOException {
+    file.getParentFile().mkdirs();
+    Files.write(file.toPath(), content);
+  }
+
+  /**
+   * Makes a tree of files in several directories, of assorted sizes.
+   * @return the number of bytes in the tree.
+   */
+  private static long makeTree(File root) throws IOException {
+    long bytes = 0;
+    for (int d = 0; d < 5; d++) {
+      for (int f = 0; f < 8; f++) {
+        int size = 1000 * d + 37 * f;
+        write(new File(root, "dir" + d + "/sub/file" + f + ".a18"), random(size));
+        bytes += size;
+      }
+    }
+    write(new File(root, "top.txt"), random(10));
+    return bytes + 10;
+  }
+
+  private static void assertSameTree(File expected, File actual) throws IOException {
+    String[] names = expected.list();
+    Arrays.sort(names);
+    String[] actualNames = actual.list();
+    Arrays.sort(actualNames);
+    assertArrayEquals(names, actualNames);
+    for (String name : names) {
+      File expectedChild = new File(expected, name);
+      File actualChild = new File(actual, name);
+      if (expectedChild.isDirectory()) {
+        assertSameTree(expectedChild, actualChild);
+      } else {
+        assertArrayEquals(name, Files.readAllBytes(expectedChild.toPath()),
+            Files.readAllBytes(actualChild.toPath()));
+      }
+    }
+  }
+
+  @Test
+  public void testCopyDirOnSeveralStreams() throws Exception {
+    File src = folder.newFolder("src");
+    File dst = new File(folder.getRoot(), "dst");
+    long bytes = makeTree(src);
+    AtomicInteger inProgress = new AtomicInteger();
+    AtomicInteger mostInProgress = new AtomicInteger();
+    List<String> copied = Collections.synchronizedList(new ArrayList<>());
+
+    CopyEngine engine = new CopyEngine(4);
+    long result = engine.copyDir(new FsFile(src), new FsFile(dst), null, (from, to) -> {
+      mostInProgress.accumulateAndGet(inProgress.incrementAndGet(), Math::max);
+      copied.add(to.getName());
+      try {
+        Thread.sleep(1);
+      } catch (InterruptedException ignored) {
+      }
+      inProgress.decrementAndGet();
+    });
+
+    assertEquals(bytes, result);
+    assertSameTree(src, dst);
+    assertEquals(41, copied.size());
+    assertEquals("Progress is reported from one thread at a time.", 1, mostInProgress.get());
+
+    CopyEngine.Stats stats = engine.takeStats();
+    assertEquals(41, stats.files);
+    assertEquals(bytes, stats.bytes);
+    assertTrue(stats.nanos > 0);
+    assertEquals(0, engine.takeStats().files);
+  }
+
+  /**
+   * A filter that records the name of every file it sees, and rejects the given names.
+   */
+  private static TbFile.CopyFilter skipping(List<String> seen, String... names) {
+    return file -> {
+      seen.add(file.getName());
+      return !Arrays.asList(names).contains(file.getName());
+    };
+  }
+
+  @Test
+  public void testFilterSeesTheSameFilesAsCopyDir() throws Exception {
+    File src = folder.newFolder("src");
+    makeTree(src);
+    List<String> engineSeen = new ArrayList<>();
+    List<String> copyDirSeen = new ArrayList<>();
+
+    new CopyEngine(4).copyDir(new FsFile(src), new FsFile(new File(folder.getRoot(), "engine")),
+        skipping(engineSeen, "dir2", "top.txt"), null);
+    TbFile.copyDir(new FsFile(src), new FsFile(new File(folder.getRoot(), "copyDir")),
+        skipping(copyDirSeen, "dir2", "top.txt"));
+
+    assertEquals(copyDirSeen, engineSeen);
+    assertSameTree(new File(folder.getRoot(), "copyDir"), new File(folder.getRoot(), "engine"));
+    assertFalse(new File(folder.getRoot(), "engine/dir2").exists());
+    assertFalse(new File(folder.getRoot(), "engine/top.txt").exists());
+  }
+
+  @Test
+  public void testFailedCopyIsReported() throws Exception {
+    File src = folder.newFolder("src");
+    makeTree(src);
+    File dst = new File(folder.getRoot(), "dst");
+    Map<TbFile, TbFile> files = new LinkedHashMap<>();
+    for (int f = 0; f < 8; f++) {
+      files.put(new FsFile(new File(dst, "file" + f)), new FsFile(new File(src, "dir1/sub/file" + f + ".a18")));
+    }
+    files.put(new FsFile(new File(dst, "missing")), new FsFile(new File(src, "missing.a18")));
+
+    try {
+      new CopyEngine(4).copyFiles(files, null);
+      fail("The copy should have failed.");
+    } catch (IOException expected) {
+      // expected
+    }
+    assertFalse(new File(dst, "missing").exists());
+  }
+
+  @Test
+  public void testCopyReplacesLongerFile() throws Exception {
+    File src = folder.newFile("src");
+    File dst = folder.newFile("dst");
+    write(src, random(100));
+    write(dst, random(100_000));
+
+    assertEquals(100, TbFile.copy(new FsFile(src), new FsFile(dst)));
+    assertArrayEquals(random(100), Files.readAllBytes(dst.toPath()));
+  }
+
+  @Test
+  public void testSingleStreamCopiesInOrder() throws Exception {
+    File src = folder.newFolder("src");
+    makeTree(src);
+    File dst = new File(folder.getRoot(), "dst");
+    Map<TbFile, TbFile> files = new LinkedHashMap<>();
+    List<String> expected = new ArrayList<>();
+    for (int d = 4; d >= 0; d--) {
+      files.put(new FsFile(new File(dst, "d" + d + "/file")), new FsFile(new File(src, "dir" + d + "/sub/file0.a18")));
+      expected.add("d" + d);
+    }
+    List<String> copied = new ArrayList<>();
+
+    new CopyEngine(1).copyFiles(files, (from, to) -> copied.add(to.getParent().getName()));
+
+    assertEquals(expected, copied);
+    assertEquals(new HashSet<>(expected), new HashSet<>(Arrays.asList(dst.list())));
+  }
+}
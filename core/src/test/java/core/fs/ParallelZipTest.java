@@ -0,0 +1,208 @@
+package core.fs;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.literacybridge.core.fs.ParallelZip;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ParallelZipTest {
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private static void write(File file, byte[] content) throws IOException {
+    file.getParentFile().mkdirs();
+    Files.write(file.toPath(), content);
+  }
+
+  private static byte[] text(String text, int repeat) {
+    StringBuilder builder = new StringBuilder();
+    for (int i = 0; i < repeat; i++) {
+      builder.append(text).append(i).append('\n');
+    }
+    return builder.toString().getBytes(StandardCharsets.UTF_8);
+  }
+
+  private static byte[] random(int size) {
+    byte[] bytes = new byte[size];
+    new Random(size).nextBytes(bytes);
+    return bytes;
+  }
+
+  private static byte[] readAll(InputStream in) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    byte[] buffer = new byte[8192];
+    int n;
+    while ((n = in.read(buffer)) > 0) {
+      out.write(buffer, 0, n);
+    }
+    return out.toByteArray();
+  }
+
+  /**
+   * Creates a directory with stored (audio) and deflated entries, empty files, nested
+   * directories, and non-ASCII names.
+   * @return the expected entries: name -> content, or null for a directory.
+   */
+  private Map<String, byte[]> newContent(File dir) throws IOException {
+    Map<String, byte[]> expected = new HashMap<>();
+    expected.put("content/", null);
+    expected.put("content/messages/", null);
+    expected.put("content/messages/a.mp3", random(300 * 1024));
+    expected.put("content/messages/b.a18", random(1000));
+    expected.put("content/messages/empty.a18", new byte[0]);
+    expected.put("content/list.txt", text("Message ", 20000));
+    expected.put("content/empty.txt", new byte[0]);
+    if (canNameFiles("Ŋmɛŋ")) {
+      expected.put("content/Nnɔɔ Ŋmɛŋ.txt", text("Kasɛm ", 10));
+      expected.put("content/Ŋmɛŋ/", null);
+      expected.put("content/Ŋmɛŋ/é.mp3", random(10));
+    }
+    // Deflates to more than is kept in memory.
+    expected.put("content/large.bin", random(3 * 1024 * 1024));
+    for (Map.Entry<String, byte[]> entry : expected.entrySet()) {
+      if (entry.getValue() != null) {
+        write(new File(dir, entry.getKey()), entry.getValue());
+      }
+    }
+    return expected;
+  }
+
+  /**
+   * Whether the platform's file name encoding can represent the name.
+   */
+  private static boolean canNameFiles(String name) {
+    try {
+      new File(name).toPath();
+      return true;
+    } catch (InvalidPathException e) {
+      return false;
+    }
+  }
+
+  private static void assertZipFileContains(File zip, Map<String, byte[]> expected) throws IOException {
+    try (ZipFile zipFile = new ZipFile(zip)) {
+      assertEquals(expected.size(), zipFile.size());
+      Enumeration<? extends ZipEntry> entries = zipFile.entries();
+      while (entries.hasMoreElements()) {
+        ZipEntry entry = entries.nextElement();
+        assertTrue(entry.getName(), expected.containsKey(entry.getName()));
+        byte[] content = expected.get(entry.getName());
+        assertEquals(entry.getName(), content == null, entry.isDirectory());
+        if (content != null) {
+          try (InputStream in = zipFile.getInputStream(entry)) {
+            assertArrayEquals(entry.getName(), content, readAll(in));
+          }
+        }
+      }
+    }
+  }
+
+  private static void assertZipStreamContains(File zip, Map<String, byte[]> expected) throws IOException {
+    int count = 0;
+    try (ZipInputStream in = new ZipInputStream(new FileInputStream(zip))) {
+      ZipEntry entry;
+      while ((entry = in.getNextEntry()) != null) {
+        count++;
+        assertTrue(entry.getName(), expected.containsKey(entry.getName()));
+        byte[] content = expected.get(entry.getName());
+        if (content != null) {
+          // ZipInputStream checks the CRC and sizes in the local header.
+          assertArrayEquals(entry.getName(), content, readAll(in));
+        }
+      }
+    }
+    assertEquals(expected.size(), count);
+  }
+
+  @Test
+  public void testRoundTrip() throws Exception {
+    File dir = new File(folder.getRoot(), "in");
+    Map<String, byte[]> expected = newContent(dir);
+    File zip = new File(folder.getRoot(), "out/content.zip");
+
+    long size = ParallelZip.zip(new File(dir, "content"), zip, true, 4);
+
+    assertEquals(zip.length(), size);
+    assertZipFileContains(zip, expected);
+    assertZipStreamContains(zip, expected);
+    assertFalse(new File(zip.getParentFile(), "content.zip.tmp").exists());
+  }
+
+  @Test
+  public void testWithoutBaseDir() throws Exception {
+    File dir = new File(folder.getRoot(), "in");
+    Map<String, byte[]> withBase = newContent(dir);
+    Map<String, byte[]> expected = new HashMap<>();
+    for (Map.Entry<String, byte[]> entry : withBase.entrySet()) {
+      if (!entry.getKey().equals("content/")) {
+        expected.put(entry.getKey().substring("content/".length()), entry.getValue());
+      }
+    }
+    File zip = new File(folder.getRoot(), "content.zip");
+
+    ParallelZip.zip(new File(dir, "content"), zip, false, 1);
+
+    assertZipFileContains(zip, expected);
+    assertZipStreamContains(zip, expected);
+  }
+
+  @Test
+  public void testEmptyDirectory() throws Exception {
+    File dir = folder.newFolder("empty");
+    File zip = new File(folder.getRoot(), "empty.zip");
+
+    ParallelZip.zip(dir, zip, false, 2);
+
+    assertZipFileContains(zip, new HashMap<>());
+    assertZipStreamContains(zip, new HashMap<>());
+  }
+
+  @Test
+  public void testFailureLeavesNoPartialZip() throws Exception {
+    File dir = folder.newFolder("in");
+    write(new File(dir, "a.txt"), text("Message ", 1000));
+    write(new File(dir, "b.mp3"), random(1000));
+    Files.createSymbolicLink(new File(dir, "c.txt").toPath(), new File(dir, "missing.txt").toPath());
+    File zip = new File(folder.getRoot(), "in.zip");
+    byte[] previous = "previous zip".getBytes(StandardCharsets.UTF_8);
+    write(zip, previous);
+
+    try {
+      ParallelZip.zip(dir, zip, true, 2);
+      fail("An unreadable file should fail the zip.");
+    } catch (IOException expected) {
+      // expected
+    }
+
+    assertArrayEquals("The previous .zip should be untouched.", previous, Files.readAllBytes(zip.toPath()));
+    assertEquals(Arrays.asList("in", "in.zip"), Arrays.asList(sorted(folder.getRoot().list())));
+  }
+
+  private static String[] sorted(String[] names) {
+    Arrays.sort(names);
+    return names;
+  }
+}
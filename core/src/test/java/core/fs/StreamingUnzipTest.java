@@ -0,0 +1,213 @@
+package core.fs;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.literacybridge.core.fs.StreamingUnzip;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class StreamingUnzipTest {
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private static byte[] random(int size) {
+    byte[] content = new byte[size];
+    new Random(size).nextBytes(content);
+    return content;
+  }
+
+  /**
+   * Zips the contents, in order. A name ending in "/" is a directory.
+   */
+  private static byte[] zip(Map<String, byte[]> contents) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (ZipOutputStream zout = new ZipOutputStream(bytes)) {
+      for (Map.Entry<String, byte[]> e : contents.entrySet()) {
+        zout.putNextEntry(new ZipEntry(e.getKey()));
+        if (e.getValue() != null) {
+          zout.write(e.getValue());
+        }
+        zout.closeEntry();
+      }
+    }
+    return bytes.toByteArray();
+  }
+
+  private static void assertUnzipped(Map<String, byte[]> contents, File outDir) throws IOException {
+    for (Map.Entry<String, byte[]> e : contents.entrySet()) {
+      File file = new File(outDir, e.getKey());
+      if (e.getValue() == null) {
+        assertTrue(e.getKey(), file.isDirectory());
+      } else {
+        assertArrayEquals(e.getKey(), e.getValue(), Files.readAllBytes(file.toPath()));
+      }
+    }
+  }
+
+  private static List<String> manifestLines(File manifest) throws IOException {
+    return Files.readAllLines(manifest.toPath(), StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Fails after a number of bytes, like a download that is cut off.
+   */
+  private static class CutOffInputStream extends FilterInputStream {
+    private long remaining;
+
+    CutOffInputStream(byte[] bytes, long cutOff) {
+      super(new ByteArrayInputStream(bytes));
+      this.remaining = cutOff;
+    }
+
+    @Override
+    public int read() throws IOException {
+      if (remaining <= 0) throw new IOException("Connection reset");
+      remaining--;
+      return super.read();
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      if (remaining <= 0) throw new IOException("Connection reset");
+      int n = super.read(b, off, (int) Math.min(len, remaining));
+      if (n > 0) remaining -= n;
+      return n;
+    }
+  }
+
+  @Test
+  public void testUnzip() throws Exception {
+    Map<String, byte[]> contents = new LinkedHashMap<>();
+    contents.put("content/", null);
+    contents.put("content/TEST-19-1/messages/a.a18", random(1000));
+    contents.put("content/TEST-19-1/messages/b.a18", random(2000));
+    contents.put("content/TEST-19-1/empty.txt", new byte[0]);
+    contents.put("basic/system/config.txt", "config".getBytes(StandardCharsets.UTF_8));
+    File outDir = folder.newFolder("out");
+    File manifest = new File(folder.getRoot(), "unzipped.manifest");
+
+    int nWritten = new StreamingUnzip(outDir, manifest, 4).unzip(new ByteArrayInputStream(zip(contents)));
+
+    assertEquals(4, nWritten);
+    assertUnzipped(contents, outDir);
+    assertEquals(4, manifestLines(manifest).size());
+    assertTrue(manifestLines(manifest).contains("2000\tcontent/TEST-19-1/messages/b.a18"));
+  }
+
+  @Test
+  public void testLargeEntry() throws Exception {
+    Map<String, byte[]> contents = new LinkedHashMap<>();
+    contents.put("small1.a18", random(100));
+    // Larger than is buffered; written as it is decompressed.
+    contents.put("large.a18", random(5 * 1024 * 1024 + 17));
+    contents.put("small2.a18", random(200));
+    File outDir = folder.newFolder("out");
+    File manifest = new File(folder.getRoot(), "unzipped.manifest");
+
+    int nWritten = new StreamingUnzip(outDir, manifest, 2).unzip(new ByteArrayInputStream(zip(contents)));
+
+    assertEquals(3, nWritten);
+    assertUnzipped(contents, outDir);
+    assertTrue(manifestLines(manifest).contains((5 * 1024 * 1024 + 17) + "\tlarge.a18"));
+  }
+
+  @Test
+  public void testResumeFromManifest() throws Exception {
+    Map<String, byte[]> contents = new LinkedHashMap<>();
+    for (int i = 0; i < 10; i++) {
+      contents.put("messages/" + i + ".a18", random(100_000 + i));
+    }
+    byte[] zip = zip(contents);
+    File outDir = folder.newFolder("out");
+    File manifest = new File(folder.getRoot(), "unzipped.manifest");
+    try {
+      new StreamingUnzip(outDir, manifest, 2).unzip(new CutOffInputStream(zip, zip.length / 2));
+      fail("The unzip should have been interrupted.");
+    } catch (IOException expected) {
+      // expected
+    }
+    List<String> recorded = manifestLines(manifest);
+    assertTrue("Some, but not all, files were written.", recorded.size() > 0 && recorded.size() < 10);
+    // Change a file that was recorded, keeping its size, to show that it isn't written again.
+    String first = recorded.get(0).split("\t", 2)[1];
+    byte[] marker = new byte[contents.get(first).length];
+    Files.write(new File(outDir, first).toPath(), marker);
+
+    int nWritten = new StreamingUnzip(outDir, manifest, 2).unzip(new ByteArrayInputStream(zip));
+
+    assertEquals(10 - recorded.size(), nWritten);
+    assertArrayEquals(marker, Files.readAllBytes(new File(outDir, first).toPath()));
+    contents.remove(first);
+    assertUnzipped(contents, outDir);
+    assertEquals(10, manifestLines(manifest).size());
+  }
+
+  @Test
+  public void testInterruptedWritesAreRedone() throws Exception {
+    Map<String, byte[]> contents = new LinkedHashMap<>();
+    contents.put("a.a18", random(300));
+    contents.put("b.a18", random(400));
+    contents.put("c.a18", random(500));
+    contents.put("d.a18", random(600));
+    File outDir = folder.newFolder("out");
+    File manifest = new File(folder.getRoot(), "unzipped.manifest");
+    Files.write(new File(outDir, "a.a18").toPath(), contents.get("a.a18"));
+    // Recorded, but not the size it should be.
+    Files.write(new File(outDir, "b.a18").toPath(), Arrays.copyOf(contents.get("b.a18"), 100));
+    // c.a18 is recorded, but the file is gone, and the last line was cut short by the interruption.
+    Files.write(manifest.toPath(), "300\ta.a18\n400\tb.a18\n500\tc.a18\n60".getBytes(StandardCharsets.UTF_8));
+
+    int nWritten = new StreamingUnzip(outDir, manifest, 2).unzip(new ByteArrayInputStream(zip(contents)));
+
+    assertEquals("Only a.a18 was complete.", 3, nWritten);
+    assertUnzipped(contents, outDir);
+  }
+
+  @Test
+  public void testPathOutsideOutDir() throws Exception {
+    File outDir = folder.newFolder("out");
+    File manifest = new File(folder.getRoot(), "unzipped.manifest");
+    for (String name : new String[] { "../evil.txt", "../out-sibling/evil.txt", "content/../../evil.txt" }) {
+      Map<String, byte[]> contents = new LinkedHashMap<>();
+      contents.put("good.txt", random(10));
+      contents.put(name, random(10));
+      try {
+        new StreamingUnzip(outDir, manifest, 1).unzip(new ByteArrayInputStream(zip(contents)));
+        fail(name + " should not be unzipped.");
+      } catch (IOException expected) {
+        // expected
+      }
+      assertFalse(name, new File(outDir, name).exists());
+    }
+
+    // The directory itself, and paths that only look like they leave it, are fine.
+    Map<String, byte[]> contents = new LinkedHashMap<>();
+    contents.put("./", null);
+    contents.put("content/../good.txt", random(10));
+    contents.put("..dots.txt", random(20));
+    new StreamingUnzip(outDir, manifest, 1).unzip(new ByteArrayInputStream(zip(contents)));
+    assertTrue(new File(outDir, "good.txt").exists());
+    assertTrue(new File(outDir, "..dots.txt").exists());
+  }
+}
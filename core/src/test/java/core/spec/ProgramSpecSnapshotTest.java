@@ -0,0 +1,218 @@
+package core.spec;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.literacybridge.core.spec.ProgramSpec;
+import org.literacybridge.core.spec.ProgramSpecSnapshot;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+public class ProgramSpecSnapshotTest {
+    private static final String KEY = "{content.csv=\"abc\", recipients.csv=\"def\"}";
+    private static final byte[] BOM = { (byte) 0xEF, (byte) 0xBB, (byte) 0xBF };
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static File progspec1() {
+        return new File(ProgramSpecSnapshotTest.class.getClassLoader().getResource("progspec1/content.csv").getFile())
+            .getParentFile();
+    }
+
+    /**
+     * Like the ACM's, gives the first of the named files that exists in the directory.
+     */
+    private static ProgramSpec.StreamProvider streamProvider(File dir) {
+        return filenames -> {
+            for (String filename : filenames) {
+                File file = new File(dir, filename);
+                if (file.exists()) {
+                    try {
+                        return new FileInputStream(file);
+                    } catch (FileNotFoundException ignored) {
+                    }
+                }
+            }
+            return null;
+        };
+    }
+
+    private static byte[] write(ProgramSpecSnapshot snapshot) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        snapshot.write(bytes);
+        return bytes.toByteArray();
+    }
+
+    private static ProgramSpecSnapshot read(byte[] bytes, String key) throws IOException {
+        return ProgramSpecSnapshot.read(new ByteArrayInputStream(bytes), key);
+    }
+
+    /**
+     * Builds a snapshot of the files, writes and reads it back, and checks that the program spec
+     * from the snapshot is the same as the one parsed from the files.
+     */
+    private static ProgramSpec assertSameFromSnapshot(File dir) throws IOException {
+        ProgramSpec.StreamProvider streamProvider = streamProvider(dir);
+        ProgramSpecSnapshot snapshot = read(write(ProgramSpecSnapshot.build(streamProvider, KEY)), KEY);
+        assertNotNull(snapshot);
+        assertEquals(KEY, snapshot.getKey());
+
+        ProgramSpec parsed = new ProgramSpec(streamProvider);
+        ProgramSpec fromSnapshot = new ProgramSpec(streamProvider, snapshot);
+
+        assertEquals(recipients(parsed), recipients(fromSnapshot));
+        assertEquals(deployments(parsed), deployments(fromSnapshot));
+        assertEquals(parsed.getRecipientsMap(), fromSnapshot.getRecipientsMap());
+        assertEquals(String.valueOf(parsed.getLanguages()), String.valueOf(fromSnapshot.getLanguages()));
+        return fromSnapshot;
+    }
+
+    // Null if the program spec has no recipients.
+    private static List<String> recipients(ProgramSpec programSpec) {
+        if (programSpec.getRecipients() == null) {
+            return null;
+        }
+        return programSpec.getRecipients().stream()
+            .map(r -> Arrays.asList(r.recipientid, r.communityname, r.groupname, r.component, r.country, r.region,
+                r.district, r.numtbs, r.supportentity, r.languagecode, r.agent, r.variant).toString())
+            .collect(Collectors.toList());
+    }
+
+    private static List<String> deployments(ProgramSpec programSpec) {
+        if (programSpec.getDeployments() == null) {
+            return null;
+        }
+        return programSpec.getDeployments().stream()
+            .map(d -> Arrays.asList(d.deploymentnumber, d.deployment, d.deploymentname, d.startdate, d.enddate)
+                .toString())
+            .collect(Collectors.toList());
+    }
+
+    private void writeCsv(File dir, String filename, String content, boolean withBom) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        if (withBom) {
+            bytes.write(BOM);
+        }
+        bytes.write(content.getBytes(StandardCharsets.UTF_8));
+        Files.write(new File(dir, filename).toPath(), bytes.toByteArray());
+    }
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        ProgramSpec programSpec = assertSameFromSnapshot(progspec1());
+
+        assertEquals(12, programSpec.getRecipients().size());
+        assertEquals(8, programSpec.getRecipientsForDeployment(1).size());
+    }
+
+    @Test
+    public void testSnapshotMatchesParsedCsv() throws Exception {
+        File dir = folder.newFolder("progspec");
+        // A byte order mark, columns in another order, an extra column, values with quotes, a
+        // quoted comma and line break, and a short row.
+        writeCsv(dir, "recipients_map.csv",
+            "directory,extra,recipientid,project\r\n"
+                + "\"Quoted, with comma\",x,r1,TEST\r\n"
+                + "\"\"\"In quotes\"\"\",x,r2,TEST\r\n"
+                + "\"Two\nlines\",x,r3,TEST\r\n"
+                + "Ka\u02BBahumanu,x,r4,TEST\r\n"
+                + "Short row\r\n",
+            true);
+
+        ProgramSpec programSpec = assertSameFromSnapshot(dir);
+
+        assertEquals("Quoted, with comma", programSpec.getRecipientsMap().get("r1"));
+        assertEquals("The surrounding quotes are dropped.", "In quotes", programSpec.getRecipientsMap().get("r2"));
+        assertEquals("Two\nlines", programSpec.getRecipientsMap().get("r3"));
+        assertEquals("Ka\u02BBahumanu", programSpec.getRecipientsMap().get("r4"));
+        assertEquals("Short row", programSpec.getRecipientsMap().get(""));
+    }
+
+    @Test
+    public void testCellsOver64K() throws Exception {
+        File dir = folder.newFolder("progspec");
+        StringBuilder directory = new StringBuilder();
+        while (directory.length() < 100_000) {
+            directory.append("Ka\u02BBahumanu ");
+        }
+        writeCsv(dir, "recipients_map.csv", "recipientid,directory\nr1," + directory + "\n", false);
+
+        ProgramSpec programSpec = assertSameFromSnapshot(dir);
+
+        assertEquals(directory.toString(), programSpec.getRecipientsMap().get("r1"));
+    }
+
+    @Test
+    public void testOtherKeyOrVersion() throws Exception {
+        byte[] bytes = write(ProgramSpecSnapshot.build(streamProvider(progspec1()), KEY));
+
+        assertNull(read(bytes, KEY + " "));
+        assertNull(read(bytes, ""));
+
+        byte[] otherVersion = bytes.clone();
+        ByteBuffer.wrap(otherVersion).putInt(4, 2);
+        assertNull(read(otherVersion, KEY));
+        byte[] notASnapshot = "recipientid,directory\n".getBytes(StandardCharsets.UTF_8);
+        assertNull(read(notASnapshot, KEY));
+    }
+
+    @Test
+    public void testTruncated() throws Exception {
+        byte[] bytes = write(ProgramSpecSnapshot.build(streamProvider(progspec1()), KEY));
+        // Cut off everywhere past the version: in the key, in the counts, and in the values.
+        for (int length = 8; length < bytes.length; length += 7) {
+            try {
+                read(Arrays.copyOf(bytes, length), KEY);
+                fail("A snapshot truncated to " + length + " bytes should not be read.");
+            } catch (EOFException expected) {
+                // expected
+            }
+        }
+        assertNotNull(read(bytes, KEY));
+    }
+
+    @Test
+    public void testCorruptLengths() throws Exception {
+        File dir = folder.newFolder("progspec");
+        writeCsv(dir, "recipients_map.csv", "recipientid,directory\nr1,d1\n", false);
+        byte[] bytes = write(ProgramSpecSnapshot.build(streamProvider(dir), KEY));
+        int keyLength = KEY.getBytes(StandardCharsets.UTF_8).length;
+        // magic, version, key, number of parts.
+        int nPartsOffset = 4 + 4 + 4 + keyLength;
+        // number of parts, part name.
+        int nLinesOffset = nPartsOffset + 4 + 4 + "recipients_map.csv".length();
+
+        for (int corrupt : new int[] { -1, Integer.MIN_VALUE, Integer.MAX_VALUE }) {
+            // The count of parts, the length of the part name, the count of lines, and the count
+            // of values in the first line.
+            for (int offset : new int[] { nPartsOffset, nPartsOffset + 4, nLinesOffset, nLinesOffset + 4 }) {
+                byte[] corrupted = bytes.clone();
+                ByteBuffer.wrap(corrupted).putInt(offset, corrupt);
+                try {
+                    read(corrupted, KEY);
+                    fail("A snapshot with a count of " + corrupt + " at " + offset + " should not be read.");
+                } catch (IOException expected) {
+                    // expected
+                }
+            }
+        }
+    }
+}
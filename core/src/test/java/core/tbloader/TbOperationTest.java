@@ -0,0 +1,92 @@
+package core.tbloader;
+
+import org.junit.Test;
+import org.literacybridge.core.tbloader.TbsDeployed;
+
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class TbOperationTest {
+  private static TbsDeployed deployedAt(String timestamp) {
+    Map<String, String> values = new HashMap<>();
+    values.put("talkingbookid", "B-000C0001");
+    values.put("deployedtimestamp", timestamp);
+    return new TbsDeployed(values);
+  }
+
+  @Test
+  public void testDateFormats() throws Exception {
+    SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS");
+    Date expected = format.parse("2020-03-04 05:06:07.800");
+
+    assertEquals(expected, deployedAt("2020-03-04 05:06:07.800").getDeployedtimestamp());
+    assertEquals(expected, deployedAt("2020-03-04 05:06:07.8").getDeployedtimestamp());
+    assertEquals(expected, deployedAt("20200304T050607.800Z").getDeployedtimestamp());
+    assertEquals(expected, deployedAt("2020-03-04T05:06:07.8+00:00").getDeployedtimestamp());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testUnrecognizedDate() {
+    deployedAt("not a date");
+  }
+
+  @Test
+  public void testConcurrentParsing() throws Exception {
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    try {
+      List<Future<?>> futures = new ArrayList<>();
+      for (int t = 0; t < 8; t++) {
+        int thread = t;
+        futures.add(executor.submit(() -> {
+          SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS");
+          for (int i = 0; i < 500; i++) {
+            String timestamp = String.format("20%02d-%02d-%02d %02d:%02d:%02d.%03d",
+                10 + thread, 1 + i % 12, 1 + i % 28, i % 24, i % 60, thread, i);
+            assertEquals(timestamp, format.format(deployedAt(timestamp).getDeployedtimestamp()));
+          }
+          return null;
+        }));
+      }
+      for (Future<?> future : futures) {
+        future.get();
+      }
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  @Test
+  public void testVerificationColumns() {
+    List<String> columns = TbsDeployed.columns();
+    assertEquals(Arrays.asList("verified_files", "verified_content", "verify_failures"),
+        columns.subList(columns.size() - 3, columns.size()));
+
+    Map<String, String> values = new HashMap<>();
+    values.put("talkingbookid", "B-000C0001");
+    values.put("deployedtimestamp", "2020-03-04 05:06:07.800");
+    values.put("verified_files", "120");
+    values.put("verified_content", "12");
+    values.put("verify_failures", "0");
+    TbsDeployed deployed = new TbsDeployed(new TbsDeployed(values).toRecord());
+    assertEquals("120", deployed.getVerified_files());
+    assertEquals("12", deployed.getVerified_content());
+    assertEquals("0", deployed.getVerify_failures());
+
+    // Logs written before the columns existed have no values for them.
+    TbsDeployed older = deployedAt("2020-03-04 05:06:07.800");
+    assertNull(older.getVerified_files());
+    assertTrue(older.toString().endsWith(",,,"));
+  }
+}
@@ -0,0 +1,404 @@
+package core.tbloader;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.literacybridge.core.fs.FsFile;
+import org.literacybridge.core.fs.TbFile;
+import org.literacybridge.core.tbdevice.TbDeviceInfo;
+import org.literacybridge.core.tbloader.DeploymentInfo;
+import org.literacybridge.core.tbloader.PackagesData;
+import org.literacybridge.core.tbloader.ProgressListener;
+import org.literacybridge.core.tbloader.TBLoaderConfig;
+import org.literacybridge.core.tbloader.TBLoaderCore;
+import org.literacybridge.core.tbloader.TbsDeployed;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Updates a simulated TBv2 Talking Book, in a directory, from a deployment's images.
+ */
+public class TbV2UpdateTest {
+    private static final String PROJECT = "TEST";
+    private static final String DEPLOYMENT = "TEST-20-1";
+    private static final String PACKAGE = "TEST-20-1-en";
+    private static final String MANIFEST = "system/content_manifest.txt";
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private File deploymentDir;
+    private File tbRoot;
+    private File testRoot;
+
+    @Before
+    public void setUp() throws IOException {
+        testRoot = tmp.newFolder();
+        deploymentDir = new File(testRoot, "deployment");
+        tbRoot = new File(testRoot, "tbroot");
+        writeFile(new File(tbRoot, "system/device_ID.txt"), "1234.5678.9abc.0001\n");
+        writeFile(new File(tbRoot, "system/firmware_ID.txt"), "r2000\n");
+        writePackagesData(PACKAGE);
+    }
+
+    /**
+     * Records what each step of an update does.
+     */
+    static class StepRecorder extends ProgressListener {
+        private Steps step;
+        // Names of the files copied while updating content. The package data is always rewritten.
+        final List<String> copied = Collections.synchronizedList(new ArrayList<>());
+        final List<String> errors = Collections.synchronizedList(new ArrayList<>());
+        final List<String> logs = Collections.synchronizedList(new ArrayList<>());
+        // Run when verification starts, to damage what was written.
+        Runnable beforeVerify;
+
+        @Override
+        public void step(Steps step) {
+            this.step = step;
+            if (step == Steps.verifyContent && beforeVerify != null) {
+                beforeVerify.run();
+            }
+        }
+
+        @Override
+        public void detail(String value) {
+            if (step == Steps.updateContent && !value.isEmpty()
+                && !value.equals(PackagesData.PACKAGES_DATA_TXT)) {
+                copied.add(value);
+            }
+        }
+
+        @Override
+        public void log(String value) {
+            logs.add(value);
+        }
+
+        @Override
+        public void log(boolean append, String value) {
+            logs.add(value);
+        }
+
+        @Override
+        public void error(String value) {
+            errors.add(value);
+        }
+    }
+
+    private static void writeFile(File file, byte[] content) throws IOException {
+        file.getParentFile().mkdirs();
+        Files.write(file.toPath(), content);
+    }
+
+    private static void writeFile(File file, String content) throws IOException {
+        writeFile(file, content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static byte[] content(String text, int size) {
+        byte[] content = new byte[size];
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        for (int i = 0; i < size; i++) {
+            content[i] = bytes[i % bytes.length];
+        }
+        return content;
+    }
+
+    private File image(String imageName) {
+        return new File(deploymentDir, "images.v2/" + imageName);
+    }
+
+    /**
+     * Writes a file into an image, with a modification time later than anything already there,
+     * so that it is seen as changed.
+     */
+    private File writeImageFile(String imageName, String path, byte[] content) throws IOException {
+        File file = new File(image(imageName), path);
+        long previous = file.exists() ? file.lastModified() : 0;
+        writeFile(file, content);
+        assertTrue(file.setLastModified(Math.max(previous + 2000, System.currentTimeMillis())));
+        return file;
+    }
+
+    private void writePackagesData(String imageName) throws IOException {
+        PackagesData packagesData = new PackagesData(DEPLOYMENT);
+        packagesData.addPackage(imageName)
+            .withAnnouncement(new File("/content/" + imageName + "/messages/intro.mp3").toPath())
+            .withPromptPath(new File("/content/prompts/en/").toPath());
+        File file = new File(image(imageName), "content/" + PackagesData.PACKAGES_DATA_TXT);
+        file.getParentFile().mkdirs();
+        try (OutputStream os = new FileOutputStream(file)) {
+            packagesData.exportPackageDataFile(os, imageName);
+        }
+    }
+
+    private byte[] tbContent(String path) throws IOException {
+        return Files.readAllBytes(new File(tbRoot, path).toPath());
+    }
+
+    private TBLoaderCore newTbLoaderCore(StepRecorder recorder, boolean differential, int verifySamplePercent,
+        String... packageNames) {
+        TbDeviceInfo tbDevice = TbDeviceInfo.getDeviceInfoFor(new FsFile(tbRoot), null, "B-",
+            TbDeviceInfo.DEVICE_VERSION.TBv2);
+        DeploymentInfo oldDeploymentInfo = tbDevice.createDeploymentInfo(PROJECT);
+        DeploymentInfo newDeploymentInfo = new DeploymentInfo.DeploymentInfoBuilder()
+            .withSerialNumber(tbDevice.getSerialNumber())
+            .withNewSerialNumber(false)
+            .withProjectName(PROJECT)
+            .withDeploymentName(DEPLOYMENT)
+            .withPackageNames(packageNames.length > 0 ? Arrays.asList(packageNames)
+                                                      : Collections.singletonList(PACKAGE))
+            .withUpdateTimestamp("2020-01-01")
+            .withFirmwareRevision("r2000")
+            .withCommunity("community")
+            .withRecipientid("0123456789ab")
+            .asTestDeployment(false)
+            .build();
+        TbFile tempDir = new FsFile(new File(testRoot, "tempdir"));
+        TbFile collectedDataDir = new FsFile(new File(testRoot, "collected-data"));
+        TBLoaderConfig tbLoaderConfig = new TBLoaderConfig.Builder()
+            .withTbLoaderId("0001")
+            .withCollectedDataDirectory(collectedDataDir)
+            .withTempDirectory(tempDir)
+            .withUserEmail("tester")
+            .build();
+
+        return new TBLoaderCore.Builder()
+            .withTbLoaderConfig(tbLoaderConfig)
+            .withTbDeviceInfo(tbDevice)
+            .withDeploymentDirectory(new FsFile(deploymentDir))
+            .withOldDeploymentInfo(oldDeploymentInfo)
+            .withNewDeploymentInfo(newDeploymentInfo)
+            .withLocation("Other")
+            .withRefreshFirmware(false)
+            .withDifferentialUpdate(differential)
+            .withVerifySamplePercent(verifySamplePercent)
+            .withProgressListener(recorder)
+            .build();
+    }
+
+    private StepRecorder assertUpdated(boolean differential, int verifySamplePercent, String... packageNames) {
+        StepRecorder recorder = new StepRecorder();
+        TBLoaderCore.Result result = newTbLoaderCore(recorder, differential, verifySamplePercent, packageNames)
+            .update();
+        assertTrue(String.valueOf(recorder.errors), result.verified);
+        return recorder;
+    }
+
+    private static Set<String> set(String... values) {
+        return new HashSet<>(Arrays.asList(values));
+    }
+
+    @Test
+    public void testFirstDifferentialUpdateCopiesEverything() throws Exception {
+        byte[] message = content("message", 5000);
+        writeImageFile(PACKAGE, "content/" + PACKAGE + "/messages/1.mp3", message);
+        writeImageFile(PACKAGE, "system/profiles.txt", content("profiles", 100));
+        // Left by an earlier deployment.
+        writeFile(new File(tbRoot, "content/OLD-19-4/messages/9.mp3"), content("old", 100));
+
+        StepRecorder recorder = assertUpdated(true, 100);
+
+        assertTrue(recorder.logs.contains("No content manifest on Talking Book; doing a full update."));
+        assertEquals(set("1.mp3", "profiles.txt"), new HashSet<>(recorder.copied));
+        assertArrayEquals(message, tbContent("content/" + PACKAGE + "/messages/1.mp3"));
+        assertFalse(new File(tbRoot, "content/OLD-19-4").exists());
+        List<String> manifest = Files.readAllLines(new File(tbRoot, MANIFEST).toPath(), StandardCharsets.UTF_8);
+        assertEquals("# content manifest v1", manifest.get(0));
+        assertEquals(3, manifest.size());
+        assertTrue(manifest.get(1).endsWith("\t5000\tcontent/" + PACKAGE + "/messages/1.mp3"));
+    }
+
+    @Test
+    public void testDifferentialUpdateCopiesOnlyChanges() throws Exception {
+        String messages = "content/" + PACKAGE + "/messages/";
+        writeImageFile(PACKAGE, messages + "same.mp3", content("same", 5000));
+        writeImageFile(PACKAGE, messages + "changed.mp3", content("before", 5000));
+        writeImageFile(PACKAGE, messages + "removed.mp3", content("removed", 5000));
+        writeImageFile(PACKAGE, "system/profiles.txt", content("profiles", 100));
+        assertUpdated(true, 100);
+
+        writeImageFile(PACKAGE, messages + "changed.mp3", content("after", 5000));
+        assertTrue(new File(image(PACKAGE), messages + "removed.mp3").delete());
+        writeImageFile(PACKAGE, messages + "added.mp3", content("added", 3000));
+        // Not in the image, so not in the manifest.
+        writeFile(new File(tbRoot, messages + "stray.mp3"), content("stray", 10));
+        // A file whose size no longer matches its manifest entry is copied again.
+        writeFile(new File(tbRoot, "system/profiles.txt"), content("profiles", 50));
+
+        StepRecorder recorder = assertUpdated(true, 100);
+
+        assertEquals(set("changed.mp3", "added.mp3", "profiles.txt"), new HashSet<>(recorder.copied));
+        assertTrue(recorder.logs.contains("1 unchanged file(s) not copied."));
+        assertArrayEquals(content("after", 5000), tbContent(messages + "changed.mp3"));
+        assertArrayEquals(content("added", 3000), tbContent(messages + "added.mp3"));
+        assertArrayEquals(content("profiles", 100), tbContent("system/profiles.txt"));
+        assertFalse(new File(tbRoot, messages + "removed.mp3").exists());
+        assertFalse(new File(tbRoot, messages + "stray.mp3").exists());
+        assertTrue("Kept across the update.", new File(tbRoot, "system/device_ID.txt").exists());
+        List<String> manifest = Files.readAllLines(new File(tbRoot, MANIFEST).toPath(), StandardCharsets.UTF_8);
+        assertEquals(5, manifest.size());
+    }
+
+    @Test
+    public void testFullUpdateWithoutUsableManifest() throws Exception {
+        String path = "content/" + PACKAGE + "/messages/1.mp3";
+        writeImageFile(PACKAGE, path, content("message", 5000));
+        assertUpdated(true, 100);
+
+        // The manifest is only trusted with sizes, so a same-size change isn't noticed...
+        writeFile(new File(tbRoot, path), content("tampered", 5000));
+        assertEquals(Collections.emptyList(), assertUpdated(true, 0).copied);
+        assertArrayEquals(content("tampered", 5000), tbContent(path));
+
+        // ...but without a readable manifest, everything is copied.
+        writeFile(new File(tbRoot, MANIFEST), "not a manifest\n");
+        assertEquals(Collections.singletonList("1.mp3"), assertUpdated(true, 100).copied);
+        assertArrayEquals(content("message", 5000), tbContent(path));
+
+        // And a full update ignores the manifest, and doesn't write one.
+        writeFile(new File(tbRoot, path), content("tampered", 5000));
+        assertEquals(Collections.singletonList("1.mp3"), assertUpdated(false, 100).copied);
+        assertArrayEquals(content("message", 5000), tbContent(path));
+        assertFalse(new File(tbRoot, MANIFEST).exists());
+    }
+
+    @Test
+    public void testMarkerFilesAreReplacedByShadowFiles() throws Exception {
+        String path = "content/" + PACKAGE + "/messages/big.mp3";
+        byte[] big = content("big", 20000);
+        writeImageFile(PACKAGE, path, new byte[0]);
+        writeFile(new File(deploymentDir, "shadowFiles/" + path), big);
+        // A zero-byte file without a shadow is copied as it is.
+        writeImageFile(PACKAGE, "content/" + PACKAGE + "/messages/empty.mp3", new byte[0]);
+
+        StepRecorder recorder = assertUpdated(true, 100);
+
+        assertEquals(set("big.mp3", "empty.mp3"), new HashSet<>(recorder.copied));
+        assertArrayEquals(big, tbContent(path));
+        assertEquals(0, tbContent("content/" + PACKAGE + "/messages/empty.mp3").length);
+        List<String> manifest = Files.readAllLines(new File(tbRoot, MANIFEST).toPath(), StandardCharsets.UTF_8);
+        assertTrue(manifest.stream().anyMatch(line -> line.endsWith("\t20000\t" + path)));
+    }
+
+    @Test
+    public void testLaterImagesReplaceEarlierOnes() throws Exception {
+        String other = "TEST-20-1-fr";
+        writePackagesData(other);
+        writeImageFile(PACKAGE, "system/profiles.txt", content("english", 100));
+        writeImageFile(PACKAGE, "content/" + PACKAGE + "/messages/1.mp3", content("english", 1000));
+        writeImageFile(other, "system/profiles.txt", content("french", 200));
+        writeImageFile(other, "content/" + other + "/messages/1.mp3", content("french", 1000));
+
+        assertUpdated(true, 100, PACKAGE, other);
+
+        assertArrayEquals(content("french", 200), tbContent("system/profiles.txt"));
+        assertArrayEquals(content("english", 1000), tbContent("content/" + PACKAGE + "/messages/1.mp3"));
+        assertArrayEquals(content("french", 1000), tbContent("content/" + other + "/messages/1.mp3"));
+        try (InputStream is = new FileInputStream(new File(tbRoot, "content/" + PackagesData.PACKAGES_DATA_TXT))) {
+            PackagesData packagesData = new PackagesData.PackagesDataImporter(is).do_import();
+            assertEquals(Arrays.asList(PACKAGE, other),
+                packagesData.getPackages().stream().map(p -> p.name).collect(Collectors.toList()));
+        }
+    }
+
+    @Test
+    public void testImageIsRebuiltWhenAFileIsAdded() throws Exception {
+        String messages = "content/" + PACKAGE + "/messages/";
+        writeImageFile(PACKAGE, messages + "1.mp3", content("one", 1000));
+        assertUpdated(true, 100);
+
+        // Only a new file; nothing that was in the image has changed.
+        File added = new File(image(PACKAGE), messages + "2.mp3");
+        File dir = added.getParentFile();
+        long dirModified = dir.lastModified();
+        writeFile(added, content("two", 1000));
+        assertTrue(dir.setLastModified(dirModified + 2000));
+
+        assertEquals(Collections.singletonList("2.mp3"), assertUpdated(true, 100).copied);
+        assertArrayEquals(content("two", 1000), tbContent(messages + "2.mp3"));
+    }
+
+    /**
+     * Overwrites a file on the Talking Book, as a failing card might.
+     */
+    private Runnable damage(String path, byte[] content) {
+        return () -> {
+            try {
+                writeFile(new File(tbRoot, path), content);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        };
+    }
+
+    @Test
+    public void testChangedContentFailsVerification() throws Exception {
+        String path = "content/" + PACKAGE + "/messages/1.mp3";
+        writeImageFile(PACKAGE, path, content("message", 5000));
+        StepRecorder recorder = new StepRecorder();
+        recorder.beforeVerify = damage(path, content("garbled", 5000));
+
+        TBLoaderCore tbLoaderCore = newTbLoaderCore(recorder, true, 100);
+        TBLoaderCore.Result result = tbLoaderCore.update();
+
+        assertFalse(result.verified);
+        assertEquals(Collections.singletonList(path + ": content differs"), recorder.errors);
+        TbsDeployed deployed = tbLoaderCore.getTbsDeployed();
+        assertEquals("2", deployed.getVerified_files());
+        assertEquals("2", deployed.getVerified_content());
+        assertEquals("1", deployed.getVerify_failures());
+    }
+
+    @Test
+    public void testTruncatedFileFailsWithoutReadingBack() throws Exception {
+        String path = "content/" + PACKAGE + "/messages/1.mp3";
+        writeImageFile(PACKAGE, path, content("message", 5000));
+        StepRecorder recorder = new StepRecorder();
+        recorder.beforeVerify = damage(path, content("message", 4096));
+
+        TBLoaderCore tbLoaderCore = newTbLoaderCore(recorder, true, 0);
+        TBLoaderCore.Result result = tbLoaderCore.update();
+
+        assertFalse(result.verified);
+        assertEquals(Collections.singletonList(path + ": 4096 bytes, expected 5000"), recorder.errors);
+        assertEquals("0", tbLoaderCore.getTbsDeployed().getVerified_content());
+    }
+
+    @Test
+    public void testSampleOfContentIsReadBack() throws Exception {
+        for (int i = 0; i < 10; i++) {
+            writeImageFile(PACKAGE, "content/" + PACKAGE + "/messages/" + i + ".mp3", content("message" + i, 1000));
+        }
+        StepRecorder recorder = new StepRecorder();
+
+        TBLoaderCore tbLoaderCore = newTbLoaderCore(recorder, false, 50);
+        assertTrue(String.valueOf(recorder.errors), tbLoaderCore.update().verified);
+
+        // The image's files, and packages_data.txt.
+        TbsDeployed deployed = tbLoaderCore.getTbsDeployed();
+        assertEquals("11", deployed.getVerified_files());
+        assertEquals("6", deployed.getVerified_content());
+        assertEquals("0", deployed.getVerify_failures());
+    }
+}